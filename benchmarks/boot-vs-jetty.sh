@@ -0,0 +1,67 @@
+#!/bin/sh
+# 对比 Jetty 部署（mvn jetty:run + webdefault.xml）和 MockBootstrap 的启动时间、RSS 和吞吐，两者都跑 DemoController。
+# 先在根目录 mvn install，在 benchmarks/ 下 mvn package（HttpLoadRunner 在 benchmarks.jar 中），然后在根目录运行：
+#   sh benchmarks/boot-vs-jetty.sh [连接数=16] [秒数=10] [pipeline=1]
+# 只测其中一个：TARGETS=boot sh benchmarks/boot-vs-jetty.sh
+# 启动时间是从启动命令到 /demo 第一次返回 200；jetty:run 在 Maven 的 JVM 中运行，RSS 包含 Maven 本身。
+set -e
+
+CONNECTIONS=${1:-16}
+SECONDS_=${2:-10}
+PIPELINE=${3:-1}
+TARGETS=${TARGETS:-"jetty boot"}
+PORT=8080
+URL="http://127.0.0.1:$PORT/demo?name=bench"
+SERVLET_API=${SERVLET_API:-$HOME/.m2/repository/javax/servlet/javax.servlet-api/4.0.1/javax.servlet-api-4.0.1.jar}
+LOAD="java -cp benchmarks/target/benchmarks.jar com.learn.mvcframework.benchmark.HttpLoadRunner"
+
+now_ms() {
+	echo $(($(date +%s%N) / 1000000))
+}
+
+wait_ready() {
+	while ! curl -s -o /dev/null -f "$URL"; do
+		if ! kill -0 "$1" 2>/dev/null; then
+			echo "server exited, see $2" >&2
+			exit 1
+		fi
+		sleep 0.05
+	done
+}
+
+# jetty:run 的 java 进程是 mvn 的子进程或 mvn 本身，按端口找监听进程
+rss_kb() {
+	pid=$(ss -ltnpH "sport = :$PORT" 2>/dev/null | sed -n 's/.*pid=\([0-9]*\).*/\1/p' | head -1)
+	ps -o rss= -p "${pid:-$1}" | tr -d ' '
+}
+
+measure() {
+	name=$1
+	shift
+	log=target/$name.log
+	start=$(now_ms)
+	"$@" >"$log" 2>&1 &
+	pid=$!
+	wait_ready $pid "$log"
+	startup=$(($(now_ms) - start))
+	idle=$(rss_kb $pid)
+	result=$($LOAD "$URL" "$CONNECTIONS" "$SECONDS_" 3 "$PIPELINE")
+	loaded=$(rss_kb $pid)
+	kill $pid
+	wait $pid 2>/dev/null || true
+	echo "$name startup=${startup}ms rssIdle=$((idle / 1024))MB rssAfterLoad=$((loaded / 1024))MB"
+	echo "    $result"
+}
+
+mkdir -p target
+for target in $TARGETS; do
+	case $target in
+	jetty)
+		measure jetty mvn -q -o jetty:run
+		;;
+	boot)
+		measure boot java -cp "target/classes:$SERVLET_API" com.learn.mvcframework.v3.boot.MockBootstrap \
+			application.properties $PORT
+		;;
+	esac
+done
@@ -0,0 +1,47 @@
+package com.learn.mvcframework.benchmark;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 带 GC profiler 运行 benchmark，结果写成 JSON，便于不同版本之间对比：
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.learn.mvcframework.benchmark.BenchmarkRunner [JMH 参数] [正则 ...]
+ * </pre>
+ *
+ * 参数与 JMH 命令行相同。不传正则时运行 DispatcherBenchmark 和 V1DispatcherBenchmark；
+ * 未指定 -rff 时结果写到 target/jmh-results/&lt;时间&gt;.json。
+ * 每个结果除耗时外还有 gc.alloc.rate.norm（每次操作分配的字节数）。
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+		if (!commandLine.getResult().hasValue()) {
+			File resultFile = new File("target/jmh-results",
+					new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json").getAbsoluteFile();
+			resultFile.getParentFile().mkdirs();
+			options.result(resultFile.getPath());
+		}
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include("\\.DispatcherBenchmark\\.").include("\\.V1DispatcherBenchmark\\.");
+		}
+		new Runner(options.build()).run();
+	}
+}
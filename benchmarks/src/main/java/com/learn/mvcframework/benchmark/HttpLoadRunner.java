@@ -0,0 +1,217 @@
+package com.learn.mvcframework.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只依赖 JDK 的 HTTP/1.1 压测客户端，每个连接一个线程，keep-alive，可按 pipeline 深度流水线发送。
+ * 用于对比 Jetty 部署和 MockBootstrap 的吞吐，见 benchmarks/boot-vs-jetty.sh：
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.learn.mvcframework.benchmark.HttpLoadRunner URL [连接数=16] [秒数=10] [预热秒数=3] [pipeline=1]
+ * </pre>
+ *
+ * 输出总请求数、每秒请求数和延迟分位数，非 2xx 响应和连接错误单独计数。
+ */
+public final class HttpLoadRunner {
+
+	private HttpLoadRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("usage: HttpLoadRunner URL [connections] [seconds] [warmupSeconds] [pipeline]");
+			System.exit(2);
+		}
+		URI uri = URI.create(args[0]);
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int warmup = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+		int pipeline = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+		if (warmup > 0) {
+			run(uri, connections, warmup, pipeline);
+		}
+		Worker[] workers = run(uri, connections, seconds, pipeline);
+
+		long requests = 0;
+		long failures = 0;
+		long errors = 0;
+		int total = 0;
+		for (Worker w : workers) {
+			requests += w.requests;
+			failures += w.failures;
+			errors += w.errors;
+			total += w.count;
+		}
+		long[] latencies = new long[total];
+		int pos = 0;
+		for (int i = 0; i < workers.length; i++) {
+			System.arraycopy(workers[i].latencies, 0, latencies, pos, workers[i].count);
+			pos += workers[i].count;
+		}
+		Arrays.sort(latencies);
+		System.out.println(String.format(Locale.ROOT,
+				"%s connections=%d pipeline=%d seconds=%d requests=%d rps=%.0f non2xx=%d errors=%d "
+						+ "p50=%.2fms p99=%.2fms p999=%.2fms",
+				uri, connections, pipeline, seconds, requests, requests / (double) seconds, failures, errors,
+				percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999)));
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+	}
+
+	private static Worker[] run(URI uri, int connections, int seconds, int pipeline) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		Worker[] workers = new Worker[connections];
+		Thread[] threads = new Thread[connections];
+		for (int i = 0; i < connections; i++) {
+			workers[i] = new Worker(uri, pipeline, deadline);
+			threads[i] = new Thread(workers[i], "load-" + i);
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		return workers;
+	}
+
+	/**
+	 * 一个连接，出错后重连
+	 */
+	static final class Worker implements Runnable {
+		private final URI uri;
+		private final int pipeline;
+		private final long deadline;
+		private final byte[] request;
+		long requests;
+		long failures;
+		long errors;
+		long[] latencies = new long[1 << 16];
+		int count;
+
+		Worker(URI uri, int pipeline, long deadline) {
+			this.uri = uri;
+			this.pipeline = pipeline;
+			this.deadline = deadline;
+			String path = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+			String one = "GET " + path + " HTTP/1.1\r\nHost: " + uri.getHost() + ":" + port(uri) + "\r\n\r\n";
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < pipeline; i++) {
+				sb.append(one);
+			}
+			this.request = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		private static int port(URI uri) {
+			return uri.getPort() < 0 ? 80 : uri.getPort();
+		}
+
+		@Override
+		public void run() {
+			while (System.nanoTime() < deadline) {
+				try (Socket socket = new Socket(uri.getHost(), port(uri))) {
+					socket.setTcpNoDelay(true);
+					socket.setSoTimeout(10000);
+					OutputStream out = socket.getOutputStream();
+					InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+					while (System.nanoTime() < deadline) {
+						long start = System.nanoTime();
+						out.write(request);
+						out.flush();
+						for (int i = 0; i < pipeline; i++) {
+							int status = readResponse(in);
+							record(System.nanoTime() - start);
+							requests++;
+							if (status < 200 || status >= 300) {
+								failures++;
+							}
+						}
+					}
+				} catch (IOException e) {
+					errors++;
+				}
+			}
+		}
+
+		private void record(long nanos) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = nanos;
+		}
+
+		/**
+		 * 读完一个响应，返回状态码
+		 */
+		private static int readResponse(InputStream in) throws IOException {
+			String statusLine = readLine(in);
+			int status = Integer.parseInt(statusLine.substring(9, 12));
+			long length = -1;
+			boolean chunked = false;
+			String line;
+			while (!(line = readLine(in)).isEmpty()) {
+				int colon = line.indexOf(':');
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length")) {
+					length = Long.parseLong(value);
+				} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+					chunked = value.equalsIgnoreCase("chunked");
+				}
+			}
+			if (chunked) {
+				long size;
+				while ((size = Long.parseLong(readLine(in).trim(), 16)) > 0) {
+					skip(in, size);
+					readLine(in);
+				}
+				readLine(in);
+			} else if (length > 0) {
+				skip(in, length);
+			} else if (length < 0) {
+				throw new IOException("responses without a length are not supported");
+			}
+			return status;
+		}
+
+		private static void skip(InputStream in, long n) throws IOException {
+			while (n > 0) {
+				long skipped = in.skip(n);
+				if (skipped <= 0) {
+					if (in.read() < 0) {
+						throw new IOException("connection closed");
+					}
+					skipped = 1;
+				}
+				n -= skipped;
+			}
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder sb = new StringBuilder(64);
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c < 0) {
+					throw new IOException("connection closed");
+				}
+				if (c != '\r') {
+					sb.append((char) c);
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
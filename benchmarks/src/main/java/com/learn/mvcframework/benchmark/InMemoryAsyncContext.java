@@ -0,0 +1,119 @@
+package com.learn.mvcframework.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * {@link InMemoryHttpServletRequest#async} 开启后由 startAsync 返回，complete 时通知 listener 并回调 onComplete。
+ * 不做超时，也不支持 dispatch
+ */
+public class InMemoryAsyncContext implements AsyncContext {
+
+	private final ServletRequest request;
+	private final ServletResponse response;
+	private final Runnable onComplete;
+	private final List<AsyncListener> listeners = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean completed = new AtomicBoolean();
+	private volatile long timeout = 30000;
+
+	InMemoryAsyncContext(ServletRequest request, ServletResponse response, Runnable onComplete) {
+		this.request = request;
+		this.response = response;
+		this.onComplete = onComplete;
+	}
+
+	public boolean isCompleted() {
+		return completed.get();
+	}
+
+	@Override
+	public ServletRequest getRequest() {
+		return request;
+	}
+
+	@Override
+	public ServletResponse getResponse() {
+		return response;
+	}
+
+	@Override
+	public boolean hasOriginalRequestAndResponse() {
+		return true;
+	}
+
+	@Override
+	public void dispatch() {
+		throw new IllegalStateException("dispatch is not supported by " + getClass().getSimpleName());
+	}
+
+	@Override
+	public void dispatch(String path) {
+		dispatch();
+	}
+
+	@Override
+	public void dispatch(ServletContext context, String path) {
+		dispatch();
+	}
+
+	@Override
+	public void complete() {
+		if (!completed.compareAndSet(false, true)) {
+			return;
+		}
+		AsyncEvent event = new AsyncEvent(this, request, response);
+		for (AsyncListener listener : listeners) {
+			try {
+				listener.onComplete(event);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		onComplete.run();
+	}
+
+	@Override
+	public void start(Runnable run) {
+		ForkJoinPool.commonPool().execute(run);
+	}
+
+	@Override
+	public void addListener(AsyncListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+		try {
+			return clazz.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new ServletException(e);
+		}
+	}
+
+	@Override
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+}
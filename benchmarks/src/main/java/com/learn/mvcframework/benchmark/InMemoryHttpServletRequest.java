@@ -0,0 +1,498 @@
+package com.learn.mvcframework.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+
+/**
+ * 内存中的请求，只实现 dispatcher 用到的部分，同一个实例可在多次 benchmark 调用间复用。
+ * 不支持 session 和认证，调用 {@link #async} 后才支持异步
+ */
+public class InMemoryHttpServletRequest implements HttpServletRequest {
+
+	private String method = "GET";
+	private String requestURI = "/";
+	private String contextPath = "";
+	private String queryString;
+	private String contentType;
+	private String characterEncoding = "UTF-8";
+	private byte[] body = new byte[0];
+	private final Map<String, String[]> parameters = new LinkedHashMap<>();
+	private final Map<String, String> headers = new LinkedHashMap<>();
+	private final Map<String, Object> attributes = new HashMap<>();
+	// 为 null 时不支持异步
+	private Runnable onAsyncComplete;
+	private volatile InMemoryAsyncContext asyncContext;
+
+	public InMemoryHttpServletRequest(String method, String requestURI) {
+		this.method = method;
+		this.requestURI = requestURI;
+	}
+
+	public InMemoryHttpServletRequest param(String name, String... values) {
+		parameters.put(name, values);
+		return this;
+	}
+
+	public InMemoryHttpServletRequest header(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+	public InMemoryHttpServletRequest body(String contentType, byte[] body) {
+		this.contentType = contentType;
+		this.body = body;
+		return this;
+	}
+
+	public InMemoryHttpServletRequest contextPath(String contextPath) {
+		this.contextPath = contextPath;
+		return this;
+	}
+
+	public InMemoryHttpServletRequest queryString(String queryString) {
+		this.queryString = queryString;
+		return this;
+	}
+
+	/**
+	 * 清掉上一次调用留下的属性
+	 */
+	/**
+	 * 支持异步，AsyncContext.complete 时回调 onComplete
+	 */
+	public InMemoryHttpServletRequest async(Runnable onComplete) {
+		this.onAsyncComplete = onComplete;
+		return this;
+	}
+
+	/**
+	 * @return 是否调用过 startAsync，complete 之后仍返回 true
+	 */
+	public boolean hasAsyncContext() {
+		return asyncContext != null;
+	}
+
+	public void reset() {
+		attributes.clear();
+		asyncContext = null;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	@Override
+	public void setCharacterEncoding(String env) {
+		this.characterEncoding = env;
+	}
+
+	@Override
+	public int getContentLength() {
+		return body.length;
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return body.length;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		final ByteArrayInputStream in = new ByteArrayInputStream(body);
+		return new ServletInputStream() {
+			@Override
+			public int read() {
+				return in.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return in.read(b, off, len);
+			}
+
+			@Override
+			public boolean isFinished() {
+				return in.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public String getParameter(String name) {
+		String[] values = parameters.get(name);
+		return values == null || values.length == 0 ? null : values[0];
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(parameters.keySet());
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		return parameters.get(name);
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return Collections.unmodifiableMap(parameters);
+	}
+
+	@Override
+	public String getProtocol() {
+		return "HTTP/1.1";
+	}
+
+	@Override
+	public String getScheme() {
+		return "http";
+	}
+
+	@Override
+	public String getServerName() {
+		return "localhost";
+	}
+
+	@Override
+	public int getServerPort() {
+		return 8080;
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return "localhost";
+	}
+
+	@Override
+	public void setAttribute(String name, Object o) {
+		if (o == null) {
+			attributes.remove(name);
+		} else {
+			attributes.put(name, o);
+		}
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ROOT;
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singletonList(Locale.ROOT));
+	}
+
+	@Override
+	public boolean isSecure() {
+		return false;
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public String getRealPath(String path) {
+		return null;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return 50000;
+	}
+
+	@Override
+	public String getLocalName() {
+		return "localhost";
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return "127.0.0.1";
+	}
+
+	@Override
+	public int getLocalPort() {
+		return 8080;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("startAsync() without a response is not supported by " + getClass().getSimpleName());
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		if (onAsyncComplete == null) {
+			throw new IllegalStateException("async is not supported by " + getClass().getSimpleName());
+		}
+		if (isAsyncStarted()) {
+			throw new IllegalStateException("async is already started");
+		}
+		asyncContext = new InMemoryAsyncContext(servletRequest, servletResponse, onAsyncComplete);
+		return asyncContext;
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		InMemoryAsyncContext context = asyncContext;
+		return context != null && !context.isCompleted();
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return onAsyncComplete != null;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		if (asyncContext == null) {
+			throw new IllegalStateException("async is not started");
+		}
+		return asyncContext;
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+
+	@Override
+	public String getAuthType() {
+		return null;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		return null;
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		return -1;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		String value = headers.get(name);
+		return Collections.enumeration(
+				value == null ? Collections.<String>emptyList() : Collections.singletonList(value));
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(headers.keySet());
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		String value = headers.get(name);
+		return value == null ? -1 : Integer.parseInt(value);
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+
+	@Override
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	@Override
+	public String getQueryString() {
+		return queryString;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return null;
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return null;
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		return null;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return requestURI;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		return new StringBuffer("http://localhost:8080").append(requestURI);
+	}
+
+	@Override
+	public String getServletPath() {
+		return "";
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		if (create) {
+			throw new UnsupportedOperationException("sessions are not supported");
+		}
+		return null;
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return getSession(true);
+	}
+
+	@Override
+	public String changeSessionId() {
+		throw new IllegalStateException("no session");
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return false;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+
+	@Override
+	public boolean authenticate(HttpServletResponse response) {
+		return false;
+	}
+
+	@Override
+	public void login(String username, String password) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public Collection<Part> getParts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Part getPart(String name) {
+		return null;
+	}
+
+	@Override
+	public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,265 @@
+package com.learn.mvcframework.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 内存中的响应，body 写入可复用的字节缓冲。每次 benchmark 调用前调用 {@link #reset()}
+ */
+public class InMemoryHttpServletResponse implements HttpServletResponse {
+
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream(8 * 1024);
+	private final ServletOutputStream outputStream = new ServletOutputStream() {
+		@Override
+		public void write(int b) {
+			body.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			body.write(b, off, len);
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			throw new UnsupportedOperationException();
+		}
+	};
+	private final PrintWriter writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+	private final Map<String, List<String>> headers = new LinkedHashMap<>();
+	private int status = SC_OK;
+	private String contentType;
+	private String characterEncoding = "UTF-8";
+	private long contentLength = -1;
+
+	public int getBodySize() {
+		writer.flush();
+		return body.size();
+	}
+
+	public String getBodyAsString() {
+		writer.flush();
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+	}
+
+	@Override
+	public boolean containsHeader(String name) {
+		return headers.containsKey(name);
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(String url) {
+		return url;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) {
+		this.status = sc;
+	}
+
+	@Override
+	public void sendError(int sc) {
+		this.status = sc;
+	}
+
+	@Override
+	public void sendRedirect(String location) {
+		this.status = SC_FOUND;
+		setHeader("Location", location);
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		setHeader(name, String.valueOf(date));
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		addHeader(name, String.valueOf(date));
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		List<String> values = new ArrayList<>(1);
+		values.add(value);
+		headers.put(name, values);
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		headers.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		addHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		this.status = sc;
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(int sc, String sm) {
+		this.status = sc;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		List<String> values = headers.get(name);
+		return values == null ? null : values.get(0);
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		List<String> values = headers.get(name);
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return headers.keySet();
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		return writer;
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+		this.characterEncoding = charset;
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		this.contentLength = len;
+	}
+
+	@Override
+	public void setContentLengthLong(long len) {
+		this.contentLength = len;
+	}
+
+	@Override
+	public void setContentType(String type) {
+		this.contentType = type;
+	}
+
+	@Override
+	public void setBufferSize(int size) {
+	}
+
+	@Override
+	public int getBufferSize() {
+		return body.size();
+	}
+
+	@Override
+	public void flushBuffer() {
+		writer.flush();
+	}
+
+	@Override
+	public void resetBuffer() {
+		writer.flush();
+		body.reset();
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+
+	/**
+	 * 清空 body、状态和 header，缓冲区保留复用
+	 */
+	@Override
+	public void reset() {
+		resetBuffer();
+		headers.clear();
+		status = SC_OK;
+		contentType = null;
+		contentLength = -1;
+	}
+
+	@Override
+	public void setLocale(Locale loc) {
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ROOT;
+	}
+}
@@ -0,0 +1,42 @@
+package com.learn.mvcframework.benchmark;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * 只提供 init 参数的 ServletConfig
+ */
+public class InMemoryServletConfig implements ServletConfig {
+
+	private final Map<String, String> initParameters = new HashMap<>();
+
+	public InMemoryServletConfig initParameter(String name, String value) {
+		initParameters.put(name, value);
+		return this;
+	}
+
+	@Override
+	public String getServletName() {
+		return "mockmvc";
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return initParameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		return Collections.enumeration(initParameters.keySet());
+	}
+}
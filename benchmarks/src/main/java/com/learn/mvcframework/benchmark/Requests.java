@@ -0,0 +1,28 @@
+package com.learn.mvcframework.benchmark;
+
+/**
+ * 各签名对应的请求，v1 和 v3 的 benchmark 共用，保证两边处理的是同样的请求
+ */
+public final class Requests {
+
+	private Requests() {
+	}
+
+	public static InMemoryHttpServletRequest forSignature(String signature) {
+		InMemoryHttpServletRequest req = new InMemoryHttpServletRequest("GET", "/bench/" + signature);
+		switch (signature) {
+		case "none":
+			break;
+		case "string":
+		case "servlet":
+			req.param("name", "mock");
+			break;
+		case "typed":
+			req.param("id", "9007199254740993").param("age", "42").param("flag", "true").param("ids", "1", "2", "3");
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown signature " + signature);
+		}
+		return req;
+	}
+}
@@ -0,0 +1,19 @@
+package com.learn.mvcframework.benchmark.controller;
+
+import com.learn.mvcframework.annotation.MockController;
+import com.learn.mvcframework.annotation.MockRequestMapping;
+import com.learn.mvcframework.annotation.MockRequestParam;
+
+/**
+ * 阻塞型 handler，模拟 DemoService.doService 访问下游，供 VirtualThreadDispatchBenchmark 使用
+ */
+@MockController
+@MockRequestMapping("/bench")
+public class BlockingController {
+
+	@MockRequestMapping("/blocking")
+	public String blocking(@MockRequestParam("millis") long millis) throws InterruptedException {
+		Thread.sleep(millis);
+		return "ok";
+	}
+}
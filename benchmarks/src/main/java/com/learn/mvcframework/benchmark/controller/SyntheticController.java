@@ -0,0 +1,40 @@
+package com.learn.mvcframework.benchmark.controller;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.learn.mvcframework.annotation.MockController;
+import com.learn.mvcframework.annotation.MockRequestMapping;
+import com.learn.mvcframework.annotation.MockRequestParam;
+
+/**
+ * benchmark 用的 controller，每个方法代表一种参数签名，方法体尽量不做事，测到的是框架本身的开销。
+ * none、string、servlet 三种签名 v1 也支持，用来对比 v1 和 v3
+ */
+@MockController
+@MockRequestMapping("/bench")
+public class SyntheticController {
+
+	@MockRequestMapping("/none")
+	public String none() {
+		return "ok";
+	}
+
+	@MockRequestMapping("/string")
+	public String string(@MockRequestParam("name") String name) {
+		return name;
+	}
+
+	@MockRequestMapping("/servlet")
+	public String servlet(HttpServletRequest req, HttpServletResponse resp, @MockRequestParam("name") String name) {
+		return name;
+	}
+
+	@MockRequestMapping("/typed")
+	public String typed(@MockRequestParam("id") long id, @MockRequestParam("age") int age,
+			@MockRequestParam("flag") boolean flag, @MockRequestParam("ids") List<Integer> ids) {
+		return flag ? "typed" : "untyped";
+	}
+}
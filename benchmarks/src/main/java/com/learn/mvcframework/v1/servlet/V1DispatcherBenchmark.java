@@ -0,0 +1,71 @@
+package com.learn.mvcframework.v1.servlet;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.learn.mvcframework.annotation.MockRequestMapping;
+import com.learn.mvcframework.benchmark.InMemoryHttpServletRequest;
+import com.learn.mvcframework.benchmark.InMemoryHttpServletResponse;
+import com.learn.mvcframework.benchmark.Requests;
+import com.learn.mvcframework.benchmark.controller.SyntheticController;
+
+/**
+ * v1 dispatcher 的完整 service()，作为 v3 的对照。
+ * <p>
+ * v1 的 init 用 getResource("/" + path) 扫描，在非容器的类加载器下找不到目录，所以这里直接填充 urlMethod。
+ * v1 只支持 String 和 servlet 参数，没有 typed 签名。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class V1DispatcherBenchmark {
+
+	@Param({ "none", "string", "servlet" })
+	String signature;
+
+	MockDispatcherServlet servlet;
+	InMemoryHttpServletRequest req;
+	InMemoryHttpServletResponse resp;
+
+	@Setup
+	public void setup() {
+		servlet = new MockDispatcherServlet();
+		SyntheticController controller = new SyntheticController();
+		String baseUrl = SyntheticController.class.getAnnotation(MockRequestMapping.class).value();
+		for (Method method : SyntheticController.class.getDeclaredMethods()) {
+			if (!method.isAnnotationPresent(MockRequestMapping.class)) {
+				continue;
+			}
+			MockDispatcherServlet.HanderMethod hm = new MockDispatcherServlet.HanderMethod();
+			hm.url = baseUrl + method.getAnnotation(MockRequestMapping.class).value();
+			hm.method = method;
+			hm.instance = controller;
+			servlet.urlMethod.put(hm.url, hm);
+		}
+		req = Requests.forSignature(signature);
+		resp = new InMemoryHttpServletResponse();
+	}
+
+	@Benchmark
+	public int dispatch() throws Exception {
+		req.reset();
+		resp.reset();
+		servlet.service(req, resp);
+		return resp.getBodySize();
+	}
+}
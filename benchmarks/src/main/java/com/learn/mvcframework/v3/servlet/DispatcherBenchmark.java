@@ -0,0 +1,118 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.learn.mvcframework.benchmark.InMemoryHttpServletRequest;
+import com.learn.mvcframework.benchmark.InMemoryHttpServletResponse;
+import com.learn.mvcframework.benchmark.InMemoryServletConfig;
+import com.learn.mvcframework.benchmark.Requests;
+import com.learn.mvcframework.benchmark.controller.SyntheticController;
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod;
+
+/**
+ * v3 dispatcher 的各个阶段：查找 handler、绑定参数、调用 handler、完整的 service()。
+ * servlet 通过 benchmark.properties 正常 init，扫描 {@link SyntheticController}。
+ * <p>
+ * 与 {@code com.learn.mvcframework.v1.servlet.V1DispatcherBenchmark.dispatch} 使用同样的请求，
+ * signature 为 none/string/servlet 时两者可以直接对比。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatcherBenchmark {
+
+	static MockDispatcherServlet newServlet() throws ServletException {
+		MockDispatcherServlet servlet = new MockDispatcherServlet();
+		servlet.init(new InMemoryServletConfig().initParameter(MockDispatcherServlet.configrationLocation,
+				"benchmark.properties"));
+		return servlet;
+	}
+
+	@State(Scope.Benchmark)
+	public static class Routing {
+		@Param({ "10", "100", "1000" })
+		int routes;
+
+		MockDispatcherServlet servlet;
+		InMemoryHttpServletRequest req;
+
+		@Setup
+		public void setup() throws Exception {
+			servlet = newServlet();
+			// 在扫描到的路由之外补足 routes 个
+			Method target = SyntheticController.class.getMethod("none");
+			RouteSnapshot current = servlet.routes.get();
+			Object instance = current.handers.get(0).instance;
+			List<HanderMethod> handers = new ArrayList<>(current.handers);
+			for (int i = 0; i < routes; i++) {
+				handers.add(new HanderMethod("/r" + i + "/item", target, instance));
+			}
+			servlet.routes.set(new RouteSnapshot(handers, current.advices, current.interceptors));
+			req = new InMemoryHttpServletRequest("GET", "/r" + routes / 2 + "/item");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Call {
+		@Param({ "none", "string", "servlet", "typed" })
+		String signature;
+
+		MockDispatcherServlet servlet;
+		HanderMethod hm;
+		InMemoryHttpServletRequest req;
+		InMemoryHttpServletResponse resp;
+
+		@Setup
+		public void setup() throws Exception {
+			servlet = newServlet();
+			req = Requests.forSignature(signature);
+			resp = new InMemoryHttpServletResponse();
+			hm = servlet.getHander(servlet.getRequestPath(req));
+			if (hm == null) {
+				throw new IllegalStateException("No handler for " + req.getRequestURI());
+			}
+		}
+	}
+
+	@Benchmark
+	public HanderMethod getHander(Routing state) {
+		return state.servlet.getHander(state.servlet.getRequestPath(state.req));
+	}
+
+	@Benchmark
+	public Object[] bindArguments(Call state) {
+		return state.servlet.getMethodArgValues(state.hm, state.req, state.resp);
+	}
+
+	@Benchmark
+	public Object invoke(Call state) throws Exception {
+		return state.servlet.doInvoke(state.hm, state.req, state.resp);
+	}
+
+	@Benchmark
+	public int dispatch(Call state) throws Exception {
+		state.req.reset();
+		state.resp.reset();
+		state.servlet.service(state.req, state.resp);
+		return state.resp.getBodySize();
+	}
+}
@@ -0,0 +1,83 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HanderInvoker} 的三种实现：Method.invoke、实例字段里的 MethodHandle、LambdaMetafactory 生成的类。
+ * <p>
+ * handler 无参数或有一个 String 和一个 int 参数（需要拆箱），参数数组在 setup 中准备好，
+ * 只测量调用本身。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokerBenchmark {
+
+	@Param({ "noArgs", "twoArgs" })
+	String shape;
+
+	HanderInvoker reflective;
+	HanderInvoker methodHandle;
+	HanderInvoker lambda;
+	Object[] args;
+
+	public static class Target {
+		public String noArgs() {
+			return "ok";
+		}
+
+		public String twoArgs(String name, int count) {
+			return count > 0 ? name : "ok";
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		Target instance = new Target();
+		Method method;
+		if (shape.equals("noArgs")) {
+			method = Target.class.getMethod("noArgs");
+			args = new Object[0];
+		} else {
+			method = Target.class.getMethod("twoArgs", String.class, int.class);
+			args = new Object[] { "name", 1 };
+		}
+		reflective = new HanderInvoker.ReflectiveInvoker(method, instance);
+		methodHandle = HanderInvoker.methodHandle(method, instance);
+		lambda = LambdaInvokers.create(method, instance);
+		if (lambda == null) {
+			throw new IllegalStateException("LambdaMetafactory invoker is not available for " + method);
+		}
+	}
+
+	@Benchmark
+	public Object reflection() throws Exception {
+		return reflective.invoke(args);
+	}
+
+	@Benchmark
+	public Object methodHandle() throws Exception {
+		return methodHandle.invoke(args);
+	}
+
+	@Benchmark
+	public Object lambdaMetafactory() throws Exception {
+		return lambda.invoke(args);
+	}
+}
@@ -0,0 +1,138 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * POJO 返回值的两种输出方式：原来的 {@code "Server Response:" + ret} 经 PrintWriter 编码，
+ * 与 {@link JsonWriter} 直接编码 JSON 字节。两者写入同一个丢弃数据的输出流。
+ * <p>
+ * 配合 {@code -prof gc} 查看每次操作的分配量。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+	@Param({ "1", "20", "200" })
+	int items;
+
+	Order order;
+	JsonWriter jsonWriter;
+	NullOutputStream out;
+
+	@Setup
+	public void setup() {
+		order = new Order(items);
+		jsonWriter = new JsonWriter(8 * 1024, 4);
+		out = new NullOutputStream();
+	}
+
+	@Benchmark
+	public long toStringWriter() {
+		// 与 processRetValue 旧路径一致：每个响应一个 PrintWriter
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		writer.println("Server Response:" + order);
+		writer.flush();
+		return out.count;
+	}
+
+	@Benchmark
+	public long jsonWriter() throws IOException {
+		jsonWriter.write(order, out);
+		return out.count;
+	}
+
+	static final class NullOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	public static class Item {
+		private final String name;
+		private final int quantity;
+		private final double price;
+		private final boolean gift;
+
+		Item(int i) {
+			this.name = "item-" + i + " 商品";
+			this.quantity = i;
+			this.price = i * 1.25;
+			this.gift = (i & 1) == 0;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getQuantity() {
+			return quantity;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public boolean isGift() {
+			return gift;
+		}
+
+		@Override
+		public String toString() {
+			return "{\"gift\":" + gift + ",\"name\":\"" + name + "\",\"price\":" + price + ",\"quantity\":" + quantity
+					+ "}";
+		}
+	}
+
+	public static class Order {
+		public long id = 1234567890L;
+		public String customer = "mock";
+		public List<Item> items = new ArrayList<>();
+		public Map<String, Object> tags = new LinkedHashMap<>();
+
+		Order(int n) {
+			for (int i = 0; i < n; i++) {
+				items.add(new Item(i));
+			}
+			tags.put("channel", "web");
+			tags.put("priority", 3);
+		}
+
+		@Override
+		public String toString() {
+			return "{\"customer\":\"" + customer + "\",\"id\":" + id + ",\"items\":" + items + ",\"tags\":" + tags + "}";
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 每个请求记录指标（{@link HanderMetrics#begin()} + {@link HanderMetrics#end}）的开销。
+ * <p>
+ * baseline 只取两次 System.nanoTime，是任何计时都绕不开的部分；striped 是实际实现；
+ * shared 是所有线程写同一个 AtomicLongArray 的对照组，用来看多线程下分条是否起作用。
+ * 预算：单线程比 baseline 多出的时间在 50ns 以内，多线程下不随线程数明显增长。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+	final HanderMetrics metrics = new HanderMetrics();
+	final AtomicLongArray shared = new AtomicLongArray(HanderMetrics.BUCKETS);
+
+	@Benchmark
+	@Threads(1)
+	public long baseline() {
+		long start = System.nanoTime();
+		return System.nanoTime() - start;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void striped() {
+		metrics.end(metrics.begin(), false);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public long baseline4Threads() {
+		long start = System.nanoTime();
+		return System.nanoTime() - start;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void striped4Threads() {
+		metrics.end(metrics.begin(), false);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public long shared4Threads() {
+		long start = System.nanoTime();
+		long nanos = System.nanoTime() - start;
+		return shared.incrementAndGet(HanderMetrics.bucket(nanos));
+	}
+}
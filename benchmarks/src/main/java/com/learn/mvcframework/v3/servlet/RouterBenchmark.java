@@ -0,0 +1,140 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletRequestWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.learn.mvcframework.benchmark.InMemoryHttpServletRequest;
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod;
+
+/**
+ * 旧的 handerMapping 线性正则扫描 vs {@link HanderRouter}。
+ * <p>
+ * 每 10 个 mapping 中 8 个是字面量 "/r{i}/items"，1 个是正则 "/r{i}/items/[0-9]+"，
+ * 1 个是模板 "/r{i}/users/{id:\d+}"（线性扫描里等价写成正则），
+ * 查询取最后注册的字面量、正则、模板以及一个不存在的路径（404）。
+ * routerWithCapture 额外把路径变量存入请求，与 dispatcher 的用法一致。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	int routeCount;
+
+	@Param({ "literal", "regex", "template", "miss" })
+	String lookup;
+
+	List<HanderMethod> handerMapping;
+	List<Pattern> linearPatterns;
+	HanderRouter router;
+	String path;
+	CaptureRequest request = new CaptureRequest();
+
+	public static class RouteTarget {
+		public String handle() {
+			return "ok";
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		Method method = RouteTarget.class.getMethod("handle");
+		RouteTarget instance = new RouteTarget();
+		handerMapping = new ArrayList<>();
+		List<HanderRouter.Route> routes = new ArrayList<>();
+		linearPatterns = new ArrayList<>();
+		String lastLiteral = null;
+		String lastRegex = null;
+		String lastTemplate = null;
+		for (int i = 0; i < routeCount; i++) {
+			String url;
+			String regex = null;
+			if (i % 10 == 9) {
+				url = "/r" + i + "/items/[0-9]+";
+				lastRegex = "/r" + i + "/items/42";
+			} else if (i % 10 == 4) {
+				url = "/r" + i + "/users/{id:\\d+}";
+				regex = "/r" + i + "/users/\\d+";
+				lastTemplate = "/r" + i + "/users/42";
+			} else {
+				url = "/r" + i + "/items";
+				lastLiteral = url;
+			}
+			HanderMethod hm = new HanderMethod(url, method, instance);
+			handerMapping.add(hm);
+			routes.add(new HanderRouter.Route(hm, HanderInterceptors.NONE));
+			linearPatterns.add(Pattern.compile(regex != null ? regex : url));
+		}
+		router = HanderRouter.build(routes);
+		switch (lookup) {
+		case "literal":
+			path = lastLiteral;
+			break;
+		case "regex":
+			path = lastRegex;
+			break;
+		case "template":
+			path = lastTemplate;
+			break;
+		default:
+			path = "/not/found";
+		}
+	}
+
+	@Benchmark
+	public HanderMethod linearScan() {
+		for (int i = 0; i < linearPatterns.size(); i++) {
+			if (linearPatterns.get(i).matcher(path).matches()) {
+				return handerMapping.get(i);
+			}
+		}
+		return null;
+	}
+
+	@Benchmark
+	public HanderRouter.Route router() {
+		return router.lookup(path);
+	}
+
+	@Benchmark
+	public HanderRouter.Route routerWithCapture() {
+		return router.lookup(path, request);
+	}
+
+	/**
+	 * 只保存最后一次 setAttribute 的请求
+	 */
+	static final class CaptureRequest extends ServletRequestWrapper {
+		Object attribute;
+
+		CaptureRequest() {
+			super(new InMemoryHttpServletRequest("GET", "/"));
+		}
+
+		@Override
+		public void setAttribute(String name, Object o) {
+			attribute = o;
+		}
+	}
+}
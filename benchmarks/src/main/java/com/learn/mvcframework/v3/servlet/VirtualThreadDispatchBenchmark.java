@@ -0,0 +1,119 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.learn.mvcframework.benchmark.InMemoryHttpServletRequest;
+import com.learn.mvcframework.benchmark.InMemoryHttpServletResponse;
+import com.learn.mvcframework.benchmark.InMemoryServletConfig;
+import com.learn.mvcframework.benchmark.controller.BlockingController;
+
+/**
+ * 阻塞型 handler（{@link BlockingController}）经过完整 service() 时，各 dispatchMode 的吞吐（requests/s）。
+ * <p>
+ * 用 200 线程的平台线程池模拟 Jetty 默认的容器线程池，每次操作同时提交 {@link #BURST} 个请求，
+ * 每个请求阻塞 {@code blockMillis} 毫秒。
+ * <ul>
+ * <li>sync：handler 在容器线程上阻塞，并发受容器线程数限制</li>
+ * <li>virtual：servlet 开启 Servlet 异步，handler 在虚拟线程上执行，容器线程立即返回</li>
+ * <li>virtual-limited：同 virtual，另外每个 handler 最多 {@link #CONTAINER_THREADS} 个并发（dispatchPermits）</li>
+ * </ul>
+ * JVM 不支持虚拟线程（JDK 21 以下）时 servlet 退回 sync，两个 virtual 模式测到的就是这个退回路径。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class VirtualThreadDispatchBenchmark {
+
+	static final int BURST = 2000;
+	static final int CONTAINER_THREADS = 200;
+
+	@Param({ "sync", "virtual", "virtual-limited" })
+	String mode;
+
+	@Param({ "5" })
+	long blockMillis;
+
+	MockDispatcherServlet servlet;
+	ExecutorService container;
+
+	@Setup
+	public void setup() throws Exception {
+		String config;
+		if ("sync".equals(mode)) {
+			config = "benchmark.properties";
+		} else if ("virtual".equals(mode)) {
+			config = "benchmark-virtual.properties";
+		} else {
+			config = "benchmark-virtual-limited.properties";
+		}
+		servlet = new MockDispatcherServlet();
+		servlet.init(new InMemoryServletConfig().initParameter(MockDispatcherServlet.configrationLocation, config));
+		container = Executors.newFixedThreadPool(CONTAINER_THREADS);
+	}
+
+	@TearDown
+	public void tearDown() {
+		container.shutdownNow();
+		servlet.destroy();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void blockingHandler() throws Exception {
+		CountDownLatch done = new CountDownLatch(BURST);
+		AtomicReference<String> failure = new AtomicReference<>();
+		String millis = String.valueOf(blockMillis);
+		for (int i = 0; i < BURST; i++) {
+			container.execute(() -> {
+				InMemoryHttpServletResponse resp = new InMemoryHttpServletResponse();
+				InMemoryHttpServletRequest req = new InMemoryHttpServletRequest("GET", "/bench/blocking")
+						.param("millis", millis);
+				req.async(() -> finish(resp, failure, done));
+				try {
+					servlet.service(req, resp);
+				} catch (Exception e) {
+					failure.compareAndSet(null, e.toString());
+				}
+				if (!req.hasAsyncContext()) {
+					// sync 或退回 sync，service 返回时响应已写完
+					finish(resp, failure, done);
+				}
+			});
+		}
+		done.await();
+		if (failure.get() != null) {
+			throw new IllegalStateException(failure.get());
+		}
+	}
+
+	private static void finish(InMemoryHttpServletResponse resp, AtomicReference<String> failure,
+			CountDownLatch done) {
+		if (resp.getStatus() != HttpServletResponse.SC_OK) {
+			failure.compareAndSet(null, "unexpected status " + resp.getStatus());
+		}
+		done.countDown();
+	}
+}
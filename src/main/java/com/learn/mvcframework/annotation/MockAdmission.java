@@ -0,0 +1,37 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * handler 的准入控制，覆盖 application.properties 中 admission.* 的全局配置。
+ * 超过并发上限返回 503，超过速率返回 429，都带 Retry-After，请求不排队等待。
+ */
+@Target(value = ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockAdmission {
+
+	/**
+	 * 同时处理的请求数上限，0 表示不限制，-1 表示使用全局配置
+	 */
+	int maxConcurrency() default -1;
+
+	/**
+	 * 每秒放行的请求数，0 表示不限制，-1 表示使用全局配置
+	 */
+	double permitsPerSecond() default -1;
+
+	/**
+	 * 允许的突发请求数，-1 表示使用全局配置
+	 */
+	int burst() default -1;
+
+	/**
+	 * 按观测到的延迟在 [admission.adaptive.minConcurrency, maxConcurrency] 之间调整并发上限
+	 */
+	boolean adaptive() default false;
+}
@@ -0,0 +1,19 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 返回 CompletionStage 的 handler 的异步超时时间（毫秒），未标注时使用 application.properties 中的
+ * asyncTimeout，0 表示不超时
+ */
+@Target(value = ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockAsyncTimeout {
+
+	long value();
+}
@@ -6,7 +6,12 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
-@Target(value = ElementType.FIELD)
+/**
+ * 按名称注入 bean，名称为空时取类型的简单类名（首字母小写），找不到再按类型匹配唯一的 bean。
+ * <p>
+ * 可标注在字段上，也可标注在构造方法上；构造方法参数上可再用它指定名称。
+ */
+@Target(value = { ElementType.FIELD, ElementType.CONSTRUCTOR, ElementType.PARAMETER })
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface MockAutowired {
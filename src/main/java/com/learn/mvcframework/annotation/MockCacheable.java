@@ -0,0 +1,37 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 缓存 GET 请求的响应内容，key 为 URI 加请求参数，命中时不再调用 handler。
+ * 响应带 ETag，请求的 If-None-Match 匹配时返回 304
+ */
+@Target(value = ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockCacheable {
+
+	/**
+	 * 存活时间（毫秒），0 表示不过期
+	 */
+	long ttl() default 60000;
+
+	/**
+	 * 最多缓存的响应个数
+	 */
+	int maxEntries() default 1000;
+
+	/**
+	 * 缓存响应的总字节数上限，超过一半的单个响应不缓存
+	 */
+	long maxBytes() default 8 * 1024 * 1024;
+
+	/**
+	 * 参与 key 计算的请求参数，为空时使用全部参数
+	 */
+	String[] params() default {};
+}
@@ -0,0 +1,21 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * handler 返回值的 gzip/deflate 压缩级别，未标注时使用 application.properties 中的 compression.level
+ */
+@Target(value = ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockCompression {
+
+	/**
+	 * 1（最快）到 9（最小），0 表示这个 handler 不压缩
+	 */
+	int level();
+}
@@ -0,0 +1,18 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 全局的 {@link MockExceptionHandler} 所在的 bean，对所有 controller 生效
+ */
+@Target(value = ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockControllerAdvice {
+
+	String value() default "";
+}
@@ -0,0 +1,29 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在 controller 或 {@link MockControllerAdvice} 的方法上，处理 handler 抛出的异常。
+ * <p>
+ * 方法参数只能是异常、HttpServletRequest、HttpServletResponse，返回值按普通 handler 的规则输出。
+ * controller 内的处理方法优先于 advice，同一作用域内按异常类型的继承层次取最近的。
+ */
+@Target(value = ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockExceptionHandler {
+
+	/**
+	 * 处理的异常类型，为空时取方法中异常参数的类型
+	 */
+	Class<? extends Throwable>[] value() default {};
+
+	/**
+	 * 响应状态码
+	 */
+	int status() default 500;
+}
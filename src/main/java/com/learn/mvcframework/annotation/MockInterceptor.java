@@ -0,0 +1,36 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 实现了 MockHandlerInterceptor 的 bean，按路径模式作用于 handler。
+ * <p>
+ * 模式匹配的是 {@link MockRequestMapping} 拼出的 url 模板，启动或路由变化时按路由解析一次：
+ * {@code *} 匹配一段（包括 {id} 这样的变量段），{@code **} 匹配任意多段，例如 /api/**、/user/*。
+ */
+@Target(value = ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockInterceptor {
+
+	String value() default "";
+
+	/**
+	 * 生效的路径模式
+	 */
+	String[] pathPatterns() default "/**";
+
+	/**
+	 * 排除的路径模式，优先于 pathPatterns
+	 */
+	String[] excludePathPatterns() default {};
+
+	/**
+	 * 越小越先执行 preHandle，postHandle/afterCompletion 按相反顺序；相同时按注册顺序
+	 */
+	int order() default 0;
+}
@@ -0,0 +1,19 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把请求参数按名字绑定到对象的 public setter / public 字段，类型转换与 {@link MockRequestParam} 相同，
+ * 转换失败返回 400，没有对应属性的参数忽略。
+ * <p>
+ * 目标类型需要是 public 类并有 public 无参构造方法，只绑定一层属性。
+ */
+@Target(value = ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockModelAttribute {
+}
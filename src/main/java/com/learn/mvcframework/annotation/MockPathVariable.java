@@ -0,0 +1,22 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 绑定 url 模板中的变量，如 {@code @MockRequestMapping("/users/{id}")} 中的 id，
+ * 类型转换与 {@link MockRequestParam} 相同，转换失败返回 400
+ */
+@Target(value = ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockPathVariable {
+
+	/**
+	 * 变量名，为空时使用参数名（需要 -parameters 编译）
+	 */
+	String value() default "";
+}
@@ -0,0 +1,24 @@
+package com.learn.mvcframework.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把请求体绑定到参数：application/x-www-form-urlencoded 按表单解析，其余按 JSON 解析。
+ * <p>
+ * 请求体边读边绑定，不拼成完整字符串；超过 requestBody.maxBytes 返回 413，格式或类型不符返回 400。
+ * 表单请求体只能读取一次，同一个 handler 不要再用 {@link MockRequestParam} 取表单字段。
+ */
+@Target(value = ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MockRequestBody {
+
+	/**
+	 * 请求体为空时返回 400，为 false 时参数为 null
+	 */
+	boolean required() default true;
+}
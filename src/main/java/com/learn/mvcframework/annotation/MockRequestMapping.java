@@ -12,4 +12,10 @@ import java.lang.annotation.Target;
 public @interface MockRequestMapping {
 
 	String value() default "";
+
+	/**
+	 * 合并同时到达的相同 GET 请求（URI 和参数都相同），只调用一次 handler，其余请求共享编码后的响应。
+	 * 标注在类上时对其中所有 handler 生效
+	 */
+	boolean coalesce() default false;
 }
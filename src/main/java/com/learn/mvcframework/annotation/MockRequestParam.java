@@ -11,5 +11,20 @@ import java.lang.annotation.Target;
 @Documented
 public @interface MockRequestParam {
 
+	/**
+	 * 表示没有默认值
+	 */
+	String NO_DEFAULT = "\n\t\t\n\t\t\n\n\t\t\t\t\n";
+
 	String value() default "";
+
+	/**
+	 * 缺少必填参数时返回 400
+	 */
+	boolean required() default true;
+
+	/**
+	 * 参数缺失时使用的值，设置后隐含 required=false
+	 */
+	String defaultValue() default NO_DEFAULT;
 }
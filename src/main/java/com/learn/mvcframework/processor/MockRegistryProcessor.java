@@ -0,0 +1,486 @@
+package com.learn.mvcframework.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 编译期读取 {@code com.learn.mvcframework.annotation} 下的注解，生成
+ * {@code com.learn.mvcframework.generated.MockGeneratedRegistryImpl}：
+ * 按依赖顺序直接 new 出 bean（含构造方法注入）、直接调用 setter/字段完成注入，并带上拼好的路由表。
+ * 依赖找不到或有循环时编译报错。
+ * <p>
+ * 生成代码访问不到的类/字段（非 public）退回 MockGeneratedRegistry 中的反射辅助方法。
+ * 生成模式下 {@code @MockLazy} 不生效，bean 都在启动时创建。
+ * 通过 pom.xml 中的 apt-registry profile 启用。
+ */
+public class MockRegistryProcessor extends AbstractProcessor {
+
+	static final String ANNOTATION_PACKAGE = "com.learn.mvcframework.annotation.";
+	static final String CONTROLLER = ANNOTATION_PACKAGE + "MockController";
+	static final String SERVICE = ANNOTATION_PACKAGE + "MockService";
+	static final String CONTROLLER_ADVICE = ANNOTATION_PACKAGE + "MockControllerAdvice";
+	static final String INTERCEPTOR = ANNOTATION_PACKAGE + "MockInterceptor";
+	static final String AUTOWIRED = ANNOTATION_PACKAGE + "MockAutowired";
+	static final String REQUEST_MAPPING = ANNOTATION_PACKAGE + "MockRequestMapping";
+
+	static final String REGISTRY_PACKAGE = "com.learn.mvcframework.generated";
+	static final String REGISTRY_SIMPLE_NAME = "MockGeneratedRegistryImpl";
+	static final String REGISTRY_INTERFACE = "com.learn.mvcframework.v3.servlet.MockGeneratedRegistry";
+
+	private boolean generated;
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		Set<String> types = new LinkedHashSet<>();
+		types.add(CONTROLLER);
+		types.add(SERVICE);
+		types.add(CONTROLLER_ADVICE);
+		types.add(INTERCEPTOR);
+		return types;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (generated || annotations.isEmpty()) {
+			return false;
+		}
+		List<TypeElement> beanTypes = new ArrayList<>();
+		for (TypeElement annotation : annotations) {
+			for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+				if (type.getKind() == ElementKind.CLASS && !beanTypes.contains(type)) {
+					beanTypes.add(type);
+				}
+			}
+		}
+		if (beanTypes.isEmpty()) {
+			return false;
+		}
+		generated = true;
+		try {
+			writeRegistry(beanTypes);
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can not write registry: " + e);
+		}
+		return false;
+	}
+
+	private void writeRegistry(List<TypeElement> beanTypes) throws IOException {
+		Map<String, TypeElement> beanNames = new LinkedHashMap<>();
+		for (TypeElement type : beanTypes) {
+			String component = annotation(type, CONTROLLER) != null ? CONTROLLER
+					: annotation(type, CONTROLLER_ADVICE) != null ? CONTROLLER_ADVICE
+							: annotation(type, INTERCEPTOR) != null ? INTERCEPTOR : SERVICE;
+			String beanName = stringValue(type, component, "value");
+			if (beanName.isEmpty()) {
+				beanName = ensureBeanName(type.getSimpleName().toString());
+			}
+			TypeElement exist = beanNames.put(beanName, type);
+			if (exist != null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"bean name duplicate '" + beanName + "' with " + exist.getQualifiedName(), type);
+				beanNames.put(beanName, exist);
+			}
+		}
+		// 与 MockBeanContainer 一致：依赖创建并注入完成后才创建，不允许循环依赖
+		Map<String, BeanPlan> plans = new LinkedHashMap<>();
+		for (Map.Entry<String, TypeElement> entry : beanNames.entrySet()) {
+			BeanPlan plan = plan(entry.getKey(), entry.getValue(), beanNames);
+			if (plan == null) {
+				return;
+			}
+			plans.put(entry.getKey(), plan);
+		}
+		List<BeanPlan> order = new ArrayList<>();
+		Map<String, Boolean> visiting = new HashMap<>();
+		for (BeanPlan plan : plans.values()) {
+			if (!visit(plan, plans, visiting, new ArrayList<>(), order)) {
+				return;
+			}
+		}
+
+		StringBuilder beans = new StringBuilder();
+		StringBuilder routes = new StringBuilder();
+		for (int i = 0; i < order.size(); i++) {
+			BeanPlan plan = order.get(i);
+			TypeElement type = plan.type;
+			String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+			String var = "bean" + i;
+			String condition = "MockGeneratedRegistry.inPackage(scanPackage, \"" + packageName + "\")";
+
+			beans.append("\t\tif (").append(condition).append(") {\n");
+			beans.append("\t\t\tObject ").append(var).append(" = ").append(newExpression(plan)).append(";\n");
+			for (int f = 0; f < plan.fields.size(); f++) {
+				beans.append("\t\t\t").append(injectStatement(type, var, plan.fields.get(f),
+						"beansMap.get(\"" + plan.fieldRefs.get(f) + "\")")).append("\n");
+			}
+			beans.append("\t\t\tbeansMap.put(\"").append(plan.name).append("\", ").append(var).append(");\n");
+			beans.append("\t\t}\n");
+
+			if (annotation(type, CONTROLLER) == null) {
+				continue;
+			}
+			String baseUrl = "/";
+			if (annotation(type, REQUEST_MAPPING) != null) {
+				baseUrl = stringValue(type, REQUEST_MAPPING, "value");
+			}
+			StringBuilder typeRoutes = new StringBuilder();
+			for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+				if (annotation(method, REQUEST_MAPPING) == null) {
+					continue;
+				}
+				String url = (baseUrl + stringValue(method, REQUEST_MAPPING, "value")).replaceAll("/+", "/");
+				typeRoutes.append("\t\t\tcollector.route(").append(literal(url)).append(", \"").append(plan.name)
+						.append("\", \"").append(method.getSimpleName()).append("\"");
+				for (VariableElement parameter : method.getParameters()) {
+					typeRoutes.append(", \"").append(typeName(parameter.asType())).append("\"");
+				}
+				typeRoutes.append(");\n");
+			}
+			if (typeRoutes.length() > 0) {
+				routes.append("\t\tif (").append(condition).append(") {\n").append(typeRoutes).append("\t\t}\n");
+			}
+		}
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(REGISTRY_PACKAGE + "." + REGISTRY_SIMPLE_NAME,
+				beanTypes.toArray(new Element[0]));
+		try (Writer writer = file.openWriter()) {
+			writer.write("package " + REGISTRY_PACKAGE + ";\n\n");
+			writer.write("import java.util.Map;\n\n");
+			writer.write("import " + REGISTRY_INTERFACE + ";\n\n");
+			writer.write("/**\n * Generated by " + getClass().getName() + ", do not edit.\n */\n");
+			writer.write("public final class " + REGISTRY_SIMPLE_NAME + " implements MockGeneratedRegistry {\n\n");
+			writer.write("\t@Override\n");
+			writer.write("\tpublic void registerBeans(String scanPackage, Map<String, Object> beansMap) {\n");
+			writer.write(beans.toString());
+			writer.write("\t}\n\n");
+			writer.write("\t@Override\n");
+			writer.write("\tpublic void registerRoutes(String scanPackage, RouteCollector collector) {\n");
+			writer.write(routes.toString());
+			writer.write("\t}\n");
+			writer.write("}\n");
+		}
+	}
+
+	private String newExpression(BeanPlan plan) {
+		ExecutableElement constructor = plan.constructor;
+		StringBuilder args = new StringBuilder();
+		boolean accessible = isAccessible(plan.type) && constructor.getModifiers().contains(Modifier.PUBLIC);
+		for (int i = 0; i < plan.constructorRefs.size(); i++) {
+			TypeMirror parameterType = processingEnv.getTypeUtils()
+					.erasure(constructor.getParameters().get(i).asType());
+			accessible &= isAccessible(parameterType);
+			args.append(i == 0 ? "" : ", ").append("(").append(parameterType).append(") beansMap.get(\"")
+					.append(plan.constructorRefs.get(i)).append("\")");
+		}
+		if (accessible) {
+			return "new " + plan.type.getQualifiedName() + "(" + args + ")";
+		}
+		if (plan.constructorRefs.isEmpty()) {
+			return "MockGeneratedRegistry.newInstance(\"" + binaryName(plan.type) + "\")";
+		}
+		StringBuilder reflective = new StringBuilder("MockGeneratedRegistry.newInstance(\"")
+				.append(binaryName(plan.type)).append("\", new String[] { ");
+		for (int i = 0; i < plan.constructorRefs.size(); i++) {
+			reflective.append(i == 0 ? "\"" : ", \"")
+					.append(typeName(constructor.getParameters().get(i).asType())).append('"');
+		}
+		reflective.append(" }");
+		for (String ref : plan.constructorRefs) {
+			reflective.append(", beansMap.get(\"").append(ref).append("\")");
+		}
+		return reflective.append(")").toString();
+	}
+
+	/**
+	 * 与 MockBeanContainer 相同的构造方法选择和依赖查找规则
+	 */
+	private BeanPlan plan(String name, TypeElement type, Map<String, TypeElement> beanNames) {
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		ExecutableElement constructor = null;
+		for (ExecutableElement candidate : constructors) {
+			if (annotation(candidate, AUTOWIRED) != null) {
+				if (constructor != null) {
+					error("More than one @MockAutowired constructor", type);
+					return null;
+				}
+				constructor = candidate;
+			}
+		}
+		if (constructor == null && constructors.size() == 1) {
+			constructor = constructors.get(0);
+		}
+		for (int i = 0; constructor == null && i < constructors.size(); i++) {
+			if (constructors.get(i).getParameters().isEmpty()) {
+				constructor = constructors.get(i);
+			}
+		}
+		if (constructor == null) {
+			error("No @MockAutowired or no-arg constructor", type);
+			return null;
+		}
+		BeanPlan plan = new BeanPlan(name, type, constructor);
+		for (VariableElement parameter : constructor.getParameters()) {
+			String ref = resolveRef(stringValue(parameter, AUTOWIRED, "value"), parameter, beanNames);
+			if (ref == null) {
+				return null;
+			}
+			plan.constructorRefs.add(ref);
+		}
+		for (TypeElement t = type; t != null; t = superclass(t)) {
+			for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+				if (annotation(field, AUTOWIRED) == null || field.getModifiers().contains(Modifier.STATIC)) {
+					continue;
+				}
+				String ref = resolveRef(stringValue(field, AUTOWIRED, "value"), field, beanNames);
+				if (ref == null) {
+					return null;
+				}
+				plan.fields.add(field);
+				plan.fieldRefs.add(ref);
+			}
+		}
+		return plan;
+	}
+
+	private TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+		return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+	}
+
+	private String resolveRef(String name, VariableElement target, Map<String, TypeElement> beanNames) {
+		TypeMirror type = processingEnv.getTypeUtils().erasure(target.asType());
+		String byName = name.isEmpty() ? ensureBeanName(simpleName(type)) : name;
+		TypeElement named = beanNames.get(byName);
+		if (named != null && processingEnv.getTypeUtils().isAssignable(named.asType(), type)) {
+			return byName;
+		}
+		if (!name.isEmpty()) {
+			error("No bean named '" + name + "' of " + type, target);
+			return null;
+		}
+		String found = null;
+		for (Map.Entry<String, TypeElement> entry : beanNames.entrySet()) {
+			if (processingEnv.getTypeUtils().isAssignable(
+					processingEnv.getTypeUtils().erasure(entry.getValue().asType()), type)) {
+				if (found != null) {
+					error("More than one bean of " + type + ": '" + found + "', '" + entry.getKey() + "'", target);
+					return null;
+				}
+				found = entry.getKey();
+			}
+		}
+		if (found == null) {
+			error("No bean of " + type, target);
+		}
+		return found;
+	}
+
+	private boolean visit(BeanPlan plan, Map<String, BeanPlan> plans, Map<String, Boolean> visiting,
+			List<String> path, List<BeanPlan> order) {
+		Boolean state = visiting.get(plan.name);
+		if (state == Boolean.FALSE) {
+			return true;
+		}
+		if (state == Boolean.TRUE) {
+			StringBuilder cycle = new StringBuilder();
+			for (int i = path.indexOf(plan.name); i < path.size(); i++) {
+				cycle.append('\'').append(path.get(i)).append("' -> ");
+			}
+			error("Circular dependency between beans: " + cycle + "'" + plan.name + "'", plan.type);
+			return false;
+		}
+		visiting.put(plan.name, Boolean.TRUE);
+		path.add(plan.name);
+		List<String> dependencies = new ArrayList<>(plan.constructorRefs);
+		dependencies.addAll(plan.fieldRefs);
+		for (String dependency : dependencies) {
+			if (!visit(plans.get(dependency), plans, visiting, path, order)) {
+				return false;
+			}
+		}
+		path.remove(path.size() - 1);
+		visiting.put(plan.name, Boolean.FALSE);
+		order.add(plan);
+		return true;
+	}
+
+	private void error(String message, Element element) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private String injectStatement(TypeElement type, String var, VariableElement field, String valueExpression) {
+		TypeMirror fieldType = processingEnv.getTypeUtils().erasure(field.asType());
+		boolean typeAccessible = isAccessible(fieldType);
+		if (isAccessible(type) && typeAccessible) {
+			String cast = "((" + type.getQualifiedName() + ") " + var + ")";
+			String value = "(" + fieldType + ") " + valueExpression;
+			String setter = "set" + Character.toUpperCase(field.getSimpleName().charAt(0))
+					+ field.getSimpleName().toString().substring(1);
+			for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+				if (method.getSimpleName().contentEquals(setter) && method.getModifiers().contains(Modifier.PUBLIC)
+						&& !method.getModifiers().contains(Modifier.STATIC) && method.getParameters().size() == 1
+						&& processingEnv.getTypeUtils().isSameType(
+								processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType()), fieldType)) {
+					return cast + "." + setter + "(" + value + ");";
+				}
+			}
+			if (field.getModifiers().contains(Modifier.PUBLIC) && !field.getModifiers().contains(Modifier.FINAL)) {
+				return cast + "." + field.getSimpleName() + " = " + value + ";";
+			}
+		}
+		return "MockGeneratedRegistry.inject(" + var + ", \"" + binaryName(type) + "\", \"" + field.getSimpleName()
+				+ "\", " + valueExpression + ");";
+	}
+
+	private boolean isAccessible(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return true;
+		}
+		if (type.getKind() == TypeKind.ARRAY) {
+			return isAccessible(((ArrayType) type).getComponentType());
+		}
+		if (type.getKind() == TypeKind.DECLARED) {
+			return isAccessible((TypeElement) ((DeclaredType) type).asElement());
+		}
+		return false;
+	}
+
+	private boolean isAccessible(TypeElement type) {
+		Element element = type;
+		while (element instanceof TypeElement) {
+			if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+				return false;
+			}
+			if (element.getEnclosingElement() instanceof TypeElement
+					&& !element.getModifiers().contains(Modifier.STATIC)) {
+				return false;
+			}
+			element = element.getEnclosingElement();
+		}
+		return true;
+	}
+
+	/**
+	 * 与 {@link Class#getTypeName()} 一致
+	 */
+	private String typeName(TypeMirror type) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+		if (erased.getKind().isPrimitive()) {
+			return erased.toString();
+		}
+		if (erased.getKind() == TypeKind.ARRAY) {
+			return typeName(((ArrayType) erased).getComponentType()) + "[]";
+		}
+		return binaryName((TypeElement) ((DeclaredType) erased).asElement());
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	private String simpleName(TypeMirror type) {
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+		if (erased.getKind() == TypeKind.DECLARED) {
+			return ((DeclaredType) erased).asElement().getSimpleName().toString();
+		}
+		return erased.toString();
+	}
+
+	/**
+	 * 与 MockBeanContainer.ensureBeanName 一致
+	 */
+	private static String ensureBeanName(String simpleName) {
+		if (!Character.isUpperCase(simpleName.charAt(0))) {
+			return simpleName;
+		}
+		char[] chars = simpleName.toCharArray();
+		chars[0] += 32;
+		return new String(chars);
+	}
+
+	private static AnnotationMirror annotation(Element element, String annotationName) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+			if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+
+	private static String stringValue(Element element, String annotationName, String attribute) {
+		AnnotationMirror mirror = annotation(element, annotationName);
+		if (mirror == null) {
+			return "";
+		}
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues()
+				.entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+				return String.valueOf(entry.getValue().getValue());
+			}
+		}
+		return "";
+	}
+
+	private static String literal(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	private static final class BeanPlan {
+		final String name;
+		final TypeElement type;
+		final ExecutableElement constructor;
+		final List<String> constructorRefs = new ArrayList<>();
+		final List<VariableElement> fields = new ArrayList<>();
+		final List<String> fieldRefs = new ArrayList<>();
+
+		BeanPlan(String name, TypeElement type, ExecutableElement constructor) {
+			this.name = name;
+			this.type = type;
+			this.constructor = constructor;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * {@link NioHttpServer} 的 AsyncContext，支持 complete、dispatch、start 和超时。
+ * <p>
+ * service 返回前调用的 complete / dispatch 推迟到 service 返回后执行；service 返回时开始计时，
+ * 超时后在 worker 线程上通知监听器，监听器没有 complete 时按 500 结束。
+ * dispatch 结束当前异步周期，在 worker 上用同一对请求/响应重新调用 servlet，监听器沿用到下一个周期
+ */
+final class BootAsyncContext implements AsyncContext {
+
+	private final NioHttpServer server;
+	private final BootHttpRequest request;
+	private final BootHttpResponse response;
+	private final ServletRequest servletRequest;
+	private final ServletResponse servletResponse;
+	private final List<AsyncListener> listeners = new ArrayList<>(2);
+	private long timeout = 30000;
+
+	// 以下字段在 this 上同步
+	private boolean serviceReturned;
+	private boolean completeCalled;
+	private boolean completed;
+	// 不为 null 时结束方式是 dispatch
+	private String dispatchPath;
+	private ScheduledFuture<?> timeoutTask;
+
+	BootAsyncContext(NioHttpServer server, BootHttpRequest request, BootHttpResponse response,
+			ServletRequest servletRequest, ServletResponse servletResponse) {
+		this.server = server;
+		this.request = request;
+		this.response = response;
+		this.servletRequest = servletRequest;
+		this.servletResponse = servletResponse;
+	}
+
+	/**
+	 * service 已返回，complete 已被调用时结束请求，否则开始超时计时
+	 */
+	void serviceReturned() {
+		synchronized (this) {
+			serviceReturned = true;
+			if (!completeCalled) {
+				if (timeout > 0) {
+					timeoutTask = server.schedule(this::onTimeout, timeout, TimeUnit.MILLISECONDS);
+				}
+				return;
+			}
+		}
+		finish();
+	}
+
+	synchronized boolean isCompleted() {
+		return completeCalled;
+	}
+
+	private void onTimeout() {
+		synchronized (this) {
+			if (completeCalled) {
+				return;
+			}
+		}
+		AsyncEvent event = new AsyncEvent(this, servletRequest, servletResponse);
+		for (AsyncListener listener : new ArrayList<>(listeners)) {
+			try {
+				listener.onTimeout(event);
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		synchronized (this) {
+			if (completeCalled) {
+				return;
+			}
+		}
+		if (!response.isCommitted()) {
+			response.reset();
+			response.setStatus(500);
+		}
+		complete();
+	}
+
+	private void finish() {
+		String path;
+		synchronized (this) {
+			if (completed) {
+				return;
+			}
+			completed = true;
+			if (timeoutTask != null) {
+				timeoutTask.cancel(false);
+			}
+			path = dispatchPath;
+		}
+		if (path != null) {
+			request.redispatch(path, new ArrayList<>(listeners));
+			server.redispatch(request, response);
+			return;
+		}
+		AsyncEvent event = new AsyncEvent(this, servletRequest, servletResponse);
+		for (AsyncListener listener : new ArrayList<>(listeners)) {
+			try {
+				listener.onComplete(event);
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		server.complete(response);
+	}
+
+	@Override
+	public ServletRequest getRequest() {
+		return servletRequest;
+	}
+
+	@Override
+	public ServletResponse getResponse() {
+		return servletResponse;
+	}
+
+	@Override
+	public boolean hasOriginalRequestAndResponse() {
+		return servletRequest == request && servletResponse == response;
+	}
+
+	/**
+	 * 重新分发到原请求的路径
+	 */
+	@Override
+	public void dispatch() {
+		dispatch(request.originalPath());
+	}
+
+	@Override
+	public void dispatch(String path) {
+		if (path == null || !path.startsWith("/")) {
+			throw new IllegalArgumentException("Dispatch path must start with '/': " + path);
+		}
+		synchronized (this) {
+			if (completeCalled) {
+				throw new IllegalStateException("AsyncContext has already been completed or dispatched");
+			}
+			completeCalled = true;
+			dispatchPath = path;
+			if (!serviceReturned) {
+				return;
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * 只有一个 context，context 参数被忽略
+	 */
+	@Override
+	public void dispatch(ServletContext context, String path) {
+		dispatch(path);
+	}
+
+	@Override
+	public void complete() {
+		synchronized (this) {
+			if (completeCalled) {
+				return;
+			}
+			completeCalled = true;
+			if (!serviceReturned) {
+				return;
+			}
+		}
+		finish();
+	}
+
+	@Override
+	public void start(Runnable run) {
+		server.execute(run);
+	}
+
+	@Override
+	public void addListener(AsyncListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+		try {
+			return clazz.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new ServletException(e);
+		}
+	}
+
+	@Override
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+}
@@ -0,0 +1,766 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+
+import com.learn.mvcframework.v3.servlet.MockResponseStatusException;
+
+/**
+ * {@link NioHttpServer} 解析出的请求，请求体在分发前已完整读入内存。
+ * 参数来自查询串和 application/x-www-form-urlencoded 请求体，第一次访问时解析。
+ * session 保存在 {@link BootSessions} 中，通过 JSESSIONID cookie 关联。
+ * AsyncContext.dispatch 在同一个请求对象上替换路径后重新调用 servlet。
+ * 不支持 multipart（501）、认证和协议升级
+ */
+final class BootHttpRequest implements HttpServletRequest {
+
+	static final byte[] EMPTY = new byte[0];
+
+	private final String method;
+	// AsyncContext.dispatch 时替换
+	private String requestURI;
+	private String queryString;
+	private DispatcherType dispatcherType = DispatcherType.REQUEST;
+	private final String protocol;
+	private String[] headerNames = new String[16];
+	private String[] headerValues = new String[16];
+	private int headerCount;
+	byte[] body = EMPTY;
+
+	private InetSocketAddress local;
+	private InetSocketAddress remote;
+	private String characterEncoding;
+	private final Map<String, Object> attributes = new HashMap<>();
+	private Map<String, String[]> parameters;
+	private ServletInputStream inputStream;
+	private BufferedReader reader;
+	private BootAsyncContext asyncContext;
+	// 上一次异步周期的监听器，dispatch 后沿用
+	private List<AsyncListener> dispatchedListeners = Collections.emptyList();
+	private BootHttpResponse response;
+	private NioHttpServer server;
+	// 第一次访问时解析，没有 cookie 时为空数组
+	private Cookie[] cookies;
+	private BootSessions.Session session;
+
+	BootHttpRequest(String method, String target, String protocol) {
+		this.method = method;
+		int q = target.indexOf('?');
+		this.requestURI = q < 0 ? target : target.substring(0, q);
+		this.queryString = q < 0 ? null : target.substring(q + 1);
+		this.protocol = protocol;
+	}
+
+	void addHeader(String name, String value) {
+		if (headerCount == headerNames.length) {
+			headerNames = Arrays.copyOf(headerNames, headerCount * 2);
+			headerValues = Arrays.copyOf(headerValues, headerCount * 2);
+		}
+		headerNames[headerCount] = name;
+		headerValues[headerCount] = value;
+		headerCount++;
+	}
+
+	void attach(NioHttpServer server, BootHttpResponse response, InetSocketAddress local, InetSocketAddress remote) {
+		this.server = server;
+		this.response = response;
+		this.local = local;
+		this.remote = remote;
+	}
+
+	/**
+	 * @return HTTP/1.1 默认保持连接，HTTP/1.0 需要 Connection: keep-alive
+	 */
+	boolean keepAlive() {
+		String connection = getHeader("Connection");
+		if (protocol.equals("HTTP/1.1")) {
+			return connection == null || !hasToken(connection, "close");
+		}
+		return connection != null && hasToken(connection, "keep-alive");
+	}
+
+	private static boolean hasToken(String header, String token) {
+		for (String part : header.split(",")) {
+			if (part.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	BootAsyncContext asyncContext() {
+		return asyncContext;
+	}
+
+	/**
+	 * AsyncContext.dispatch：换成 path 并结束当前异步周期，之后由 server 重新调用 servlet
+	 */
+	void redispatch(String path, List<AsyncListener> listeners) {
+		if (dispatcherType == DispatcherType.REQUEST) {
+			attributes.put(AsyncContext.ASYNC_REQUEST_URI, requestURI);
+			attributes.put(AsyncContext.ASYNC_CONTEXT_PATH, "");
+			attributes.put(AsyncContext.ASYNC_SERVLET_PATH, requestURI);
+			if (queryString != null) {
+				attributes.put(AsyncContext.ASYNC_QUERY_STRING, queryString);
+			}
+		}
+		int q = path.indexOf('?');
+		requestURI = q < 0 ? path : path.substring(0, q);
+		if (q >= 0) {
+			queryString = path.substring(q + 1);
+			parameters = null;
+		}
+		dispatcherType = DispatcherType.ASYNC;
+		dispatchedListeners = listeners;
+		asyncContext = null;
+	}
+
+	/**
+	 * @return dispatch 之后没有再次 startAsync 时需要通知 onComplete 的监听器
+	 */
+	List<AsyncListener> takeDispatchedListeners() {
+		List<AsyncListener> listeners = dispatchedListeners;
+		dispatchedListeners = Collections.emptyList();
+		return listeners;
+	}
+
+	/**
+	 * @return dispatch() 不带路径时的目标
+	 */
+	String originalPath() {
+		return queryString == null ? requestURI : requestURI + "?" + queryString;
+	}
+
+	private Map<String, String[]> parameters() {
+		if (parameters == null) {
+			Map<String, List<String>> values = new LinkedHashMap<>();
+			Charset charset = charset();
+			if (queryString != null) {
+				decodeForm(queryString, charset, values);
+			}
+			String contentType = getContentType();
+			if (body.length > 0 && contentType != null
+					&& contentType.toLowerCase(Locale.ROOT).startsWith("application/x-www-form-urlencoded")) {
+				decodeForm(new String(body, StandardCharsets.ISO_8859_1), charset, values);
+			}
+			Map<String, String[]> params = new LinkedHashMap<>();
+			for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+				params.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+			}
+			parameters = Collections.unmodifiableMap(params);
+		}
+		return parameters;
+	}
+
+	private static void decodeForm(String form, Charset charset, Map<String, List<String>> values) {
+		for (String pair : form.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			String name = decode(eq < 0 ? pair : pair.substring(0, eq), charset);
+			String value = eq < 0 ? "" : decode(pair.substring(eq + 1), charset);
+			values.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+		}
+	}
+
+	private static String decode(String s, Charset charset) {
+		if (s.indexOf('%') < 0 && s.indexOf('+') < 0) {
+			return s;
+		}
+		try {
+			return URLDecoder.decode(s, charset.name());
+		} catch (IllegalArgumentException | UnsupportedEncodingException e) {
+			// 非法的百分号编码按原样保留
+			return s;
+		}
+	}
+
+	private Charset charset() {
+		String encoding = getCharacterEncoding();
+		try {
+			return encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+		} catch (IllegalArgumentException e) {
+			return StandardCharsets.UTF_8;
+		}
+	}
+
+	@Override
+	public String getAuthType() {
+		return null;
+	}
+
+	@Override
+	public Cookie[] getCookies() {
+		if (cookies == null) {
+			cookies = parseCookies();
+		}
+		return cookies.length == 0 ? null : cookies.clone();
+	}
+
+	private Cookie[] parseCookies() {
+		List<Cookie> list = new ArrayList<>();
+		for (int i = 0; i < headerCount; i++) {
+			if (!headerNames[i].equalsIgnoreCase("Cookie")) {
+				continue;
+			}
+			for (String pair : headerValues[i].split(";")) {
+				int eq = pair.indexOf('=');
+				if (eq <= 0) {
+					continue;
+				}
+				String name = pair.substring(0, eq).trim();
+				String value = pair.substring(eq + 1).trim();
+				if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+					value = value.substring(1, value.length() - 1);
+				}
+				try {
+					list.add(new Cookie(name, value));
+				} catch (IllegalArgumentException e) {
+					// 名字不合法的 cookie 忽略
+				}
+			}
+		}
+		return list.toArray(new Cookie[0]);
+	}
+
+	@Override
+	public long getDateHeader(String name) {
+		return -1;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		for (int i = 0; i < headerCount; i++) {
+			if (headerNames[i].equalsIgnoreCase(name)) {
+				return headerValues[i];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		List<String> values = new ArrayList<>(1);
+		for (int i = 0; i < headerCount; i++) {
+			if (headerNames[i].equalsIgnoreCase(name)) {
+				values.add(headerValues[i]);
+			}
+		}
+		return Collections.enumeration(values);
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		List<String> names = new ArrayList<>(headerCount);
+		for (int i = 0; i < headerCount; i++) {
+			names.add(headerNames[i]);
+		}
+		return Collections.enumeration(names);
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		String value = getHeader(name);
+		return value == null ? -1 : Integer.parseInt(value.trim());
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+
+	@Override
+	public String getContextPath() {
+		return "";
+	}
+
+	@Override
+	public String getQueryString() {
+		return queryString;
+	}
+
+	@Override
+	public String getRemoteUser() {
+		return null;
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return false;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return null;
+	}
+
+	@Override
+	public String getRequestedSessionId() {
+		if (cookies == null) {
+			cookies = parseCookies();
+		}
+		for (Cookie cookie : cookies) {
+			if (cookie.getName().equals(BootSessions.COOKIE)) {
+				return cookie.getValue();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return requestURI;
+	}
+
+	@Override
+	public StringBuffer getRequestURL() {
+		StringBuffer url = new StringBuffer("http://");
+		String host = getHeader("Host");
+		url.append(host != null ? host : getLocalName() + ":" + getLocalPort());
+		return url.append(requestURI);
+	}
+
+	@Override
+	public String getServletPath() {
+		return requestURI;
+	}
+
+	@Override
+	public HttpSession getSession(boolean create) {
+		if (session != null && session.isValid()) {
+			return session;
+		}
+		session = server == null ? null : server.sessions.find(getRequestedSessionId());
+		if (session != null || !create) {
+			return session;
+		}
+		if (server == null) {
+			throw new IllegalStateException("Request is not attached to a server");
+		}
+		if (response.isCommitted()) {
+			throw new IllegalStateException("Can not create a session after the response has been committed");
+		}
+		session = server.sessions.create();
+		addSessionCookie(session.getId());
+		return session;
+	}
+
+	private void addSessionCookie(String id) {
+		Cookie cookie = new Cookie(BootSessions.COOKIE, id);
+		cookie.setPath("/");
+		cookie.setHttpOnly(true);
+		response.addCookie(cookie);
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return getSession(true);
+	}
+
+	@Override
+	public String changeSessionId() {
+		BootSessions.Session current = (BootSessions.Session) getSession(false);
+		if (current == null) {
+			throw new IllegalStateException("No session");
+		}
+		String id = server.sessions.changeId(current);
+		addSessionCookie(id);
+		return id;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		String id = getRequestedSessionId();
+		if (id == null) {
+			return false;
+		}
+		HttpSession current = getSession(false);
+		return current != null && id.equals(current.getId());
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromCookie() {
+		return getRequestedSessionId() != null;
+	}
+
+	@Override
+	public boolean isRequestedSessionIdFromURL() {
+		return false;
+	}
+
+	@Override
+	@Deprecated
+	public boolean isRequestedSessionIdFromUrl() {
+		return false;
+	}
+
+	@Override
+	public boolean authenticate(HttpServletResponse response) {
+		return false;
+	}
+
+	@Override
+	public void login(String username, String password) throws ServletException {
+		throw new ServletException("Login is not supported by MockBootstrap");
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public Collection<Part> getParts() {
+		throw new MockResponseStatusException(HttpServletResponse.SC_NOT_IMPLEMENTED,
+				"Multipart requests are not supported");
+	}
+
+	@Override
+	public Part getPart(String name) {
+		throw new MockResponseStatusException(HttpServletResponse.SC_NOT_IMPLEMENTED,
+				"Multipart requests are not supported");
+	}
+
+	@Override
+	public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) throws ServletException {
+		throw new ServletException("Protocol upgrade is not supported by MockBootstrap");
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		if (characterEncoding == null) {
+			String contentType = getContentType();
+			int i = contentType == null ? -1 : contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+			if (i >= 0) {
+				String charset = contentType.substring(i + 8);
+				int end = charset.indexOf(';');
+				characterEncoding = (end < 0 ? charset : charset.substring(0, end)).trim().replace("\"", "");
+			}
+		}
+		return characterEncoding;
+	}
+
+	@Override
+	public void setCharacterEncoding(String env) {
+		this.characterEncoding = env;
+	}
+
+	@Override
+	public int getContentLength() {
+		return body.length;
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return body.length;
+	}
+
+	@Override
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	@Override
+	public ServletInputStream getInputStream() {
+		if (reader != null) {
+			throw new IllegalStateException("getReader() has already been called");
+		}
+		if (inputStream == null) {
+			final ByteArrayInputStream in = new ByteArrayInputStream(body);
+			inputStream = new ServletInputStream() {
+				@Override
+				public int read() {
+					return in.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return in.read(b, off, len);
+				}
+
+				@Override
+				public int available() {
+					return in.available();
+				}
+
+				@Override
+				public boolean isFinished() {
+					return in.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					// 请求体已完整读入内存，总是就绪
+					try {
+						if (!isFinished()) {
+							readListener.onDataAvailable();
+						}
+						if (isFinished()) {
+							readListener.onAllDataRead();
+						}
+					} catch (IOException | RuntimeException e) {
+						readListener.onError(e);
+					}
+				}
+			};
+		}
+		return inputStream;
+	}
+
+	@Override
+	public String getParameter(String name) {
+		String[] values = parameters().get(name);
+		return values == null ? null : values[0];
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(parameters().keySet());
+	}
+
+	@Override
+	public String[] getParameterValues(String name) {
+		String[] values = parameters().get(name);
+		return values == null ? null : values.clone();
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return parameters();
+	}
+
+	@Override
+	public String getProtocol() {
+		return protocol;
+	}
+
+	@Override
+	public String getScheme() {
+		return "http";
+	}
+
+	@Override
+	public String getServerName() {
+		String host = getHeader("Host");
+		if (host == null) {
+			return getLocalName();
+		}
+		int colon = host.lastIndexOf(':');
+		return colon > host.lastIndexOf(']') ? host.substring(0, colon) : host;
+	}
+
+	@Override
+	public int getServerPort() {
+		String host = getHeader("Host");
+		int colon = host == null ? -1 : host.lastIndexOf(':');
+		if (colon >= 0 && colon > host.lastIndexOf(']')) {
+			try {
+				return Integer.parseInt(host.substring(colon + 1));
+			} catch (NumberFormatException e) {
+				// 按本地端口
+			}
+		}
+		return getLocalPort();
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		if (reader == null) {
+			if (inputStream != null) {
+				throw new IllegalStateException("getInputStream() has already been called");
+			}
+			reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), charset()));
+		}
+		return reader;
+	}
+
+	@Override
+	public String getRemoteAddr() {
+		return remote == null ? null : remote.getAddress().getHostAddress();
+	}
+
+	@Override
+	public String getRemoteHost() {
+		return getRemoteAddr();
+	}
+
+	@Override
+	public void setAttribute(String name, Object o) {
+		if (o == null) {
+			attributes.remove(name);
+		} else {
+			attributes.put(name, o);
+		}
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.getDefault();
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+	}
+
+	@Override
+	public boolean isSecure() {
+		return false;
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public String getRealPath(String path) {
+		return null;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return remote == null ? -1 : remote.getPort();
+	}
+
+	@Override
+	public String getLocalName() {
+		return local == null ? null : local.getHostString();
+	}
+
+	@Override
+	public String getLocalAddr() {
+		return local == null ? null : local.getAddress().getHostAddress();
+	}
+
+	@Override
+	public int getLocalPort() {
+		return local == null ? -1 : local.getPort();
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return server == null ? null : server.servletContext();
+	}
+
+	@Override
+	public AsyncContext startAsync() {
+		return startAsync(this, response);
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		if (asyncContext != null) {
+			throw new IllegalStateException("startAsync() has already been called");
+		}
+		asyncContext = new BootAsyncContext(server, this, response, servletRequest, servletResponse);
+		List<AsyncListener> listeners = takeDispatchedListeners();
+		if (!listeners.isEmpty()) {
+			AsyncEvent event = new AsyncEvent(asyncContext, servletRequest, servletResponse);
+			for (AsyncListener listener : listeners) {
+				try {
+					listener.onStartAsync(event);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				asyncContext.addListener(listener);
+			}
+		}
+		return asyncContext;
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return asyncContext != null && !asyncContext.isCompleted();
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return true;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		if (asyncContext == null) {
+			throw new IllegalStateException("Async has not been started");
+		}
+		return asyncContext;
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return dispatcherType;
+	}
+
+	@Override
+	public String toString() {
+		return "BootHttpRequest(" + method + " " + requestURI + (queryString == null ? "" : "?" + queryString) + ")";
+	}
+}
@@ -0,0 +1,599 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * {@link NioHttpServer} 的响应。
+ * <p>
+ * body 先写入 bufferSize 大小的缓冲区，请求结束时仍未提交的响应带 Content-Length 一次写出；
+ * 缓冲区写满或调用 flush 时提交，之后 HTTP/1.1 按 chunked、HTTP/1.0 按关闭连接结束的方式边写边发。
+ * 数据由 worker 线程直接写入 socket，连接的待写数据过多时 worker 阻塞等待
+ */
+final class BootHttpResponse implements HttpServletResponse {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+	private final HttpConnection connection;
+	private final BootHttpRequest request;
+	private final boolean head;
+	private boolean keepAlive;
+
+	private int status = SC_OK;
+	private final List<String> headerNames = new ArrayList<>(8);
+	private final List<String> headerValues = new ArrayList<>(8);
+	private String contentType;
+	private String characterEncoding;
+	private long contentLength = -1;
+
+	private byte[] buffer;
+	private int count;
+	private boolean committed;
+	private boolean chunked;
+	// sendError/sendRedirect 之后忽略写入
+	private boolean closed;
+	private boolean finishing;
+	private boolean finished;
+	// 提交后等待和第一段 body 一起写出的响应头
+	private byte[] pendingHead;
+	private PrintWriter writer;
+	private final ServletOutputStream outputStream = new ServletOutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			if (!closed) {
+				buffer[count++] = (byte) b;
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			BootHttpResponse.this.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!finishing) {
+				flushBuffer();
+			}
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		/**
+		 * 写入先进缓冲区，满了由连接排队发出（超过 writeHighWaterBytes 时阻塞），所以总是就绪
+		 */
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			try {
+				writeListener.onWritePossible();
+			} catch (IOException | RuntimeException e) {
+				writeListener.onError(e);
+			}
+		}
+	};
+
+	BootHttpResponse(HttpConnection connection, BootHttpRequest request, int bufferSize) {
+		this.connection = connection;
+		this.request = request;
+		this.head = "HEAD".equals(request.getMethod());
+		this.keepAlive = request.keepAlive();
+		this.buffer = new byte[bufferSize];
+	}
+
+	HttpConnection connection() {
+		return connection;
+	}
+
+	private void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			return;
+		}
+		if (len <= buffer.length - count) {
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+			return;
+		}
+		// 放不下时缓冲区和这次写入作为一段发出
+		commit(false);
+		send(false, ByteBuffer.wrap(b, off, len));
+	}
+
+	/**
+	 * 写出剩余的 body 并结束响应，只调用一次
+	 *
+	 * @return 连接是否可以继续处理下一个请求
+	 */
+	boolean finish() throws IOException {
+		if (finished) {
+			return keepAlive;
+		}
+		finished = true;
+		if (writer != null) {
+			finishing = true;
+			writer.flush();
+		}
+		commit(true);
+		send(true);
+		return keepAlive;
+	}
+
+	/**
+	 * 写出未发送的响应头、缓冲区和 more，chunked 时作为一个分块，last 时再加上结束分块。
+	 * 返回时数据已写入 socket 或被连接复制，缓冲区可以复用
+	 */
+	private void send(boolean last, ByteBuffer... more) throws IOException {
+		List<ByteBuffer> out = new ArrayList<>(more.length + 4);
+		if (pendingHead != null) {
+			out.add(ByteBuffer.wrap(pendingHead));
+			pendingHead = null;
+		}
+		long length = count;
+		for (ByteBuffer b : more) {
+			length += b.remaining();
+		}
+		if (length > 0 && !head && bodyAllowed()) {
+			if (chunked) {
+				out.add(ByteBuffer.wrap((Long.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+			}
+			if (count > 0) {
+				out.add(ByteBuffer.wrap(buffer, 0, count));
+			}
+			for (ByteBuffer b : more) {
+				out.add(b);
+			}
+			if (chunked) {
+				out.add(ByteBuffer.wrap(CRLF));
+			}
+		}
+		if (last && chunked) {
+			out.add(ByteBuffer.wrap(LAST_CHUNK));
+		}
+		count = 0;
+		if (!out.isEmpty()) {
+			connection.write(out.toArray(new ByteBuffer[0]));
+		}
+	}
+
+	private boolean bodyAllowed() {
+		return status >= 200 && status != SC_NO_CONTENT && status != SC_NOT_MODIFIED;
+	}
+
+	/**
+	 * 生成状态行和响应头，在下一次 send 时和 body 一起写出
+	 *
+	 * @param last body 已全部在缓冲区中，可以直接给出 Content-Length
+	 */
+	private void commit(boolean last) {
+		if (committed) {
+			return;
+		}
+		committed = true;
+		String connectionHeader = getHeader("Connection");
+		if (connectionHeader != null && connectionHeader.toLowerCase(Locale.ROOT).contains("close")) {
+			keepAlive = false;
+		}
+		if (connection.server.closing()) {
+			keepAlive = false;
+		}
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(request.getProtocol()).append(' ').append(status).append(' ').append(reason(status)).append("\r\n");
+		for (int i = 0; i < headerNames.size(); i++) {
+			String name = headerNames.get(i);
+			if (!name.equalsIgnoreCase("Connection") && !name.equalsIgnoreCase("Content-Length")
+					&& !name.equalsIgnoreCase("Transfer-Encoding")) {
+				sb.append(name).append(": ").append(headerValues.get(i)).append("\r\n");
+			}
+		}
+		String type = getContentType();
+		if (type != null) {
+			sb.append("Content-Type: ").append(type).append("\r\n");
+		}
+		sb.append("Date: ").append(NioHttpServer.date()).append("\r\n");
+		if (bodyAllowed()) {
+			if (last && contentLength < 0) {
+				contentLength = count;
+			}
+			if (contentLength >= 0) {
+				sb.append("Content-Length: ").append(contentLength).append("\r\n");
+			} else if (request.getProtocol().equals("HTTP/1.1")) {
+				chunked = !head;
+				if (chunked) {
+					sb.append("Transfer-Encoding: chunked\r\n");
+				}
+			} else {
+				// HTTP/1.0 无法给出长度时以关闭连接结束 body
+				keepAlive = false;
+			}
+		}
+		if (!keepAlive) {
+			sb.append("Connection: close\r\n");
+		} else if (request.getProtocol().equals("HTTP/1.0")) {
+			sb.append("Connection: keep-alive\r\n");
+		}
+		sb.append("\r\n");
+		pendingHead = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	static String reason(int status) {
+		switch (status) {
+		case 100: return "Continue";
+		case 200: return "OK";
+		case 201: return "Created";
+		case 202: return "Accepted";
+		case 204: return "No Content";
+		case 206: return "Partial Content";
+		case 301: return "Moved Permanently";
+		case 302: return "Found";
+		case 303: return "See Other";
+		case 304: return "Not Modified";
+		case 307: return "Temporary Redirect";
+		case 400: return "Bad Request";
+		case 401: return "Unauthorized";
+		case 403: return "Forbidden";
+		case 404: return "Not Found";
+		case 405: return "Method Not Allowed";
+		case 406: return "Not Acceptable";
+		case 408: return "Request Timeout";
+		case 409: return "Conflict";
+		case 413: return "Payload Too Large";
+		case 415: return "Unsupported Media Type";
+		case 429: return "Too Many Requests";
+		case 431: return "Request Header Fields Too Large";
+		case 500: return "Internal Server Error";
+		case 501: return "Not Implemented";
+		case 502: return "Bad Gateway";
+		case 503: return "Service Unavailable";
+		case 504: return "Gateway Timeout";
+		case 505: return "HTTP Version Not Supported";
+		default: return "Unknown";
+		}
+	}
+
+	private int indexOf(String name) {
+		for (int i = 0; i < headerNames.size(); i++) {
+			if (headerNames.get(i).equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+		StringBuilder sb = new StringBuilder(cookie.getName()).append('=').append(cookie.getValue());
+		if (cookie.getPath() != null) {
+			sb.append("; Path=").append(cookie.getPath());
+		}
+		if (cookie.getMaxAge() >= 0) {
+			sb.append("; Max-Age=").append(cookie.getMaxAge());
+		}
+		if (cookie.isHttpOnly()) {
+			sb.append("; HttpOnly");
+		}
+		addHeader("Set-Cookie", sb.toString());
+	}
+
+	@Override
+	public boolean containsHeader(String name) {
+		return indexOf(name) >= 0;
+	}
+
+	@Override
+	public String encodeURL(String url) {
+		return url;
+	}
+
+	@Override
+	public String encodeRedirectURL(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeUrl(String url) {
+		return url;
+	}
+
+	@Override
+	@Deprecated
+	public String encodeRedirectUrl(String url) {
+		return url;
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		if (isCommitted()) {
+			throw new IllegalStateException("Response already committed");
+		}
+		resetBuffer();
+		status = sc;
+		if (msg != null && bodyAllowed()) {
+			setContentType("text/plain;charset=UTF-8");
+			byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+			write(bytes, 0, bytes.length);
+		}
+		closed = true;
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		sendError(sc, null);
+	}
+
+	@Override
+	public void sendRedirect(String location) {
+		if (isCommitted()) {
+			throw new IllegalStateException("Response already committed");
+		}
+		resetBuffer();
+		status = SC_FOUND;
+		setHeader("Location", location);
+		closed = true;
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		setHeader(name, NioHttpServer.formatDate(date));
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		addHeader(name, NioHttpServer.formatDate(date));
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if (committed) {
+			return;
+		}
+		if (name.equalsIgnoreCase("Content-Type")) {
+			setContentType(value);
+			return;
+		}
+		if (name.equalsIgnoreCase("Content-Length")) {
+			contentLength = value == null ? -1 : Long.parseLong(value.trim());
+			return;
+		}
+		int i;
+		while ((i = indexOf(name)) >= 0) {
+			headerNames.remove(i);
+			headerValues.remove(i);
+		}
+		if (value != null) {
+			headerNames.add(name);
+			headerValues.add(value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if (committed || value == null) {
+			return;
+		}
+		if (name.equalsIgnoreCase("Content-Type") || name.equalsIgnoreCase("Content-Length")) {
+			setHeader(name, value);
+			return;
+		}
+		headerNames.add(name);
+		headerValues.add(value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		addHeader(name, String.valueOf(value));
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		if (!committed) {
+			this.status = sc;
+		}
+	}
+
+	@Override
+	@Deprecated
+	public void setStatus(int sc, String sm) {
+		setStatus(sc);
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		if (name.equalsIgnoreCase("Content-Type")) {
+			return getContentType();
+		}
+		if (name.equalsIgnoreCase("Content-Length")) {
+			return contentLength < 0 ? null : String.valueOf(contentLength);
+		}
+		int i = indexOf(name);
+		return i < 0 ? null : headerValues.get(i);
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		List<String> values = new ArrayList<>(1);
+		for (int i = 0; i < headerNames.size(); i++) {
+			if (headerNames.get(i).equalsIgnoreCase(name)) {
+				values.add(headerValues.get(i));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return new LinkedHashSet<>(headerNames);
+	}
+
+	/**
+	 * 未设置时使用 UTF-8
+	 */
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding == null ? "UTF-8" : characterEncoding;
+	}
+
+	@Override
+	public String getContentType() {
+		if (contentType == null) {
+			return null;
+		}
+		if (characterEncoding != null && !contentType.toLowerCase(Locale.ROOT).contains("charset=")) {
+			return contentType + ";charset=" + characterEncoding;
+		}
+		return contentType;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		if (writer == null) {
+			Charset charset;
+			try {
+				charset = Charset.forName(getCharacterEncoding());
+			} catch (IllegalArgumentException e) {
+				charset = StandardCharsets.UTF_8;
+			}
+			if (characterEncoding == null) {
+				characterEncoding = charset.name();
+			}
+			writer = new PrintWriter(new OutputStreamWriter(outputStream, charset));
+		}
+		return writer;
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+		if (!committed && writer == null) {
+			this.characterEncoding = charset;
+		}
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		setContentLengthLong(len);
+	}
+
+	@Override
+	public void setContentLengthLong(long len) {
+		if (!committed) {
+			this.contentLength = len;
+		}
+	}
+
+	@Override
+	public void setContentType(String type) {
+		if (committed) {
+			return;
+		}
+		if (type == null) {
+			contentType = null;
+			return;
+		}
+		int i = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+		if (i >= 0) {
+			String charset = type.substring(i + 8);
+			int end = charset.indexOf(';');
+			setCharacterEncoding((end < 0 ? charset : charset.substring(0, end)).trim().replace("\"", ""));
+		}
+		contentType = type;
+	}
+
+	@Override
+	public void setBufferSize(int size) {
+		if (committed || count > 0) {
+			throw new IllegalStateException("Content has already been written");
+		}
+		if (size > buffer.length) {
+			buffer = new byte[size];
+		}
+	}
+
+	@Override
+	public int getBufferSize() {
+		return buffer.length;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			finishing = true;
+			writer.flush();
+			finishing = false;
+		}
+		commit(false);
+		send(false);
+	}
+
+	@Override
+	public void resetBuffer() {
+		if (committed) {
+			throw new IllegalStateException("Response already committed");
+		}
+		if (writer != null) {
+			finishing = true;
+			writer.flush();
+			finishing = false;
+		}
+		count = 0;
+	}
+
+	@Override
+	public boolean isCommitted() {
+		return committed || closed;
+	}
+
+	@Override
+	public void reset() {
+		resetBuffer();
+		headerNames.clear();
+		headerValues.clear();
+		status = SC_OK;
+		contentType = null;
+		contentLength = -1;
+		closed = false;
+	}
+
+	@Override
+	public void setLocale(Locale loc) {
+	}
+
+	@Override
+	public Locale getLocale() {
+		return Locale.ROOT;
+	}
+}
@@ -0,0 +1,47 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * 只提供 init 参数的 ServletConfig，对应 web.xml 中 mockmvc 的配置
+ */
+final class BootServletConfig implements ServletConfig {
+
+	private final ServletContext servletContext;
+	private final Map<String, String> initParameters = new HashMap<>();
+
+	BootServletConfig(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+
+	BootServletConfig initParameter(String name, String value) {
+		initParameters.put(name, value);
+		return this;
+	}
+
+	@Override
+	public String getServletName() {
+		return "mockmvc";
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return servletContext;
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return initParameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		return Collections.enumeration(initParameters.keySet());
+	}
+}
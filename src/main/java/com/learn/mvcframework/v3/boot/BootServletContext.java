@@ -0,0 +1,351 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.EventListener;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterRegistration;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.Servlet;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRegistration;
+import javax.servlet.SessionCookieConfig;
+import javax.servlet.SessionTrackingMode;
+import javax.servlet.descriptor.JspConfigDescriptor;
+
+/**
+ * MockBootstrap 的 ServletContext：context path 为空，资源从 classpath 读取，日志写标准输出/错误。
+ * <p>
+ * 只有一个 servlet，不支持运行期注册 servlet、filter 和监听器，也没有 RequestDispatcher，
+ * 这些方法抛出 IllegalStateException（与容器初始化完成后调用时的行为一致）
+ */
+final class BootServletContext implements ServletContext {
+
+	private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+	private final Map<String, String> initParameters = new ConcurrentHashMap<>();
+	// 分钟，来自 server.sessionTimeoutSeconds
+	private final int sessionTimeout;
+	private volatile String requestCharacterEncoding;
+	private volatile String responseCharacterEncoding;
+
+	BootServletContext(int sessionTimeoutSeconds) {
+		this.sessionTimeout = sessionTimeoutSeconds / 60;
+	}
+
+	private static IllegalStateException notSupported(String what) {
+		return new IllegalStateException(what + " is not supported by MockBootstrap");
+	}
+
+	@Override
+	public String getContextPath() {
+		return "";
+	}
+
+	@Override
+	public ServletContext getContext(String uripath) {
+		return this;
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 4;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public int getEffectiveMajorVersion() {
+		return 4;
+	}
+
+	@Override
+	public int getEffectiveMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public String getMimeType(String file) {
+		return URLConnection.guessContentTypeFromName(file);
+	}
+
+	@Override
+	public Set<String> getResourcePaths(String path) {
+		return null;
+	}
+
+	@Override
+	public URL getResource(String path) {
+		return getClassLoader().getResource(path.startsWith("/") ? path.substring(1) : path);
+	}
+
+	@Override
+	public InputStream getResourceAsStream(String path) {
+		return getClassLoader().getResourceAsStream(path.startsWith("/") ? path.substring(1) : path);
+	}
+
+	@Override
+	public RequestDispatcher getRequestDispatcher(String path) {
+		return null;
+	}
+
+	@Override
+	public RequestDispatcher getNamedDispatcher(String name) {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public Servlet getServlet(String name) {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public Enumeration<Servlet> getServlets() {
+		return Collections.emptyEnumeration();
+	}
+
+	@Override
+	@Deprecated
+	public Enumeration<String> getServletNames() {
+		return Collections.emptyEnumeration();
+	}
+
+	@Override
+	public void log(String msg) {
+		System.out.println(msg);
+	}
+
+	@Override
+	@Deprecated
+	public void log(Exception exception, String msg) {
+		log(msg, exception);
+	}
+
+	@Override
+	public void log(String message, Throwable throwable) {
+		System.err.println(message);
+		if (throwable != null) {
+			throwable.printStackTrace();
+		}
+	}
+
+	@Override
+	public String getRealPath(String path) {
+		return null;
+	}
+
+	@Override
+	public String getServerInfo() {
+		return "MockBootstrap";
+	}
+
+	@Override
+	public String getInitParameter(String name) {
+		return initParameters.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getInitParameterNames() {
+		return Collections.enumeration(initParameters.keySet());
+	}
+
+	@Override
+	public boolean setInitParameter(String name, String value) {
+		return initParameters.putIfAbsent(name, value) == null;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(attributes.keySet());
+	}
+
+	@Override
+	public void setAttribute(String name, Object object) {
+		if (object == null) {
+			attributes.remove(name);
+		} else {
+			attributes.put(name, object);
+		}
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+
+	@Override
+	public String getServletContextName() {
+		return "mockmvc";
+	}
+
+	@Override
+	public ServletRegistration.Dynamic addServlet(String servletName, String className) {
+		throw notSupported("Adding servlets");
+	}
+
+	@Override
+	public ServletRegistration.Dynamic addServlet(String servletName, Servlet servlet) {
+		throw notSupported("Adding servlets");
+	}
+
+	@Override
+	public ServletRegistration.Dynamic addServlet(String servletName, Class<? extends Servlet> servletClass) {
+		throw notSupported("Adding servlets");
+	}
+
+	@Override
+	public ServletRegistration.Dynamic addJspFile(String servletName, String jspFile) {
+		throw notSupported("Adding JSP files");
+	}
+
+	@Override
+	public <T extends Servlet> T createServlet(Class<T> clazz) {
+		throw notSupported("Creating servlets");
+	}
+
+	@Override
+	public ServletRegistration getServletRegistration(String servletName) {
+		return null;
+	}
+
+	@Override
+	public Map<String, ? extends ServletRegistration> getServletRegistrations() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public FilterRegistration.Dynamic addFilter(String filterName, String className) {
+		throw notSupported("Adding filters");
+	}
+
+	@Override
+	public FilterRegistration.Dynamic addFilter(String filterName, Filter filter) {
+		throw notSupported("Adding filters");
+	}
+
+	@Override
+	public FilterRegistration.Dynamic addFilter(String filterName, Class<? extends Filter> filterClass) {
+		throw notSupported("Adding filters");
+	}
+
+	@Override
+	public <T extends Filter> T createFilter(Class<T> clazz) {
+		throw notSupported("Creating filters");
+	}
+
+	@Override
+	public FilterRegistration getFilterRegistration(String filterName) {
+		return null;
+	}
+
+	@Override
+	public Map<String, ? extends FilterRegistration> getFilterRegistrations() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public SessionCookieConfig getSessionCookieConfig() {
+		return null;
+	}
+
+	@Override
+	public void setSessionTrackingModes(Set<SessionTrackingMode> sessionTrackingModes) {
+		throw notSupported("Changing session tracking modes");
+	}
+
+	@Override
+	public Set<SessionTrackingMode> getDefaultSessionTrackingModes() {
+		return EnumSet.of(SessionTrackingMode.COOKIE);
+	}
+
+	@Override
+	public Set<SessionTrackingMode> getEffectiveSessionTrackingModes() {
+		return EnumSet.of(SessionTrackingMode.COOKIE);
+	}
+
+	@Override
+	public void addListener(String className) {
+		throw notSupported("Adding listeners");
+	}
+
+	@Override
+	public <T extends EventListener> void addListener(T t) {
+		throw notSupported("Adding listeners");
+	}
+
+	@Override
+	public void addListener(Class<? extends EventListener> listenerClass) {
+		throw notSupported("Adding listeners");
+	}
+
+	@Override
+	public <T extends EventListener> T createListener(Class<T> clazz) {
+		throw notSupported("Creating listeners");
+	}
+
+	@Override
+	public JspConfigDescriptor getJspConfigDescriptor() {
+		return null;
+	}
+
+	@Override
+	public ClassLoader getClassLoader() {
+		return BootServletContext.class.getClassLoader();
+	}
+
+	@Override
+	public void declareRoles(String... roleNames) {
+	}
+
+	@Override
+	public String getVirtualServerName() {
+		return "localhost";
+	}
+
+	@Override
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	@Override
+	public void setSessionTimeout(int sessionTimeout) {
+		throw notSupported("Changing the session timeout at runtime");
+	}
+
+	@Override
+	public String getRequestCharacterEncoding() {
+		return requestCharacterEncoding;
+	}
+
+	@Override
+	public void setRequestCharacterEncoding(String encoding) {
+		this.requestCharacterEncoding = encoding;
+	}
+
+	@Override
+	public String getResponseCharacterEncoding() {
+		return responseCharacterEncoding;
+	}
+
+	@Override
+	public void setResponseCharacterEncoding(String encoding) {
+		this.responseCharacterEncoding = encoding;
+	}
+}
@@ -0,0 +1,256 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+
+/**
+ * {@link NioHttpServer} 的 session，保存在进程内存中，id 通过 JSESSIONID cookie 传递。
+ * <p>
+ * 过期的 session 在访问时和每分钟的定时清理中移除，不持久化、不在多个进程间共享，
+ * 不支持 URL 重写和 session 监听器。超过 maxSessions 时创建新 session 抛出 IllegalStateException
+ */
+final class BootSessions {
+
+	static final String COOKIE = "JSESSIONID";
+	static final long SWEEP_INTERVAL_MS = 60 * 1000;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final int timeoutSeconds;
+	private final int maxSessions;
+	private final SecureRandom random = new SecureRandom();
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+	BootSessions(int timeoutSeconds, int maxSessions) {
+		this.timeoutSeconds = timeoutSeconds;
+		this.maxSessions = Math.max(maxSessions, 1);
+	}
+
+	/**
+	 * @return 未过期的 session 并更新访问时间，不存在或已过期返回 null
+	 */
+	Session find(String id) {
+		if (id == null) {
+			return null;
+		}
+		Session session = sessions.get(id);
+		if (session == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (session.expired(now)) {
+			session.expire();
+			return null;
+		}
+		session.access(now);
+		return session;
+	}
+
+	Session create() {
+		if (sessions.size() >= maxSessions) {
+			sweep();
+			if (sessions.size() >= maxSessions) {
+				throw new IllegalStateException("Too many sessions, server.maxSessions=" + maxSessions);
+			}
+		}
+		Session session = new Session(this, newId(), timeoutSeconds);
+		sessions.put(session.id, session);
+		return session;
+	}
+
+	/**
+	 * @return 换成新 id 的同一个 session
+	 */
+	String changeId(Session session) {
+		String id = newId();
+		synchronized (session) {
+			session.checkValid();
+			sessions.remove(session.id, session);
+			session.id = id;
+			sessions.put(id, session);
+		}
+		return id;
+	}
+
+	/**
+	 * 移除过期的 session，定时线程上调用
+	 */
+	void sweep() {
+		long now = System.currentTimeMillis();
+		for (Session session : sessions.values()) {
+			if (session.expired(now)) {
+				session.expire();
+			}
+		}
+	}
+
+	private String newId() {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	static final class Session implements HttpSession {
+		private final BootSessions owner;
+		private final long creationTime = System.currentTimeMillis();
+		private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+		private volatile String id;
+		private volatile long lastAccessedTime = creationTime;
+		private volatile int maxInactiveInterval;
+		// 客户端还没有带着 id 回来
+		private volatile boolean isNew = true;
+		private volatile boolean valid = true;
+
+		Session(BootSessions owner, String id, int maxInactiveInterval) {
+			this.owner = owner;
+			this.id = id;
+			this.maxInactiveInterval = maxInactiveInterval;
+		}
+
+		void access(long now) {
+			lastAccessedTime = now;
+			isNew = false;
+		}
+
+		boolean expired(long now) {
+			int interval = maxInactiveInterval;
+			return interval > 0 && now - lastAccessedTime > interval * 1000L;
+		}
+
+		boolean isValid() {
+			return valid;
+		}
+
+		private void checkValid() {
+			if (!valid) {
+				throw new IllegalStateException("Session " + id + " has been invalidated");
+			}
+		}
+
+		@Override
+		public long getCreationTime() {
+			checkValid();
+			return creationTime;
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public long getLastAccessedTime() {
+			checkValid();
+			return lastAccessedTime;
+		}
+
+		@Override
+		public ServletContext getServletContext() {
+			return null;
+		}
+
+		@Override
+		public void setMaxInactiveInterval(int interval) {
+			maxInactiveInterval = interval;
+		}
+
+		@Override
+		public int getMaxInactiveInterval() {
+			return maxInactiveInterval;
+		}
+
+		@Override
+		@Deprecated
+		public HttpSessionContext getSessionContext() {
+			return null;
+		}
+
+		@Override
+		public Object getAttribute(String name) {
+			checkValid();
+			return attributes.get(name);
+		}
+
+		@Override
+		@Deprecated
+		public Object getValue(String name) {
+			return getAttribute(name);
+		}
+
+		@Override
+		public Enumeration<String> getAttributeNames() {
+			checkValid();
+			return Collections.enumeration(attributes.keySet());
+		}
+
+		@Override
+		@Deprecated
+		public String[] getValueNames() {
+			checkValid();
+			return attributes.keySet().toArray(new String[0]);
+		}
+
+		@Override
+		public void setAttribute(String name, Object value) {
+			checkValid();
+			if (value == null) {
+				attributes.remove(name);
+			} else {
+				attributes.put(name, value);
+			}
+		}
+
+		@Override
+		@Deprecated
+		public void putValue(String name, Object value) {
+			setAttribute(name, value);
+		}
+
+		@Override
+		public void removeAttribute(String name) {
+			checkValid();
+			attributes.remove(name);
+		}
+
+		@Override
+		@Deprecated
+		public void removeValue(String name) {
+			removeAttribute(name);
+		}
+
+		@Override
+		public synchronized void invalidate() {
+			checkValid();
+			expire();
+		}
+
+		/**
+		 * 与 invalidate 相同，但可以重复调用
+		 */
+		synchronized void expire() {
+			if (valid) {
+				valid = false;
+				owner.sessions.remove(id, this);
+				attributes.clear();
+			}
+		}
+
+		@Override
+		public boolean isNew() {
+			checkValid();
+			return isNew;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+import com.learn.mvcframework.v3.boot.HttpRequestParser.HttpParseException;
+
+/**
+ * 一个客户端连接。
+ * <p>
+ * 读取、解析和 interest 的修改只在所属 event loop 线程上进行。同一连接上的请求按顺序逐个处理，
+ * 前一个请求的响应结束前，流水线上后续请求的字节只留在读缓冲区中，缓冲区满时暂停读取。
+ * <p>
+ * 写入可以来自 worker 线程：socket 空闲时直接写，写不完的部分复制到待写队列，由 event loop
+ * 在可写时继续写出，待写字节超过 highWater 时写入线程等待
+ */
+final class HttpConnection {
+
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	final NioHttpServer server;
+	final NioHttpServer.EventLoop loop;
+	final SocketChannel channel;
+	final InetSocketAddress local;
+	final InetSocketAddress remote;
+	SelectionKey key;
+
+	private final ByteBuffer readBuf;
+	private final HttpRequestParser parser;
+	private final long highWater;
+
+	// 以下字段只在 event loop 线程上访问
+	private boolean inFlight;
+	private boolean inputClosed;
+	private boolean continueSent;
+	long lastActive = System.nanoTime();
+
+	// 以下字段在 this 上同步
+	private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+	private long pendingBytes;
+	private boolean closed;
+	private boolean closeWhenFlushed;
+
+	HttpConnection(NioHttpServer server, NioHttpServer.EventLoop loop, SocketChannel channel) throws IOException {
+		this.server = server;
+		this.loop = loop;
+		this.channel = channel;
+		this.local = (InetSocketAddress) channel.getLocalAddress();
+		this.remote = (InetSocketAddress) channel.getRemoteAddress();
+		this.readBuf = ByteBuffer.allocate(server.config.maxHeaderBytes);
+		this.parser = new HttpRequestParser(server.config.maxHeaderBytes, server.config.maxBodyBytes);
+		this.highWater = server.config.writeHighWaterBytes;
+	}
+
+	boolean idle(long now, long timeoutNanos) {
+		return !inFlight && now - lastActive > timeoutNanos;
+	}
+
+	void onReadable() {
+		int n;
+		try {
+			n = channel.read(readBuf);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		if (n < 0) {
+			inputClosed = true;
+			setInterest(SelectionKey.OP_READ, false);
+			if (!inFlight) {
+				processInput();
+			}
+			return;
+		}
+		lastActive = System.nanoTime();
+		if (!inFlight) {
+			processInput();
+		} else if (!readBuf.hasRemaining()) {
+			// 流水线上的请求积满了缓冲区，等当前请求结束再读
+			setInterest(SelectionKey.OP_READ, false);
+		}
+	}
+
+	/**
+	 * 解析下一个请求并交给 worker，只在没有请求在处理时调用
+	 */
+	private void processInput() {
+		BootHttpRequest request;
+		readBuf.flip();
+		try {
+			request = parser.parse(readBuf);
+		} catch (HttpParseException e) {
+			reject(e.status, e.getMessage());
+			return;
+		} finally {
+			readBuf.compact();
+		}
+		if (request == null) {
+			if (inputClosed) {
+				closeWhenFlushed();
+				return;
+			}
+			if (!continueSent && parser.expectsContinue()) {
+				continueSent = true;
+				try {
+					write(new ByteBuffer[] { ByteBuffer.wrap(CONTINUE) }, false);
+				} catch (IOException e) {
+					close();
+					return;
+				}
+			}
+			setInterest(SelectionKey.OP_READ, true);
+			return;
+		}
+		continueSent = false;
+		inFlight = true;
+		server.dispatch(this, request);
+	}
+
+	/**
+	 * 当前请求的响应已写出，可以从任意线程调用
+	 */
+	void exchangeDone(final boolean keepAlive) {
+		loop.execute(() -> {
+			inFlight = false;
+			lastActive = System.nanoTime();
+			if (!keepAlive) {
+				closeWhenFlushed();
+			} else if (!closed()) {
+				processInput();
+			}
+		});
+	}
+
+	/**
+	 * 在 event loop 线程上直接回复错误并关闭连接，不经过 servlet
+	 */
+	void reject(int status, String message) {
+		inFlight = true;
+		setInterest(SelectionKey.OP_READ, false);
+		byte[] body = (message == null ? "" : message).getBytes(StandardCharsets.UTF_8);
+		String head = "HTTP/1.1 " + status + " " + BootHttpResponse.reason(status) + "\r\n"
+				+ "Content-Type: text/plain;charset=UTF-8\r\n" + "Content-Length: " + body.length + "\r\n" + "Date: "
+				+ NioHttpServer.date() + "\r\n" + "Connection: close\r\n\r\n";
+		try {
+			write(new ByteBuffer[] { ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)), ByteBuffer.wrap(body) },
+					false);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		closeWhenFlushed();
+	}
+
+	/**
+	 * 写出 buffers，返回时数据已写入 socket 或已复制到待写队列，调用方可以复用 buffers
+	 *
+	 * @param block 待写字节超过 highWater 时是否等待，event loop 线程上必须为 false
+	 */
+	void write(ByteBuffer[] buffers, boolean block) throws IOException {
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("Connection closed");
+			}
+			if (pending.isEmpty()) {
+				long written;
+				do {
+					written = channel.write(buffers);
+				} while (written > 0 && remaining(buffers) > 0);
+			}
+			if (remaining(buffers) == 0) {
+				return;
+			}
+			boolean wasEmpty = pending.isEmpty();
+			for (ByteBuffer b : buffers) {
+				if (b.hasRemaining()) {
+					ByteBuffer copy = ByteBuffer.allocate(b.remaining());
+					copy.put(b).flip();
+					pending.add(copy);
+					pendingBytes += copy.remaining();
+				}
+			}
+			if (wasEmpty) {
+				loop.execute(() -> setInterest(SelectionKey.OP_WRITE, true));
+			}
+			while (block && pendingBytes > highWater && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the client to read", e);
+				}
+			}
+			if (closed) {
+				throw new IOException("Connection closed");
+			}
+		}
+	}
+
+	void write(ByteBuffer... buffers) throws IOException {
+		write(buffers, true);
+	}
+
+	private static long remaining(ByteBuffer[] buffers) {
+		long n = 0;
+		for (ByteBuffer b : buffers) {
+			n += b.remaining();
+		}
+		return n;
+	}
+
+	void onWritable() {
+		boolean close = false;
+		synchronized (this) {
+			try {
+				while (!pending.isEmpty()) {
+					ByteBuffer b = pending.peek();
+					pendingBytes -= channel.write(b);
+					if (b.hasRemaining()) {
+						break;
+					}
+					pending.poll();
+				}
+			} catch (IOException e) {
+				close = true;
+			}
+			if (pending.isEmpty()) {
+				setInterest(SelectionKey.OP_WRITE, false);
+				close |= closeWhenFlushed;
+			}
+			notifyAll();
+		}
+		if (close) {
+			close();
+		}
+	}
+
+	private void closeWhenFlushed() {
+		synchronized (this) {
+			if (!pending.isEmpty()) {
+				closeWhenFlushed = true;
+				return;
+			}
+		}
+		close();
+	}
+
+	synchronized boolean closed() {
+		return closed;
+	}
+
+	void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			pending.clear();
+			notifyAll();
+		}
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// 已经断开
+		}
+	}
+
+	private void setInterest(int op, boolean on) {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		int ops = key.interestOps();
+		int updated = on ? ops | op : ops & ~op;
+		if (updated != ops) {
+			key.interestOps(updated);
+		}
+	}
+}
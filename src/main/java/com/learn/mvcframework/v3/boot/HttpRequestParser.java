@@ -0,0 +1,224 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 每个连接一个的 HTTP/1.1 请求解析器，在 event loop 线程上按到达的字节增量解析。
+ * <p>
+ * 请求头必须完整地落在连接的读缓冲区内（不超过 maxHeaderBytes），请求体按 Content-Length
+ * 直接拷贝到请求自己的数组中，不要求缓冲区放得下整个请求体。不支持分块编码的请求体。
+ */
+final class HttpRequestParser {
+
+	/**
+	 * 无法解析的请求，连接回复 status 后关闭
+	 */
+	static final class HttpParseException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		final int status;
+
+		HttpParseException(int status, String message) {
+			super(message, null, false, false);
+			this.status = status;
+		}
+	}
+
+	private final int maxHeaderBytes;
+	private final long maxBodyBytes;
+
+	// 请求头已解析、等待请求体的请求
+	private BootHttpRequest pending;
+	private int bodyFilled;
+
+	HttpRequestParser(int maxHeaderBytes, long maxBodyBytes) {
+		this.maxHeaderBytes = maxHeaderBytes;
+		this.maxBodyBytes = maxBodyBytes;
+	}
+
+	/**
+	 * @return 请求头已解析、请求体未收完且客户端发送了 Expect: 100-continue
+	 */
+	boolean expectsContinue() {
+		return pending != null && bodyFilled == 0 && "100-continue".equalsIgnoreCase(pending.getHeader("Expect"));
+	}
+
+	/**
+	 * @param in 读模式的堆缓冲区，解析掉的字节被消费
+	 * @return 完整的请求，字节不够时返回 null
+	 */
+	BootHttpRequest parse(ByteBuffer in) throws HttpParseException {
+		if (pending == null) {
+			pending = parseHead(in);
+			if (pending == null) {
+				return null;
+			}
+			bodyFilled = 0;
+		}
+		byte[] body = pending.body;
+		int n = Math.min(in.remaining(), body.length - bodyFilled);
+		in.get(body, bodyFilled, n);
+		bodyFilled += n;
+		if (bodyFilled < body.length) {
+			return null;
+		}
+		BootHttpRequest request = pending;
+		pending = null;
+		return request;
+	}
+
+	private BootHttpRequest parseHead(ByteBuffer in) throws HttpParseException {
+		byte[] a = in.array();
+		int start = in.arrayOffset() + in.position();
+		int end = in.arrayOffset() + in.limit();
+		// 请求之间允许多余的空行
+		while (start < end && (a[start] == '\r' || a[start] == '\n')) {
+			start++;
+		}
+		int headEnd = -1;
+		for (int i = start + 3; i < end; i++) {
+			if (a[i] == '\n' && a[i - 1] == '\r' && a[i - 2] == '\n' && a[i - 3] == '\r') {
+				headEnd = i - 3;
+				break;
+			}
+		}
+		if (headEnd < 0) {
+			in.position(start - in.arrayOffset());
+			if (end - start >= maxHeaderBytes) {
+				throw new HttpParseException(431, "Request header is larger than " + maxHeaderBytes + " bytes");
+			}
+			return null;
+		}
+
+		// 请求行
+		int lineEnd = indexOf(a, start, headEnd, '\r');
+		if (lineEnd < 0) {
+			lineEnd = headEnd;
+		}
+		checkLineEnd(a, start, lineEnd, headEnd);
+		int sp1 = indexOf(a, start, lineEnd, ' ');
+		int sp2 = sp1 < 0 ? -1 : indexOf(a, sp1 + 1, lineEnd, ' ');
+		if (sp1 <= start || sp2 <= sp1 + 1) {
+			throw new HttpParseException(400, "Malformed request line");
+		}
+		if (!isToken(a, start, sp1)) {
+			throw new HttpParseException(400, "Malformed request line");
+		}
+		String method = ascii(a, start, sp1);
+		String target = ascii(a, sp1 + 1, sp2);
+		String protocol = ascii(a, sp2 + 1, lineEnd);
+		if (!protocol.equals("HTTP/1.1") && !protocol.equals("HTTP/1.0")) {
+			throw new HttpParseException(505, "Unsupported protocol " + protocol);
+		}
+		if (target.isEmpty() || target.charAt(0) != '/') {
+			throw new HttpParseException(400, "Only origin-form request targets are supported");
+		}
+
+		// 请求头
+		BootHttpRequest request = new BootHttpRequest(method, target, protocol);
+		long contentLength = 0;
+		boolean hasContentLength = false;
+		int pos = lineEnd + 2;
+		while (pos < headEnd + 2) {
+			int eol = indexOf(a, pos, headEnd + 2, '\r');
+			if (eol < 0) {
+				eol = headEnd;
+			}
+			if (a[pos] == ' ' || a[pos] == '\t') {
+				throw new HttpParseException(400, "Folded header lines are not supported");
+			}
+			checkLineEnd(a, pos, eol, headEnd);
+			int colon = indexOf(a, pos, eol, ':');
+			// 名字与冒号之间不允许空白，否则 "Transfer-Encoding :" 会绕过下面的检查
+			if (colon <= pos || !isToken(a, pos, colon)) {
+				throw new HttpParseException(400, "Malformed header line");
+			}
+			String name = ascii(a, pos, colon);
+			int valueStart = colon + 1;
+			int valueEnd = eol;
+			while (valueStart < valueEnd && (a[valueStart] == ' ' || a[valueStart] == '\t')) {
+				valueStart++;
+			}
+			while (valueEnd > valueStart && (a[valueEnd - 1] == ' ' || a[valueEnd - 1] == '\t')) {
+				valueEnd--;
+			}
+			String value = new String(a, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+			if (name.equalsIgnoreCase("Content-Length")) {
+				// 只接受 1*DIGIT，Long.parseLong 还会接受 "+5"
+				long length = -1;
+				if (!value.isEmpty() && value.length() <= 18 && isDigits(value)) {
+					length = Long.parseLong(value);
+				}
+				if (length < 0) {
+					throw new HttpParseException(400, "Invalid Content-Length");
+				}
+				// 重复且不一致时无法确定请求体边界（请求走私），相同的重复值按一个处理
+				if (hasContentLength && length != contentLength) {
+					throw new HttpParseException(400, "Conflicting Content-Length headers");
+				}
+				contentLength = length;
+				hasContentLength = true;
+			} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+				throw new HttpParseException(501, "Transfer-Encoding request bodies are not supported");
+			}
+			request.addHeader(name, value);
+			pos = eol + 2;
+		}
+		if (contentLength > maxBodyBytes) {
+			throw new HttpParseException(413, "Request body exceeds " + maxBodyBytes + " bytes");
+		}
+		request.body = contentLength == 0 ? BootHttpRequest.EMPTY : new byte[(int) contentLength];
+		in.position(headEnd + 4 - in.arrayOffset());
+		return request;
+	}
+
+	/**
+	 * 一行以 CRLF 结束，行内不能有单独的 LF 或 CR
+	 */
+	private static void checkLineEnd(byte[] a, int from, int eol, int headEnd) throws HttpParseException {
+		if (indexOf(a, from, eol, '\n') >= 0 || (eol < headEnd && a[eol + 1] != '\n')) {
+			throw new HttpParseException(400, "Bare CR or LF in request header");
+		}
+	}
+
+	/**
+	 * RFC 9110 token：1*tchar
+	 */
+	static boolean isToken(byte[] a, int from, int to) {
+		if (from >= to) {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			int c = a[i] & 0xff;
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+					|| "!#$%&'*+-.^_`|~".indexOf(c) >= 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigits(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] a, int from, int to, char c) {
+		for (int i = from; i < to; i++) {
+			if (a[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String ascii(byte[] a, int from, int to) {
+		return new String(a, from, to - from, StandardCharsets.ISO_8859_1);
+	}
+}
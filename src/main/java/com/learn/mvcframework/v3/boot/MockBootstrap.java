@@ -0,0 +1,57 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet;
+
+/**
+ * 不需要 servlet 容器的启动入口，在 {@link NioHttpServer} 上运行 {@link MockDispatcherServlet}，
+ * 类扫描、bean 装配、路由、参数绑定和调用与部署在 Jetty 中时相同。
+ * <pre>
+ * mvn compile
+ * java -cp target/classes:javax.servlet-api-4.0.1.jar com.learn.mvcframework.v3.boot.MockBootstrap [配置文件] [端口]
+ * </pre>
+ * 配置文件默认为 classpath 上的 application.properties，端口默认取其中的 server.port。
+ * session 只保存在本进程内存中，重启后丢失，多个实例之间不共享
+ */
+public final class MockBootstrap {
+
+	private MockBootstrap() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		long start = System.nanoTime();
+		String location = args.length > 0 ? args[0] : "application.properties";
+		Properties props = loadProperties(location);
+		int port = args.length > 1 ? Integer.parseInt(args[1])
+				: NioHttpServer.Config.intProperty(props, "server.port", 8080);
+		NioHttpServer.Config config = new NioHttpServer.Config(props, port);
+
+		final MockDispatcherServlet servlet = new MockDispatcherServlet();
+		BootServletContext servletContext = new BootServletContext(config.sessionTimeoutSeconds);
+		servlet.init(new BootServletConfig(servletContext).initParameter("configrationLocation", location));
+		final NioHttpServer server = new NioHttpServer(servlet, servletContext, config);
+		server.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			servlet.destroy();
+		}, "mock-boot-shutdown"));
+		System.out.println("Mock MVC boot server listening on port " + server.port() + " with " + config.selectors
+				+ " selectors and " + config.workers + " workers, started in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+	}
+
+	private static Properties loadProperties(String location) throws IOException {
+		Properties props = new Properties();
+		try (InputStream in = MockBootstrap.class.getClassLoader().getResourceAsStream(location)) {
+			if (in == null) {
+				throw new IllegalStateException("config " + location + " not found on the classpath");
+			}
+			props.load(in);
+		}
+		return props;
+	}
+}
@@ -0,0 +1,450 @@
+package com.learn.mvcframework.v3.boot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Servlet;
+import javax.servlet.ServletContext;
+
+/**
+ * 最小的 HTTP/1.1 服务端，把请求交给一个 {@link Servlet}。
+ * <p>
+ * acceptor 线程阻塞 accept，新连接轮流分给 selectors 个 event loop（默认每个 CPU 一个），
+ * event loop 负责读取、解析和写出剩余数据，servlet 在 worker 线程池中执行。
+ * 支持 keep-alive 和流水线（同一连接上的请求按顺序逐个处理）、Expect: 100-continue 和空闲超时，
+ * session 保存在内存中（{@link BootSessions}），不支持 TLS、分块编码的请求体和协议升级。worker 队列满时直接回复 503 并关闭连接
+ */
+final class NioHttpServer implements Closeable {
+
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	private static volatile DateStamp dateStamp = new DateStamp(0, "");
+
+	/**
+	 * 按秒缓存的 Date 响应头
+	 */
+	private static final class DateStamp {
+		final long second;
+		final String text;
+
+		DateStamp(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
+
+	static final class Config {
+		final int port;
+		final int selectors;
+		final int workers;
+		final int workerQueue;
+		final long keepAliveTimeoutMs;
+		final int maxHeaderBytes;
+		final long maxBodyBytes;
+		final int responseBufferSize;
+		final long writeHighWaterBytes;
+		final int sessionTimeoutSeconds;
+		final int maxSessions;
+
+		Config(Properties props, int port) {
+			this.port = port;
+			int selectors = intProperty(props, "server.selectors", 0);
+			this.selectors = selectors > 0 ? selectors : Runtime.getRuntime().availableProcessors();
+			this.workers = Math.max(intProperty(props, "server.workers", 128), 1);
+			this.workerQueue = Math.max(intProperty(props, "server.workerQueue", 1024), 1);
+			this.keepAliveTimeoutMs = intProperty(props, "server.keepAliveTimeoutMs", 30000);
+			this.maxHeaderBytes = Math.max(intProperty(props, "server.maxHeaderBytes", 8 * 1024), 1024);
+			this.maxBodyBytes = intProperty(props, "server.maxBodyBytes", 1024 * 1024);
+			this.responseBufferSize = Math.max(intProperty(props, "server.responseBufferSize", 8 * 1024), 512);
+			this.writeHighWaterBytes = intProperty(props, "server.writeHighWaterBytes", 256 * 1024);
+			this.sessionTimeoutSeconds = intProperty(props, "server.sessionTimeoutSeconds", 1800);
+			this.maxSessions = intProperty(props, "server.maxSessions", 10000);
+		}
+
+		static int intProperty(Properties props, String key, int defaultValue) {
+			String value = props.getProperty(key);
+			return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+		}
+	}
+
+	final Config config;
+	final BootSessions sessions;
+	private final Servlet servlet;
+	private final ServletContext servletContext;
+	private ServerSocketChannel serverChannel;
+	private EventLoop[] loops;
+	private Thread acceptor;
+	private ThreadPoolExecutor workers;
+	private ScheduledThreadPoolExecutor timer;
+	private volatile boolean closing;
+
+	final LongAdder connections = new LongAdder();
+	final LongAdder requests = new LongAdder();
+	final LongAdder rejected = new LongAdder();
+
+	NioHttpServer(Servlet servlet, ServletContext servletContext, Config config) {
+		this.servlet = servlet;
+		this.servletContext = servletContext;
+		this.config = config;
+		this.sessions = new BootSessions(config.sessionTimeoutSeconds, config.maxSessions);
+	}
+
+	void start() throws IOException {
+		workers = new ThreadPoolExecutor(config.workers, config.workers, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(config.workerQueue), threadFactory("mock-boot-worker-", false));
+		timer = new ScheduledThreadPoolExecutor(1, threadFactory("mock-boot-timer-", true));
+		timer.setRemoveOnCancelPolicy(true);
+		timer.scheduleWithFixedDelay(sessions::sweep, BootSessions.SWEEP_INTERVAL_MS, BootSessions.SWEEP_INTERVAL_MS,
+				TimeUnit.MILLISECONDS);
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(new InetSocketAddress(config.port), 1024);
+		loops = new EventLoop[config.selectors];
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new EventLoop(this, "mock-boot-selector-" + i);
+			loops[i].thread.start();
+		}
+		acceptor = new Thread(this::accept, "mock-boot-acceptor");
+		acceptor.start();
+	}
+
+	int port() {
+		try {
+			return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+		} catch (IOException e) {
+			return config.port;
+		}
+	}
+
+	boolean closing() {
+		return closing;
+	}
+
+	private void accept() {
+		int next = 0;
+		while (!closing) {
+			SocketChannel channel;
+			try {
+				channel = serverChannel.accept();
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				// 文件句柄耗尽等，稍后重试
+				e.printStackTrace();
+				sleepQuietly(100);
+				continue;
+			}
+			try {
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				channel.configureBlocking(false);
+			} catch (IOException e) {
+				closeQuietly(channel);
+				continue;
+			}
+			connections.increment();
+			loops[next++ % loops.length].register(channel);
+		}
+	}
+
+	/**
+	 * event loop 线程上调用，把解析好的请求交给 worker
+	 */
+	void dispatch(HttpConnection connection, BootHttpRequest request) {
+		BootHttpResponse response = new BootHttpResponse(connection, request, config.responseBufferSize);
+		request.attach(this, response, connection.local, connection.remote);
+		requests.increment();
+		try {
+			workers.execute(() -> service(connection, request, response));
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			connection.reject(503, "Server busy");
+		}
+	}
+
+	private void service(HttpConnection connection, BootHttpRequest request, BootHttpResponse response) {
+		try {
+			servlet.service(request, response);
+		} catch (Throwable e) {
+			e.printStackTrace();
+			if (response.isCommitted()) {
+				// 响应已经部分写出，只能断开
+				connection.close();
+				return;
+			}
+			response.reset();
+			response.setStatus(500);
+		}
+		BootAsyncContext async = request.asyncContext();
+		if (async != null) {
+			async.serviceReturned();
+			return;
+		}
+		List<AsyncListener> listeners = request.takeDispatchedListeners();
+		if (!listeners.isEmpty()) {
+			// dispatch 之后没有再次开始异步
+			AsyncEvent event = new AsyncEvent(null, request, response);
+			for (AsyncListener listener : listeners) {
+				try {
+					listener.onComplete(event);
+				} catch (IOException | RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		complete(response);
+	}
+
+	/**
+	 * AsyncContext.dispatch 时调用，在 worker 上重新调用 servlet
+	 */
+	void redispatch(BootHttpRequest request, BootHttpResponse response) {
+		HttpConnection connection = response.connection();
+		try {
+			workers.execute(() -> service(connection, request, response));
+		} catch (RejectedExecutionException e) {
+			// worker 饱和时在当前线程上执行，请求已经被接受，不能回 503
+			service(connection, request, response);
+		}
+	}
+
+	ServletContext servletContext() {
+		return servletContext;
+	}
+
+	/**
+	 * 请求结束，写出剩余响应并让连接处理下一个请求
+	 */
+	void complete(BootHttpResponse response) {
+		HttpConnection connection = response.connection();
+		boolean keepAlive;
+		try {
+			keepAlive = response.finish();
+		} catch (IOException e) {
+			connection.close();
+			return;
+		}
+		connection.exchangeDone(keepAlive);
+	}
+
+	void execute(Runnable task) {
+		workers.execute(task);
+	}
+
+	/**
+	 * 到期后在 worker 线程上执行，worker 饱和时在计时线程上执行
+	 */
+	ScheduledFuture<?> schedule(final Runnable task, long delay, TimeUnit unit) {
+		return timer.schedule(() -> {
+			try {
+				workers.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.run();
+			}
+		}, delay, unit);
+	}
+
+	static String date() {
+		long now = System.currentTimeMillis();
+		DateStamp stamp = dateStamp;
+		if (stamp.second != now / 1000) {
+			stamp = new DateStamp(now / 1000, formatDate(now));
+			dateStamp = stamp;
+		}
+		return stamp.text;
+	}
+
+	static String formatDate(long millis) {
+		return DATE_FORMAT.format(Instant.ofEpochMilli(millis));
+	}
+
+	/**
+	 * 停止接受连接，等待进行中的请求结束（最多 5 秒，期间的响应都带 Connection: close），再关闭所有连接
+	 */
+	@Override
+	public void close() {
+		if (closing) {
+			return;
+		}
+		closing = true;
+		closeQuietly(serverChannel);
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (EventLoop loop : loops) {
+			loop.running = false;
+			loop.selector.wakeup();
+		}
+		for (EventLoop loop : loops) {
+			try {
+				loop.thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		timer.shutdownNow();
+		System.out.println("Mock MVC boot server stopped, " + this);
+	}
+
+	@Override
+	public String toString() {
+		return "connections=" + connections.sum() + ", requests=" + requests.sum() + ", rejected=" + rejected.sum();
+	}
+
+	private static ThreadFactory threadFactory(final String prefix, final boolean daemon) {
+		final AtomicInteger seq = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, prefix + seq.incrementAndGet());
+			t.setDaemon(daemon);
+			return t;
+		};
+	}
+
+	private static void sleepQuietly(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			if (closeable != null) {
+				closeable.close();
+			}
+		} catch (IOException e) {
+			// 忽略
+		}
+	}
+
+	/**
+	 * 一个 selector 线程，管理分给它的连接。其他线程通过 {@link #execute} 把任务交给它
+	 */
+	static final class EventLoop implements Runnable {
+		final NioHttpServer server;
+		final Selector selector;
+		final Thread thread;
+		volatile boolean running = true;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		// 已经唤醒过 selector，还没进入下一次 select
+		private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+		EventLoop(NioHttpServer server, String name) throws IOException {
+			this.server = server;
+			this.selector = Selector.open();
+			this.thread = new Thread(this, name);
+		}
+
+		void execute(Runnable task) {
+			tasks.add(task);
+			if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+				selector.wakeup();
+			}
+		}
+
+		void register(final SocketChannel channel) {
+			execute(() -> {
+				try {
+					HttpConnection connection = new HttpConnection(server, this, channel);
+					connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+				} catch (IOException e) {
+					closeQuietly(channel);
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+			long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(server.config.keepAliveTimeoutMs);
+			long lastSweep = System.nanoTime();
+			while (running) {
+				try {
+					wakeupPending.set(false);
+					if (tasks.isEmpty()) {
+						selector.select(1000);
+					} else {
+						selector.selectNow();
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					continue;
+				}
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					try {
+						task.run();
+					} catch (CancelledKeyException e) {
+						// 连接已关闭
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					HttpConnection connection = (HttpConnection) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable()) {
+							connection.onWritable();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.onReadable();
+						}
+					} catch (CancelledKeyException e) {
+						connection.close();
+					}
+				}
+				long now = System.nanoTime();
+				if (timeoutNanos > 0 && now - lastSweep >= TimeUnit.SECONDS.toNanos(1)) {
+					lastSweep = now;
+					for (SelectionKey key : selector.keys()) {
+						HttpConnection connection = (HttpConnection) key.attachment();
+						if (connection.idle(now, timeoutNanos)) {
+							connection.close();
+						}
+					}
+				}
+			}
+			for (SelectionKey key : selector.keys()) {
+				((HttpConnection) key.attachment()).close();
+			}
+			closeQuietly(selector);
+		}
+	}
+}
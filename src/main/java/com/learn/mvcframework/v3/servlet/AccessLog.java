@@ -0,0 +1,562 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * 异步访问日志。请求线程只把记录放进无锁的有界环形队列，由一个后台线程批量编码进复用的 direct buffer，
+ * 再通过 FileChannel 写文件，请求路径上没有 IO。
+ * <p>
+ * 每行格式：时间 method uri handler status bytes 耗时(微秒)，没有匹配的 handler 或字节数未知时输出 "-"。
+ * 文件超过大小或打开时间超过间隔时重命名为 file.yyyyMMdd-HHmmss 并新建。
+ */
+final class AccessLog implements Runnable {
+
+	/**
+	 * 队列满时的策略
+	 */
+	enum Overflow {
+		// 丢弃并计数，请求线程不等待
+		DROP,
+		// 等待 writer 腾出空间
+		BLOCK
+	}
+
+	private static final long BLOCK_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")
+			.withZone(ZoneId.systemDefault());
+	private static final DateTimeFormatter ROTATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+			.withZone(ZoneId.systemDefault());
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	private final Path file;
+	private final Overflow overflow;
+	private final long maxFileSize;
+	private final long rotateMillis;
+	private final long flushIntervalNanos;
+
+	// 有界 MPSC 队列：sequence == pos 表示可写，== pos + 1 表示可读
+	private final int mask;
+	private final Record[] slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	// writer 已消费的位置，只由 writer 线程修改，请求线程用来估计积压
+	private volatile long head;
+
+	final LongAdder written = new LongAdder();
+	final LongAdder dropped = new LongAdder();
+	final LongAdder rotations = new LongAdder();
+	final LongAdder writeErrors = new LongAdder();
+	// 滚动失败的次数，此时记录仍写入当前文件
+	final LongAdder rotateErrors = new LongAdder();
+
+	private final Thread writer;
+	private volatile boolean closed;
+
+	// 以下只由 writer 线程访问
+	private final ByteBuffer buffer;
+	private FileChannel channel;
+	private long fileSize;
+	private long fileOpenedAt;
+	private long cachedSecond = Long.MIN_VALUE;
+	private byte[] cachedSecondBytes;
+
+	/**
+	 * @param queueSize       队列容量，向上取 2 的幂
+	 * @param bufferSize      direct buffer 大小
+	 * @param maxFileSize     超过后滚动，0 表示不按大小滚动
+	 * @param rotateMillis    文件打开超过该时间后滚动，0 表示不按时间滚动
+	 * @param flushIntervalMs writer 空闲时的唤醒间隔
+	 */
+	AccessLog(Path file, int queueSize, int bufferSize, Overflow overflow, long maxFileSize, long rotateMillis,
+			long flushIntervalMs) throws IOException {
+		this.file = file;
+		this.overflow = overflow;
+		this.maxFileSize = maxFileSize;
+		this.rotateMillis = rotateMillis;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMs));
+		int capacity = Integer.highestOneBit(Math.max(2, queueSize - 1)) << 1;
+		this.mask = capacity - 1;
+		this.slots = new Record[capacity];
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+		this.buffer = ByteBuffer.allocateDirect(Math.max(1024, bufferSize));
+		openFile();
+		this.writer = new Thread(this, "mock-access-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * 包装响应以统计写出的字节数
+	 */
+	HttpServletResponse wrap(HttpServletResponse resp) {
+		return new CountingResponse(resp);
+	}
+
+	/**
+	 * 记录一次请求，只分配一个 Record，不做 IO
+	 *
+	 * @param handler    匹配到的 url，null 表示没有匹配
+	 * @param startNanos 请求开始的 System.nanoTime()
+	 */
+	void log(HttpServletRequest req, HttpServletResponse resp, String handler, long startNanos) {
+		long latencyNanos = System.nanoTime() - startNanos;
+		long bytes = resp instanceof CountingResponse ? ((CountingResponse) resp).bytes : -1;
+		Record record = new Record(System.currentTimeMillis(), req.getMethod(), req.getRequestURI(), handler,
+				resp.getStatus(), bytes, latencyNanos);
+		while (!offer(record)) {
+			if (overflow == Overflow.DROP || closed) {
+				dropped.increment();
+				return;
+			}
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(this, BLOCK_WAIT_NANOS);
+		}
+	}
+
+	private boolean offer(Record record) {
+		long pos = tail.get();
+		for (;;) {
+			int index = (int) pos & mask;
+			long dif = sequences.get(index) - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slots[index] = record;
+					sequences.lazySet(index, pos + 1);
+					if (pos - head >= (mask >> 1)) {
+						// 积压过半，不等 flush 间隔提前唤醒 writer
+						LockSupport.unpark(writer);
+					}
+					return true;
+				}
+				pos = tail.get();
+			} else if (dif < 0) {
+				// 已满
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			// 先读标志再消费，保证 close 之前入队的记录都会写出
+			boolean stop = closed;
+			if (drain() == 0) {
+				if (stop) {
+					break;
+				}
+				LockSupport.parkNanos(this, flushIntervalNanos);
+			}
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * 取出当前所有记录编码写入，buffer 满时或结束时写一次文件
+	 */
+	private int drain() {
+		long h = head;
+		int count = 0;
+		for (;;) {
+			int index = (int) h & mask;
+			if (sequences.get(index) != h + 1) {
+				break;
+			}
+			Record record = slots[index];
+			slots[index] = null;
+			sequences.lazySet(index, h + mask + 1);
+			h++;
+			count++;
+			encode(record);
+			if ((count & 1023) == 0) {
+				head = h;
+			}
+		}
+		head = h;
+		if (count > 0) {
+			flushBuffer(true);
+			written.add(count);
+		}
+		return count;
+	}
+
+	private void encode(Record record) {
+		// 尽量整行放进 buffer，只在行边界写文件和滚动
+		int estimate = 96 + 4 * (length(record.method) + length(record.uri) + length(record.handler));
+		if (buffer.remaining() < estimate) {
+			flushBuffer(true);
+		}
+		ensure(64);
+		long second = Math.floorDiv(record.timeMillis, 1000);
+		if (second != cachedSecond) {
+			cachedSecond = second;
+			cachedSecondBytes = SECOND_FORMAT.format(Instant.ofEpochSecond(second))
+					.getBytes(StandardCharsets.US_ASCII);
+		}
+		buffer.put(cachedSecondBytes);
+		int millis = (int) Math.floorMod(record.timeMillis, 1000);
+		buffer.put((byte) '.').put((byte) ('0' + millis / 100)).put((byte) ('0' + millis / 10 % 10))
+				.put((byte) ('0' + millis % 10));
+		buffer.put((byte) ' ');
+		putText(record.method);
+		ensure(1);
+		buffer.put((byte) ' ');
+		putText(record.uri);
+		ensure(1);
+		buffer.put((byte) ' ');
+		putText(record.handler);
+		ensure(64);
+		buffer.put((byte) ' ');
+		putLong(record.status);
+		buffer.put((byte) ' ');
+		if (record.bytes < 0) {
+			buffer.put((byte) '-');
+		} else {
+			putLong(record.bytes);
+		}
+		buffer.put((byte) ' ');
+		putLong(TimeUnit.NANOSECONDS.toMicros(record.latencyNanos));
+		buffer.put((byte) '\n');
+	}
+
+	/**
+	 * UTF-8 编码，空白和控制字符按 %XX 输出，保证一行内字段不被拆开
+	 */
+	private void putText(String value) {
+		if (value == null || value.isEmpty()) {
+			ensure(1);
+			buffer.put((byte) '-');
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			ensure(4);
+			char c = value.charAt(i);
+			if (c > 0x20 && c < 0x7f) {
+				buffer.put((byte) c);
+			} else if (c <= 0x20 || c == 0x7f) {
+				buffer.put((byte) '%').put(HEX[c >> 4]).put(HEX[c & 0xf]);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | (c >> 6))).put((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xf0 | (cp >> 18))).put((byte) (0x80 | ((cp >> 12) & 0x3f)))
+						.put((byte) (0x80 | ((cp >> 6) & 0x3f))).put((byte) (0x80 | (cp & 0x3f)));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xe0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3f)))
+						.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	private void putLong(long value) {
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		if (value < 10) {
+			buffer.put((byte) ('0' + value));
+			return;
+		}
+		int digits = 0;
+		for (long v = value; v > 0; v /= 10) {
+			digits++;
+		}
+		int end = buffer.position() + digits;
+		for (int p = end - 1; p >= end - digits; p--) {
+			buffer.put(p, (byte) ('0' + value % 10));
+			value /= 10;
+		}
+		buffer.position(end);
+	}
+
+	private static int length(String value) {
+		return value == null ? 1 : value.length();
+	}
+
+	/**
+	 * 超长的一行放不下时先写出一部分，此时不滚动，避免一行被拆到两个文件
+	 */
+	private void ensure(int bytes) {
+		if (buffer.remaining() < bytes) {
+			flushBuffer(false);
+		}
+	}
+
+	private void flushBuffer(boolean lineBoundary) {
+		buffer.flip();
+		try {
+			if (lineBoundary) {
+				rotateIfNeeded(buffer.remaining());
+			}
+			while (buffer.hasRemaining()) {
+				fileSize += channel.write(buffer);
+			}
+		} catch (IOException e) {
+			// 丢掉这一批，不影响请求
+			writeErrors.increment();
+			System.err.println("Mock MVC access log write " + file + " err: " + e);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * 滚动失败时继续写当前文件，条件仍然满足，下一批再试；channel 被关闭后没能重新打开时也在下一批重试
+	 */
+	private void rotateIfNeeded(int pending) {
+		boolean bySize = maxFileSize > 0 && fileSize > 0 && fileSize + pending > maxFileSize;
+		boolean byTime = rotateMillis > 0 && System.currentTimeMillis() - fileOpenedAt >= rotateMillis;
+		try {
+			if (bySize || byTime) {
+				rotate();
+			}
+		} catch (IOException e) {
+			rotateErrors.increment();
+			System.err.println("Mock MVC access log rotate " + file + " err: " + e);
+		}
+		if (!channel.isOpen()) {
+			try {
+				openFile();
+			} catch (IOException e) {
+				System.err.println("Mock MVC access log reopen " + file + " err: " + e);
+			}
+		}
+	}
+
+	private void rotate() throws IOException {
+		if (Files.exists(file)) {
+			String name = file.getFileName() + "." + ROTATE_FORMAT.format(Instant.now());
+			Path target = file.resolveSibling(name);
+			for (int i = 1; Files.exists(target); i++) {
+				target = file.resolveSibling(name + "." + i);
+			}
+			try {
+				// 先改名，失败时旧 channel 还能继续写；成功后旧 channel 指向改名后的文件
+				Files.move(file, target);
+			} catch (IOException e) {
+				// 有的平台不能移动打开着的文件，关闭后再试，再失败由调用方重新打开原文件
+				channel.close();
+				Files.move(file, target);
+			}
+		}
+		FileChannel old = channel;
+		openFile();
+		try {
+			old.close();
+		} catch (IOException e) {
+			// 新文件已经打开
+		}
+		rotations.increment();
+	}
+
+	private void openFile() throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		fileSize = channel.size();
+		fileOpenedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * 停止接收新记录，等待 writer 写完队列中剩余的记录
+	 */
+	void close() {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return file + " written=" + written.sum() + ", dropped=" + dropped.sum() + ", rotations=" + rotations.sum()
+				+ ", writeErrors=" + writeErrors.sum() + ", rotateErrors=" + rotateErrors.sum();
+	}
+
+	private static final class Record {
+		final long timeMillis;
+		final String method;
+		final String uri;
+		final String handler;
+		final int status;
+		final long bytes;
+		final long latencyNanos;
+
+		Record(long timeMillis, String method, String uri, String handler, int status, long bytes,
+				long latencyNanos) {
+			this.timeMillis = timeMillis;
+			this.method = method;
+			this.uri = uri;
+			this.handler = handler;
+			this.status = status;
+			this.bytes = bytes;
+			this.latencyNanos = latencyNanos;
+		}
+	}
+
+	/**
+	 * 统计 body 字节数的响应包装。writer 按字符计算 UTF-8 编码后的长度，其他字符集下是近似值
+	 */
+	static final class CountingResponse extends HttpServletResponseWrapper {
+		long bytes;
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+
+		CountingResponse(HttpServletResponse resp) {
+			super(resp);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null) {
+				outputStream = new CountingOutputStream(super.getOutputStream());
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new CountingWriter(super.getWriter()));
+			}
+			return writer;
+		}
+
+		@Override
+		public void resetBuffer() {
+			bytes = 0;
+			super.resetBuffer();
+		}
+
+		@Override
+		public void reset() {
+			bytes = 0;
+			super.reset();
+		}
+
+		private final class CountingOutputStream extends ServletOutputStream {
+			private final ServletOutputStream out;
+
+			CountingOutputStream(ServletOutputStream out) {
+				this.out = out;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				bytes++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				bytes += len;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				out.close();
+			}
+
+			@Override
+			public boolean isReady() {
+				return out.isReady();
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				out.setWriteListener(writeListener);
+			}
+		}
+
+		private final class CountingWriter extends Writer {
+			private final Writer out;
+
+			CountingWriter(Writer out) {
+				this.out = out;
+			}
+
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				out.write(cbuf, off, len);
+				for (int i = off; i < off + len; i++) {
+					bytes += utf8Length(cbuf[i]);
+				}
+			}
+
+			@Override
+			public void write(String str, int off, int len) throws IOException {
+				out.write(str, off, len);
+				for (int i = off; i < off + len; i++) {
+					bytes += utf8Length(str.charAt(i));
+				}
+			}
+
+			@Override
+			public void write(int c) throws IOException {
+				out.write(c);
+				bytes += utf8Length((char) c);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				out.close();
+			}
+		}
+
+		// 代理对按两个 char 各 2 字节计算，合计 4 字节
+		private static int utf8Length(char c) {
+			return c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.learn.mvcframework.annotation.MockAdmission;
+
+/**
+ * 单个 handler 的准入控制，在 getHander 之后、调用 handler 之前检查，超出的请求立即拒绝而不是排队。
+ * <p>
+ * 并发上限用一个 AtomicInteger 计数，先加后判断，超出时减回；速率限制是 GCRA 形式的令牌桶，
+ * 只有一个 CAS 更新的理论到达时间（TAT），都不加锁。
+ * <p>
+ * adaptive 模式下每个采样窗口比较窗口平均延迟和长期基线延迟：延迟上升时按比例收紧上限，
+ * 平稳时每个窗口放宽约 sqrt(limit) 的排队余量。
+ */
+final class AdmissionControl {
+
+	/**
+	 * application.properties 中 admission.* 的全局配置
+	 */
+	static final class Config {
+		final int maxConcurrency;
+		final double permitsPerSecond;
+		final int burst;
+		final boolean adaptive;
+		final int minConcurrency;
+
+		Config(int maxConcurrency, double permitsPerSecond, int burst, boolean adaptive, int minConcurrency) {
+			this.maxConcurrency = maxConcurrency;
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = burst;
+			this.adaptive = adaptive;
+			this.minConcurrency = Math.max(minConcurrency, 1);
+		}
+	}
+
+	static final Config UNLIMITED = new Config(0, 0, 0, false, 1);
+
+	/**
+	 * 拒绝时的状态码、Retry-After 和预先编码的 body
+	 */
+	static final class Rejection {
+		final int status;
+		final String retryAfter;
+		final byte[] body;
+
+		Rejection(int status, long retryAfterSeconds, byte[] body) {
+			this.status = status;
+			this.retryAfter = Long.toString(retryAfterSeconds);
+			this.body = body;
+		}
+	}
+
+	private static final Rejection CONCURRENCY = new Rejection(HttpServletResponse.SC_SERVICE_UNAVAILABLE, 1,
+			ExceptionHandlers.SERVICE_UNAVAILABLE);
+	// 按 Retry-After 秒数预先创建，更长的等待临时创建
+	private static final Rejection[] RATE = new Rejection[61];
+
+	static {
+		for (int i = 1; i < RATE.length; i++) {
+			RATE[i] = new Rejection(429, i, ExceptionHandlers.TOO_MANY_REQUESTS);
+		}
+	}
+
+	// 调整上限时的平滑系数和基线跟随速度
+	private static final double SMOOTHING = 0.2;
+	private static final int BASELINE_SHIFT = 4;
+	private static final int MIN_WINDOW = 16;
+
+	final int maxConcurrency;
+	final int minConcurrency;
+	final boolean adaptive;
+	// 当前并发上限，非 adaptive 时等于 maxConcurrency
+	volatile int limit;
+	final AtomicInteger inFlight = new AtomicInteger();
+
+	// 两次放行的间隔，0 表示不限速
+	final long intervalNanos;
+	// TAT 最多领先当前时间多少，即 (burst - 1) 个间隔
+	final long toleranceNanos;
+	final AtomicLong tat = new AtomicLong(System.nanoTime());
+
+	final LongAdder rejectedConcurrency = new LongAdder();
+	final LongAdder rejectedRate = new LongAdder();
+
+	// adaptive 采样窗口
+	private final AtomicLong windowNanos = new AtomicLong();
+	private final AtomicInteger windowCount = new AtomicInteger();
+	private final AtomicBoolean adjusting = new AtomicBoolean();
+	private long baselineNanos;
+	// 未取整的上限，只在 adjusting 时读写
+	private double estimate;
+
+	AdmissionControl(int maxConcurrency, int minConcurrency, boolean adaptive, double permitsPerSecond, int burst) {
+		this.maxConcurrency = maxConcurrency;
+		this.minConcurrency = Math.min(minConcurrency, Math.max(maxConcurrency, 1));
+		this.adaptive = adaptive;
+		this.limit = maxConcurrency;
+		this.estimate = maxConcurrency;
+		if (permitsPerSecond > 0) {
+			this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+			int permits = burst > 0 ? burst : (int) Math.max(1, Math.ceil(permitsPerSecond));
+			this.toleranceNanos = intervalNanos * (permits - 1);
+		} else {
+			this.intervalNanos = 0;
+			this.toleranceNanos = 0;
+		}
+	}
+
+	/**
+	 * @return 没有任何限制时返回 null
+	 */
+	static AdmissionControl of(Method method, Config config) {
+		MockAdmission admission = method.getAnnotation(MockAdmission.class);
+		int maxConcurrency = admission != null && admission.maxConcurrency() >= 0 ? admission.maxConcurrency()
+				: config.maxConcurrency;
+		double permitsPerSecond = admission != null && admission.permitsPerSecond() >= 0
+				? admission.permitsPerSecond() : config.permitsPerSecond;
+		int burst = admission != null && admission.burst() >= 0 ? admission.burst() : config.burst;
+		boolean adaptive = config.adaptive || (admission != null && admission.adaptive());
+		if (maxConcurrency <= 0 && permitsPerSecond <= 0) {
+			if (admission != null && admission.adaptive()) {
+				throw new IllegalStateException("Adaptive admission of " + method + " needs maxConcurrency > 0");
+			}
+			return null;
+		}
+		return new AdmissionControl(Math.max(maxConcurrency, 0), config.minConcurrency,
+				adaptive && maxConcurrency > 0, permitsPerSecond, burst);
+	}
+
+	/**
+	 * @return 放行时返回 null，放行后必须调用 {@link #release}
+	 */
+	Rejection tryAcquire() {
+		if (maxConcurrency > 0 && inFlight.incrementAndGet() > limit) {
+			inFlight.decrementAndGet();
+			rejectedConcurrency.increment();
+			return CONCURRENCY;
+		}
+		if (intervalNanos > 0) {
+			long waitNanos = acquireRate();
+			if (waitNanos > 0) {
+				if (maxConcurrency > 0) {
+					inFlight.decrementAndGet();
+				}
+				rejectedRate.increment();
+				long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+				return seconds < RATE.length ? RATE[(int) seconds] : new Rejection(429, seconds,
+						ExceptionHandlers.TOO_MANY_REQUESTS);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * GCRA：TAT 不落后于当前时间，领先超过 tolerance 时拒绝，否则推进一个间隔
+	 *
+	 * @return 0 表示放行，否则为需要等待的纳秒数
+	 */
+	private long acquireRate() {
+		long now = System.nanoTime();
+		while (true) {
+			long current = tat.get();
+			long base = current - now > 0 ? current : now;
+			long ahead = base - now;
+			if (ahead > toleranceNanos) {
+				return ahead - toleranceNanos;
+			}
+			if (tat.compareAndSet(current, base + intervalNanos)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * 放行的请求结束
+	 */
+	void release(long latencyNanos) {
+		if (maxConcurrency <= 0) {
+			return;
+		}
+		inFlight.decrementAndGet();
+		if (adaptive) {
+			sample(latencyNanos);
+		}
+	}
+
+	private void sample(long latencyNanos) {
+		windowNanos.addAndGet(latencyNanos);
+		if (windowCount.incrementAndGet() < Math.max(MIN_WINDOW, limit) || !adjusting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			int count = windowCount.getAndSet(0);
+			long total = windowNanos.getAndSet(0);
+			if (count <= 0) {
+				return;
+			}
+			long average = Math.max(total / count, 1);
+			long baseline = baselineNanos == 0 ? average : baselineNanos + ((average - baselineNanos) >> BASELINE_SHIFT);
+			baselineNanos = baseline;
+			// 延迟高于基线时 gradient < 1，最多减半
+			double gradient = Math.max(0.5, Math.min(1.0, (double) baseline / average));
+			double current = estimate;
+			double target = current * gradient + Math.sqrt(current);
+			estimate = Math.max(minConcurrency, Math.min(maxConcurrency, current * (1 - SMOOTHING) + target * SMOOTHING));
+			limit = (int) estimate;
+		} finally {
+			adjusting.set(false);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "limit=" + (maxConcurrency > 0 ? limit : "unlimited") + ", inFlight=" + inFlight.get()
+				+ ", rejectedConcurrency=" + rejectedConcurrency.sum() + ", rejectedRate=" + rejectedRate.sum();
+	}
+}
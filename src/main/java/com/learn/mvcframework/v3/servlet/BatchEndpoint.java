@@ -0,0 +1,1076 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+
+/**
+ * 批量请求的保留路径：一次 POST 携带多个子请求，并行交给普通的 handler 处理，结果按完成顺序流式写回。
+ * <p>
+ * 请求体为 JSON 数组，每项 {@code {"path": "/a/b", "params": {"id": 1, "tag": ["x", "y"]}}}，
+ * 子请求按 GET 处理，继承原请求的请求头（Accept-Encoding、If-None-Match 除外）、cookie 和已有的 session，
+ * 参数和 attribute 互相独立。这些信息在开始时复制，子请求不再访问原请求和原响应。
+ * <p>
+ * 响应为 JSON 数组，每项 {@code {"index":0,"path":"/a/b","status":200,"contentType":"...","body":...}}，
+ * JSON 响应体原样嵌入，其余按字符串输出。整批超过 timeoutMs 时未完成的子请求以 504 结束，
+ * 尚未开始的不再执行（虚拟线程上正在执行的会被中断，ForkJoinPool 上的执行完后丢弃）。
+ * <p>
+ * 会把一个请求放大为 maxRequests 个，默认不开启，需要配置 batch.path。
+ */
+final class BatchEndpoint {
+
+	/**
+	 * 处理一个子请求，由 dispatcher 提供
+	 */
+	interface ItemDispatcher {
+		void dispatch(HttpServletRequest req, HttpServletResponse resp, long deadlineNanos) throws Exception;
+	}
+
+	private static final byte[] DEADLINE_EXCEEDED = ExceptionHandlers.statusBody(504, "Batch deadline exceeded");
+	private static final byte[] REJECTED = ExceptionHandlers.statusBody(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+			"Batch executor is shutting down");
+
+	final int maxRequests;
+	final long timeoutNanos;
+	// 每批同时执行的子请求上限
+	final int parallelism;
+	private final ExecutorService executor;
+	private final ErrorLog errorLog;
+
+	final LongAdder batches = new LongAdder();
+	final LongAdder items = new LongAdder();
+	final LongAdder timeouts = new LongAdder();
+
+	BatchEndpoint(int maxRequests, long timeoutMillis, int parallelism, ExecutorService executor, ErrorLog errorLog) {
+		this.maxRequests = Math.max(maxRequests, 1);
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMillis, 1));
+		this.parallelism = Math.max(parallelism, 1);
+		this.executor = executor;
+		this.errorLog = errorLog;
+	}
+
+	void handle(HttpServletRequest req, HttpServletResponse resp, RequestBodyReader bodyReader, JsonWriter jsonWriter,
+			ItemDispatcher dispatcher) throws Exception {
+		if (!"POST".equals(req.getMethod())) {
+			throw new MockResponseStatusException(HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+					"Batch requests must be POSTed");
+		}
+		long deadline = System.nanoTime() + timeoutNanos;
+		Item[] batch = parse(req, bodyReader);
+		batches.increment();
+		items.add(batch.length);
+		Origin origin = new Origin(req);
+		try {
+			run(batch, origin, resp, jsonWriter, dispatcher, deadline);
+		} finally {
+			origin.close();
+		}
+	}
+
+	private void run(Item[] batch, Origin origin, HttpServletResponse resp, JsonWriter jsonWriter,
+			ItemDispatcher dispatcher, long deadline) throws Exception {
+		LinkedBlockingQueue<Item> done = new LinkedBlockingQueue<>();
+		AtomicInteger next = new AtomicInteger();
+		AtomicBoolean expired = new AtomicBoolean();
+		int workers = Math.min(parallelism, batch.length);
+		Future<?>[] futures = new Future<?>[workers];
+		for (int i = 0; i < workers; i++) {
+			try {
+				futures[i] = executor.submit(() -> {
+					int index;
+					while (!expired.get() && (index = next.getAndIncrement()) < batch.length) {
+						Item item = batch[index];
+						if (item.result.compareAndSet(null, item.run(origin, dispatcher, deadline, errorLog))) {
+							done.add(item);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+		}
+
+		// 一个子请求都没能提交时不必等到截止
+		boolean rejected = workers > 0 && futures[0] == null;
+		resp.setContentType(JsonWriter.CONTENT_TYPE);
+		ServletOutputStream out = resp.getOutputStream();
+		out.write('[');
+		// 只有当前线程写响应，sent 标记已写出的项
+		boolean[] sent = new boolean[batch.length];
+		int written = 0;
+		try {
+			while (!rejected && written < batch.length) {
+				long remaining = deadline - System.nanoTime();
+				Item item = remaining > 0 ? done.poll(remaining, TimeUnit.NANOSECONDS) : null;
+				if (item == null) {
+					break;
+				}
+				sent[item.index] = true;
+				write(item, item.result.get(), written++ > 0, out, jsonWriter);
+			}
+		} finally {
+			if (written < batch.length) {
+				expired.set(true);
+				for (Future<?> future : futures) {
+					if (future != null) {
+						future.cancel(true);
+					}
+				}
+			}
+		}
+		if (written < batch.length) {
+			// 未完成的按 504（执行器拒绝时 503）补齐，刚好在截止时完成的照常写出
+			Result failure = rejected ? new Result(HttpServletResponse.SC_SERVICE_UNAVAILABLE, REJECTED)
+					: new Result(504, DEADLINE_EXCEEDED);
+			for (Item item : batch) {
+				if (sent[item.index]) {
+					continue;
+				}
+				if (item.result.compareAndSet(null, failure) && !rejected) {
+					timeouts.increment();
+				}
+				write(item, item.result.get(), written++ > 0, out, jsonWriter);
+			}
+		}
+		out.write(']');
+		out.flush();
+	}
+
+	private Item[] parse(HttpServletRequest req, RequestBodyReader bodyReader) throws IOException {
+		Object body = bodyReader.read(req, RequestBodyReader.binder(Object.class), true);
+		if (!(body instanceof List)) {
+			throw new MockResponseStatusException(HttpServletResponse.SC_BAD_REQUEST,
+					"Batch body must be a JSON array of {\"path\", \"params\"}");
+		}
+		List<?> list = (List<?>) body;
+		if (list.size() > maxRequests) {
+			throw new MockResponseStatusException(413,
+					"Batch of " + list.size() + " requests exceeds " + maxRequests);
+		}
+		Item[] batch = new Item[list.size()];
+		for (int i = 0; i < batch.length; i++) {
+			Object element = list.get(i);
+			Object path = element instanceof Map ? ((Map<?, ?>) element).get("path") : null;
+			if (!(path instanceof String) || !((String) path).startsWith("/")) {
+				throw new MockResponseStatusException(HttpServletResponse.SC_BAD_REQUEST,
+						"Batch request " + i + " needs a \"path\" starting with '/'");
+			}
+			Object params = ((Map<?, ?>) element).get("params");
+			if (params != null && !(params instanceof Map)) {
+				throw new MockResponseStatusException(HttpServletResponse.SC_BAD_REQUEST,
+						"\"params\" of batch request " + i + " must be an object");
+			}
+			batch[i] = new Item(i, (String) path, params(params == null ? Collections.emptyMap() : (Map<?, ?>) params));
+		}
+		return batch;
+	}
+
+	private static Map<String, String[]> params(Map<?, ?> params) {
+		Map<String, String[]> map = new LinkedHashMap<>();
+		for (Map.Entry<?, ?> entry : params.entrySet()) {
+			Object value = entry.getValue();
+			String[] values;
+			if (value instanceof List) {
+				List<?> list = (List<?>) value;
+				values = new String[list.size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = String.valueOf(list.get(i));
+				}
+			} else {
+				values = new String[] { value == null ? "" : String.valueOf(value) };
+			}
+			map.put(String.valueOf(entry.getKey()), values);
+		}
+		return map;
+	}
+
+	private static void write(Item item, Result result, boolean comma, ServletOutputStream out,
+			JsonWriter jsonWriter) throws IOException {
+		if (comma) {
+			out.write(',');
+		}
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("index", item.index);
+		map.put("path", item.path);
+		map.put("status", result.status);
+		map.put("contentType", result.contentType);
+		byte[] body = result.body;
+		if (body.length > 0 && result.contentType != null && result.contentType.contains("json")) {
+			map.put("body", new JsonWriter.RawJson(body));
+		} else {
+			map.put("body", new String(body, result.charset()));
+		}
+		jsonWriter.write(map, out);
+		// 每个结果写完就发出去
+		out.flush();
+	}
+
+	@Override
+	public String toString() {
+		return "batches=" + batches.sum() + ", items=" + items.sum() + ", timeouts=" + timeouts.sum();
+	}
+
+	/**
+	 * 一个子请求，result 由执行它的线程或超时时的写出线程设置，先设置的生效
+	 */
+	static final class Item {
+		final int index;
+		final String path;
+		final Map<String, String[]> params;
+		final AtomicReference<Result> result = new AtomicReference<>();
+
+		Item(int index, String path, Map<String, String[]> params) {
+			this.index = index;
+			this.path = path;
+			this.params = params;
+		}
+
+		/**
+		 * 不抛出任何异常：Error 也记为这一项的 500，worker 继续执行后面的子请求
+		 */
+		Result run(Origin origin, ItemDispatcher dispatcher, long deadline, ErrorLog errorLog) {
+			ItemRequest req = new ItemRequest(origin, path, params);
+			ItemResponse resp = new ItemResponse(req.getLocale());
+			try {
+				dispatcher.dispatch(req, resp, deadline);
+				resp.finish();
+				return new Result(resp.status, resp.contentType, resp.characterEncoding, resp.buf.toByteArray());
+			} catch (Throwable e) {
+				// dispatcher 已经把 handler 的 Exception 转成响应，这里是写出失败或 Error
+				errorLog.log(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+				return new Result(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ExceptionHandlers.SERVER_ERROR);
+			}
+		}
+	}
+
+	static final class Result {
+		final int status;
+		final String contentType;
+		final String characterEncoding;
+		final byte[] body;
+
+		Result(int status, String contentType, String characterEncoding, byte[] body) {
+			this.status = status;
+			this.contentType = contentType;
+			this.characterEncoding = characterEncoding;
+			this.body = body;
+		}
+
+		Result(int status, byte[] body) {
+			this(status, ExceptionHandlers.CONTENT_TYPE, null, body);
+		}
+
+		Charset charset() {
+			try {
+				return characterEncoding == null ? StandardCharsets.UTF_8 : Charset.forName(characterEncoding);
+			} catch (RuntimeException e) {
+				return StandardCharsets.UTF_8;
+			}
+		}
+	}
+
+	/**
+	 * 批量请求开始时在容器线程上从原请求复制出的信息，子请求只读这里。
+	 * 截止后仍在执行的子请求（ForkJoinPool 上的不会被中断）因此不会读到容器回收后分配给其他请求的对象
+	 */
+	static final class Origin {
+		final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		final Cookie[] cookies;
+		final String contextPath;
+		final String servletPath;
+		final String scheme;
+		final String serverName;
+		final int serverPort;
+		final String protocol;
+		final boolean secure;
+		final String remoteAddr;
+		final String remoteHost;
+		final int remotePort;
+		final String localName;
+		final String localAddr;
+		final int localPort;
+		final String characterEncoding;
+		final List<Locale> locales;
+		final String authType;
+		final String remoteUser;
+		final Principal userPrincipal;
+		final String requestedSessionId;
+		final boolean requestedSessionIdValid;
+		final boolean requestedSessionIdFromCookie;
+		final boolean requestedSessionIdFromURL;
+		final HttpSession session;
+		final ServletContext servletContext;
+		// 只有 isUserInRole 无法复制，批量请求结束前在锁内委托给原请求，结束后置为 null
+		private HttpServletRequest original;
+
+		Origin(HttpServletRequest req) {
+			for (Enumeration<String> names = req.getHeaderNames(); names != null && names.hasMoreElements();) {
+				String name = names.nextElement();
+				// 子请求的结果嵌在批量响应中，不单独压缩，也不返回 304；子请求没有请求体
+				if ("Accept-Encoding".equalsIgnoreCase(name) || "If-None-Match".equalsIgnoreCase(name)
+						|| "Content-Type".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)) {
+					continue;
+				}
+				List<String> values = headers.computeIfAbsent(name, k -> new ArrayList<>(1));
+				for (Enumeration<String> e = req.getHeaders(name); e.hasMoreElements();) {
+					values.add(e.nextElement());
+				}
+			}
+			Cookie[] cookies = req.getCookies();
+			this.cookies = cookies == null ? null : cookies.clone();
+			this.contextPath = req.getContextPath();
+			this.servletPath = req.getServletPath();
+			this.scheme = req.getScheme();
+			this.serverName = req.getServerName();
+			this.serverPort = req.getServerPort();
+			this.protocol = req.getProtocol();
+			this.secure = req.isSecure();
+			this.remoteAddr = req.getRemoteAddr();
+			this.remoteHost = req.getRemoteHost();
+			this.remotePort = req.getRemotePort();
+			this.localName = req.getLocalName();
+			this.localAddr = req.getLocalAddr();
+			this.localPort = req.getLocalPort();
+			this.characterEncoding = req.getCharacterEncoding();
+			this.locales = Collections.list(req.getLocales());
+			this.authType = req.getAuthType();
+			this.remoteUser = req.getRemoteUser();
+			this.userPrincipal = req.getUserPrincipal();
+			this.requestedSessionId = req.getRequestedSessionId();
+			this.requestedSessionIdValid = req.isRequestedSessionIdValid();
+			this.requestedSessionIdFromCookie = req.isRequestedSessionIdFromCookie();
+			this.requestedSessionIdFromURL = req.isRequestedSessionIdFromURL();
+			this.session = req.getSession(false);
+			this.servletContext = req.getServletContext();
+			this.original = req;
+		}
+
+		synchronized boolean isUserInRole(String role) {
+			return original != null && original.isUserInRole(role);
+		}
+
+		/**
+		 * handle 返回前调用，之后不再访问原请求
+		 */
+		synchronized void close() {
+			original = null;
+		}
+	}
+
+	/**
+	 * 子请求：GET，自己的参数和 attribute，没有请求体，不支持异步。
+	 * 直接实现 HttpServletRequest 而不是包装原请求，所有信息来自 {@link Origin}；
+	 * 不能创建 session，批量请求结束后 isUserInRole 返回 false
+	 */
+	static final class ItemRequest implements HttpServletRequest {
+		private final Origin origin;
+		private final String path;
+		private final Map<String, String[]> params;
+		private final Map<String, Object> attributes = new HashMap<>();
+		private String characterEncoding;
+
+		ItemRequest(Origin origin, String path, Map<String, String[]> params) {
+			this.origin = origin;
+			this.path = path;
+			this.params = Collections.unmodifiableMap(params);
+			this.characterEncoding = origin.characterEncoding;
+		}
+
+		@Override
+		public String getMethod() {
+			return "GET";
+		}
+
+		@Override
+		public String getRequestURI() {
+			return origin.contextPath + path;
+		}
+
+		@Override
+		public StringBuffer getRequestURL() {
+			StringBuffer url = new StringBuffer(origin.scheme).append("://").append(origin.serverName);
+			if (!("http".equals(origin.scheme) && origin.serverPort == 80)
+					&& !("https".equals(origin.scheme) && origin.serverPort == 443)) {
+				url.append(':').append(origin.serverPort);
+			}
+			return url.append(getRequestURI());
+		}
+
+		@Override
+		public String getContextPath() {
+			return origin.contextPath;
+		}
+
+		@Override
+		public String getServletPath() {
+			return origin.servletPath;
+		}
+
+		@Override
+		public String getPathInfo() {
+			return path.startsWith(origin.servletPath) && path.length() > origin.servletPath.length()
+					? path.substring(origin.servletPath.length()) : null;
+		}
+
+		@Override
+		public String getPathTranslated() {
+			String pathInfo = getPathInfo();
+			return pathInfo == null || origin.servletContext == null ? null : origin.servletContext.getRealPath(pathInfo);
+		}
+
+		@Override
+		public String getQueryString() {
+			return null;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			List<String> values = origin.headers.get(name);
+			return values == null || values.isEmpty() ? null : values.get(0);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			List<String> values = origin.headers.get(name);
+			return Collections.enumeration(values == null ? Collections.<String>emptyList() : values);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			return Collections.enumeration(origin.headers.keySet());
+		}
+
+		@Override
+		public int getIntHeader(String name) {
+			String value = getHeader(name);
+			return value == null ? -1 : Integer.parseInt(value.trim());
+		}
+
+		@Override
+		public long getDateHeader(String name) {
+			String value = getHeader(name);
+			if (value == null) {
+				return -1;
+			}
+			try {
+				return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("Header " + name + " is not a date", e);
+			}
+		}
+
+		@Override
+		public Cookie[] getCookies() {
+			return origin.cookies == null ? null : origin.cookies.clone();
+		}
+
+		@Override
+		public String getAuthType() {
+			return origin.authType;
+		}
+
+		@Override
+		public String getRemoteUser() {
+			return origin.remoteUser;
+		}
+
+		@Override
+		public Principal getUserPrincipal() {
+			return origin.userPrincipal;
+		}
+
+		@Override
+		public boolean isUserInRole(String role) {
+			return origin.isUserInRole(role);
+		}
+
+		@Override
+		public String getRequestedSessionId() {
+			return origin.requestedSessionId;
+		}
+
+		@Override
+		public boolean isRequestedSessionIdValid() {
+			return origin.requestedSessionIdValid;
+		}
+
+		@Override
+		public boolean isRequestedSessionIdFromCookie() {
+			return origin.requestedSessionIdFromCookie;
+		}
+
+		@Override
+		public boolean isRequestedSessionIdFromURL() {
+			return origin.requestedSessionIdFromURL;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public boolean isRequestedSessionIdFromUrl() {
+			return origin.requestedSessionIdFromURL;
+		}
+
+		@Override
+		public HttpSession getSession(boolean create) {
+			if (origin.session == null && create) {
+				throw new IllegalStateException("Batch sub-requests can not create a session");
+			}
+			return origin.session;
+		}
+
+		@Override
+		public HttpSession getSession() {
+			return getSession(true);
+		}
+
+		@Override
+		public String changeSessionId() {
+			throw new IllegalStateException("Batch sub-requests can not change the session id");
+		}
+
+		@Override
+		public boolean authenticate(HttpServletResponse response) throws ServletException {
+			throw new ServletException("Batch sub-requests do not support authentication");
+		}
+
+		@Override
+		public void login(String username, String password) throws ServletException {
+			throw new ServletException("Batch sub-requests do not support authentication");
+		}
+
+		@Override
+		public void logout() throws ServletException {
+			throw new ServletException("Batch sub-requests do not support authentication");
+		}
+
+		@Override
+		public Collection<Part> getParts() throws ServletException {
+			throw new ServletException("Batch sub-requests have no multipart body");
+		}
+
+		@Override
+		public Part getPart(String name) throws ServletException {
+			throw new ServletException("Batch sub-requests have no multipart body");
+		}
+
+		@Override
+		public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) throws ServletException {
+			throw new ServletException("Batch sub-requests can not be upgraded");
+		}
+
+		@Override
+		public String getCharacterEncoding() {
+			return characterEncoding;
+		}
+
+		@Override
+		public void setCharacterEncoding(String env) {
+			characterEncoding = env;
+		}
+
+		@Override
+		public String getContentType() {
+			return null;
+		}
+
+		@Override
+		public int getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return -1;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			return new ServletInputStream() {
+				@Override
+				public int read() {
+					return -1;
+				}
+
+				@Override
+				public boolean isFinished() {
+					return true;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					try {
+						readListener.onAllDataRead();
+					} catch (IOException e) {
+						readListener.onError(e);
+					}
+				}
+			};
+		}
+
+		@Override
+		public BufferedReader getReader() {
+			return new BufferedReader(new StringReader(""));
+		}
+
+		@Override
+		public String getParameter(String name) {
+			String[] values = params.get(name);
+			return values == null || values.length == 0 ? null : values[0];
+		}
+
+		@Override
+		public String[] getParameterValues(String name) {
+			String[] values = params.get(name);
+			return values == null ? null : values.clone();
+		}
+
+		@Override
+		public Map<String, String[]> getParameterMap() {
+			return params;
+		}
+
+		@Override
+		public Enumeration<String> getParameterNames() {
+			return Collections.enumeration(params.keySet());
+		}
+
+		@Override
+		public Object getAttribute(String name) {
+			return attributes.get(name);
+		}
+
+		@Override
+		public void setAttribute(String name, Object o) {
+			attributes.put(name, o);
+		}
+
+		@Override
+		public void removeAttribute(String name) {
+			attributes.remove(name);
+		}
+
+		@Override
+		public Enumeration<String> getAttributeNames() {
+			return Collections.enumeration(attributes.keySet());
+		}
+
+		@Override
+		public String getProtocol() {
+			return origin.protocol;
+		}
+
+		@Override
+		public String getScheme() {
+			return origin.scheme;
+		}
+
+		@Override
+		public String getServerName() {
+			return origin.serverName;
+		}
+
+		@Override
+		public int getServerPort() {
+			return origin.serverPort;
+		}
+
+		@Override
+		public boolean isSecure() {
+			return origin.secure;
+		}
+
+		@Override
+		public String getRemoteAddr() {
+			return origin.remoteAddr;
+		}
+
+		@Override
+		public String getRemoteHost() {
+			return origin.remoteHost;
+		}
+
+		@Override
+		public int getRemotePort() {
+			return origin.remotePort;
+		}
+
+		@Override
+		public String getLocalName() {
+			return origin.localName;
+		}
+
+		@Override
+		public String getLocalAddr() {
+			return origin.localAddr;
+		}
+
+		@Override
+		public int getLocalPort() {
+			return origin.localPort;
+		}
+
+		@Override
+		public Locale getLocale() {
+			return origin.locales.isEmpty() ? Locale.getDefault() : origin.locales.get(0);
+		}
+
+		@Override
+		public Enumeration<Locale> getLocales() {
+			return Collections.enumeration(
+					origin.locales.isEmpty() ? Collections.singletonList(Locale.getDefault()) : origin.locales);
+		}
+
+		@Override
+		public ServletContext getServletContext() {
+			return origin.servletContext;
+		}
+
+		@Override
+		public RequestDispatcher getRequestDispatcher(String path) {
+			return origin.servletContext == null || !path.startsWith("/") ? null
+					: origin.servletContext.getRequestDispatcher(path);
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public String getRealPath(String path) {
+			return origin.servletContext == null ? null : origin.servletContext.getRealPath(path);
+		}
+
+		@Override
+		public DispatcherType getDispatcherType() {
+			return DispatcherType.REQUEST;
+		}
+
+		@Override
+		public boolean isAsyncSupported() {
+			return false;
+		}
+
+		@Override
+		public boolean isAsyncStarted() {
+			return false;
+		}
+
+		@Override
+		public AsyncContext getAsyncContext() {
+			throw new IllegalStateException("Batch sub-requests do not support async processing");
+		}
+
+		@Override
+		public AsyncContext startAsync() {
+			throw new IllegalStateException("Batch sub-requests do not support async processing");
+		}
+
+		@Override
+		public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+			throw new IllegalStateException("Batch sub-requests do not support async processing");
+		}
+	}
+
+	/**
+	 * 子响应：状态、Content-Type 和响应体都写入内存，其他响应头丢弃（只供 handler 读回，名字不区分大小写）。
+	 * 和 ItemRequest 一样不包装原响应，子请求并发执行或超时后继续执行时都不会碰到它
+	 */
+	static final class ItemResponse implements HttpServletResponse {
+		private final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+		private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		private final Locale locale;
+		private int status = HttpServletResponse.SC_OK;
+		private String contentType;
+		private String characterEncoding;
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+
+		ItemResponse(Locale locale) {
+			this.locale = locale;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (outputStream == null) {
+				outputStream = new ServletOutputStream() {
+					@Override
+					public void write(int b) {
+						buf.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+						buf.write(b, off, len);
+					}
+
+					@Override
+					public boolean isReady() {
+						return true;
+					}
+
+					@Override
+					public void setWriteListener(WriteListener writeListener) {
+						// 写入内存总是就绪
+						try {
+							writeListener.onWritePossible();
+						} catch (IOException e) {
+							writeListener.onError(e);
+						}
+					}
+				};
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+			}
+			return writer;
+		}
+
+		void finish() {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void setStatus(int sc, String sm) {
+			status = sc;
+		}
+
+		@Override
+		public int getStatus() {
+			return status;
+		}
+
+		@Override
+		public void sendError(int sc) {
+			sendError(sc, null);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) {
+			status = sc;
+			buf.reset();
+			byte[] body = ExceptionHandlers.statusBody(sc, msg);
+			buf.write(body, 0, body.length);
+			contentType = ExceptionHandlers.CONTENT_TYPE;
+		}
+
+		@Override
+		public void sendRedirect(String location) {
+			status = HttpServletResponse.SC_FOUND;
+			headers.put("Location", location);
+		}
+
+		@Override
+		public String encodeURL(String url) {
+			return url;
+		}
+
+		@Override
+		public String encodeRedirectURL(String url) {
+			return url;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public String encodeUrl(String url) {
+			return url;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public String encodeRedirectUrl(String url) {
+			return url;
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+		}
+
+		@Override
+		public void setContentType(String type) {
+			contentType = type;
+			if (type != null) {
+				int charset = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+				if (charset >= 0) {
+					characterEncoding = type.substring(charset + 8).trim();
+				}
+			}
+		}
+
+		@Override
+		public String getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public void setCharacterEncoding(String charset) {
+			characterEncoding = charset;
+		}
+
+		@Override
+		public String getCharacterEncoding() {
+			return characterEncoding == null ? StandardCharsets.UTF_8.name() : characterEncoding;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			headers.put(name, value);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			headers.putIfAbsent(name, value);
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			setHeader(name, String.valueOf(value));
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			addHeader(name, String.valueOf(value));
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			setHeader(name, String.valueOf(date));
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			addHeader(name, String.valueOf(date));
+		}
+
+		@Override
+		public boolean containsHeader(String name) {
+			return headers.containsKey(name);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return headers.get(name);
+		}
+
+		@Override
+		public Collection<String> getHeaders(String name) {
+			String value = headers.get(name);
+			return value == null ? Collections.<String>emptyList() : Collections.singletonList(value);
+		}
+
+		@Override
+		public Collection<String> getHeaderNames() {
+			return new ArrayList<>(headers.keySet());
+		}
+
+		@Override
+		public void flushBuffer() {
+			finish();
+		}
+
+		@Override
+		public boolean isCommitted() {
+			return false;
+		}
+
+		@Override
+		public void setBufferSize(int size) {
+		}
+
+		@Override
+		public int getBufferSize() {
+			return buf.size();
+		}
+
+		@Override
+		public void setLocale(Locale loc) {
+		}
+
+		@Override
+		public Locale getLocale() {
+			return locale;
+		}
+
+		@Override
+		public void resetBuffer() {
+			finish();
+			buf.reset();
+		}
+
+		@Override
+		public void reset() {
+			resetBuffer();
+			headers.clear();
+			status = HttpServletResponse.SC_OK;
+			contentType = null;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 处理 byte[]、ByteBuffer、Path、FileChannel、ReadableByteChannel 类型的返回值，
+ * 直接写 ServletOutputStream，不经过字符编码。
+ * <p>
+ * 1. 长度已知时设置 Content-Length<br>
+ * 2. 容器输出流提供 public write(ByteBuffer) 时（如 Jetty 的 HttpOutput），文件按区间 map 后直接交给容器，
+ * 不经过堆内存<br>
+ * 3. 否则通过池化的 heap buffer 从 channel 读取，再分块写出<br>
+ * 4. 只支持阻塞的 channel，非阻塞模式的 SelectableChannel 抛出 IllegalStateException
+ */
+final class BinaryBodyWriter {
+
+	static final String OCTET_STREAM = "application/octet-stream";
+	// 单次 map 的最大区间
+	private static final long MAX_MAP_SIZE = 16 * 1024 * 1024;
+
+	private static final ClassValue<MethodHandle> CONTAINER_BYTE_BUFFER_WRITE = new ClassValue<MethodHandle>() {
+		@Override
+		protected MethodHandle computeValue(Class<?> type) {
+			try {
+				Method method = type.getMethod("write", ByteBuffer.class);
+				if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+					return null;
+				}
+				return MethodHandles.publicLookup().unreflect(method)
+						.asType(MethodType.methodType(void.class, OutputStream.class, ByteBuffer.class));
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				return null;
+			}
+		}
+	};
+
+	private final int chunkSize;
+	private final ArrayBlockingQueue<ByteBuffer> pool;
+
+	BinaryBodyWriter(int chunkSize, int poolSize) {
+		this.chunkSize = chunkSize;
+		this.pool = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+	}
+
+	static boolean supports(Object ret) {
+		return ret instanceof byte[] || ret instanceof ByteBuffer || ret instanceof Path
+				|| ret instanceof ReadableByteChannel;
+	}
+
+	void write(Object ret, HttpServletResponse resp) throws IOException {
+		if (ret instanceof byte[]) {
+			byte[] bytes = (byte[]) ret;
+			prepare(resp, bytes.length, null);
+			resp.getOutputStream().write(bytes);
+		} else if (ret instanceof ByteBuffer) {
+			ByteBuffer buffer = ((ByteBuffer) ret).duplicate();
+			prepare(resp, buffer.remaining(), null);
+			writeBuffer(buffer, resp.getOutputStream());
+		} else if (ret instanceof Path) {
+			Path path = (Path) ret;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = channel.size();
+				prepare(resp, size, Files.probeContentType(path));
+				writeFile(channel, 0, size, resp.getOutputStream());
+			}
+		} else if (ret instanceof FileChannel) {
+			try (FileChannel channel = (FileChannel) ret) {
+				long position = channel.position();
+				long length = Math.max(channel.size() - position, 0);
+				prepare(resp, length, null);
+				writeFile(channel, position, length, resp.getOutputStream());
+			}
+		} else {
+			try (ReadableByteChannel channel = (ReadableByteChannel) ret) {
+				if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+					throw new IllegalStateException("Non-blocking channel " + channel.getClass().getName()
+							+ " is not supported as a response body");
+				}
+				prepare(resp, -1, null);
+				writeChannel(channel, resp.getOutputStream());
+			}
+		}
+	}
+
+	private static void prepare(HttpServletResponse resp, long length, String contentType) {
+		if (resp.getContentType() == null) {
+			resp.setContentType(contentType != null ? contentType : OCTET_STREAM);
+		}
+		if (length >= 0) {
+			resp.setContentLengthLong(length);
+		}
+	}
+
+	private void writeBuffer(ByteBuffer buffer, ServletOutputStream out) throws IOException {
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			return;
+		}
+		MethodHandle containerWrite = CONTAINER_BYTE_BUFFER_WRITE.get(out.getClass());
+		if (containerWrite != null) {
+			invoke(containerWrite, out, buffer);
+			return;
+		}
+		ByteBuffer chunk = borrow();
+		try {
+			byte[] array = chunk.array();
+			while (buffer.hasRemaining()) {
+				int n = Math.min(buffer.remaining(), array.length);
+				buffer.get(array, 0, n);
+				out.write(array, 0, n);
+			}
+		} finally {
+			release(chunk);
+		}
+	}
+
+	private void writeFile(FileChannel channel, long position, long length, ServletOutputStream out)
+			throws IOException {
+		MethodHandle containerWrite = CONTAINER_BYTE_BUFFER_WRITE.get(out.getClass());
+		long end = position + length;
+		if (containerWrite != null) {
+			// 映射后直接交给容器写 socket
+			for (long pos = position; pos < end; pos += MAX_MAP_SIZE) {
+				invoke(containerWrite, out, channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAX_MAP_SIZE, end - pos)));
+			}
+			return;
+		}
+		ByteBuffer chunk = borrow();
+		try {
+			long pos = position;
+			while (pos < end) {
+				chunk.clear();
+				if (end - pos < chunk.capacity()) {
+					chunk.limit((int) (end - pos));
+				}
+				int n = channel.read(chunk, pos);
+				if (n < 0) {
+					break;
+				}
+				pos += n;
+				drain(chunk, out);
+			}
+		} finally {
+			release(chunk);
+		}
+	}
+
+	private void writeChannel(ReadableByteChannel channel, ServletOutputStream out) throws IOException {
+		ByteBuffer chunk = borrow();
+		try {
+			chunk.clear();
+			int n;
+			while ((n = channel.read(chunk)) >= 0) {
+				if (!chunk.hasRemaining()) {
+					drain(chunk, out);
+					chunk.clear();
+				} else if (n == 0) {
+					// 阻塞的 channel 在还有空间时至少读到 1 字节
+					throw new IllegalStateException("Channel " + channel.getClass().getName()
+							+ " returned no data, non-blocking channels are not supported as a response body");
+				}
+			}
+			drain(chunk, out);
+		} finally {
+			release(chunk);
+		}
+	}
+
+	private static void drain(ByteBuffer chunk, OutputStream out) throws IOException {
+		chunk.flip();
+		if (chunk.hasRemaining()) {
+			out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+		}
+	}
+
+	private static void invoke(MethodHandle containerWrite, OutputStream out, ByteBuffer buffer) throws IOException {
+		try {
+			containerWrite.invokeExact(out, buffer);
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IOException(t);
+		}
+	}
+
+	private ByteBuffer borrow() {
+		ByteBuffer chunk = pool.poll();
+		return chunk != null ? chunk : ByteBuffer.allocate(chunkSize);
+	}
+
+	private void release(ByteBuffer chunk) {
+		// 池满时直接丢弃
+		pool.offer(chunk);
+	}
+}
@@ -0,0 +1,414 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 扫描 scanPackage 下标注了 {@code @MockController}/{@code @MockService}/{@code @MockControllerAdvice}/
+ * {@code @MockInterceptor} 的类。
+ * <p>
+ * 1. 同时支持目录和 jar（WEB-INF/lib）<br>
+ * 2. 直接解析 class 文件头里的类注解，不用 Class.forName 加载每一个类<br>
+ * 3. 读取/解析在 common pool 上并行<br>
+ * 4. 结果连同各个目录/jar 的指纹写入索引文件，部署没变化时重启直接读索引
+ */
+final class ClassPathScanner {
+
+	private static final byte[][] COMPONENT_DESCRIPTORS = {
+			"Lcom/learn/mvcframework/annotation/MockController;".getBytes(StandardCharsets.US_ASCII),
+			"Lcom/learn/mvcframework/annotation/MockService;".getBytes(StandardCharsets.US_ASCII),
+			"Lcom/learn/mvcframework/annotation/MockControllerAdvice;".getBytes(StandardCharsets.US_ASCII),
+			"Lcom/learn/mvcframework/annotation/MockInterceptor;".getBytes(StandardCharsets.US_ASCII) };
+	private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations"
+			.getBytes(StandardCharsets.US_ASCII);
+	// 组件注解或指纹格式变化时升级版本，旧索引随之失效
+	private static final String INDEX_HEADER = "#mock-scan-index v4 ";
+
+	private final ClassLoader classLoader;
+	private final String scanPackage;
+	private final File indexFile;
+	private final BiConsumer<String, Throwable> log;
+
+	private boolean indexHit;
+
+	/**
+	 * @param indexFile 为 null 时不使用索引
+	 * @param log       警告日志，第二个参数可能为 null
+	 */
+	ClassPathScanner(ClassLoader classLoader, String scanPackage, File indexFile, BiConsumer<String, Throwable> log) {
+		this.classLoader = classLoader;
+		this.scanPackage = scanPackage;
+		this.indexFile = indexFile;
+		this.log = log;
+	}
+
+	/**
+	 * 默认索引位置：临时目录下按 scanPackage 区分
+	 */
+	static File defaultIndexFile(String scanPackage) {
+		return new File(System.getProperty("java.io.tmpdir"),
+				"springmvc-mini-" + Integer.toHexString(scanPackage.hashCode()) + ".idx");
+	}
+
+	boolean isIndexHit() {
+		return indexHit;
+	}
+
+	/**
+	 * @return 候选类的全限定名
+	 */
+	Set<String> scan() throws IOException {
+		String packagePath = scanPackage.replace('.', '/');
+		List<Root> roots = new ArrayList<>();
+		Enumeration<URL> urls = classLoader.getResources(packagePath);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			if ("file".equals(url.getProtocol())) {
+				roots.add(new DirRoot(toFile(url).toPath()));
+			} else if ("jar".equals(url.getProtocol())) {
+				roots.add(new JarRoot(toFile(((JarURLConnection) url.openConnection()).getJarFileURL()), packagePath));
+			} else {
+				log.accept("Mock MVC skips unsupported scan location " + url, null);
+			}
+		}
+
+		StringBuilder fingerprint = new StringBuilder(scanPackage);
+		for (Root root : roots) {
+			fingerprint.append('|').append(root.fingerprint());
+		}
+		if (indexFile != null) {
+			Set<String> indexed = readIndex(fingerprint.toString());
+			if (indexed != null) {
+				indexHit = true;
+				return indexed;
+			}
+		}
+
+		Set<String> classNames = new TreeSet<>();
+		for (Root root : roots) {
+			classNames.addAll(root.scan());
+		}
+		if (indexFile != null) {
+			writeIndex(fingerprint.toString(), classNames);
+		}
+		return classNames;
+	}
+
+	private Set<String> readIndex(String fingerprint) {
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		try {
+			List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+			if (lines.isEmpty() || !lines.get(0).equals(INDEX_HEADER + fingerprint)) {
+				return null;
+			}
+			return new TreeSet<>(lines.subList(1, lines.size()));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void writeIndex(String fingerprint, Set<String> classNames) {
+		List<String> lines = new ArrayList<>(classNames.size() + 1);
+		lines.add(INDEX_HEADER + fingerprint);
+		lines.addAll(classNames);
+		try {
+			Path tmp = Files.createTempFile(indexFile.getAbsoluteFile().getParentFile().toPath(), indexFile.getName(),
+					".tmp");
+			Files.write(tmp, lines, StandardCharsets.UTF_8);
+			Files.move(tmp, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.accept("Mock MVC can not write scan index " + indexFile, e);
+		}
+	}
+
+	private static File toFile(URL url) {
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getFile());
+		}
+	}
+
+	private interface Root {
+		String fingerprint() throws IOException;
+
+		Set<String> scan() throws IOException;
+	}
+
+	private final class DirRoot implements Root {
+		final Path dir;
+		List<Path> classFiles;
+
+		DirRoot(Path dir) {
+			this.dir = dir;
+		}
+
+		/**
+		 * 文件数、总大小、最大修改时间，加上按路径排序的 (相对路径, 修改时间, 大小) 列表的 CRC32：
+		 * 替换、改名或者带着旧时间戳拷进来的 class 文件也会让索引失效
+		 */
+		@Override
+		public String fingerprint() throws IOException {
+			try (Stream<Path> paths = Files.walk(dir)) {
+				classFiles = paths.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+			}
+			long totalSize = 0;
+			long lastModified = 0;
+			CRC32 crc = new CRC32();
+			for (Path classFile : classFiles) {
+				BasicFileAttributes attributes = Files.readAttributes(classFile, BasicFileAttributes.class);
+				long modified = attributes.lastModifiedTime().toMillis();
+				totalSize += attributes.size();
+				lastModified = Math.max(lastModified, modified);
+				crc.update((dir.relativize(classFile) + ":" + modified + ":" + attributes.size() + "\n")
+						.getBytes(StandardCharsets.UTF_8));
+			}
+			return dir + ":" + classFiles.size() + ":" + totalSize + ":" + lastModified + ":"
+					+ Long.toHexString(crc.getValue());
+		}
+
+		@Override
+		public Set<String> scan() {
+			return classFiles.parallelStream().filter(classFile -> {
+				try {
+					return isComponent(Files.readAllBytes(classFile));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).map(classFile -> {
+				String relative = dir.relativize(classFile).toString().replace(File.separatorChar, '.');
+				return scanPackage + "." + relative.substring(0, relative.length() - ".class".length());
+			}).collect(Collectors.toSet());
+		}
+	}
+
+	private final class JarRoot implements Root {
+		final File jar;
+		final String prefix;
+
+		JarRoot(File jar, String packagePath) {
+			this.jar = jar;
+			this.prefix = packagePath + "/";
+		}
+
+		@Override
+		public String fingerprint() {
+			return jar + ":" + jar.length() + ":" + jar.lastModified();
+		}
+
+		@Override
+		public Set<String> scan() throws IOException {
+			try (JarFile jarFile = new JarFile(jar)) {
+				List<JarEntry> entries = new ArrayList<>();
+				for (JarEntry entry : Collections.list(jarFile.entries())) {
+					if (!entry.isDirectory() && entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")) {
+						entries.add(entry);
+					}
+				}
+				return entries.parallelStream().filter(entry -> {
+					try (InputStream in = jarFile.getInputStream(entry)) {
+						return isComponent(readAll(in, (int) entry.getSize()));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}).map(entry -> {
+					String name = entry.getName();
+					return name.substring(0, name.length() - ".class".length()).replace('/', '.');
+				}).collect(Collectors.toSet());
+			}
+		}
+	}
+
+	private static byte[] readAll(InputStream in, int sizeHint) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint > 0 ? sizeHint : 4096);
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * 解析 class 文件：常量池里没有组件注解描述符直接返回 false，
+	 * 否则检查类级别的 RuntimeVisibleAnnotations
+	 */
+	static boolean isComponent(byte[] b) {
+		if (b.length < 10 || readInt(b, 0) != 0xCAFEBABE) {
+			return false;
+		}
+		int count = readShort(b, 8);
+		int[] utf8Offsets = new int[count];
+		boolean candidate = false;
+		int pos = 10;
+		for (int i = 1; i < count; i++) {
+			int tag = b[pos] & 0xFF;
+			switch (tag) {
+			case 1: // Utf8
+				utf8Offsets[i] = pos + 1;
+				if (!candidate) {
+					candidate = matchesAny(b, pos + 1, COMPONENT_DESCRIPTORS);
+				}
+				pos += 3 + readShort(b, pos + 1);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				pos += 5;
+				break;
+			case 5: // Long
+			case 6: // Double
+				pos += 9;
+				i++;
+				break;
+			case 7: // Class
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				pos += 3;
+				break;
+			case 15: // MethodHandle
+				pos += 4;
+				break;
+			default:
+				return false;
+			}
+		}
+		if (!candidate) {
+			return false;
+		}
+		int access = readShort(b, pos);
+		if ((access & 0x0200) != 0) { // interface / annotation
+			return false;
+		}
+		pos += 6;
+		pos += 2 + readShort(b, pos) * 2; // interfaces
+		for (int member = 0; member < 2; member++) { // fields, methods
+			int memberCount = readShort(b, pos);
+			pos += 2;
+			for (int i = 0; i < memberCount; i++) {
+				pos = skipAttributes(b, pos + 6);
+			}
+		}
+		int attributeCount = readShort(b, pos);
+		pos += 2;
+		for (int i = 0; i < attributeCount; i++) {
+			int nameOffset = utf8Offsets[readShort(b, pos)];
+			int length = readInt(b, pos + 2);
+			if (matches(b, nameOffset, RUNTIME_VISIBLE_ANNOTATIONS)) {
+				int p = pos + 6;
+				int annotationCount = readShort(b, p);
+				p += 2;
+				for (int a = 0; a < annotationCount; a++) {
+					if (matchesAny(b, utf8Offsets[readShort(b, p)], COMPONENT_DESCRIPTORS)) {
+						return true;
+					}
+					p = skipAnnotation(b, p);
+				}
+			}
+			pos += 6 + length;
+		}
+		return false;
+	}
+
+	private static int skipAttributes(byte[] b, int pos) {
+		int count = readShort(b, pos);
+		pos += 2;
+		for (int i = 0; i < count; i++) {
+			pos += 6 + readInt(b, pos + 2);
+		}
+		return pos;
+	}
+
+	private static int skipAnnotation(byte[] b, int pos) {
+		int pairs = readShort(b, pos + 2);
+		pos += 4;
+		for (int i = 0; i < pairs; i++) {
+			pos = skipElementValue(b, pos + 2);
+		}
+		return pos;
+	}
+
+	private static int skipElementValue(byte[] b, int pos) {
+		char tag = (char) b[pos];
+		switch (tag) {
+		case 'e':
+			return pos + 5;
+		case '@':
+			return skipAnnotation(b, pos + 1);
+		case '[':
+			int count = readShort(b, pos + 1);
+			pos += 3;
+			for (int i = 0; i < count; i++) {
+				pos = skipElementValue(b, pos);
+			}
+			return pos;
+		default: // const / class
+			return pos + 3;
+		}
+	}
+
+	private static boolean matchesAny(byte[] b, int utf8Offset, byte[][] candidates) {
+		for (byte[] candidate : candidates) {
+			if (matches(b, utf8Offset, candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param utf8Offset 常量池 Utf8 项的长度字段位置
+	 */
+	private static boolean matches(byte[] b, int utf8Offset, byte[] expected) {
+		if (utf8Offset == 0 || readShort(b, utf8Offset) != expected.length) {
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (b[utf8Offset + 2 + i] != expected[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int readShort(byte[] b, int pos) {
+		return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,32 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 运行 handler 的执行器。
+ * <p>
+ * 项目按 Java 8 编译，虚拟线程（JDK 21+）通过反射获取，低版本 JVM 上返回 null，由调用方退回同步模式。
+ */
+final class DispatchExecutors {
+
+	private DispatchExecutors() {
+	}
+
+	/**
+	 * @return 每个任务一个虚拟线程的执行器，JVM 不支持时返回 null
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// JDK 19/20 未开启 --enable-preview
+			return null;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * 5xx 异常以及响应之外的请求期错误（异步写出、拦截器 afterCompletion）的日志：按 sampleRate 抽样，
+ * 每秒最多输出 maxPerSecond 个栈，其余只计数，下一次输出时带上被略过的条数。栈信息只进日志，不返回给客户端。
+ */
+final class ErrorLog {
+
+	private final int maxPerSecond;
+	private final int sampleRate;
+
+	final LongAdder errors = new LongAdder();
+	final LongAdder notLogged = new LongAdder();
+	// 上一次输出之后略过的条数
+	private final LongAdder skipped = new LongAdder();
+	private final AtomicLong seen = new AtomicLong();
+	private final AtomicLong window = new AtomicLong();
+	private final AtomicInteger loggedInWindow = new AtomicInteger();
+
+	/**
+	 * @param maxPerSecond 每秒最多输出的栈数量，0 表示不输出
+	 * @param sampleRate   每 sampleRate 个错误取一个
+	 */
+	ErrorLog(int maxPerSecond, int sampleRate) {
+		this.maxPerSecond = maxPerSecond;
+		this.sampleRate = Math.max(1, sampleRate);
+	}
+
+	void log(HttpServletRequest req, int status, Throwable e) {
+		log(req, String.valueOf(status), e);
+	}
+
+	/**
+	 * @param what 日志行开头的说明，后面接请求方法和 URI
+	 */
+	void log(HttpServletRequest req, String what, Throwable e) {
+		errors.increment();
+		if (!sampled() || !tryAcquire()) {
+			notLogged.increment();
+			skipped.increment();
+			return;
+		}
+		long skippedSinceLast = skipped.sumThenReset();
+		System.err.println("Mock MVC " + what + " on " + req.getMethod() + " " + req.getRequestURI()
+				+ (skippedSinceLast > 0 ? " (" + skippedSinceLast + " errors not logged since last)" : ""));
+		e.printStackTrace();
+	}
+
+	private boolean sampled() {
+		return sampleRate == 1 || seen.incrementAndGet() % sampleRate == 0;
+	}
+
+	private boolean tryAcquire() {
+		if (maxPerSecond <= 0) {
+			return false;
+		}
+		long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+		long current = window.get();
+		if (current != second && window.compareAndSet(current, second)) {
+			loggedInWindow.set(0);
+		}
+		return loggedInWindow.incrementAndGet() <= maxPerSecond;
+	}
+
+	@Override
+	public String toString() {
+		return "errors=" + errors.sum() + ", notLogged=" + notLogged.sum();
+	}
+}
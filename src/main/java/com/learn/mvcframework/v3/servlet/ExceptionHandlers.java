@@ -0,0 +1,236 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import com.learn.mvcframework.annotation.MockControllerAdvice;
+import com.learn.mvcframework.annotation.MockExceptionHandler;
+
+/**
+ * 异常到响应的映射：controller 自己的 {@link MockExceptionHandler} 优先，其次是 {@link MockControllerAdvice}。
+ * <p>
+ * 同一作用域内沿异常的父类链取最近的处理方法，结果按异常类型缓存在 ClassValue 中，请求时只做一次查表。
+ * 没有处理方法时由 dispatcher 输出预先编码好的状态行，不再拼接栈信息。
+ */
+final class ExceptionHandlers {
+
+	static final String CONTENT_TYPE = "text/plain;charset=UTF-8";
+
+	static final byte[] BAD_REQUEST = encode("400 Bad Request");
+	static final byte[] NOT_FOUND = encode("404 Not Found");
+	static final byte[] SERVER_ERROR = encode("500 Server Error");
+	static final byte[] SERVICE_UNAVAILABLE = encode("503 Service Unavailable");
+	static final byte[] TOO_MANY_REQUESTS = encode("429 Too Many Requests");
+
+	private static final Handler NONE = new Handler();
+
+	private final Scope global;
+	private final Map<Class<?>, Scope> controllers;
+
+	private ExceptionHandlers(Scope global, Map<Class<?>, Scope> controllers) {
+		this.global = global;
+		this.controllers = controllers;
+	}
+
+	/**
+	 * 从 controller 和 advice bean 中收集处理方法，同一作用域内同一异常类型重复声明时报错
+	 */
+	static ExceptionHandlers build(Collection<Object> controllers, Collection<Object> advices) {
+		Scope global = new Scope();
+		for (Object advice : advices) {
+			collect(advice, global);
+		}
+		Map<Class<?>, Scope> scopes = new HashMap<>();
+		for (Object controller : controllers) {
+			Scope scope = new Scope();
+			collect(controller, scope);
+			if (!scope.declared.isEmpty()) {
+				scopes.put(controller.getClass(), scope);
+			}
+		}
+		return new ExceptionHandlers(global, scopes);
+	}
+
+	private static void collect(Object bean, Scope scope) {
+		for (Method method : bean.getClass().getDeclaredMethods()) {
+			MockExceptionHandler annotation = method.getAnnotation(MockExceptionHandler.class);
+			if (annotation != null) {
+				scope.add(new Handler(method, bean, annotation));
+			}
+		}
+	}
+
+	/**
+	 * @param controller 抛出异常的 controller，路由之外的异常传 null
+	 * @return 处理方法，没有时返回 null
+	 */
+	Handler find(Object controller, Throwable e) {
+		Class<? extends Throwable> type = e.getClass();
+		if (controller != null) {
+			Scope scope = controllers.get(controller.getClass());
+			if (scope != null) {
+				Handler handler = scope.resolved.get(type);
+				if (handler != NONE) {
+					return handler;
+				}
+			}
+		}
+		Handler handler = global.resolved.get(type);
+		return handler == NONE ? null : handler;
+	}
+
+	int size() {
+		int size = global.declared.size();
+		for (Scope scope : controllers.values()) {
+			size += scope.declared.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return 状态行，message 为空时用预先编码好的内容
+	 */
+	static byte[] statusBody(int status, String message) {
+		if (message == null || message.isEmpty()) {
+			switch (status) {
+			case HttpServletResponse.SC_BAD_REQUEST:
+				return BAD_REQUEST;
+			case HttpServletResponse.SC_NOT_FOUND:
+				return NOT_FOUND;
+			case HttpServletResponse.SC_INTERNAL_SERVER_ERROR:
+				return SERVER_ERROR;
+			case HttpServletResponse.SC_SERVICE_UNAVAILABLE:
+				return SERVICE_UNAVAILABLE;
+			case 429:
+				return TOO_MANY_REQUESTS;
+			default:
+				return encode(String.valueOf(status));
+			}
+		}
+		return encode(status + " " + message);
+	}
+
+	/**
+	 * 设置状态并写出 body；handler 已经用过 getWriter 时改用 writer 输出
+	 */
+	static void write(HttpServletResponse resp, int status, byte[] body) throws IOException {
+		resp.setStatus(status);
+		if (resp.getContentType() == null) {
+			resp.setContentType(CONTENT_TYPE);
+		}
+		try {
+			resp.getOutputStream().write(body);
+		} catch (IllegalStateException e) {
+			resp.getWriter().print(new String(body, StandardCharsets.UTF_8));
+		}
+	}
+
+	private static byte[] encode(String line) {
+		return (line + "\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static final class Scope {
+		final Map<Class<?>, Handler> declared = new HashMap<>();
+		final ClassValue<Handler> resolved = new ClassValue<Handler>() {
+			@Override
+			protected Handler computeValue(Class<?> type) {
+				for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+					Handler handler = declared.get(c);
+					if (handler != null) {
+						return handler;
+					}
+				}
+				return NONE;
+			}
+		};
+
+		void add(Handler handler) {
+			for (Class<? extends Throwable> type : handler.types) {
+				Handler exist = declared.put(type, handler);
+				if (exist != null) {
+					throw new IllegalStateException("Ambiguous @MockExceptionHandler for " + type.getName() + ": "
+							+ exist.method + " and " + handler.method);
+				}
+			}
+		}
+	}
+
+	static final class Handler {
+		private static final int EXCEPTION = 0;
+		private static final int REQUEST = 1;
+		private static final int RESPONSE = 2;
+
+		final Method method;
+		final int status;
+		final Class<? extends Throwable>[] types;
+		private final HanderInvoker invoker;
+		// 每个参数的取值方式
+		private final int[] arguments;
+
+		private Handler() {
+			this.method = null;
+			this.status = 0;
+			this.types = null;
+			this.invoker = null;
+			this.arguments = null;
+		}
+
+		@SuppressWarnings("unchecked")
+		Handler(Method method, Object bean, MockExceptionHandler annotation) {
+			this.method = method;
+			this.status = annotation.status();
+			this.invoker = HanderInvoker.of(method, bean);
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			this.arguments = new int[parameterTypes.length];
+			Class<?> exceptionType = null;
+			for (int i = 0; i < parameterTypes.length; i++) {
+				Class<?> type = parameterTypes[i];
+				if (Throwable.class.isAssignableFrom(type)) {
+					arguments[i] = EXCEPTION;
+					exceptionType = type;
+				} else if (ServletRequest.class.isAssignableFrom(type)) {
+					arguments[i] = REQUEST;
+				} else if (ServletResponse.class.isAssignableFrom(type)) {
+					arguments[i] = RESPONSE;
+				} else {
+					throw new IllegalStateException("Unsupported parameter " + type.getName() + " on " + method);
+				}
+			}
+			if (annotation.value().length > 0) {
+				this.types = annotation.value();
+			} else if (exceptionType != null) {
+				this.types = new Class[] { exceptionType };
+			} else {
+				throw new IllegalStateException("No exception type declared on " + method);
+			}
+			for (Class<? extends Throwable> type : types) {
+				if (exceptionType != null && !exceptionType.isAssignableFrom(type)) {
+					throw new IllegalStateException(
+							"Parameter " + exceptionType.getName() + " can not accept " + type.getName() + " on " + method);
+				}
+			}
+		}
+
+		Object invoke(Throwable e, ServletRequest req, ServletResponse resp) throws Exception {
+			Object[] args = new Object[arguments.length];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = arguments[i] == EXCEPTION ? e : arguments[i] == REQUEST ? req : resp;
+			}
+			return invoker.invoke(args);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(types) + " -> " + status + " " + method;
+		}
+	}
+}
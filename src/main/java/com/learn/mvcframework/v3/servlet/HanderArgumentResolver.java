@@ -0,0 +1,309 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.learn.mvcframework.annotation.MockModelAttribute;
+import com.learn.mvcframework.annotation.MockPathVariable;
+import com.learn.mvcframework.annotation.MockRequestBody;
+import com.learn.mvcframework.annotation.MockRequestParam;
+
+/**
+ * 单个方法参数的取值器，启动时按参数声明选好实现，请求时只做取值和类型转换。
+ */
+interface HanderArgumentResolver {
+
+	Object resolve(HttpServletRequest req, HttpServletResponse resp);
+
+	HanderArgumentResolver REQUEST = (req, resp) -> req;
+
+	HanderArgumentResolver RESPONSE = (req, resp) -> resp;
+
+	/**
+	 * @param pathVariables handler url 模板中的变量名
+	 * @param bodyReader {@link MockRequestBody} 参数使用的请求体读取器
+	 */
+	static HanderArgumentResolver of(Parameter parameter, String[] pathVariables, RequestBodyReader bodyReader) {
+		Class<?> type = parameter.getType();
+		if (ServletRequest.class.isAssignableFrom(type) && type.isAssignableFrom(HttpServletRequest.class)) {
+			return REQUEST;
+		}
+		if (ServletResponse.class.isAssignableFrom(type) && type.isAssignableFrom(HttpServletResponse.class)) {
+			return RESPONSE;
+		}
+		if (parameter.isAnnotationPresent(MockPathVariable.class)) {
+			return PathVariableResolver.of(parameter, pathVariables);
+		}
+		if (parameter.isAnnotationPresent(MockRequestBody.class)) {
+			return RequestBodyResolver.of(parameter, bodyReader);
+		}
+		if (parameter.isAnnotationPresent(MockModelAttribute.class)) {
+			ModelAttributeBinder binder = ModelAttributeBinder.of(parameter.getType());
+			return (req, resp) -> binder.bind(req.getParameterMap());
+		}
+		return RequestParamResolver.of(parameter);
+	}
+
+	/**
+	 * 处理 {@link MockRequestBody}，绑定方式在启动时确定
+	 */
+	final class RequestBodyResolver implements HanderArgumentResolver {
+		final RequestBodyReader reader;
+		final RequestBodyReader.Binder binder;
+		final boolean required;
+
+		private RequestBodyResolver(RequestBodyReader reader, RequestBodyReader.Binder binder, boolean required) {
+			this.reader = reader;
+			this.binder = binder;
+			this.required = required;
+		}
+
+		static RequestBodyResolver of(Parameter parameter, RequestBodyReader reader) {
+			boolean required = parameter.getAnnotation(MockRequestBody.class).required();
+			RequestBodyReader.Binder binder = RequestBodyReader.binder(parameter.getParameterizedType());
+			if (binder == null) {
+				throw new IllegalStateException("Unsupported request body type " + parameter.getParameterizedType()
+						+ " of " + parameter.getDeclaringExecutable()
+						+ ", beans need to be public with a public no-arg constructor");
+			}
+			if (!required && parameter.getType().isPrimitive()) {
+				throw new IllegalStateException("Optional request body of " + parameter.getDeclaringExecutable()
+						+ " can not be a primitive");
+			}
+			return new RequestBodyResolver(reader, binder, required);
+		}
+
+		@Override
+		public Object resolve(HttpServletRequest req, HttpServletResponse resp) {
+			try {
+				return reader.read(req, binder, required);
+			} catch (IOException e) {
+				throw new MockResponseStatusException(400, "Failed to read request body", e);
+			}
+		}
+	}
+
+	/**
+	 * 处理 {@link MockPathVariable}，变量位置在启动时确定
+	 */
+	final class PathVariableResolver implements HanderArgumentResolver {
+		final String name;
+		final int index;
+		final TypeConverters.Converter converter;
+		// 只用于错误信息
+		final String typeName;
+
+		private PathVariableResolver(String name, int index, TypeConverters.Converter converter, String typeName) {
+			this.name = name;
+			this.index = index;
+			this.converter = converter;
+			this.typeName = typeName;
+		}
+
+		static PathVariableResolver of(Parameter parameter, String[] pathVariables) {
+			String name = parameter.getAnnotation(MockPathVariable.class).value();
+			if (name.isEmpty()) {
+				if (!parameter.isNamePresent()) {
+					throw new IllegalStateException("Can not resolve path variable name for " + parameter + " of "
+							+ parameter.getDeclaringExecutable() + ", use @MockPathVariable(\"name\") or compile with -parameters");
+				}
+				name = parameter.getName();
+			}
+			int index = Arrays.asList(pathVariables).indexOf(name);
+			if (index < 0) {
+				throw new IllegalStateException("Path variable '" + name + "' of " + parameter.getDeclaringExecutable()
+						+ " is not declared in the mapping, found " + Arrays.toString(pathVariables));
+			}
+			TypeConverters.Converter converter = TypeConverters.find(parameter.getType());
+			if (converter == null) {
+				throw new IllegalStateException("Unsupported path variable type " + parameter.getParameterizedType()
+						+ " of " + parameter.getDeclaringExecutable());
+			}
+			return new PathVariableResolver(name, index, converter, parameter.getParameterizedType().getTypeName());
+		}
+
+		@Override
+		public Object resolve(HttpServletRequest req, HttpServletResponse resp) {
+			PathVariables variables = (PathVariables) req.getAttribute(PathVariables.ATTRIBUTE);
+			if (variables == null) {
+				throw new IllegalStateException("Path variable '" + name + "' is not captured for " + req.getRequestURI());
+			}
+			try {
+				return converter.convert(variables.get(index));
+			} catch (RuntimeException e) {
+				// 异常信息含有客户端的原始值，只保留在 cause 中
+				throw new MockResponseStatusException(400,
+						"Failed to convert path variable '" + name + "' to " + typeName, e);
+			}
+		}
+	}
+
+	/**
+	 * String[] -> 参数值
+	 */
+	interface ValueReader {
+		Object read(String[] values);
+	}
+
+	/**
+	 * 处理 {@link MockRequestParam} 以及未标注但编译时保留了参数名的参数
+	 */
+	final class RequestParamResolver implements HanderArgumentResolver {
+		final String name;
+		final boolean required;
+		final boolean emptyIsMissing;
+		final ValueReader reader;
+		final Object defaultValue;
+		// 只用于错误信息
+		final String typeName;
+
+		private RequestParamResolver(String name, boolean required, boolean emptyIsMissing, ValueReader reader,
+				Object defaultValue, String typeName) {
+			this.name = name;
+			this.required = required;
+			this.emptyIsMissing = emptyIsMissing;
+			this.reader = reader;
+			this.defaultValue = defaultValue;
+			this.typeName = typeName;
+		}
+
+		static RequestParamResolver of(Parameter parameter) {
+			MockRequestParam requestParam = parameter.getAnnotation(MockRequestParam.class);
+			String name = requestParam == null ? "" : requestParam.value();
+			if (name.isEmpty()) {
+				if (!parameter.isNamePresent()) {
+					throw new IllegalStateException("Can not resolve request parameter name for " + parameter + " of "
+							+ parameter.getDeclaringExecutable() + ", use @MockRequestParam or compile with -parameters");
+				}
+				name = parameter.getName();
+			}
+			boolean required = requestParam == null || requestParam.required();
+			String defaultText = requestParam == null ? MockRequestParam.NO_DEFAULT : requestParam.defaultValue();
+			boolean hasDefault = !MockRequestParam.NO_DEFAULT.equals(defaultText);
+
+			Class<?> type = parameter.getType();
+			Type genericType = parameter.getParameterizedType();
+			boolean optional = type == Optional.class;
+			if (optional) {
+				genericType = typeArgument(genericType);
+				type = rawClass(genericType);
+				required = false;
+			}
+			ValueReader reader = reader(type, genericType);
+			if (reader == null) {
+				throw new IllegalStateException(
+						"Unsupported parameter type " + parameter.getParameterizedType() + " of " + parameter.getDeclaringExecutable());
+			}
+			Object defaultValue = null;
+			if (hasDefault) {
+				required = false;
+				defaultValue = reader.read(type.isArray() || Collection.class.isAssignableFrom(type)
+						? defaultText.split(",") : new String[] { defaultText });
+			} else if (!required && type.isPrimitive()) {
+				throw new IllegalStateException("Optional primitive parameter '" + name + "' of "
+						+ parameter.getDeclaringExecutable() + " needs a defaultValue");
+			}
+			if (optional) {
+				ValueReader inner = reader;
+				reader = values -> Optional.of(inner.read(values));
+				defaultValue = Optional.ofNullable(defaultValue);
+			}
+			return new RequestParamResolver(name, required, type != String.class && type != Object.class
+					&& type != CharSequence.class, reader, defaultValue, parameter.getParameterizedType().getTypeName());
+		}
+
+		@Override
+		public Object resolve(HttpServletRequest req, HttpServletResponse resp) {
+			String[] values = req.getParameterValues(name);
+			if (values == null || values.length == 0 || (emptyIsMissing && values.length == 1 && values[0].isEmpty())) {
+				if (required) {
+					throw new MockResponseStatusException(400, "Required parameter '" + name + "' is not present");
+				}
+				return defaultValue;
+			}
+			try {
+				return reader.read(values);
+			} catch (RuntimeException e) {
+				// 异常信息含有客户端的原始值，只保留在 cause 中
+				throw new MockResponseStatusException(400,
+						"Failed to convert parameter '" + name + "' to " + typeName, e);
+			}
+		}
+
+		/**
+		 * @return 不支持的类型返回 null
+		 */
+		static ValueReader reader(Class<?> type, Type genericType) {
+			if (type.isArray()) {
+				TypeConverters.ArrayConverter arrayConverter = TypeConverters.findArray(type);
+				if (arrayConverter == null) {
+					return null;
+				}
+				return values -> arrayConverter.convert(splitSingle(values));
+			}
+			if (type == List.class || type == Collection.class || type == Set.class) {
+				Class<?> elementType = rawClass(typeArgument(genericType));
+				TypeConverters.Converter converter = TypeConverters.find(elementType);
+				if (converter == null) {
+					return null;
+				}
+				boolean set = type == Set.class;
+				return values -> {
+					values = splitSingle(values);
+					Collection<Object> collection = set ? new LinkedHashSet<>(values.length * 2)
+							: new ArrayList<>(values.length);
+					for (String value : values) {
+						collection.add(value.isEmpty() ? null : converter.convert(value));
+					}
+					return collection;
+				};
+			}
+			TypeConverters.Converter converter = TypeConverters.find(type);
+			if (converter == null) {
+				return null;
+			}
+			return values -> converter.convert(values[0]);
+		}
+
+		/**
+		 * 单个值 "1,2,3" 按逗号拆开
+		 */
+		private static String[] splitSingle(String[] values) {
+			if (values.length == 1 && values[0].indexOf(',') >= 0) {
+				return values[0].split(",");
+			}
+			return values;
+		}
+
+		private static Type typeArgument(Type type) {
+			if (type instanceof ParameterizedType) {
+				return ((ParameterizedType) type).getActualTypeArguments()[0];
+			}
+			return String.class;
+		}
+
+		private static Class<?> rawClass(Type type) {
+			if (type instanceof Class) {
+				return (Class<?>) type;
+			}
+			if (type instanceof ParameterizedType) {
+				return (Class<?>) ((ParameterizedType) type).getRawType();
+			}
+			return String.class;
+		}
+	}
+}
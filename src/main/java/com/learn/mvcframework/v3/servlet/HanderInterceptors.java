@@ -0,0 +1,189 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.learn.mvcframework.annotation.MockInterceptor;
+
+/**
+ * 已注册的 {@link MockHandlerInterceptor} 及其路径模式，不可变，随 {@link RouteSnapshot} 一起替换。
+ * <p>
+ * 构建快照时按每个 handler 的 url 模板算出适用的拦截器，展开成按执行顺序排好的数组存在快照里，
+ * 请求时直接遍历数组，不再做路径匹配。
+ */
+final class HanderInterceptors {
+
+	static final MockHandlerInterceptor[] NONE = new MockHandlerInterceptor[0];
+
+	static final HanderInterceptors EMPTY = new HanderInterceptors(Collections.<Registration>emptyList());
+
+	static final class Registration {
+		final MockHandlerInterceptor interceptor;
+		final String[][] include;
+		final String[][] exclude;
+		final int order;
+
+		/**
+		 * 按实现类上的 {@link MockInterceptor} 注册，没有注解时作用于全部路由
+		 *
+		 * @throws IllegalStateException 路径模式不合法
+		 */
+		Registration(MockHandlerInterceptor interceptor) {
+			MockInterceptor annotation = interceptor.getClass().getAnnotation(MockInterceptor.class);
+			this.interceptor = interceptor;
+			this.include = compile(interceptor, annotation == null ? new String[] { "/**" } : annotation.pathPatterns());
+			this.exclude = compile(interceptor, annotation == null ? new String[0] : annotation.excludePathPatterns());
+			this.order = annotation == null ? 0 : annotation.order();
+		}
+
+		boolean matches(String url) {
+			String[] segments = segments(url);
+			for (String[] pattern : exclude) {
+				if (match(pattern, 0, segments, 0)) {
+					return false;
+				}
+			}
+			for (String[] pattern : include) {
+				if (match(pattern, 0, segments, 0)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	// 按 order 稳定排序
+	private final List<Registration> registrations;
+
+	private HanderInterceptors(List<Registration> registrations) {
+		this.registrations = registrations;
+	}
+
+	static HanderInterceptors of(Collection<?> interceptors) {
+		HanderInterceptors result = EMPTY;
+		for (Object interceptor : interceptors) {
+			if (!(interceptor instanceof MockHandlerInterceptor)) {
+				throw new IllegalStateException(interceptor.getClass().getName() + " is annotated with @MockInterceptor"
+						+ " but does not implement " + MockHandlerInterceptor.class.getName());
+			}
+			result = result.with((MockHandlerInterceptor) interceptor);
+		}
+		return result;
+	}
+
+	/**
+	 * @return 加上 interceptor 的新实例，已注册过时原样返回
+	 */
+	HanderInterceptors with(MockHandlerInterceptor interceptor) {
+		if (contains(interceptor)) {
+			return this;
+		}
+		Registration registration = new Registration(interceptor);
+		List<Registration> next = new ArrayList<>(registrations.size() + 1);
+		int i = 0;
+		while (i < registrations.size() && registrations.get(i).order <= registration.order) {
+			next.add(registrations.get(i++));
+		}
+		next.add(registration);
+		next.addAll(registrations.subList(i, registrations.size()));
+		return new HanderInterceptors(Collections.unmodifiableList(next));
+	}
+
+	/**
+	 * @return 去掉 interceptor 的新实例，没有注册过时原样返回
+	 */
+	HanderInterceptors without(MockHandlerInterceptor interceptor) {
+		if (!contains(interceptor)) {
+			return this;
+		}
+		List<Registration> next = new ArrayList<>(registrations.size());
+		for (Registration registration : registrations) {
+			if (registration.interceptor != interceptor) {
+				next.add(registration);
+			}
+		}
+		return new HanderInterceptors(Collections.unmodifiableList(next));
+	}
+
+	private boolean contains(MockHandlerInterceptor interceptor) {
+		for (Registration registration : registrations) {
+			if (registration.interceptor == interceptor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return registrations.size();
+	}
+
+	/**
+	 * @return 作用于 url 的拦截器，按 preHandle 的执行顺序
+	 */
+	MockHandlerInterceptor[] resolve(String url) {
+		List<MockHandlerInterceptor> matched = new ArrayList<>(registrations.size());
+		for (Registration registration : registrations) {
+			if (registration.matches(url)) {
+				matched.add(registration.interceptor);
+			}
+		}
+		return matched.isEmpty() ? NONE : matched.toArray(new MockHandlerInterceptor[0]);
+	}
+
+	private static String[][] compile(MockHandlerInterceptor interceptor, String[] patterns) {
+		String[][] compiled = new String[patterns.length][];
+		for (int i = 0; i < patterns.length; i++) {
+			String pattern = patterns[i].trim();
+			if (!pattern.startsWith("/")) {
+				throw new IllegalStateException("Path pattern '" + pattern + "' of " + interceptor.getClass().getName()
+						+ " must start with '/'");
+			}
+			compiled[i] = segments(pattern);
+			for (String segment : compiled[i]) {
+				if (segment.contains("**") && !segment.equals("**")) {
+					throw new IllegalStateException("Path pattern '" + pattern + "' of "
+							+ interceptor.getClass().getName() + " must use '**' as a whole segment");
+				}
+			}
+		}
+		return compiled;
+	}
+
+	private static String[] segments(String path) {
+		List<String> segments = new ArrayList<>();
+		for (String segment : HanderRouter.normalize(path).split("/")) {
+			if (!segment.isEmpty()) {
+				segments.add(segment);
+			}
+		}
+		return segments.toArray(new String[0]);
+	}
+
+	/**
+	 * {@code *} 匹配一段，{@code **} 匹配任意多段，其余按字面比较
+	 */
+	private static boolean match(String[] pattern, int i, String[] url, int j) {
+		while (i < pattern.length) {
+			if (pattern[i].equals("**")) {
+				if (i == pattern.length - 1) {
+					return true;
+				}
+				for (int k = j; k <= url.length; k++) {
+					if (match(pattern, i + 1, url, k)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			if (j == url.length || (!pattern[i].equals("*") && !pattern[i].equals(url[j]))) {
+				return false;
+			}
+			i++;
+			j++;
+		}
+		return j == url.length;
+	}
+}
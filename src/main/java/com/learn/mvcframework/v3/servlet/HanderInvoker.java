@@ -0,0 +1,97 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * 启动时为每个 handler 方法预先绑定好的调用器，运行期不再走 Method.invoke。
+ * <p>
+ * public 方法优先用 {@link LambdaInvokers} 生成直接调用的类，不支持时使用绑定了 controller 实例的 MethodHandle，
+ * 非 public 方法退回反射。几种实现都把 controller 抛出的异常原样抛出，不会包一层 InvocationTargetException。
+ */
+interface HanderInvoker {
+
+	Object invoke(Object[] args) throws Exception;
+
+	static HanderInvoker of(Method method, Object instance) {
+		HanderInvoker invoker = LambdaInvokers.create(method, instance);
+		if (invoker == null) {
+			invoker = methodHandle(method, instance);
+		}
+		if (invoker == null) {
+			method.setAccessible(true);
+			invoker = new ReflectiveInvoker(method, instance);
+		}
+		return invoker;
+	}
+
+	/**
+	 * @return 非 public 方法返回 null
+	 */
+	static HanderInvoker methodHandle(Method method, Object instance) {
+		if (Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+			try {
+				MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+				if (!Modifier.isStatic(method.getModifiers())) {
+					handle = handle.bindTo(instance);
+				}
+				handle = handle.asSpreader(Object[].class, method.getParameterCount())
+						.asType(MethodType.methodType(Object.class, Object[].class));
+				return new MethodHandleInvoker(handle);
+			} catch (IllegalAccessException e) {
+				// fall through to reflection
+			}
+		}
+		return null;
+	}
+
+	final class MethodHandleInvoker implements HanderInvoker {
+		private final MethodHandle handle;
+
+		MethodHandleInvoker(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public Object invoke(Object[] args) throws Exception {
+			try {
+				return handle.invokeExact(args);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new UndeclaredThrowableException(t);
+			}
+		}
+	}
+
+	final class ReflectiveInvoker implements HanderInvoker {
+		private final Method method;
+		private final Object instance;
+
+		ReflectiveInvoker(Method method, Object instance) {
+			this.method = method;
+			this.instance = instance;
+		}
+
+		@Override
+		public Object invoke(Object[] args) throws Exception {
+			try {
+				return method.invoke(instance, args);
+			} catch (InvocationTargetException e) {
+				Throwable target = e.getTargetException();
+				if (target instanceof Exception) {
+					throw (Exception) target;
+				}
+				if (target instanceof Error) {
+					throw (Error) target;
+				}
+				throw e;
+			}
+		}
+	}
+}
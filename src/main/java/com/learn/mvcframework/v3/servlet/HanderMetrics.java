@@ -0,0 +1,184 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 handler 的请求数、错误数、处理中请求数和延迟分布。
+ * <p>
+ * 计数用 LongAdder；延迟直方图按线程分条（stripe），每条是一个 AtomicLongArray，
+ * 不同核上的线程一般落在不同的条上，记录时不争用同一缓存行。条在第一次使用时才分配，没有请求的 handler 不占内存。
+ * <p>
+ * 直方图是对数-线性分桶：每个 2 的幂区间再等分 8 份，相对误差不超过 12.5%，分位数取桶的中点。
+ */
+final class HanderMetrics {
+
+	// 每个 2 的幂区间细分 2^SUB_BITS 份
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	// 最大可区分约 2^36ns（68 秒），更大的值计入最后一个桶
+	private static final int MAX_EXPONENT = 36;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+	private static final int STRIPES = stripes();
+
+	final LongAdder requests = new LongAdder();
+	final LongAdder errors = new LongAdder();
+	final LongAdder inFlight = new LongAdder();
+	final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+	private static int stripes() {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		int n = Integer.highestOneBit(Math.max(cpus, 1));
+		if (n < cpus) {
+			n <<= 1;
+		}
+		return Math.min(n, 16);
+	}
+
+	/**
+	 * 请求开始
+	 *
+	 * @return 开始时间，传给 {@link #end}
+	 */
+	long begin() {
+		inFlight.increment();
+		return System.nanoTime();
+	}
+
+	/**
+	 * 请求结束，每个 begin 只能调用一次
+	 *
+	 * @return 请求耗时
+	 */
+	long end(long startNanos, boolean error) {
+		long nanos = System.nanoTime() - startNanos;
+		inFlight.decrement();
+		requests.increment();
+		if (error) {
+			errors.increment();
+		}
+		totalNanos.add(nanos);
+		stripe().incrementAndGet(bucket(nanos));
+		return nanos;
+	}
+
+	private AtomicLongArray stripe() {
+		int h = (int) Thread.currentThread().getId();
+		// 打散连续的线程 id
+		h ^= h >>> 16;
+		h *= 0x9E3779B9;
+		int index = (h >>> 16) & (STRIPES - 1);
+		AtomicLongArray stripe = stripes.get(index);
+		if (stripe == null) {
+			stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+			stripe = stripes.get(index);
+		}
+		return stripe;
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_COUNT) {
+			return (int) Math.max(nanos, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+		int sub = bucket % SUB_COUNT;
+		return (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+	}
+
+	static long upperBound(int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+	}
+
+	/**
+	 * 合并各条的计数，读取期间的并发记录可能部分可见
+	 */
+	Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < STRIPES; i++) {
+			AtomicLongArray stripe = stripes.get(i);
+			if (stripe == null) {
+				continue;
+			}
+			for (int b = 0; b < BUCKETS; b++) {
+				counts[b] += stripe.get(b);
+			}
+		}
+		return new Snapshot(counts, requests.sum(), errors.sum(), inFlight.sum(), totalNanos.sum());
+	}
+
+	static final class Snapshot {
+		final long[] counts;
+		final long requests;
+		final long errors;
+		final long inFlight;
+		final long totalNanos;
+		final long count;
+
+		Snapshot(long[] counts, long requests, long errors, long inFlight, long totalNanos) {
+			this.counts = counts;
+			this.requests = requests;
+			this.errors = errors;
+			this.inFlight = inFlight;
+			this.totalNanos = totalNanos;
+			long count = 0;
+			for (long c : counts) {
+				count += c;
+			}
+			this.count = count;
+		}
+
+		/**
+		 * @return 分位数（纳秒），没有数据时返回 0
+		 */
+		long percentile(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * count);
+			long seen = 0;
+			for (int b = 0; b < counts.length; b++) {
+				seen += counts[b];
+				if (seen >= Math.max(rank, 1)) {
+					return midpoint(b);
+				}
+			}
+			return max();
+		}
+
+		long max() {
+			for (int b = counts.length - 1; b >= 0; b--) {
+				if (counts[b] != 0) {
+					return b == BUCKETS - 1 ? lowerBound(b) : upperBound(b);
+				}
+			}
+			return 0;
+		}
+
+		long meanNanos() {
+			return requests == 0 ? 0 : totalNanos / requests;
+		}
+
+		private static long midpoint(int bucket) {
+			if (bucket == BUCKETS - 1) {
+				return lowerBound(bucket);
+			}
+			return (lowerBound(bucket) + upperBound(bucket)) >>> 1;
+		}
+	}
+}
@@ -0,0 +1,435 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletRequest;
+
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod;
+
+/**
+ * url->{@link Route} 路由表，initHanderMapping 时一次性编译，运行期只读。
+ * Route 同时带着 handler 和作用于它的拦截器，dispatcher 查到路由后不需要再查一次拦截器。
+ * <p>
+ * 纯字面量的 mapping（不含任何正则元字符）直接进入 hash 表，一次查找即可命中；
+ * 其余 mapping 按 '/' 切分挂到一棵段 trie 上：字面量段是普通子节点，整段的 {name} 或 {name:regex}
+ * 模板是变量边，第一个既不是字面量也不是模板的段开始的剩余部分编译成正则挂在对应节点。
+ * 剩余部分在最外层含有 '|' 时，拆开会改变含义（/x/a|/y/b 原本也匹配 /y/b），整个 url 作为正则挂在根节点，
+ * 此时不能再使用模板变量。
+ * <p>
+ * 变量边只记录段的起止位置（{@link PathVariables}），{name} 匹配任意非空段，
+ * 形如 \d+、[a-z0-9]+ 的单字符类约束预先展开成 ASCII 查表，其他约束复用线程内的 Matcher。
+ * <p>
+ * 匹配优先级（与注册顺序无关）：
+ * <ol>
+ * <li>完全字面量匹配</li>
+ * <li>同一层上字面量段优先于模板段，带约束的模板优先于 {name}，最后才是正则</li>
+ * <li>同一节点上正则源码更长的优先，长度相同按字典序</li>
+ * </ol>
+ */
+final class HanderRouter {
+
+	private static final String REGEX_META = "\\.[]{}()*+?^$|";
+	private static final Pattern TEMPLATE = Pattern.compile("\\{([A-Za-z_][A-Za-z0-9_]*)(?::(.+))?\\}");
+	private static final String[] NO_VARIABLES = new String[0];
+
+	private final Map<String, Route> exactRoutes;
+	private final Node root;
+	// 单个 mapping 中最多的模板变量数
+	private final int maxVariables;
+
+	private HanderRouter(Map<String, Route> exactRoutes, Node root, int maxVariables) {
+		this.exactRoutes = exactRoutes;
+		this.root = root;
+		this.maxVariables = maxVariables;
+	}
+
+	static HanderRouter build(Collection<Route> routes) {
+		Map<String, Route> exactRoutes = new HashMap<>();
+		Node root = new Node();
+		int maxVariables = 0;
+		for (Route route : routes) {
+			HanderMethod hm = route.handerMethod;
+			String url = hm.url;
+			Node node = root;
+			int pos = 0;
+			int variables = 0;
+			while (pos < url.length() && url.charAt(pos) == '/') {
+				int end = segmentEnd(url, pos);
+				String segment = url.substring(pos + 1, end);
+				if (isLiteral(segment)) {
+					node = node.child(segment);
+				} else if (TEMPLATE.matcher(segment).matches()) {
+					node = node.variableChild(segment);
+					variables++;
+				} else {
+					break;
+				}
+				pos = end;
+			}
+			maxVariables = Math.max(maxVariables, variables);
+			if (pos == url.length() && variables == 0) {
+				Route exist = exactRoutes.putIfAbsent(url, route);
+				if (exist != null) {
+					throw ambiguous(hm, exist.handerMethod);
+				}
+			} else if (pos == url.length()) {
+				if (node.terminal != null) {
+					throw ambiguous(hm, node.terminal.handerMethod);
+				}
+				node.terminal = route;
+			} else if (!topLevelAlternation(url, pos)) {
+				node.addPatternRoute(new PatternRoute(url.substring(pos), route));
+			} else if (variables == 0) {
+				root.addPatternRoute(new PatternRoute(url, route));
+			} else {
+				throw new IllegalStateException("Mapping url='" + url + "' on method=" + hm.method
+						+ " uses path variables with a top-level '|' in its regex, wrap the alternatives in a group");
+			}
+		}
+		root.compile();
+		return new HanderRouter(exactRoutes, root, maxVariables);
+	}
+
+	/**
+	 * url 中模板变量的名字，按出现顺序。模板只能出现在正则段之前
+	 */
+	static String[] variableNames(String url) {
+		List<String> names = null;
+		int pos = 0;
+		boolean regexTail = false;
+		while (pos < url.length() && url.charAt(pos) == '/') {
+			int end = segmentEnd(url, pos);
+			String segment = url.substring(pos + 1, end);
+			Matcher matcher = TEMPLATE.matcher(segment);
+			if (!isLiteral(segment) && matcher.matches()) {
+				if (regexTail) {
+					throw new IllegalStateException("Path variable " + segment + " in url='" + url
+							+ "' must not follow a regex segment");
+				}
+				if (names == null) {
+					names = new ArrayList<>();
+				}
+				if (names.contains(matcher.group(1))) {
+					throw new IllegalStateException("Duplicate path variable " + segment + " in url='" + url + "'");
+				}
+				names.add(matcher.group(1));
+			} else if (!isLiteral(segment)) {
+				regexTail = true;
+			}
+			pos = end;
+		}
+		return names == null ? NO_VARIABLES : names.toArray(NO_VARIABLES);
+	}
+
+	/**
+	 * @return url 从 pos 开始的正则在分组和字符类之外是否含有 '|'
+	 */
+	static boolean topLevelAlternation(String url, int pos) {
+		int groups = 0;
+		int classes = 0;
+		for (int i = pos; i < url.length(); i++) {
+			char c = url.charAt(i);
+			if (c == '\\') {
+				if (i + 1 < url.length() && url.charAt(i + 1) == 'Q') {
+					int end = url.indexOf("\\E", i + 2);
+					if (end < 0) {
+						return false;
+					}
+					i = end + 1;
+				} else {
+					i++;
+				}
+			} else if (c == '[') {
+				classes++;
+			} else if (c == ']' && classes > 0) {
+				classes--;
+			} else if (classes > 0) {
+				continue;
+			} else if (c == '(') {
+				groups++;
+			} else if (c == ')' && groups > 0) {
+				groups--;
+			} else if (c == '|' && groups == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static IllegalStateException ambiguous(HanderMethod hm, HanderMethod exist) {
+		return new IllegalStateException(
+				"Ambiguous mapping url='" + hm.url + "' on method=" + hm.method + " and method=" + exist.method);
+	}
+
+	private static int segmentEnd(String path, int pos) {
+		int end = path.indexOf('/', pos + 1);
+		return end < 0 ? path.length() : end;
+	}
+
+	/**
+	 * @param path 已去掉 contextPath 并经过 {@link #normalize(String)} 的请求路径
+	 */
+	Route lookup(String path) {
+		return lookup(path, null);
+	}
+
+	/**
+	 * 命中模板路由时，把捕获的变量以 {@link PathVariables#ATTRIBUTE} 存入 req
+	 */
+	Route lookup(String path, ServletRequest req) {
+		Route route = exactRoutes.get(path);
+		if (route != null) {
+			return route;
+		}
+		int[] offsets = maxVariables > 0 ? new int[2 * maxVariables] : null;
+		route = match(root, path, 0, offsets, 0);
+		if (route != null && req != null && route.handerMethod.pathVariables.length > 0) {
+			req.setAttribute(PathVariables.ATTRIBUTE, new PathVariables(path, offsets));
+		}
+		return route;
+	}
+
+	private static Route match(Node node, String path, int pos, int[] offsets, int variable) {
+		if (pos == path.length() && node.terminal != null) {
+			return node.terminal;
+		}
+		if (pos < path.length() && path.charAt(pos) == '/') {
+			int end = segmentEnd(path, pos);
+			if (node.children != null) {
+				Node child = node.children.get(path.substring(pos + 1, end));
+				if (child != null) {
+					Route route = match(child, path, end, offsets, variable);
+					if (route != null) {
+						return route;
+					}
+				}
+			}
+			for (VariableEdge edge : node.variableEdges) {
+				if (edge.matcher.matches(path, pos + 1, end)) {
+					offsets[2 * variable] = pos + 1;
+					offsets[2 * variable + 1] = end;
+					Route route = match(edge.node, path, end, offsets, variable + 1);
+					if (route != null) {
+						return route;
+					}
+				}
+			}
+		}
+		for (PatternRoute route : node.patternRoutes) {
+			// 透明边界：前缀对后行断言可见，^ 只匹配整个 path 的开头，与整体匹配一致
+			if (route.pattern.matcher(path).region(pos, path.length()).useTransparentBounds(true)
+					.useAnchoringBounds(false).matches()) {
+				return route.route;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 合并连续的 '/'，没有时不产生新对象
+	 */
+	static String normalize(String path) {
+		if (path.indexOf("//") < 0) {
+			return path;
+		}
+		StringBuilder sb = new StringBuilder(path.length());
+		char prev = 0;
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c != '/' || prev != '/') {
+				sb.append(c);
+			}
+			prev = c;
+		}
+		return sb.toString();
+	}
+
+	private static boolean isLiteral(String segment) {
+		for (int i = 0; i < segment.length(); i++) {
+			if (REGEX_META.indexOf(segment.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Node {
+		static final PatternRoute[] NO_ROUTES = new PatternRoute[0];
+		static final VariableEdge[] NO_EDGES = new VariableEdge[0];
+
+		Map<String, Node> children;
+		Map<String, VariableEdge> pendingEdges;
+		VariableEdge[] variableEdges = NO_EDGES;
+		// 以该节点结尾的模板路由
+		Route terminal;
+		List<PatternRoute> pendingRoutes = new ArrayList<>();
+		PatternRoute[] patternRoutes = NO_ROUTES;
+
+		Node child(String segment) {
+			if (children == null) {
+				children = new HashMap<>();
+			}
+			return children.computeIfAbsent(segment, s -> new Node());
+		}
+
+		Node variableChild(String template) {
+			if (pendingEdges == null) {
+				pendingEdges = new HashMap<>();
+			}
+			return pendingEdges.computeIfAbsent(template, VariableEdge::new).node;
+		}
+
+		void addPatternRoute(PatternRoute route) {
+			for (PatternRoute exist : pendingRoutes) {
+				if (exist.source.equals(route.source)) {
+					HanderMethod hm = route.route.handerMethod;
+					throw ambiguous(hm, exist.route.handerMethod);
+				}
+			}
+			pendingRoutes.add(route);
+		}
+
+		/**
+		 * 固定匹配顺序，并剪掉不通向任何正则 mapping 的分支
+		 */
+		boolean compile() {
+			Collections.sort(pendingRoutes, (a, b) -> a.source.length() != b.source.length()
+					? b.source.length() - a.source.length() : a.source.compareTo(b.source));
+			patternRoutes = pendingRoutes.toArray(NO_ROUTES);
+			pendingRoutes = null;
+			if (pendingEdges != null) {
+				List<VariableEdge> edges = new ArrayList<>(pendingEdges.values());
+				// 带约束的优先，其次按模板源码
+				Collections.sort(edges, (a, b) -> a.constrained != b.constrained ? (a.constrained ? -1 : 1)
+						: a.template.compareTo(b.template));
+				edges.removeIf(edge -> !edge.node.compile());
+				variableEdges = edges.toArray(NO_EDGES);
+				pendingEdges = null;
+			}
+			if (children != null) {
+				children.values().removeIf(child -> !child.compile());
+				if (children.isEmpty()) {
+					children = null;
+				}
+			}
+			return children != null || patternRoutes.length > 0 || variableEdges.length > 0 || terminal != null;
+		}
+	}
+
+	private static final class VariableEdge {
+		final String template;
+		final boolean constrained;
+		final SegmentMatcher matcher;
+		final Node node = new Node();
+
+		VariableEdge(String template) {
+			Matcher m = TEMPLATE.matcher(template);
+			m.matches();
+			this.template = template;
+			this.constrained = m.group(2) != null;
+			this.matcher = constrained ? SegmentMatcher.of(m.group(2)) : SegmentMatcher.NON_EMPTY;
+		}
+	}
+
+	/**
+	 * 判断 path[start, end) 这一段是否满足模板约束
+	 */
+	interface SegmentMatcher {
+		boolean matches(String path, int start, int end);
+
+		SegmentMatcher NON_EMPTY = (path, start, end) -> end > start;
+
+		static SegmentMatcher of(String regex) {
+			Pattern pattern = Pattern.compile(regex);
+			SegmentMatcher charClass = CharClassMatcher.of(regex);
+			if (charClass != null) {
+				return charClass;
+			}
+			// 每个线程复用一个 Matcher
+			ThreadLocal<Matcher> matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+			return (path, start, end) -> matchers.get().reset(path).region(start, end).matches();
+		}
+	}
+
+	/**
+	 * X+ / X* 形式的约束，X 是 \d、\w、. 或 [...] 这类单字符类，ASCII 字符预先查表
+	 */
+	static final class CharClassMatcher implements SegmentMatcher {
+		private final boolean[] ascii = new boolean[128];
+		private final Pattern single;
+		private final boolean allowEmpty;
+
+		private CharClassMatcher(Pattern single, boolean allowEmpty) {
+			this.single = single;
+			this.allowEmpty = allowEmpty;
+			for (char c = 0; c < 128; c++) {
+				ascii[c] = single.matcher(String.valueOf(c)).matches();
+			}
+		}
+
+		static CharClassMatcher of(String regex) {
+			if (regex.length() < 2) {
+				return null;
+			}
+			char quantifier = regex.charAt(regex.length() - 1);
+			if (quantifier != '+' && quantifier != '*') {
+				return null;
+			}
+			String unit = regex.substring(0, regex.length() - 1);
+			boolean singleClass = unit.equals(".") || (unit.length() == 2 && unit.charAt(0) == '\\'
+					&& "dDwWsS".indexOf(unit.charAt(1)) >= 0)
+					|| (unit.startsWith("[") && unit.indexOf(']') == unit.length() - 1 && unit.indexOf('\\') < 0
+							&& unit.indexOf('[', 1) < 0 && unit.indexOf('&') < 0);
+			if (!singleClass) {
+				return null;
+			}
+			return new CharClassMatcher(Pattern.compile(unit), quantifier == '*');
+		}
+
+		@Override
+		public boolean matches(String path, int start, int end) {
+			if (start == end) {
+				return allowEmpty;
+			}
+			for (int i = start; i < end; i++) {
+				char c = path.charAt(i);
+				if (c < 128 ? !ascii[c] : !single.matcher(String.valueOf(c)).matches()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final class PatternRoute {
+		final String source;
+		final Pattern pattern;
+		final Route route;
+
+		PatternRoute(String source, Route route) {
+			this.source = source;
+			this.pattern = Pattern.compile(source);
+			this.route = route;
+		}
+	}
+
+	/**
+	 * 路由表中的一项：handler 和所在快照里作用于它的拦截器（按 preHandle 顺序），随快照一起创建
+	 */
+	static final class Route {
+		final HanderMethod handerMethod;
+		final MockHandlerInterceptor[] interceptors;
+
+		Route(HanderMethod handerMethod, MockHandlerInterceptor[] interceptors) {
+			this.handerMethod = handerMethod;
+			this.interceptors = interceptors;
+		}
+	}
+}
@@ -0,0 +1,489 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 把 handler 返回的 POJO / 集合 / Map / 数组直接编码成 UTF-8 JSON 写入响应输出流，不生成中间 String。
+ * <p>
+ * 每个 bean 类型第一次出现时生成写出计划：public getter / public 字段编译成 MethodHandle，
+ * 属性名预先编码成 {@code "name":} 字节，之后只按计划取值写出。
+ */
+final class JsonWriter {
+
+	static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+	private static final int MAX_DEPTH = 64;
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+	private static final ClassValue<BeanPlan> PLANS = new ClassValue<BeanPlan>() {
+		@Override
+		protected BeanPlan computeValue(Class<?> type) {
+			return BeanPlan.of(type);
+		}
+	};
+
+	private final int bufferSize;
+	private final ArrayBlockingQueue<byte[]> pool;
+
+	JsonWriter(int bufferSize, int poolSize) {
+		this.bufferSize = bufferSize;
+		this.pool = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+	}
+
+	/**
+	 * 字符串、数字、枚举、java.time 等 JDK 标量类型仍按文本输出，其余按 JSON 输出
+	 */
+	static boolean supports(Object ret) {
+		if (ret instanceof Map || ret instanceof Iterable || ret instanceof Optional || ret.getClass().isArray()) {
+			return true;
+		}
+		String name = ret.getClass().getName();
+		return !ret.getClass().isEnum() && !name.startsWith("java.") && !name.startsWith("javax.");
+	}
+
+	void write(Object ret, HttpServletResponse resp) throws IOException {
+		if (resp.getContentType() == null) {
+			resp.setContentType(CONTENT_TYPE);
+		}
+		Output out = new Output(borrow(), resp.getOutputStream());
+		try {
+			out.value(ret, 0);
+			if (!out.flushed) {
+				// 整个 body 在一个缓冲区内，长度已知
+				resp.setContentLength(out.count);
+			}
+			out.flush();
+		} finally {
+			release(out.buf);
+		}
+	}
+
+	void write(Object ret, OutputStream stream) throws IOException {
+		Output out = new Output(borrow(), stream);
+		try {
+			out.value(ret, 0);
+			out.flush();
+		} finally {
+			release(out.buf);
+		}
+	}
+
+	private byte[] borrow() {
+		byte[] buf = pool.poll();
+		return buf != null ? buf : new byte[bufferSize];
+	}
+
+	private void release(byte[] buf) {
+		pool.offer(buf);
+	}
+
+	/**
+	 * 已经编码好的 JSON，原样写出
+	 */
+	static final class RawJson {
+		final byte[] bytes;
+
+		RawJson(byte[] bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * 一个 bean 类型的写出计划
+	 */
+	static final class BeanPlan {
+		final Property[] properties;
+
+		BeanPlan(Property[] properties) {
+			this.properties = properties;
+		}
+
+		static BeanPlan of(Class<?> type) {
+			// 按属性名排序，输出顺序稳定
+			Map<String, MethodHandle> accessors = new TreeMap<>();
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			MethodType accessorType = MethodType.methodType(Object.class, Object.class);
+			for (Field field : type.getFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				try {
+					accessors.put(field.getName(), lookup.unreflectGetter(field).asType(accessorType));
+				} catch (IllegalAccessException e) {
+					// 不可访问的字段跳过
+				}
+			}
+			for (Method method : type.getMethods()) {
+				String name = propertyName(method);
+				if (name == null) {
+					continue;
+				}
+				try {
+					accessors.put(name, lookup.unreflect(method).asType(accessorType));
+				} catch (IllegalAccessException e) {
+					// 非 public 类上的 getter
+				}
+			}
+			List<Property> properties = new ArrayList<>(accessors.size());
+			for (Map.Entry<String, MethodHandle> entry : accessors.entrySet()) {
+				properties.add(new Property(entry.getKey(), entry.getValue()));
+			}
+			return new BeanPlan(properties.toArray(new Property[0]));
+		}
+
+		private static String propertyName(Method method) {
+			if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0
+					|| method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+				return null;
+			}
+			String name = method.getName();
+			int prefix;
+			if (name.startsWith("get") && name.length() > 3) {
+				prefix = 3;
+			} else if (name.startsWith("is") && name.length() > 2
+					&& (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+				prefix = 2;
+			} else {
+				return null;
+			}
+			char first = name.charAt(prefix);
+			if (name.length() > prefix + 1 && Character.isUpperCase(name.charAt(prefix + 1))) {
+				// getURL -> URL
+				return name.substring(prefix);
+			}
+			return Character.toLowerCase(first) + name.substring(prefix + 1);
+		}
+	}
+
+	static final class Property {
+		// "name":
+		final byte[] nameBytes;
+		final MethodHandle accessor;
+
+		Property(String name, MethodHandle accessor) {
+			StringBuilder sb = new StringBuilder(name.length() + 3).append('"');
+			for (int i = 0; i < name.length(); i++) {
+				char c = name.charAt(i);
+				if (c == '"' || c == '\\') {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+			this.nameBytes = sb.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+			this.accessor = accessor;
+		}
+
+		Object get(Object bean) throws IOException {
+			try {
+				return accessor.invokeExact(bean);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IOException("Can not read property of " + bean.getClass().getName(), t);
+			}
+		}
+	}
+
+	/**
+	 * 带缓冲的 UTF-8 输出，缓冲区满了才写底层流
+	 */
+	private static final class Output {
+		final byte[] buf;
+		final OutputStream stream;
+		int count;
+		boolean flushed;
+
+		Output(byte[] buf, OutputStream stream) {
+			this.buf = buf;
+			this.stream = stream;
+		}
+
+		void value(Object value, int depth) throws IOException {
+			if (depth > MAX_DEPTH) {
+				throw new IllegalStateException("JSON nesting deeper than " + MAX_DEPTH + ", cyclic reference?");
+			}
+			if (value == null) {
+				raw(NULL);
+			} else if (value instanceof CharSequence) {
+				string((CharSequence) value);
+			} else if (value instanceof RawJson) {
+				raw(((RawJson) value).bytes);
+			} else if (value instanceof Integer || value instanceof Long || value instanceof Short
+					|| value instanceof Byte) {
+				number(((Number) value).longValue());
+			} else if (value instanceof Double || value instanceof Float) {
+				double d = ((Number) value).doubleValue();
+				if (Double.isNaN(d) || Double.isInfinite(d)) {
+					raw(NULL);
+				} else {
+					ascii(value.toString());
+				}
+			} else if (value instanceof BigDecimal || value instanceof BigInteger) {
+				ascii(value.toString());
+			} else if (value instanceof Boolean) {
+				raw((Boolean) value ? TRUE : FALSE);
+			} else if (value instanceof Character) {
+				string(String.valueOf(value));
+			} else if (value instanceof Enum) {
+				string(((Enum<?>) value).name());
+			} else if (value instanceof Date) {
+				number(((Date) value).getTime());
+			} else if (value instanceof Optional) {
+				value(((Optional<?>) value).orElse(null), depth + 1);
+			} else if (value instanceof Map) {
+				map((Map<?, ?>) value, depth);
+			} else if (value instanceof Iterable) {
+				write('[');
+				boolean first = true;
+				for (Object element : (Iterable<?>) value) {
+					if (!first) {
+						write(',');
+					}
+					first = false;
+					value(element, depth + 1);
+				}
+				write(']');
+			} else if (value.getClass().isArray()) {
+				array(value, depth);
+			} else if (value.getClass().getName().startsWith("java.")) {
+				// UUID、java.time 等值类型
+				string(value.toString());
+			} else {
+				bean(value, depth);
+			}
+		}
+
+		void bean(Object bean, int depth) throws IOException {
+			Property[] properties = PLANS.get(bean.getClass()).properties;
+			write('{');
+			for (int i = 0; i < properties.length; i++) {
+				if (i > 0) {
+					write(',');
+				}
+				raw(properties[i].nameBytes);
+				value(properties[i].get(bean), depth + 1);
+			}
+			write('}');
+		}
+
+		void map(Map<?, ?> map, int depth) throws IOException {
+			write('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if (!first) {
+					write(',');
+				}
+				first = false;
+				Object key = entry.getKey();
+				string(key instanceof Enum ? ((Enum<?>) key).name() : String.valueOf(key));
+				write(':');
+				value(entry.getValue(), depth + 1);
+			}
+			write('}');
+		}
+
+		void array(Object array, int depth) throws IOException {
+			if (array instanceof byte[]) {
+				write('"');
+				raw(Base64.getEncoder().encode((byte[]) array));
+				write('"');
+				return;
+			}
+			write('[');
+			if (array instanceof int[]) {
+				int[] a = (int[]) array;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						write(',');
+					}
+					number(a[i]);
+				}
+			} else if (array instanceof long[]) {
+				long[] a = (long[]) array;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						write(',');
+					}
+					number(a[i]);
+				}
+			} else if (array instanceof Object[]) {
+				Object[] a = (Object[]) array;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						write(',');
+					}
+					value(a[i], depth + 1);
+				}
+			} else {
+				// 其余基本类型数组
+				int length = java.lang.reflect.Array.getLength(array);
+				for (int i = 0; i < length; i++) {
+					if (i > 0) {
+						write(',');
+					}
+					value(java.lang.reflect.Array.get(array, i), depth + 1);
+				}
+			}
+			write(']');
+		}
+
+		void number(long v) throws IOException {
+			if (v == Long.MIN_VALUE) {
+				raw(MIN_LONG);
+				return;
+			}
+			ensure(20);
+			if (v < 0) {
+				buf[count++] = '-';
+				v = -v;
+			}
+			int start = count;
+			do {
+				buf[count++] = (byte) ('0' + (v % 10));
+				v /= 10;
+			} while (v != 0);
+			// 反转
+			for (int i = start, j = count - 1; i < j; i++, j--) {
+				byte t = buf[i];
+				buf[i] = buf[j];
+				buf[j] = t;
+			}
+		}
+
+		void string(CharSequence s) throws IOException {
+			write('"');
+			int length = s.length();
+			for (int i = 0; i < length; i++) {
+				char c = s.charAt(i);
+				ensure(12);
+				if (c < 0x80) {
+					if (c == '"' || c == '\\') {
+						buf[count++] = '\\';
+						buf[count++] = (byte) c;
+					} else if (c < 0x20) {
+						escapeControl(c);
+					} else {
+						buf[count++] = (byte) c;
+					}
+				} else if (c < 0x800) {
+					buf[count++] = (byte) (0xC0 | (c >> 6));
+					buf[count++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					buf[count++] = (byte) (0xF0 | (cp >> 18));
+					buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					buf[count++] = (byte) (0x80 | (cp & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					buf[count++] = '?';
+				} else {
+					buf[count++] = (byte) (0xE0 | (c >> 12));
+					buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buf[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			write('"');
+		}
+
+		private void escapeControl(char c) {
+			buf[count++] = '\\';
+			switch (c) {
+			case '\n':
+				buf[count++] = 'n';
+				break;
+			case '\r':
+				buf[count++] = 'r';
+				break;
+			case '\t':
+				buf[count++] = 't';
+				break;
+			case '\b':
+				buf[count++] = 'b';
+				break;
+			case '\f':
+				buf[count++] = 'f';
+				break;
+			default:
+				buf[count++] = 'u';
+				buf[count++] = '0';
+				buf[count++] = '0';
+				buf[count++] = HEX[c >> 4];
+				buf[count++] = HEX[c & 0xF];
+			}
+		}
+
+		void ascii(String s) throws IOException {
+			int length = s.length();
+			ensure(length);
+			if (length > buf.length) {
+				raw(s.getBytes(StandardCharsets.US_ASCII));
+				return;
+			}
+			for (int i = 0; i < length; i++) {
+				buf[count++] = (byte) s.charAt(i);
+			}
+		}
+
+		void raw(byte[] bytes) throws IOException {
+			if (bytes.length > buf.length - count) {
+				flushBuffer();
+				if (bytes.length > buf.length) {
+					stream.write(bytes);
+					return;
+				}
+			}
+			System.arraycopy(bytes, 0, buf, count, bytes.length);
+			count += bytes.length;
+		}
+
+		void write(char c) throws IOException {
+			ensure(1);
+			buf[count++] = (byte) c;
+		}
+
+		void ensure(int n) throws IOException {
+			if (buf.length - count < n) {
+				flushBuffer();
+			}
+		}
+
+		void flushBuffer() throws IOException {
+			if (count > 0) {
+				stream.write(buf, 0, count);
+				count = 0;
+				flushed = true;
+			}
+		}
+
+		void flush() throws IOException {
+			if (count > 0) {
+				stream.write(buf, 0, count);
+				count = 0;
+			}
+		}
+	}
+}
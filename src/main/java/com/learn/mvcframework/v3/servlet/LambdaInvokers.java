@@ -0,0 +1,246 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 用 LambdaMetafactory 为 handler 方法生成直接调用它的类，效果与手写 {@code args -> c.m((T) args[0])} 相同。
+ * <p>
+ * MethodHandle 放在实例字段里时 JIT 无法把它当作常量内联，每次 invokeExact 都要经过 LambdaForm；
+ * 生成的类里是普通的 invokevirtual，可以像普通方法一样内联。
+ * 只处理 public 类的 public 方法、参数不超过 {@link #MAX_ARITY} 个、声明的异常都是 Exception 或 Error、
+ * 并且用到的类型对本类的 ClassLoader 可见的情况，其他情况返回 null，由调用方退回 MethodHandle。
+ */
+final class LambdaInvokers {
+
+	static final int MAX_ARITY = 6;
+
+	private LambdaInvokers() {
+	}
+
+	interface Call0 {
+		Object call() throws Exception;
+	}
+
+	interface Call1 {
+		Object call(Object a0) throws Exception;
+	}
+
+	interface Call2 {
+		Object call(Object a0, Object a1) throws Exception;
+	}
+
+	interface Call3 {
+		Object call(Object a0, Object a1, Object a2) throws Exception;
+	}
+
+	interface Call4 {
+		Object call(Object a0, Object a1, Object a2, Object a3) throws Exception;
+	}
+
+	interface Call5 {
+		Object call(Object a0, Object a1, Object a2, Object a3, Object a4) throws Exception;
+	}
+
+	interface Call6 {
+		Object call(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5) throws Exception;
+	}
+
+	// void 方法不能适配到返回 Object 的接口
+
+	interface Run0 {
+		void run() throws Exception;
+	}
+
+	interface Run1 {
+		void run(Object a0) throws Exception;
+	}
+
+	interface Run2 {
+		void run(Object a0, Object a1) throws Exception;
+	}
+
+	interface Run3 {
+		void run(Object a0, Object a1, Object a2) throws Exception;
+	}
+
+	interface Run4 {
+		void run(Object a0, Object a1, Object a2, Object a3) throws Exception;
+	}
+
+	interface Run5 {
+		void run(Object a0, Object a1, Object a2, Object a3, Object a4) throws Exception;
+	}
+
+	interface Run6 {
+		void run(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5) throws Exception;
+	}
+
+	private static final Class<?>[] CALLS = { Call0.class, Call1.class, Call2.class, Call3.class, Call4.class,
+			Call5.class, Call6.class };
+	private static final Class<?>[] RUNS = { Run0.class, Run1.class, Run2.class, Run3.class, Run4.class, Run5.class,
+			Run6.class };
+
+	/**
+	 * @return 绑定了 instance 的调用器，不支持的方法返回 null
+	 */
+	static HanderInvoker create(Method method, Object instance) {
+		if (!supports(method)) {
+			return null;
+		}
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		boolean isVoid = method.getReturnType() == void.class;
+		int arity = method.getParameterCount();
+		Class<?> fn = (isVoid ? RUNS : CALLS)[arity];
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle impl = lookup.unreflect(method);
+			// 参数按包装类型接收，生成的类负责转型和拆箱
+			MethodType instantiated = MethodType.methodType(method.getReturnType(), method.getParameterTypes()).wrap();
+			if (isVoid) {
+				instantiated = instantiated.changeReturnType(void.class);
+			}
+			MethodType erased = instantiated.erase();
+			MethodType factoryType = isStatic ? MethodType.methodType(fn)
+					: MethodType.methodType(fn, method.getDeclaringClass());
+			CallSite site = LambdaMetafactory.metafactory(lookup, isVoid ? "run" : "call", factoryType, erased, impl,
+					instantiated);
+			Object target = isStatic ? site.getTarget().invoke() : site.getTarget().invoke(instance);
+			return isVoid ? adaptRun(arity, target) : adaptCall(arity, target);
+		} catch (Throwable e) {
+			// 退回 MethodHandle
+			return null;
+		}
+	}
+
+	private static boolean supports(Method method) {
+		if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())
+				|| method.getParameterCount() > MAX_ARITY) {
+			return false;
+		}
+		for (Class<?> exceptionType : method.getExceptionTypes()) {
+			// 生成的类不检查受检异常，Throwable 会绕过 HanderInvoker 的声明
+			if (!Exception.class.isAssignableFrom(exceptionType) && !Error.class.isAssignableFrom(exceptionType)) {
+				return false;
+			}
+		}
+		if (!visible(method.getDeclaringClass()) || !visible(method.getReturnType())) {
+			return false;
+		}
+		for (Class<?> type : method.getParameterTypes()) {
+			if (!visible(type)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 生成的类定义在本类的 ClassLoader 中，controller 来自子 ClassLoader 时无法链接
+	 */
+	private static boolean visible(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		try {
+			return Class.forName(type.getName(), false, LambdaInvokers.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static HanderInvoker adaptCall(int arity, Object target) {
+		switch (arity) {
+		case 0: {
+			Call0 fn = (Call0) target;
+			return args -> fn.call();
+		}
+		case 1: {
+			Call1 fn = (Call1) target;
+			return args -> fn.call(args[0]);
+		}
+		case 2: {
+			Call2 fn = (Call2) target;
+			return args -> fn.call(args[0], args[1]);
+		}
+		case 3: {
+			Call3 fn = (Call3) target;
+			return args -> fn.call(args[0], args[1], args[2]);
+		}
+		case 4: {
+			Call4 fn = (Call4) target;
+			return args -> fn.call(args[0], args[1], args[2], args[3]);
+		}
+		case 5: {
+			Call5 fn = (Call5) target;
+			return args -> fn.call(args[0], args[1], args[2], args[3], args[4]);
+		}
+		default: {
+			Call6 fn = (Call6) target;
+			return args -> fn.call(args[0], args[1], args[2], args[3], args[4], args[5]);
+		}
+		}
+	}
+
+	private static HanderInvoker adaptRun(int arity, Object target) {
+		switch (arity) {
+		case 0: {
+			Run0 fn = (Run0) target;
+			return args -> {
+				fn.run();
+				return null;
+			};
+		}
+		case 1: {
+			Run1 fn = (Run1) target;
+			return args -> {
+				fn.run(args[0]);
+				return null;
+			};
+		}
+		case 2: {
+			Run2 fn = (Run2) target;
+			return args -> {
+				fn.run(args[0], args[1]);
+				return null;
+			};
+		}
+		case 3: {
+			Run3 fn = (Run3) target;
+			return args -> {
+				fn.run(args[0], args[1], args[2]);
+				return null;
+			};
+		}
+		case 4: {
+			Run4 fn = (Run4) target;
+			return args -> {
+				fn.run(args[0], args[1], args[2], args[3]);
+				return null;
+			};
+		}
+		case 5: {
+			Run5 fn = (Run5) target;
+			return args -> {
+				fn.run(args[0], args[1], args[2], args[3], args[4]);
+				return null;
+			};
+		}
+		default: {
+			Run6 fn = (Run6) target;
+			return args -> {
+				fn.run(args[0], args[1], args[2], args[3], args[4], args[5]);
+				return null;
+			};
+		}
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod;
+
+/**
+ * 输出各 handler 的 {@link HanderMetrics}，默认 JSON；参数 format=prometheus 或 Accept 为 text/plain 时输出
+ * Prometheus 文本格式。
+ * <p>
+ * 配置 metrics.path 后才开启。该路径在路由、准入和 {@link MockHandlerInterceptor} 之前处理，拦截器保护不到它，
+ * 会暴露全部路由和延迟，只应开在内网或由前面的代理做鉴权；请求照常写入访问日志。
+ */
+final class MetricsEndpoint {
+
+	static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	private MetricsEndpoint() {
+	}
+
+	static void write(List<HanderMethod> handers, HttpServletRequest req, HttpServletResponse resp,
+			JsonWriter jsonWriter) throws IOException {
+		String format = req.getParameter("format");
+		String accept = req.getHeader("Accept");
+		if ("prometheus".equals(format) || (format == null && accept != null && accept.startsWith("text/plain"))) {
+			resp.setContentType(PROMETHEUS_CONTENT_TYPE);
+			PrintWriter writer = resp.getWriter();
+			writer.print(prometheus(handers));
+			writer.flush();
+		} else {
+			jsonWriter.write(json(handers), resp);
+		}
+	}
+
+	static Map<String, Object> json(List<HanderMethod> handers) {
+		List<Object> list = new ArrayList<>(handers.size());
+		for (HanderMethod hm : handers) {
+			HanderMetrics.Snapshot snapshot = hm.metrics.snapshot();
+			Map<String, Object> latency = new LinkedHashMap<>();
+			latency.put("count", snapshot.count);
+			latency.put("meanMicros", micros(snapshot.meanNanos()));
+			latency.put("p50Micros", micros(snapshot.percentile(0.5)));
+			latency.put("p99Micros", micros(snapshot.percentile(0.99)));
+			latency.put("p999Micros", micros(snapshot.percentile(0.999)));
+			latency.put("maxMicros", micros(snapshot.max()));
+
+			Map<String, Object> handler = new LinkedHashMap<>();
+			handler.put("url", hm.url);
+			handler.put("method", hm.method.getDeclaringClass().getName() + "." + hm.method.getName());
+			handler.put("requests", snapshot.requests);
+			handler.put("errors", snapshot.errors);
+			handler.put("inFlight", snapshot.inFlight);
+			handler.put("latency", latency);
+			if (hm.responseCache != null) {
+				handler.put("cache", cache(hm.responseCache));
+			}
+			if (hm.admission != null) {
+				handler.put("admission", admission(hm.admission));
+			}
+			if (hm.coalescer != null) {
+				handler.put("coalescing", coalescing(hm.coalescer));
+			}
+			list.add(handler);
+		}
+		Map<String, Object> root = new LinkedHashMap<>();
+		root.put("handlers", list);
+		return root;
+	}
+
+	private static Map<String, Object> cache(ResponseCache cache) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("entries", cache.size());
+		map.put("bytes", cache.bytes());
+		map.put("hits", cache.hits.sum());
+		map.put("misses", cache.misses.sum());
+		map.put("notModified", cache.notModified.sum());
+		map.put("evictions", cache.evictions.sum());
+		map.put("expirations", cache.expirations.sum());
+		return map;
+	}
+
+	private static Map<String, Object> coalescing(RequestCoalescer coalescer) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("leaders", coalescer.leaders.sum());
+		map.put("coalesced", coalescer.coalesced.sum());
+		map.put("timeouts", coalescer.timeouts.sum());
+		map.put("unshared", coalescer.unshared.sum());
+		return map;
+	}
+
+	private static Map<String, Object> admission(AdmissionControl admission) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		if (admission.maxConcurrency > 0) {
+			map.put("concurrencyLimit", admission.limit);
+			map.put("admitted", admission.inFlight.get());
+		}
+		if (admission.intervalNanos > 0) {
+			map.put("permitsPerSecond", 1e9 / admission.intervalNanos);
+		}
+		map.put("rejectedConcurrency", admission.rejectedConcurrency.sum());
+		map.put("rejectedRate", admission.rejectedRate.sum());
+		return map;
+	}
+
+	static String prometheus(List<HanderMethod> handers) {
+		List<HanderMetrics.Snapshot> snapshots = new ArrayList<>(handers.size());
+		for (HanderMethod hm : handers) {
+			snapshots.add(hm.metrics.snapshot());
+		}
+		StringBuilder sb = new StringBuilder(256 + handers.size() * 512);
+		header(sb, "mock_mvc_requests_total", "counter", "Requests handled per handler");
+		for (int i = 0; i < handers.size(); i++) {
+			sample(sb, "mock_mvc_requests_total", handers.get(i), null, snapshots.get(i).requests);
+		}
+		header(sb, "mock_mvc_errors_total", "counter", "Requests that ended with an exception");
+		for (int i = 0; i < handers.size(); i++) {
+			sample(sb, "mock_mvc_errors_total", handers.get(i), null, snapshots.get(i).errors);
+		}
+		header(sb, "mock_mvc_in_flight", "gauge", "Requests currently being handled");
+		for (int i = 0; i < handers.size(); i++) {
+			sample(sb, "mock_mvc_in_flight", handers.get(i), null, snapshots.get(i).inFlight);
+		}
+		header(sb, "mock_mvc_request_duration_seconds", "summary", "Handler latency");
+		for (int i = 0; i < handers.size(); i++) {
+			HanderMetrics.Snapshot snapshot = snapshots.get(i);
+			for (double quantile : QUANTILES) {
+				sample(sb, "mock_mvc_request_duration_seconds", handers.get(i), String.valueOf(quantile),
+						seconds(snapshot.percentile(quantile)));
+			}
+			sample(sb, "mock_mvc_request_duration_seconds_sum", handers.get(i), null, seconds(snapshot.totalNanos));
+			sample(sb, "mock_mvc_request_duration_seconds_count", handers.get(i), null, snapshot.requests);
+		}
+		cacheCounter(sb, handers, "mock_mvc_cache_hits_total", "Response cache hits", 0);
+		cacheCounter(sb, handers, "mock_mvc_cache_misses_total", "Response cache misses", 1);
+		cacheCounter(sb, handers, "mock_mvc_cache_not_modified_total", "Response cache 304 replies", 2);
+		cacheCounter(sb, handers, "mock_mvc_cache_evictions_total", "Response cache entries evicted by size", 3);
+		admission(sb, handers);
+		coalescing(sb, handers);
+		return sb.toString();
+	}
+
+	private static void coalescing(StringBuilder sb, List<HanderMethod> handers) {
+		boolean headerWritten = false;
+		for (HanderMethod hm : handers) {
+			RequestCoalescer coalescer = hm.coalescer;
+			if (coalescer == null) {
+				continue;
+			}
+			if (!headerWritten) {
+				header(sb, "mock_mvc_coalesced_total", "counter",
+						"Requests answered with another request's response, by outcome");
+				headerWritten = true;
+			}
+			sample(sb, "mock_mvc_coalesced_total", hm, "outcome", "shared", coalescer.coalesced.sum());
+			sample(sb, "mock_mvc_coalesced_total", hm, "outcome", "timeout", coalescer.timeouts.sum());
+			sample(sb, "mock_mvc_coalesced_total", hm, "outcome", "unshared", coalescer.unshared.sum());
+		}
+	}
+
+	private static void admission(StringBuilder sb, List<HanderMethod> handers) {
+		List<HanderMethod> limited = new ArrayList<>();
+		for (HanderMethod hm : handers) {
+			if (hm.admission != null) {
+				limited.add(hm);
+			}
+		}
+		if (limited.isEmpty()) {
+			return;
+		}
+		header(sb, "mock_mvc_rejected_total", "counter", "Requests rejected by admission control");
+		for (HanderMethod hm : limited) {
+			sample(sb, "mock_mvc_rejected_total", hm, "reason", "concurrency", hm.admission.rejectedConcurrency.sum());
+			sample(sb, "mock_mvc_rejected_total", hm, "reason", "rate", hm.admission.rejectedRate.sum());
+		}
+		header(sb, "mock_mvc_concurrency_limit", "gauge", "Current concurrency limit, adaptive handlers change it");
+		for (HanderMethod hm : limited) {
+			if (hm.admission.maxConcurrency > 0) {
+				sample(sb, "mock_mvc_concurrency_limit", hm, null, hm.admission.limit);
+			}
+		}
+	}
+
+	private static void cacheCounter(StringBuilder sb, List<HanderMethod> handers, String name, String help,
+			int which) {
+		boolean headerWritten = false;
+		for (HanderMethod hm : handers) {
+			ResponseCache cache = hm.responseCache;
+			if (cache == null) {
+				continue;
+			}
+			if (!headerWritten) {
+				header(sb, name, "counter", help);
+				headerWritten = true;
+			}
+			long value = which == 0 ? cache.hits.sum()
+					: which == 1 ? cache.misses.sum() : which == 2 ? cache.notModified.sum() : cache.evictions.sum();
+			sample(sb, name, hm, null, value);
+		}
+	}
+
+	private static void header(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, HanderMethod hm, String quantile, Object value) {
+		sample(sb, name, hm, "quantile", quantile, value);
+	}
+
+	private static void sample(StringBuilder sb, String name, HanderMethod hm, String label, String labelValue,
+			Object value) {
+		sb.append(name).append("{url=\"");
+		escapeLabel(sb, hm.url);
+		sb.append('"');
+		if (labelValue != null) {
+			sb.append(',').append(label).append("=\"").append(labelValue).append('"');
+		}
+		sb.append("} ").append(value).append('\n');
+	}
+
+	private static void escapeLabel(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	private static double micros(long nanos) {
+		return Math.round(nanos / 100.0) / 10.0;
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+}
@@ -0,0 +1,479 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.learn.mvcframework.annotation.MockAutowired;
+import com.learn.mvcframework.annotation.MockController;
+import com.learn.mvcframework.annotation.MockControllerAdvice;
+import com.learn.mvcframework.annotation.MockInterceptor;
+import com.learn.mvcframework.annotation.MockLazy;
+import com.learn.mvcframework.annotation.MockService;
+
+/**
+ * bean 容器：根据 {@link MockAutowired} 标注的构造方法和字段建立依赖图，启动时检查循环依赖，
+ * 再按依赖顺序在 fork-join 池上并行创建互不依赖的 bean。
+ * <p>
+ * 1. 构造方法：标注了 @MockAutowired 的构造方法，否则唯一的构造方法，否则无参构造方法<br>
+ * 2. 依赖按名称查找，找不到再按类型匹配唯一的 bean，都没有时启动失败<br>
+ * 3. bean 在依赖全部创建并注入完成后才创建，因此构造方法里可以直接使用依赖<br>
+ * 4. {@link MockLazy} 的 bean 第一次被获取时创建，被非 lazy 的 bean 依赖时随之在启动时创建
+ * <p>
+ * 定义表写时复制，运行期增删 bean（热更新 controller）不影响并发的 getBean。
+ */
+final class MockBeanContainer {
+
+	// 写时复制，修改都在 synchronized 方法内
+	private volatile Map<String, BeanDefinition> definitions = new LinkedHashMap<>();
+	private final int parallelism;
+	// 输出每个 bean 的创建耗时
+	private final boolean startupReport;
+	// lazy bean 的创建串行进行，依赖图无环，可重入
+	private final Object lazyLock = new Object();
+
+	/**
+	 * @param parallelism   启动时创建 bean 的并行度，1 表示在当前线程按顺序创建
+	 * @param startupReport 是否输出每个 bean 的创建耗时（包括 lazy bean），否则只输出汇总
+	 */
+	MockBeanContainer(int parallelism, boolean startupReport) {
+		this.parallelism = Math.max(1, parallelism);
+		this.startupReport = startupReport;
+	}
+
+	/**
+	 * 注册标注了 MockController/MockService/MockControllerAdvice/MockInterceptor 的类，其他类忽略
+	 */
+	void register(Class<?> clazz) {
+		if (annotatedName(clazz) == null) {
+			return;
+		}
+		add(new BeanDefinition(beanName(clazz), clazz, clazz.isAnnotationPresent(MockLazy.class)));
+	}
+
+	/**
+	 * @return 注解上的名称，为空时取简单类名首字母小写
+	 */
+	static String beanName(Class<?> clazz) {
+		String name = annotatedName(clazz);
+		return emtpy(name) ? ensureBeanName(clazz.getSimpleName()) : name;
+	}
+
+	/**
+	 * 注册已经创建并注入好的实例，如编译期生成的注册表创建的 bean。
+	 * 依赖关系在 refresh 时同样解析，用于 replaceSingleton/removeBean 的检查
+	 */
+	void registerSingleton(String name, Object instance) {
+		BeanDefinition definition = new BeanDefinition(name, instance.getClass(), false);
+		definition.instance = instance;
+		add(definition);
+	}
+
+	private synchronized void add(BeanDefinition definition) {
+		BeanDefinition exist = definitions.get(definition.name);
+		if (exist != null) {
+			throw new IllegalStateException("bean name duplicate '" + definition.name + "' for " + definition.type
+					+ " and " + exist.type);
+		}
+		Map<String, BeanDefinition> copy = new LinkedHashMap<>(definitions);
+		copy.put(definition.name, definition);
+		definitions = copy;
+	}
+
+	/**
+	 * 运行期创建一个不注册到容器的实例，依赖从已有的 bean 中查找
+	 */
+	synchronized Object createBean(Class<?> clazz) {
+		BeanDefinition definition = new BeanDefinition(beanName(clazz), clazz, false);
+		resolve(definition);
+		create(definition);
+		return definition.instance;
+	}
+
+	/**
+	 * 用新的实例替换同名 bean，没有时新增；有其他 bean 依赖旧实例时拒绝替换
+	 */
+	synchronized void replaceSingleton(String name, Object instance) {
+		Map<String, BeanDefinition> copy = new LinkedHashMap<>(definitions);
+		if (copy.containsKey(name)) {
+			checkNoDependents(name, "replace");
+		}
+		BeanDefinition definition = new BeanDefinition(name, instance.getClass(), false);
+		definition.instance = instance;
+		// 记下新实例的依赖，之后这些依赖不能被移除
+		resolve(definition);
+		copy.put(name, definition);
+		definitions = copy;
+	}
+
+	/**
+	 * @return 被移除的实例，不存在或尚未创建时返回 null
+	 */
+	synchronized Object removeBean(String name) {
+		if (!definitions.containsKey(name)) {
+			return null;
+		}
+		checkNoDependents(name, "remove");
+		Map<String, BeanDefinition> copy = new LinkedHashMap<>(definitions);
+		BeanDefinition removed = copy.remove(name);
+		definitions = copy;
+		return removed.instance;
+	}
+
+	private void checkNoDependents(String name, String action) {
+		BeanDefinition target = definitions.get(name);
+		for (BeanDefinition definition : definitions.values()) {
+			if (definition.dependencies().contains(target)) {
+				throw new IllegalStateException("Can not " + action + " bean '" + name + "', bean '"
+						+ definition.name + "' depends on it");
+			}
+		}
+	}
+
+	/**
+	 * 解析依赖、检查循环，创建全部非 lazy 的 bean
+	 */
+	void refresh() {
+		long start = System.nanoTime();
+		for (BeanDefinition definition : definitions.values()) {
+			if (definition.constructor == null) {
+				resolve(definition);
+			}
+		}
+		List<BeanDefinition> order = sort();
+
+		List<BeanDefinition> eager = new ArrayList<>();
+		for (BeanDefinition definition : order) {
+			if (definition.instance == null && (!definition.lazy || definition.requiredEagerly)) {
+				eager.add(definition);
+			}
+		}
+		if (parallelism == 1 || eager.size() < 2) {
+			// order 已按依赖排好序
+			for (BeanDefinition definition : eager) {
+				create(definition);
+			}
+		} else {
+			createInParallel(eager);
+		}
+
+		for (BeanDefinition definition : order) {
+			if (startupReport && definition.createNanos > 0) {
+				System.out.println("Bean '" + definition.name + "' created in " + millis(definition.createNanos)
+						+ "ms" + (definition.lazy ? " (lazy, required by another bean)" : ""));
+			}
+		}
+		int lazy = 0;
+		for (BeanDefinition definition : definitions.values()) {
+			if (definition.instance == null) {
+				lazy++;
+			}
+		}
+		System.out.println("Mock MVC created " + (definitions.size() - lazy) + " beans in "
+				+ millis(System.nanoTime() - start) + "ms, parallelism=" + parallelism
+				+ (lazy > 0 ? ", " + lazy + " lazy beans deferred" : ""));
+	}
+
+	private void createInParallel(List<BeanDefinition> eager) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			Map<BeanDefinition, CompletableFuture<Void>> futures = new HashMap<>();
+			for (BeanDefinition definition : eager) {
+				// eager 按依赖顺序排列，依赖的 future 一定已经建好
+				List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+				for (BeanDefinition dependency : definition.dependencies()) {
+					CompletableFuture<Void> future = futures.get(dependency);
+					if (future != null) {
+						dependencies.add(future);
+					}
+				}
+				CompletableFuture<Void> ready = dependencies.isEmpty() ? CompletableFuture.completedFuture(null)
+						: CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]));
+				futures.put(definition, ready.thenRunAsync(() -> create(definition), pool));
+			}
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * 获取 bean，lazy bean 在这里创建
+	 *
+	 * @return 不存在时返回 null
+	 */
+	Object getBean(String name) {
+		BeanDefinition definition = definitions.get(name);
+		return definition == null ? null : getBean(definition);
+	}
+
+	/**
+	 * @return 类上有该注解的全部 bean，按注册顺序
+	 */
+	List<Object> getBeansWithAnnotation(Class<? extends Annotation> annotation) {
+		List<Object> beans = new ArrayList<>();
+		for (BeanDefinition definition : definitions.values()) {
+			if (definition.type.isAnnotationPresent(annotation)) {
+				beans.add(getBean(definition));
+			}
+		}
+		return beans;
+	}
+
+	Collection<String> getBeanNames() {
+		return definitions.keySet();
+	}
+
+	private Object getBean(BeanDefinition definition) {
+		Object instance = definition.instance;
+		if (instance != null) {
+			return instance;
+		}
+		synchronized (lazyLock) {
+			if (definition.instance == null) {
+				create(definition);
+				if (startupReport) {
+					System.out.println("Bean '" + definition.name + "' created lazily in "
+							+ millis(definition.createNanos) + "ms");
+				}
+			}
+			return definition.instance;
+		}
+	}
+
+	/**
+	 * 创建实例并注入字段，依赖已经创建（lazy 依赖在 lazyLock 内创建）
+	 */
+	private void create(BeanDefinition definition) {
+		long start = System.nanoTime();
+		Object[] args = new Object[definition.constructorDependencies.length];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = getBean(definition.constructorDependencies[i]);
+		}
+		Object instance;
+		try {
+			instance = definition.constructor.newInstance(args);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Can not instantiate bean '" + definition.name + "'", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not instantiate bean '" + definition.name + "'", e);
+		}
+		for (int i = 0; i < definition.fields.length; i++) {
+			try {
+				definition.fields[i].set(instance, getBean(definition.fieldDependencies[i]));
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Can not inject " + definition.fields[i], e);
+			}
+		}
+		definition.createNanos = System.nanoTime() - start;
+		definition.instance = instance;
+	}
+
+	private void resolve(BeanDefinition definition) {
+		Constructor<?> constructor = selectConstructor(definition.type);
+		constructor.setAccessible(true);
+		Parameter[] parameters = constructor.getParameters();
+		BeanDefinition[] constructorDependencies = new BeanDefinition[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			MockAutowired autowired = parameters[i].getAnnotation(MockAutowired.class);
+			constructorDependencies[i] = find(autowired == null ? "" : autowired.value(), parameters[i].getType(),
+					definition, parameters[i].toString());
+		}
+		List<Field> fields = new ArrayList<>();
+		List<BeanDefinition> fieldDependencies = new ArrayList<>();
+		for (Class<?> c = definition.type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				MockAutowired autowired = field.getAnnotation(MockAutowired.class);
+				if (autowired == null || Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				field.setAccessible(true);
+				fields.add(field);
+				fieldDependencies.add(find(autowired.value(), field.getType(), definition, field.toString()));
+			}
+		}
+		definition.constructor = constructor;
+		definition.constructorDependencies = constructorDependencies;
+		definition.fields = fields.toArray(new Field[0]);
+		definition.fieldDependencies = fieldDependencies.toArray(new BeanDefinition[0]);
+	}
+
+	private static Constructor<?> selectConstructor(Class<?> type) {
+		Constructor<?>[] constructors = type.getDeclaredConstructors();
+		Constructor<?> selected = null;
+		for (Constructor<?> constructor : constructors) {
+			if (constructor.isAnnotationPresent(MockAutowired.class)) {
+				if (selected != null) {
+					throw new IllegalStateException("More than one @MockAutowired constructor on " + type);
+				}
+				selected = constructor;
+			}
+		}
+		if (selected != null) {
+			return selected;
+		}
+		if (constructors.length == 1) {
+			return constructors[0];
+		}
+		try {
+			return type.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("No @MockAutowired or no-arg constructor on " + type);
+		}
+	}
+
+	/**
+	 * 先按名称（为空时取类型简单类名首字母小写）查找，再按类型匹配唯一的 bean
+	 */
+	private BeanDefinition find(String name, Class<?> type, BeanDefinition owner, String injectionPoint) {
+		BeanDefinition byName = definitions.get(emtpy(name) ? ensureBeanName(type.getSimpleName()) : name);
+		if (byName != null && type.isAssignableFrom(byName.type)) {
+			return byName;
+		}
+		if (!emtpy(name)) {
+			throw new IllegalStateException("No bean named '" + name + "' of " + type + " for " + injectionPoint);
+		}
+		BeanDefinition found = null;
+		for (BeanDefinition candidate : definitions.values()) {
+			if (type.isAssignableFrom(candidate.type)) {
+				if (found != null) {
+					throw new IllegalStateException("More than one bean of " + type + " for " + injectionPoint + ": '"
+							+ found.name + "', '" + candidate.name + "'");
+				}
+				found = candidate;
+			}
+		}
+		if (found == null) {
+			throw new IllegalStateException("No bean of " + type + " for " + injectionPoint + " in bean '"
+					+ owner.name + "'");
+		}
+		return found;
+	}
+
+	/**
+	 * 深度优先拓扑排序，依赖排在前面；发现环时报出完整路径。
+	 * 排序后倒序遍历，把非 lazy bean 依赖的 lazy bean 标记为启动时创建
+	 */
+	private List<BeanDefinition> sort() {
+		List<BeanDefinition> order = new ArrayList<>(definitions.size());
+		Map<BeanDefinition, Boolean> visiting = new HashMap<>();
+		List<BeanDefinition> path = new ArrayList<>();
+		for (BeanDefinition definition : definitions.values()) {
+			visit(definition, visiting, path, order);
+		}
+		for (int i = order.size() - 1; i >= 0; i--) {
+			BeanDefinition definition = order.get(i);
+			if (!definition.lazy || definition.requiredEagerly) {
+				for (BeanDefinition dependency : definition.dependencies()) {
+					dependency.requiredEagerly = true;
+				}
+			}
+		}
+		return order;
+	}
+
+	private void visit(BeanDefinition definition, Map<BeanDefinition, Boolean> visiting, List<BeanDefinition> path,
+			List<BeanDefinition> order) {
+		Boolean state = visiting.get(definition);
+		if (state == Boolean.FALSE) {
+			return;
+		}
+		if (state == Boolean.TRUE) {
+			StringBuilder cycle = new StringBuilder();
+			for (int i = path.indexOf(definition); i < path.size(); i++) {
+				cycle.append('\'').append(path.get(i).name).append("' -> ");
+			}
+			cycle.append('\'').append(definition.name).append('\'');
+			throw new IllegalStateException("Circular dependency between beans: " + cycle);
+		}
+		visiting.put(definition, Boolean.TRUE);
+		path.add(definition);
+		for (BeanDefinition dependency : definition.dependencies()) {
+			visit(dependency, visiting, path, order);
+		}
+		path.remove(path.size() - 1);
+		visiting.put(definition, Boolean.FALSE);
+		order.add(definition);
+	}
+
+	private static String annotatedName(Class<?> clazz) {
+		if (clazz.isAnnotationPresent(MockController.class)) {
+			return clazz.getAnnotation(MockController.class).value();
+		}
+		if (clazz.isAnnotationPresent(MockService.class)) {
+			return clazz.getAnnotation(MockService.class).value();
+		}
+		if (clazz.isAnnotationPresent(MockControllerAdvice.class)) {
+			return clazz.getAnnotation(MockControllerAdvice.class).value();
+		}
+		if (clazz.isAnnotationPresent(MockInterceptor.class)) {
+			return clazz.getAnnotation(MockInterceptor.class).value();
+		}
+		return null;
+	}
+
+	static String ensureBeanName(String simpleName) {
+		if (!Character.isUpperCase(simpleName.charAt(0))) {
+			return simpleName;
+		}
+		char[] chars = simpleName.toCharArray();
+		chars[0] += 32;
+		return new String(chars);
+	}
+
+	private static boolean emtpy(String value) {
+		return value == null || value.isEmpty();
+	}
+
+	private static String millis(long nanos) {
+		return String.valueOf(TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0);
+	}
+
+	private static final class BeanDefinition {
+		final String name;
+		final Class<?> type;
+		final boolean lazy;
+		Constructor<?> constructor;
+		BeanDefinition[] constructorDependencies = new BeanDefinition[0];
+		Field[] fields = new Field[0];
+		BeanDefinition[] fieldDependencies = new BeanDefinition[0];
+		// lazy bean 被非 lazy 的 bean 依赖，需要启动时创建
+		boolean requiredEagerly;
+		long createNanos;
+		volatile Object instance;
+
+		BeanDefinition(String name, Class<?> type, boolean lazy) {
+			this.name = name;
+			this.type = type;
+			this.lazy = lazy;
+		}
+
+		List<BeanDefinition> dependencies() {
+			List<BeanDefinition> dependencies = new ArrayList<>(
+					constructorDependencies.length + fieldDependencies.length);
+			for (BeanDefinition dependency : constructorDependencies) {
+				dependencies.add(dependency);
+			}
+			for (BeanDefinition dependency : fieldDependencies) {
+				dependencies.add(dependency);
+			}
+			return dependencies;
+		}
+	}
+}
@@ -4,33 +4,51 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Executable;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.net.URL;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.learn.mvcframework.annotation.MockAutowired;
+import com.learn.mvcframework.annotation.MockAsyncTimeout;
+import com.learn.mvcframework.annotation.MockCacheable;
+import com.learn.mvcframework.annotation.MockCompression;
 import com.learn.mvcframework.annotation.MockController;
+import com.learn.mvcframework.annotation.MockControllerAdvice;
+import com.learn.mvcframework.annotation.MockInterceptor;
 import com.learn.mvcframework.annotation.MockRequestMapping;
 import com.learn.mvcframework.annotation.MockRequestParam;
-import com.learn.mvcframework.annotation.MockService;
 import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod.MethodParameter;
 
 /**
@@ -43,21 +61,48 @@ public class MockDispatcherServlet extends HttpServlet {
 		String url;
 		Method method;
 		Object instance;
-		Pattern pattern;
+		// 启动时预编译的调用器
+		HanderInvoker invoker;
+		// 返回 CompletionStage 时的超时，-1 表示使用全局配置
+		long asyncTimeout = -1;
+		// 虚拟线程模式下的并发上限，null 表示不限制
+		Semaphore dispatchPermits;
+		// @MockCacheable 的响应缓存，null 表示不缓存
+		ResponseCache responseCache;
+		// 并发上限和速率限制，null 表示不限制
+		AdmissionControl admission;
+		// 返回值的压缩级别，0 表示不压缩
+		int compressionLevel;
+		// 相同 GET 请求的合并，null 表示不合并
+		RequestCoalescer coalescer;
+		final HanderMetrics metrics = new HanderMetrics();
+		// url 模板中的变量名，按出现顺序
+		String[] pathVariables;
 
 		MethodParameter[] methodParameters;
 
-		public HanderMethod(String url, Method method, Object instance, Pattern pattern) {
+		public HanderMethod(String url, Method method, Object instance) {
+			this(url, method, instance, RequestBodyReader.DEFAULT);
+		}
+
+		HanderMethod(String url, Method method, Object instance, RequestBodyReader bodyReader) {
 			super();
 			this.url = url;
 			this.method = method;
 			this.instance = instance;
-			this.pattern = pattern;
+			this.invoker = HanderInvoker.of(method, instance);
+			if (method.isAnnotationPresent(MockAsyncTimeout.class)) {
+				this.asyncTimeout = method.getAnnotation(MockAsyncTimeout.class).value();
+			}
+			if (method.isAnnotationPresent(MockCacheable.class)) {
+				this.responseCache = new ResponseCache(method.getAnnotation(MockCacheable.class));
+			}
+			this.pathVariables = HanderRouter.variableNames(url);
 			// 解析方法参数，方便后续请求匹配||获取方法名称和顺序映射
-			methodParameters = initMethodParameter();
+			methodParameters = initMethodParameter(bodyReader);
 		}
 
-		private MethodParameter[] initMethodParameter() {
+		private MethodParameter[] initMethodParameter(RequestBodyReader bodyReader) {
 			Parameter[] parameters = this.method.getParameters();
 			MethodParameter[] methodParameters = new MethodParameter[parameters.length];
 			for (int i = 0; i < parameters.length; i++) {
@@ -69,6 +114,8 @@ public class MockDispatcherServlet extends HttpServlet {
 				if (parameter.isAnnotationPresent(MockRequestParam.class)) {
 					methodParameter.name = parameter.getAnnotation(MockRequestParam.class).value();
 				}
+				// 启动时确定取值方式，请求时不再判断参数类型
+				methodParameter.resolver = HanderArgumentResolver.of(parameter, pathVariables, bodyReader);
 				methodParameters[i] = methodParameter;
 
 			}
@@ -80,6 +127,7 @@ public class MockDispatcherServlet extends HttpServlet {
 			Class<?> parameterType;
 			String name;
 			Executable executable;
+			HanderArgumentResolver resolver;
 
 			public MethodParameter(int i) {
 				this.index = i;
@@ -100,31 +148,130 @@ public class MockDispatcherServlet extends HttpServlet {
 
 	static String configrationLocation = "configrationLocation";
 
-	List<HanderMethod> handerMapping = new ArrayList<>();
-	Map<String, Object> beansMap = new HashMap<>();
+	// 异步 handler 的默认超时（毫秒），可被 @MockAsyncTimeout 覆盖
+	long asyncTimeout = 30000;
+
+	// dispatchMode=virtual 时的执行器，null 表示在容器线程上同步执行
+	ExecutorService dispatchExecutor;
+
+	// byte[]/ByteBuffer/Path/channel 返回值的输出
+	BinaryBodyWriter binaryBodyWriter;
+
+	// POJO/集合/Map/数组返回值的 JSON 输出
+	JsonWriter jsonWriter;
+
+	// @MockRequestBody 参数的请求体读取
+	RequestBodyReader requestBodyReader = RequestBodyReader.DEFAULT;
+
+	// admission.* 全局配置，@MockAdmission 可以按 handler 覆盖
+	AdmissionControl.Config admissionConfig = AdmissionControl.UNLIMITED;
+
+	// 返回值的 gzip/deflate 压缩，null 表示关闭
+	ResponseCompression compression;
+
+	// coalesce 的 follower 最多等待 leader 的时间和可共享的响应体上限
+	long coalescingMaxWait = 1000;
+	int coalescingMaxBytes = 1024 * 1024;
+
+	// 输出 handler 指标的保留路径，null 表示关闭，默认关闭
+	String metricsPath;
+
+	// 批量请求的保留路径，null 表示关闭，默认关闭
+	String batchPath;
+	BatchEndpoint batchEndpoint;
+	// dispatchMode=sync 时批量请求使用的 ForkJoinPool，虚拟线程模式下复用 dispatchExecutor
+	ExecutorService batchExecutor;
+
+	// 5xx 异常的限流日志
+	ErrorLog errorLog;
+
+	// 容器日志，没有 ServletContext 时（基准测试）为 null
+	ServletContext servletContext;
+
+	// 异步访问日志，null 表示关闭
+	AccessLog accessLog;
+
+	// 当前路由表，注册/注销 controller 时整体替换
+	final AtomicReference<RouteSnapshot> routes = new AtomicReference<>(RouteSnapshot.EMPTY);
+	// 虚拟线程模式下每个 handler 的并发上限，0 表示不限制
+	int maxConcurrencyPerHandler;
+	MockBeanContainer beanContainer;
 	Set<String> classesSet = new HashSet<>();
 
 	@Override
 	public void init(ServletConfig config) throws ServletException {
 		System.out.println("Mock MVC starts init at:" + LocalDateTime.now());
+		long initStart = System.nanoTime();
+		servletContext = config.getServletContext();
 		// load configration
 		Properties props = loadConfig2Props(config);
 		// doCheck
 		checkLoadResult(props);
 		// getAll clazz
 		String scanPath = props.getProperty("scanPackage");
-		doGetClasses(scanPath);
+		if (!emtpy(props.getProperty("asyncTimeout"))) {
+			asyncTimeout = Long.parseLong(props.getProperty("asyncTimeout").trim());
+		}
+		binaryBodyWriter = new BinaryBodyWriter(intProperty(props, "responseBuffer.chunkSize", 64 * 1024),
+				intProperty(props, "responseBuffer.poolSize", 16));
+		jsonWriter = new JsonWriter(intProperty(props, "json.bufferSize", 8 * 1024),
+				intProperty(props, "json.poolSize", 16));
+		requestBodyReader = new RequestBodyReader(intProperty(props, "requestBody.maxBytes", 1024 * 1024),
+				intProperty(props, "requestBody.bufferSize", 8 * 1024), intProperty(props, "requestBody.poolSize", 16));
+		admissionConfig = new AdmissionControl.Config(intProperty(props, "admission.maxConcurrency", 0),
+				doubleProperty(props, "admission.permitsPerSecond", 0), intProperty(props, "admission.burst", 0),
+				Boolean.parseBoolean(props.getProperty("admission.adaptive", "false").trim()),
+				intProperty(props, "admission.adaptive.minConcurrency", 1));
+		coalescingMaxWait = intProperty(props, "coalescing.maxWaitMs", 1000);
+		coalescingMaxBytes = intProperty(props, "coalescing.maxBytes", 1024 * 1024);
+		if (Boolean.parseBoolean(props.getProperty("compression.enabled", "true").trim())) {
+			compression = new ResponseCompression(intProperty(props, "compression.minSize", 1024),
+					intProperty(props, "compression.level", 6),
+					props.getProperty("compression.mimeTypes", "text/*,application/json"),
+					intProperty(props, "compression.poolSize", 16), intProperty(props, "compression.bufferSize", 8 * 1024));
+		}
+		String metricsPathProperty = props.getProperty("metrics.path");
+		if (!emtpy(metricsPathProperty) && !emtpy(metricsPathProperty.trim())) {
+			metricsPath = HanderRouter.normalize(metricsPathProperty.trim());
+			System.out.println("Mock MVC serves metrics on " + metricsPath
+					+ ", without authentication and without interceptors");
+		}
+		errorLog = new ErrorLog(intProperty(props, "errorLog.maxStackTracesPerSecond", 10),
+				intProperty(props, "errorLog.sampleRate", 1));
+		initAccessLog(props);
 
-		// doInstance
-		doInstance();
+		int beansParallelism = intProperty(props, "beans.parallelism", Runtime.getRuntime().availableProcessors());
+		boolean beansStartupReport = Boolean.parseBoolean(props.getProperty("beans.startupReport", "false").trim());
+		beanContainer = new MockBeanContainer(beansParallelism, beansStartupReport);
+		MockGeneratedRegistry registry = loadGeneratedRegistry();
+		if (registry == null || !initFromGeneratedRegistry(registry, scanPath)) {
+			if (registry != null) {
+				// 丢掉注册表创建的 bean，重新扫描
+				beanContainer = new MockBeanContainer(beansParallelism, beansStartupReport);
+			}
+			doGetClasses(scanPath, props);
+
+			// doInstance, 创建 bean 并完成注入
+			doInstance();
 
-		// doAutowired
-		doAutowired();
+			// init hander mapping
+			initHanderMapping();
+		}
+
+		int exceptionHandlerCount = routes.get().exceptionHandlers.size();
+		if (exceptionHandlerCount > 0) {
+			System.out.println("Mock MVC registered " + exceptionHandlerCount + " exception handlers");
+		}
+		int interceptorCount = routes.get().interceptors.size();
+		if (interceptorCount > 0) {
+			System.out.println("Mock MVC registered " + interceptorCount + " interceptors");
+		}
 
-		// init hander mapping
-		initHanderMapping();
+		initDispatchMode(props);
+		initBatch(props);
 
-		System.out.println("Mock MVC ends init at:" + LocalDateTime.now());
+		System.out.println("Mock MVC ends init at:" + LocalDateTime.now() + ", cost "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - initStart) + "ms");
 	}
 
 	/**
@@ -143,164 +290,880 @@ public class MockDispatcherServlet extends HttpServlet {
 		try {
 			doDispatch(req, resp);
 		} catch (Exception e) {
-			resp.getWriter().println("500 Server Error " + Arrays.toString(e.getStackTrace()));
-			e.printStackTrace();
+			processException(null, e, req, resp);
 		}
 	}
 
+	/**
+	 * 异常转响应：先找 @MockExceptionHandler，其次按 MockResponseStatusException 的状态码输出，其余一律 500。
+	 * 栈信息只按 errorLog 的限流写日志，不返回给客户端
+	 *
+	 * @param hm 抛出异常的 handler，路由之外的异常传 null
+	 */
+	private void processException(HanderMethod hm, Throwable e, HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		ExceptionHandlers.Handler handler = routes.get().exceptionHandlers.find(hm == null ? null : hm.instance, e);
+		if (handler != null) {
+			try {
+				resp.setStatus(handler.status);
+				processRetValue(handler.invoke(e, req, resp), resp);
+				if (handler.status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+					errorLog.log(req, handler.status, e);
+				}
+				return;
+			} catch (Exception handlerError) {
+				// 处理方法自身出错，按未处理的异常输出
+				handlerError.addSuppressed(e);
+				e = handlerError;
+			}
+		}
+		if (e instanceof MockResponseStatusException) {
+			MockResponseStatusException statusException = (MockResponseStatusException) e;
+			ExceptionHandlers.write(resp, statusException.getStatus(),
+					ExceptionHandlers.statusBody(statusException.getStatus(), statusException.getMessage()));
+			return;
+		}
+		errorLog.log(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+		ExceptionHandlers.write(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ExceptionHandlers.SERVER_ERROR);
+	}
+
 	private void doDispatch(HttpServletRequest req, HttpServletResponse resp) throws Exception {
-		// 获取handler
-		HanderMethod hm = getHander(req);
-		if (hm == null) {
+		String path = getRequestPath(req);
+		if (accessLog != null) {
+			resp = accessLog.wrap(resp);
+		}
+		if (metricsPath != null && metricsPath.equals(path)) {
+			long start = System.nanoTime();
+			MetricsEndpoint.write(routes.get().handers, req, resp, jsonWriter);
+			logAccess(null, start, req, resp);
+			return;
+		}
+		if (batchEndpoint != null && batchPath.equals(path)) {
+			long start = System.nanoTime();
+			try {
+				batchEndpoint.handle(req, resp, requestBodyReader, jsonWriter, this::dispatchBatchItem);
+			} catch (Exception e) {
+				processException(null, e, req, resp);
+			}
+			logAccess(null, start, req, resp);
+			return;
+		}
+		// 获取handler，拦截器随路由一起取自同一个快照
+		HanderRouter.Route route = routes.get().router.lookup(path, req);
+		if (route == null) {
 			// NOT FOUND
-			resp.getWriter().println("404 Not Found");
+			long start = System.nanoTime();
+			ExceptionHandlers.write(resp, HttpServletResponse.SC_NOT_FOUND, ExceptionHandlers.NOT_FOUND);
+			logAccess(null, start, req, resp);
+			return;
+		}
+		HanderMethod hm = route.handerMethod;
+		if (hm.admission != null) {
+			AdmissionControl.Rejection rejection = hm.admission.tryAcquire();
+			if (rejection != null) {
+				// 超出并发或速率，立即拒绝
+				long start = System.nanoTime();
+				resp.setHeader("Retry-After", rejection.retryAfter);
+				ExceptionHandlers.write(resp, rejection.status, rejection.body);
+				logAccess(hm, start, req, resp);
+				return;
+			}
+		}
+		long start = hm.metrics.begin();
+		// 整个请求使用同一个拦截器数组，期间注册的拦截器从下一个请求开始生效
+		MockHandlerInterceptor[] chain = route.interceptors;
+		int applied = 0;
+		boolean completed;
+		try {
+			applied = preHandle(chain, hm, req, resp);
+			// 被拦截器中止时由拦截器写响应
+			completed = applied < chain.length || doDispatch(hm, start, chain, req, resp);
+		} catch (Exception e) {
+			end(hm, start, true);
+			processException(hm, e, req, resp);
+			afterCompletion(chain, applied, hm, req, resp, e);
+			logAccess(hm, start, req, resp);
 			return;
 		}
+		if (completed) {
+			end(hm, start, false);
+			afterCompletion(chain, applied, hm, req, resp, null);
+			logAccess(hm, start, req, resp);
+		}
+	}
+
+	/**
+	 * 批量请求中的一个子请求：和普通请求一样经过路由、准入、缓存和参数绑定，
+	 * 返回 CompletionStage 时在当前线程等到整批的截止时间
+	 */
+	private void dispatchBatchItem(HttpServletRequest req, HttpServletResponse resp, long deadlineNanos)
+			throws Exception {
+		HanderRouter.Route route = routes.get().router.lookup(getRequestPath(req), req);
+		if (route == null) {
+			ExceptionHandlers.write(resp, HttpServletResponse.SC_NOT_FOUND, ExceptionHandlers.NOT_FOUND);
+			return;
+		}
+		HanderMethod hm = route.handerMethod;
+		if (hm.admission != null) {
+			AdmissionControl.Rejection rejection = hm.admission.tryAcquire();
+			if (rejection != null) {
+				resp.setHeader("Retry-After", rejection.retryAfter);
+				ExceptionHandlers.write(resp, rejection.status, rejection.body);
+				return;
+			}
+		}
+		long start = hm.metrics.begin();
+		MockHandlerInterceptor[] chain = route.interceptors;
+		int applied = 0;
+		try {
+			applied = preHandle(chain, hm, req, resp);
+			if (applied == chain.length && (hm.responseCache == null || !hm.responseCache.serve(req, resp))) {
+				Object ret = doInvoke(hm, req, resp);
+				if (ret instanceof CompletionStage) {
+					CompletableFuture<?> future = ((CompletionStage<?>) ret).toCompletableFuture();
+					try {
+						ret = future.get(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+					} catch (TimeoutException e) {
+						future.cancel(true);
+						throw new MockResponseStatusException(504, "Batch deadline exceeded");
+					}
+				}
+				postHandle(chain, hm, req, resp, ret);
+				processRetValue(hm, ret, req, resp);
+			}
+		} catch (InterruptedException e) {
+			// 整批已超时，结果不会再写出
+			end(hm, start, true);
+			afterCompletion(chain, applied, hm, req, resp, e);
+			throw e;
+		} catch (Exception e) {
+			end(hm, start, true);
+			Throwable cause = unwrapAsyncException(e);
+			processException(hm, cause, req, resp);
+			afterCompletion(chain, applied, hm, req, resp, cause);
+			return;
+		}
+		end(hm, start, false);
+		afterCompletion(chain, applied, hm, req, resp, null);
+	}
+
+	/**
+	 * 记录指标并归还准入许可，每个放行的请求只调用一次
+	 */
+	private static void end(HanderMethod hm, long start, boolean error) {
+		long nanos = hm.metrics.end(start, error);
+		if (hm.admission != null) {
+			hm.admission.release(nanos);
+		}
+	}
+
+	/**
+	 * 按顺序调用 preHandle
+	 *
+	 * @return 返回 true 的拦截器个数，小于 chain.length 表示请求被中止；
+	 *         抛出异常时已对之前通过的拦截器调用 afterCompletion
+	 */
+	private int preHandle(MockHandlerInterceptor[] chain, HanderMethod hm, HttpServletRequest req,
+			HttpServletResponse resp) throws Exception {
+		for (int i = 0; i < chain.length; i++) {
+			boolean proceed;
+			try {
+				proceed = chain[i].preHandle(req, resp, hm.method);
+			} catch (Exception e) {
+				afterCompletion(chain, i, hm, req, resp, e);
+				throw e;
+			}
+			if (!proceed) {
+				return i;
+			}
+		}
+		return chain.length;
+	}
+
+	private static void postHandle(MockHandlerInterceptor[] chain, HanderMethod hm, HttpServletRequest req,
+			HttpServletResponse resp, Object ret) throws Exception {
+		for (int i = chain.length - 1; i >= 0; i--) {
+			chain[i].postHandle(req, resp, hm.method, ret);
+		}
+	}
+
+	/**
+	 * 对前 applied 个拦截器倒序调用 afterCompletion，单个拦截器出错只记日志，不影响其他拦截器
+	 */
+	private void afterCompletion(MockHandlerInterceptor[] chain, int applied, HanderMethod hm,
+			HttpServletRequest req, HttpServletResponse resp, Throwable ex) {
+		for (int i = applied - 1; i >= 0; i--) {
+			try {
+				chain[i].afterCompletion(req, resp, hm.method, ex);
+			} catch (Exception e) {
+				errorLog.log(req, "afterCompletion of " + chain[i].getClass().getName() + " failed", e);
+			}
+		}
+	}
+
+	private void logAccess(HanderMethod hm, long start, HttpServletRequest req, HttpServletResponse resp) {
+		if (accessLog != null) {
+			accessLog.log(req, resp, hm == null ? null : hm.url, start);
+		}
+	}
+
+	/**
+	 * @return 响应是否已写完，false 表示转为异步，由 AsyncResponse 记录结束
+	 */
+	private boolean doDispatch(HanderMethod hm, long start, MockHandlerInterceptor[] chain, HttpServletRequest req,
+			HttpServletResponse resp) throws Exception {
+		if (hm.responseCache != null && hm.responseCache.serve(req, resp)) {
+			// 缓存命中或 304，不调用 handler
+			return true;
+		}
+		if (hm.coalescer != null && dispatchExecutor == null && RequestCoalescer.supports(req)) {
+			String key = RequestCoalescer.key(req);
+			CompletableFuture<RequestCoalescer.Shared> flight = new CompletableFuture<>();
+			CompletableFuture<RequestCoalescer.Shared> leader = hm.coalescer.join(key, flight);
+			if (leader == null) {
+				return invokeAsLeader(hm, start, chain, key, flight, req, resp);
+			}
+			RequestCoalescer.Shared shared = hm.coalescer.await(leader);
+			if (shared != null) {
+				if (shared.error != null) {
+					throw shared.error;
+				}
+				writeShared(hm, shared, req, resp);
+				return true;
+			}
+			// 超时或不能共享，自己调用 handler
+		}
+		if (dispatchExecutor != null) {
+			// 交给虚拟线程执行，容器线程立即返回
+			dispatchOnExecutor(hm, start, chain, req, resp);
+			return false;
+		}
 		Object ret = doInvoke(hm, req, resp);
-	
+		if (ret instanceof CompletionStage) {
+			// 释放容器线程，future 完成时再写响应
+			new AsyncResponse(hm, start, chain, req, resp).completeWith((CompletionStage<?>) ret);
+			return false;
+		}
+		postHandle(chain, hm, req, resp, ret);
+
 		// handler result
-		processRetValue(ret, resp);
+		processRetValue(hm, ret, req, resp);
+		return true;
 	}
 
-	private Object doInvoke(HanderMethod hm, HttpServletRequest req, HttpServletResponse resp)
-			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+	/**
+	 * 合并请求中的 leader：调用 handler，把响应体缓冲在内存中交给 follower，再经过压缩或响应缓存写给自己的客户端。
+	 * 缓冲上限取合并与缓存两者中较大的一个，超出各自上限时只由对应的一方放弃
+	 */
+	private boolean invokeAsLeader(HanderMethod hm, long start, MockHandlerInterceptor[] chain, String key,
+			CompletableFuture<RequestCoalescer.Shared> flight, HttpServletRequest req, HttpServletResponse resp)
+			throws Exception {
+		RequestCoalescer.Shared shared = null;
+		boolean completed = false;
+		ResponseCompression.CompressingResponse compressing = null;
+		try {
+			Object ret;
+			try {
+				ret = doInvoke(hm, req, resp);
+				if (!(ret instanceof CompletionStage)) {
+					postHandle(chain, hm, req, resp, ret);
+				}
+			} catch (Exception e) {
+				shared = new RequestCoalescer.Shared(null, null, e);
+				throw e;
+			}
+			if (ret instanceof CompletionStage) {
+				new AsyncResponse(hm, start, chain, req, resp).completeWith((CompletionStage<?>) ret);
+				return false;
+			}
+			if (ret == null) {
+				// handler 自己写了响应
+				return true;
+			}
+			if (resp.getStatus() != HttpServletResponse.SC_OK) {
+				// handler 设置了状态码，Shared 只有响应体，不能共享
+				processRetValue(hm, ret, req, resp);
+				return true;
+			}
+			long cacheLimit = hm.responseCache == null ? 0 : hm.responseCache.captureLimit(req);
+			compressing = compression == null ? null : compression.wrap(req, resp, hm.compressionLevel);
+			HttpServletResponse target = compressing != null ? compressing : resp;
+			ResponseCache.Capture capture = new ResponseCache.Capture(target,
+					Math.max(cacheLimit, hm.coalescer.maxBytes));
+			processRetValue(ret, capture);
+			capture.finish();
+			byte[] body = capture.buffered() ? capture.toByteArray() : null;
+			if (body != null && body.length <= hm.coalescer.maxBytes) {
+				shared = new RequestCoalescer.Shared(resp.getContentType(), body, null);
+			}
+			// 先放行 follower，再写自己的客户端
+			hm.coalescer.complete(key, flight, shared);
+			completed = true;
+			if (body != null) {
+				if (body.length <= cacheLimit) {
+					// 缓存自己按 Accept-Encoding 写出压缩副本
+					hm.responseCache.store(req, resp, capture);
+				} else {
+					target.setContentLength(body.length);
+					target.getOutputStream().write(body);
+				}
+			}
+			// 内容过大或非 200 时已经透传给 target
+			if (compressing != null) {
+				compressing.finish();
+			}
+		} finally {
+			if (!completed) {
+				hm.coalescer.complete(key, flight, shared);
+			}
+			if (compressing != null) {
+				compressing.release();
+			}
+		}
+		return true;
+	}
+
+	private void writeShared(HanderMethod hm, RequestCoalescer.Shared shared, HttpServletRequest req,
+			HttpServletResponse resp) throws IOException {
+		if (shared.contentType != null) {
+			resp.setContentType(shared.contentType);
+		}
+		ResponseCompression.CompressingResponse compressing = compression == null ? null
+				: compression.wrap(req, resp, hm.compressionLevel);
+		HttpServletResponse target = compressing != null ? compressing : resp;
+		try {
+			target.setContentLength(shared.body.length);
+			target.getOutputStream().write(shared.body);
+			if (compressing != null) {
+				compressing.finish();
+			}
+		} finally {
+			if (compressing != null) {
+				compressing.release();
+			}
+		}
+	}
+
+	private void dispatchOnExecutor(HanderMethod hm, long start, MockHandlerInterceptor[] chain, HttpServletRequest req,
+			HttpServletResponse resp) {
+		AsyncResponse asyncResponse = new AsyncResponse(hm, start, chain, req, resp);
+		try {
+			Future<?> task = dispatchExecutor.submit(() -> {
+				Semaphore permits = hm.dispatchPermits;
+				try {
+					if (permits != null && !acquire(permits, asyncResponse.timeout)) {
+						asyncResponse.complete(null, new MockResponseStatusException(
+								HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent requests"));
+						return;
+					}
+				} catch (InterruptedException e) {
+					// 已超时被取消
+					return;
+				}
+				try {
+					Object ret = doInvoke(hm, req, resp);
+					if (ret instanceof CompletionStage) {
+						asyncResponse.completeWith((CompletionStage<?>) ret);
+					} else {
+						asyncResponse.complete(ret, null);
+					}
+				} catch (Throwable e) {
+					asyncResponse.complete(null, e);
+				} finally {
+					if (permits != null) {
+						permits.release();
+					}
+				}
+			});
+			// handler 返回的 future 可能已经先登记
+			asyncResponse.pending.compareAndSet(null, task);
+		} catch (RejectedExecutionException e) {
+			asyncResponse.complete(null,
+					new MockResponseStatusException(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Dispatcher is shutting down"));
+		}
+	}
+
+	private static boolean acquire(Semaphore permits, long timeout) throws InterruptedException {
+		if (timeout <= 0) {
+			permits.acquire();
+			return true;
+		}
+		return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 一次异步请求：超时、出错、正常完成只有一个能写响应
+	 */
+	final class AsyncResponse implements AsyncListener {
+		final AsyncContext asyncContext;
+		final HanderMethod hm;
+		// preHandle 已全部通过的拦截器
+		final MockHandlerInterceptor[] interceptors;
+		final HttpServletRequest req;
+		final HttpServletResponse resp;
+		final long startNanos;
+		final long timeout;
+		final AtomicBoolean responded = new AtomicBoolean();
+		// 超时时取消
+		final AtomicReference<Future<?>> pending = new AtomicReference<>();
+
+		AsyncResponse(HanderMethod hm, long startNanos, MockHandlerInterceptor[] interceptors, HttpServletRequest req,
+				HttpServletResponse resp) {
+			this.hm = hm;
+			this.interceptors = interceptors;
+			this.startNanos = startNanos;
+			this.req = req;
+			this.resp = resp;
+			this.timeout = hm.asyncTimeout >= 0 ? hm.asyncTimeout : asyncTimeout;
+			this.asyncContext = req.isAsyncStarted() ? req.getAsyncContext() : req.startAsync(req, resp);
+			asyncContext.setTimeout(timeout);
+			asyncContext.addListener(this);
+		}
+
+		void completeWith(CompletionStage<?> stage) {
+			if (stage instanceof Future) {
+				pending.set((Future<?>) stage);
+			}
+			stage.whenComplete(this::complete);
+		}
+
+		void complete(Object value, Throwable ex) {
+			if (!responded.compareAndSet(false, true)) {
+				return;
+			}
+			if (ex == null) {
+				try {
+					postHandle(interceptors, hm, req, resp, value);
+				} catch (Exception e) {
+					ex = e;
+				}
+			}
+			end(hm, startNanos, ex != null);
+			Throwable error = ex == null ? null : unwrapAsyncException(ex);
+			try {
+				if (error != null) {
+					processException(hm, error, req, resp);
+				} else {
+					processRetValue(hm, value, req, resp);
+				}
+			} catch (Exception e) {
+				// 多半是客户端已断开
+				errorLog.log(req, "writing async response of url='" + hm.url + "' failed", e);
+			} finally {
+				afterCompletion(interceptors, interceptors.length, hm, req, resp, error);
+				logAccess(hm, startNanos, req, resp);
+				asyncContext.complete();
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			if (responded.compareAndSet(false, true)) {
+				end(hm, startNanos, true);
+				Future<?> future = pending.get();
+				if (future != null) {
+					future.cancel(true);
+				}
+				MockResponseStatusException timeout = new MockResponseStatusException(
+						HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Async request timed out");
+				processException(hm, timeout, req, resp);
+				afterCompletion(interceptors, interceptors.length, hm, req, resp, timeout);
+				logAccess(hm, startNanos, req, resp);
+				asyncContext.complete();
+			}
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			if (responded.compareAndSet(false, true)) {
+				end(hm, startNanos, true);
+				processException(hm, event.getThrowable(), req, resp);
+				afterCompletion(interceptors, interceptors.length, hm, req, resp, event.getThrowable());
+				logAccess(hm, startNanos, req, resp);
+				asyncContext.complete();
+			}
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+		}
+	}
+
+	private static Throwable unwrapAsyncException(Throwable ex) {
+		while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+			ex = ex.getCause();
+		}
+		return ex;
+	}
+
+	Object doInvoke(HanderMethod hm, HttpServletRequest req, HttpServletResponse resp) throws Exception {
 		// get method argument values
 		Object[] args = getMethodArgValues(hm, req, resp);
 	
 		// do actual invoke
-		return hm.method.invoke(hm.instance, args);
+		return hm.invoker.invoke(args);
 	}
 
 	private void initHanderMapping() {
-		Set<String> beanNameSet = beansMap.keySet();
-		for (String beanName : beanNameSet) {
-			Object instance = beansMap.get(beanName);
-			Class<?> clazz = instance.getClass();
-			if (!clazz.isAnnotationPresent(MockController.class)) {
+		List<HanderMethod> handers = new ArrayList<>();
+		for (Object instance : beanContainer.getBeansWithAnnotation(MockController.class)) {
+			handers.addAll(mapController(instance));
+		}
+		// compile all mappings into router, interceptor chains are resolved per route here
+		routes.set(new RouteSnapshot(handers, beanContainer.getBeansWithAnnotation(MockControllerAdvice.class),
+				HanderInterceptors.of(beanContainer.getBeansWithAnnotation(MockInterceptor.class))));
+	}
+
+	private List<HanderMethod> mapController(Object instance) {
+		List<HanderMethod> handers = new ArrayList<>();
+		Class<?> clazz = instance.getClass();
+		String baseUrl = "/";
+		if (clazz.isAnnotationPresent(MockRequestMapping.class)) {
+			baseUrl = clazz.getAnnotation(MockRequestMapping.class).value();
+		}
+		// process method MockAnnotation
+		Method methods[] = clazz.getDeclaredMethods();
+		for (Method method : methods) {
+			if (!method.isAnnotationPresent(MockRequestMapping.class)) {
 				continue;
 			}
-			String baseUrl = "/";
-			if (clazz.isAnnotationPresent(MockRequestMapping.class)) {
-				baseUrl = clazz.getAnnotation(MockRequestMapping.class).value();
-			}
-			// process method MockAnnotation
-			Method methods[] = clazz.getDeclaredMethods();
-			for (Method method : methods) {
-				if (!method.isAnnotationPresent(MockRequestMapping.class)) {
-					continue;
-				}
-				baseUrl += method.getAnnotation(MockRequestMapping.class).value();
-				baseUrl = baseUrl.replaceAll("/+", "/");
-				Pattern pattern = Pattern.compile(baseUrl);
+			String url = baseUrl + method.getAnnotation(MockRequestMapping.class).value();
+			url = url.replaceAll("/+", "/");
 
-				HanderMethod handerMethod = new HanderMethod(baseUrl, method, instance, pattern);
-				System.out.println("Mapping url='" + baseUrl + "' on method=" + method);
+			HanderMethod handerMethod = newHanderMethod(url, method, instance);
+			System.out.println("Mapping url='" + url + "' on method=" + method);
 
-				handerMapping.add(handerMethod);
-			}
+			handers.add(handerMethod);
 		}
+		return handers;
 	}
 
-	private void doAutowired() {
-		beansMap.forEach((beanName, instance) -> {
-			Class<?> clazz = instance.getClass();
-			// just autowire controller
-			if (clazz.isAnnotationPresent(MockController.class)) {
-				Field[] fields = clazz.getDeclaredFields();
-				for (Field field : fields) {
-					if (!field.isAnnotationPresent(MockAutowired.class)) {
-						continue;
-					}
-					// get instance
-					String innerbeanName = field.getAnnotation(MockAutowired.class).value();
-					if (emtpy(innerbeanName)) {
-						innerbeanName = ensureBeanName(field.getType().getSimpleName());
-					}
-					// inject
-					field.setAccessible(true);
-					try {
-						field.set(instance, beansMap.get(innerbeanName));
-					} catch (IllegalArgumentException e) {
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						e.printStackTrace();
-					}
+	/**
+	 * 运行期由容器创建 controller（依赖从已有 bean 注入）并注册它的全部路由。
+	 * 已有同名 bean 时整体替换，新旧路由在同一个快照里切换
+	 *
+	 * @return controller 实例
+	 */
+	public Object registerController(Class<?> controllerClass) {
+		Object controller = beanContainer.createBean(controllerClass);
+		registerController(MockBeanContainer.beanName(controllerClass), controller);
+		return controller;
+	}
+
+	/**
+	 * 注册一个已经创建好的 controller，已有同名 bean 时替换。
+	 * 路由冲突时抛出 IllegalStateException，当前路由表保持不变
+	 */
+	public void registerController(String beanName, Object controller) {
+		synchronized (routes) {
+			RouteSnapshot current = routes.get();
+			Object previous = beanContainer.getBean(beanName);
+			List<HanderMethod> added = mapController(controller);
+			if (dispatchExecutor != null && maxConcurrencyPerHandler > 0) {
+				for (HanderMethod hm : added) {
+					hm.dispatchPermits = new Semaphore(maxConcurrencyPerHandler);
 				}
 			}
-		});
+			RouteSnapshot next = current.replace(previous, added);
+			beanContainer.replaceSingleton(beanName, controller);
+			routes.set(next);
+			System.out.println("Mock MVC " + (previous == null ? "registered" : "replaced") + " controller '"
+					+ beanName + "', " + added.size() + " routes, " + next.handers.size() + " in total");
+		}
 	}
 
-	private void doInstance() {
-		classesSet.forEach(className -> {
-			try {
-				Class<?> clazz = Class.forName(className);
-				if (clazz.isAnnotationPresent(MockController.class)) {// do
-																		// resolver
-																		// controller
-					try {
-						// 1. doInstance
-						Object instance = clazz.newInstance();
-						String beanName = clazz.getAnnotation(MockController.class).value();
-						if (emtpy(beanName)) {
-							beanName = ensureBeanName(clazz.getSimpleName());
-						}
-						beansMap.put(beanName, instance);
-					} catch (InstantiationException e) {
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						e.printStackTrace();
-					}
-				} else if (clazz.isAnnotationPresent(MockService.class)) {// do
-																			// resolver
-																			// service
-					try {
-						Object instance = clazz.newInstance();
-						MockService mockService = clazz.getAnnotation(MockService.class);
-						String beanName = mockService.value();
-						if (emtpy(beanName)) {
-							beanName = ensureBeanName(clazz.getSimpleName());
-						}
-						if (beansMap.containsKey(beanName)) {
-							throw new RuntimeException("bean name duplicate for instance=" + instance);
-						}
-						beansMap.put(beanName, instance);
-					} catch (InstantiationException e) {
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						e.printStackTrace();
-					}
-				}
-			} catch (ClassNotFoundException e) {
-				e.printStackTrace();
+	/**
+	 * 注销 controller 的全部路由，进行中的请求不受影响
+	 *
+	 * @return bean 不存在时返回 false
+	 */
+	public boolean unregisterController(String beanName) {
+		synchronized (routes) {
+			Object controller = beanContainer.getBean(beanName);
+			if (controller == null) {
+				return false;
+			}
+			RouteSnapshot next = routes.get().replace(controller, Collections.<HanderMethod>emptyList());
+			beanContainer.removeBean(beanName);
+			routes.set(next);
+			System.out.println("Mock MVC unregistered controller '" + beanName + "', " + next.handers.size()
+					+ " routes in total");
+			return true;
+		}
+	}
+
+	/**
+	 * 运行期注册拦截器，路径模式和顺序取实现类上的 {@link MockInterceptor}，没有注解时作用于全部路由。
+	 * 全部 handler 的拦截器数组在新快照中重新解析，进行中的请求继续使用原来的数组。
+	 * 路径模式不合法时抛出 IllegalStateException，当前路由表保持不变
+	 */
+	public void registerInterceptor(MockHandlerInterceptor interceptor) {
+		synchronized (routes) {
+			RouteSnapshot current = routes.get();
+			RouteSnapshot next = current.withInterceptors(current.interceptors.with(interceptor));
+			routes.set(next);
+			System.out.println("Mock MVC registered interceptor " + interceptor.getClass().getName() + ", "
+					+ next.interceptors.size() + " in total");
+		}
+	}
+
+	/**
+	 * @return 没有注册过时返回 false
+	 */
+	public boolean unregisterInterceptor(MockHandlerInterceptor interceptor) {
+		synchronized (routes) {
+			RouteSnapshot current = routes.get();
+			HanderInterceptors interceptors = current.interceptors.without(interceptor);
+			if (interceptors == current.interceptors) {
+				return false;
 			}
-		});
+			routes.set(current.withInterceptors(interceptors));
+			System.out.println("Mock MVC unregistered interceptor " + interceptor.getClass().getName() + ", "
+					+ interceptors.size() + " in total");
+			return true;
+		}
 	}
 
-	private String ensureBeanName(String simpleName) {
-		if (!Character.isUpperCase(simpleName.charAt(0))) {
-			return simpleName;
+	private HanderMethod newHanderMethod(String url, Method method, Object instance) {
+		HanderMethod hm = new HanderMethod(url, method, instance, requestBodyReader);
+		hm.admission = AdmissionControl.of(method, admissionConfig);
+		if (RequestCoalescer.enabled(method)) {
+			hm.coalescer = new RequestCoalescer(coalescingMaxWait, coalescingMaxBytes);
+		}
+		if (compression != null) {
+			MockCompression annotation = method.getAnnotation(MockCompression.class);
+			int level = annotation != null ? annotation.level() : compression.defaultLevel;
+			if (level < 0 || level > 9) {
+				throw new IllegalStateException("Compression level of " + method + " must be between 0 and 9");
+			}
+			hm.compressionLevel = level;
+			if (hm.responseCache != null) {
+				hm.responseCache.enableCompression(compression, level);
+			}
+		}
+		return hm;
+	}
+
+	private void initAccessLog(Properties props) {
+		String file = props.getProperty("accessLog.file");
+		if (emtpy(file) || emtpy(file.trim())) {
+			return;
+		}
+		AccessLog.Overflow overflow = AccessLog.Overflow
+				.valueOf(props.getProperty("accessLog.overflow", "drop").trim().toUpperCase());
+		try {
+			accessLog = new AccessLog(Paths.get(file.trim()), intProperty(props, "accessLog.queueSize", 8192),
+					intProperty(props, "accessLog.bufferSize", 64 * 1024), overflow,
+					intProperty(props, "accessLog.maxFileSizeMb", 100) * 1024L * 1024L,
+					TimeUnit.MINUTES.toMillis(intProperty(props, "accessLog.rotateMinutes", 1440)),
+					intProperty(props, "accessLog.flushIntervalMs", 200));
+		} catch (IOException e) {
+			throw new RuntimeException("open access log " + file + " err", e);
+		}
+		System.out.println("Mock MVC writes access log to " + file.trim() + ", overflow=" + overflow);
+	}
+
+	private void initDispatchMode(Properties props) {
+		String dispatchMode = props.getProperty("dispatchMode", "sync").trim();
+		if (!"virtual".equalsIgnoreCase(dispatchMode)) {
+			return;
+		}
+		dispatchExecutor = DispatchExecutors.newVirtualThreadExecutor();
+		if (dispatchExecutor == null) {
+			System.out.println("Mock MVC dispatchMode=virtual but virtual threads are not available on "
+					+ System.getProperty("java.version") + ", fall back to sync dispatch");
+			return;
+		}
+		int permits = intProperty(props, "virtualThread.maxConcurrencyPerHandler", 0);
+		maxConcurrencyPerHandler = permits;
+		if (permits > 0) {
+			for (HanderMethod hm : routes.get().handers) {
+				hm.dispatchPermits = new Semaphore(permits);
+			}
 		}
-		char[] chars = simpleName.toCharArray();
-		chars[0] += 32;
-		return new String(chars);
+		System.out.println("Mock MVC dispatches on virtual threads, maxConcurrencyPerHandler="
+				+ (permits > 0 ? permits : "unlimited"));
 	}
 
-	private void doGetClasses(String scanPath) {
-		URL url = this.getClass().getClassLoader().getResource("/" + scanPath.replaceAll("\\.", "/"));
+	private void initBatch(Properties props) {
+		String path = props.getProperty("batch.path");
+		batchPath = emtpy(path) || emtpy(path.trim()) ? null : HanderRouter.normalize(path.trim());
+		if (batchPath == null) {
+			return;
+		}
+		int parallelism = intProperty(props, "batch.parallelism", Runtime.getRuntime().availableProcessors() * 2);
+		ExecutorService executor = dispatchExecutor;
+		if (executor == null) {
+			batchExecutor = new ForkJoinPool(Math.max(parallelism, 1), ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+					null, true);
+			executor = batchExecutor;
+		}
+		batchEndpoint = new BatchEndpoint(intProperty(props, "batch.maxRequests", 32),
+				intProperty(props, "batch.timeoutMs", 5000), parallelism, executor, errorLog);
+		System.out.println("Mock MVC serves batch requests on " + batchPath + ", parallelism=" + parallelism
+				+ (executor == dispatchExecutor ? " on virtual threads" : " on a ForkJoinPool"));
+	}
 
-		File classDir = new File(url.getFile());
-		for (File file : classDir.listFiles()) {
-			if (file.isDirectory()) {
-				doGetClasses(scanPath + "." + file.getName());
+	@Override
+	public void destroy() {
+		if (dispatchExecutor != null) {
+			dispatchExecutor.shutdown();
+		}
+		if (batchExecutor != null) {
+			batchExecutor.shutdown();
+		}
+		if (batchEndpoint != null) {
+			System.out.println("Mock MVC batch " + batchEndpoint);
+		}
+		for (HanderMethod hm : routes.get().handers) {
+			if (hm.responseCache != null) {
+				System.out.println("Response cache url='" + hm.url + "' " + hm.responseCache);
+			}
+			if (hm.admission != null) {
+				System.out.println("Admission url='" + hm.url + "' " + hm.admission);
+			}
+			if (hm.coalescer != null) {
+				System.out.println("Coalescing url='" + hm.url + "' " + hm.coalescer);
 			}
-			if (!file.isFile() || !file.getName().endsWith(".class")) {
+		}
+		if (compression != null) {
+			compression.close();
+			System.out.println("Mock MVC compression " + compression);
+		}
+		if (errorLog != null) {
+			System.out.println("Mock MVC " + errorLog);
+		}
+		if (accessLog != null) {
+			accessLog.close();
+			System.out.println("Mock MVC access log " + accessLog);
+		}
+		super.destroy();
+	}
+
+	private MockGeneratedRegistry loadGeneratedRegistry() {
+		try {
+			Class<?> clazz = Class.forName(MockGeneratedRegistry.CLASS_NAME, true, this.getClass().getClassLoader());
+			return (MockGeneratedRegistry) clazz.newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (InstantiationException | IllegalAccessException e) {
+			System.err.println("Mock MVC can not instantiate generated registry, scanning classes instead: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * 编译期生成的注册表，跳过扫描和反射
+	 *
+	 * @return 注册表与当前 scanPackage 或类不一致时返回 false，调用方退回扫描：scanPackage 下没有 bean 或路由，
+	 *         路由指向不存在的 bean/方法或已不是 controller 的类，生成的代码引用了已删除的类
+	 */
+	private boolean initFromGeneratedRegistry(MockGeneratedRegistry registry, String scanPath) {
+		String registryName = registry.getClass().getName();
+		List<HanderMethod> handers = new ArrayList<>();
+		String stale;
+		try {
+			Map<String, Object> beansMap = new LinkedHashMap<>();
+			registry.registerBeans(scanPath, beansMap);
+			beansMap.forEach(beanContainer::registerSingleton);
+			beanContainer.refresh();
+			List<String> unresolved = new ArrayList<>();
+			registry.registerRoutes(scanPath, (url, beanName, methodName, parameterTypeNames) -> {
+				HanderMethod hm = generatedRoute(url, beanName, methodName, parameterTypeNames);
+				if (hm != null) {
+					handers.add(hm);
+				} else {
+					unresolved.add(url);
+				}
+			});
+			stale = beansMap.isEmpty() ? "no beans under '" + scanPath + "'"
+					: handers.isEmpty() ? "no routes under '" + scanPath + "'"
+							: !unresolved.isEmpty() ? "unresolved routes " + unresolved : null;
+		} catch (RuntimeException | LinkageError e) {
+			stale = e.toString();
+		}
+		if (stale != null) {
+			System.out.println("Mock MVC ignores generated registry " + registryName + ": " + stale
+					+ "; falling back to scanning");
+			return false;
+		}
+		System.out.println("Mock MVC uses generated registry " + registryName);
+		routes.set(new RouteSnapshot(handers, beanContainer.getBeansWithAnnotation(MockControllerAdvice.class),
+				HanderInterceptors.of(beanContainer.getBeansWithAnnotation(MockInterceptor.class))));
+		return true;
+	}
+
+	/**
+	 * @return bean 不存在或已不是 controller 时返回 null
+	 */
+	private HanderMethod generatedRoute(String url, String beanName, String methodName, String... parameterTypeNames) {
+		Object instance = beanContainer.getBean(beanName);
+		if (instance == null || !instance.getClass().isAnnotationPresent(MockController.class)) {
+			return null;
+		}
+		for (Method method : instance.getClass().getDeclaredMethods()) {
+			if (!method.getName().equals(methodName) || method.getParameterCount() != parameterTypeNames.length) {
 				continue;
 			}
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			boolean matched = true;
+			for (int i = 0; i < parameterTypes.length && matched; i++) {
+				matched = parameterTypes[i].getTypeName().equals(parameterTypeNames[i]);
+			}
+			if (matched) {
+				System.out.println("Mapping url='" + url + "' on method=" + method);
+				return newHanderMethod(url, method, instance);
+			}
+		}
+		throw new IllegalStateException("Generated route url='" + url + "' points to missing method " + beanName + "."
+				+ methodName + Arrays.toString(parameterTypeNames) + ", rebuild the project");
+	}
 
-			String className = scanPath + "." + file.getName().replace(".class", "");
-			classesSet.add(className);
+	private void doInstance() {
+		for (String className : classesSet) {
+			try {
+				beanContainer.register(Class.forName(className));
+			} catch (ClassNotFoundException e) {
+				System.err.println("Mock MVC can not load scanned class " + className + ": " + e);
+			}
 		}
+		beanContainer.refresh();
+	}
 
+	private void doGetClasses(String scanPath, Properties props) {
+		// scanIndex=false 关闭索引，scanIndexFile 指定索引位置
+		File indexFile = null;
+		if (!"false".equalsIgnoreCase(props.getProperty("scanIndex"))) {
+			String indexPath = props.getProperty("scanIndexFile");
+			indexFile = emtpy(indexPath) ? ClassPathScanner.defaultIndexFile(scanPath) : new File(indexPath);
+		}
+		long start = System.nanoTime();
+		ClassPathScanner scanner = new ClassPathScanner(this.getClass().getClassLoader(), scanPath, indexFile,
+				this::containerLog);
+		try {
+			classesSet.addAll(scanner.scan());
+		} catch (IOException e) {
+			throw new RuntimeException("scan package " + scanPath + " err", e);
+		}
+		System.out.println("Mock MVC scanned " + classesSet.size() + " classes in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms, "
+				+ (indexFile == null ? "index disabled" : scanner.isIndexHit() ? "index hit " + indexFile
+						: "index rebuilt " + indexFile));
+	}
+
+	/**
+	 * 写容器日志，没有 ServletContext 时写标准错误
+	 */
+	void containerLog(String message, Throwable e) {
+		if (servletContext != null) {
+			servletContext.log(message, e);
+		} else {
+			System.err.println(e == null ? message : message + ": " + e);
+		}
 	}
 
 	private void checkLoadResult(Properties props) {
@@ -318,7 +1181,7 @@ public class MockDispatcherServlet extends HttpServlet {
 			try {
 				props.load(in);
 			} catch (IOException e) {
-				e.printStackTrace();
+				System.err.println("Mock MVC can not read config " + configPath + ": " + e);
 			}
 			return props;
 		} finally {
@@ -326,6 +1189,16 @@ public class MockDispatcherServlet extends HttpServlet {
 		}
 	}
 
+	int intProperty(Properties props, String key, int defaultValue) {
+		String value = props.getProperty(key);
+		return emtpy(value) ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	double doubleProperty(Properties props, String key, double defaultValue) {
+		String value = props.getProperty(key);
+		return emtpy(value) ? defaultValue : Double.parseDouble(value.trim());
+	}
+
 	boolean emtpy(String strin) {
 		return (strin == null || strin.isEmpty());
 	}
@@ -338,59 +1211,84 @@ public class MockDispatcherServlet extends HttpServlet {
 				try {
 					inputStream.close();
 				} catch (IOException e) {
-					e.printStackTrace();
+					System.err.println("Mock MVC can not close stream: " + e);
 				}
 			}
 		}
 	}
 
-	private HanderMethod getHander(HttpServletRequest req) {
+	String getRequestPath(HttpServletRequest req) {
 		String uri = req.getRequestURI();
 		String contextPath = req.getContextPath();
-		uri = uri.replace(contextPath, "").replaceAll("/+", "/");
-		for (HanderMethod hm : handerMapping) {
-			if (hm.pattern.matcher(uri).matches()) {
-				return hm;
-			}
+		if (!contextPath.isEmpty() && uri.startsWith(contextPath)) {
+			uri = uri.substring(contextPath.length());
 		}
-		return null;
+		return HanderRouter.normalize(uri);
+	}
+
+	HanderMethod getHander(String path) {
+		HanderRouter.Route route = routes.get().router.lookup(path);
+		return route == null ? null : route.handerMethod;
 	}
 
-	private Object[] getMethodArgValues(HanderMethod hm, HttpServletRequest req, HttpServletResponse resp) {
+	/**
+	 * 命中模板路由时把路径变量存入 req
+	 */
+	HanderMethod getHander(String path, HttpServletRequest req) {
+		HanderRouter.Route route = routes.get().router.lookup(path, req);
+		return route == null ? null : route.handerMethod;
+	}
+
+	Object[] getMethodArgValues(HanderMethod hm, HttpServletRequest req, HttpServletResponse resp) {
 		MethodParameter[] methodParameters = hm.methodParameters;
 		Object[] args = new Object[methodParameters.length];
 		for (int i = 0; i < methodParameters.length; i++) {
-			MethodParameter methodParameter = methodParameters[i];
-			if (HttpServletRequest.class.isAssignableFrom(methodParameter.parameterType)) {
-				args[i] = req;
-			} else if (HttpServletResponse.class.isAssignableFrom(methodParameter.parameterType)) {
-				args[i] = resp;
-			} else {
-				String paramName = methodParameter.getParameterName();
-				String[] values = req.getParameterValues(paramName);
-				if (values != null && values.length == 1) {
-					args[i] = convertValueIfNecessary(methodParameter.getParameterType(), values[0]);
-				}
-			}
+			args[i] = methodParameters[i].resolver.resolve(req, resp);
 		}
 		return args;
 	}
 
-	private Object convertValueIfNecessary(Class<?> parameterType, String value) {
-		if (parameterType == String.class) {
-			return value;
-		} else if (parameterType == int.class || parameterType == Integer.class) {
-			return Integer.parseInt(value);
+	private void processRetValue(HanderMethod hm, Object ret, HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		if (ret == null) {
+			return;
+		}
+		ResponseCompression.CompressingResponse compressing = compression == null ? null
+				: compression.wrap(req, resp, hm.compressionLevel);
+		HttpServletResponse target = compressing != null ? compressing : resp;
+		try {
+			ResponseCache.Capture capture;
+			if (hm.responseCache != null && (capture = hm.responseCache.capture(req, target)) != null) {
+				// 先写入内存，再保存并写给客户端；缓存自己按 Accept-Encoding 写出压缩副本
+				processRetValue(ret, capture);
+				hm.responseCache.store(req, resp, capture);
+			} else {
+				processRetValue(ret, target);
+			}
+			if (compressing != null) {
+				compressing.finish();
+			}
+		} finally {
+			if (compressing != null) {
+				compressing.release();
+			}
 		}
-		// and so on
-		return null;
 	}
 
 	private void processRetValue(Object ret, HttpServletResponse resp) throws IOException {
-		if (ret != null) {
-			resp.getWriter().println("Server Response:" + ret);
+		if (ret == null) {
+			return;
+		}
+		if (BinaryBodyWriter.supports(ret)) {
+			// 二进制内容直接写 ServletOutputStream
+			binaryBodyWriter.write(ret, resp);
+			return;
+		}
+		if (JsonWriter.supports(ret)) {
+			jsonWriter.write(ret, resp);
 			return;
 		}
+		resp.getWriter().println("Server Response:" + ret);
 	}
 
 }
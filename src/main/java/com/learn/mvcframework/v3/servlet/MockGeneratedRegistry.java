@@ -0,0 +1,93 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 编译期由 {@code com.learn.mvcframework.processor.MockRegistryProcessor} 生成的 bean / 路由注册表。
+ * <p>
+ * 生成类存在时 MockDispatcherServlet.init 直接用它创建 bean、注入依赖、注册路由，
+ * 跳过类扫描和注解反射；不存在、在 scanPackage 下没有 bean 或路由、或与编译后的类不一致时退回扫描。
+ */
+public interface MockGeneratedRegistry {
+
+	String CLASS_NAME = "com.learn.mvcframework.generated.MockGeneratedRegistryImpl";
+
+	/**
+	 * 按依赖顺序创建 scanPackage 下的 bean、完成注入并放入 beansMap
+	 */
+	void registerBeans(String scanPackage, Map<String, Object> beansMap);
+
+	/**
+	 * 注册 scanPackage 下 controller 的全部 mapping
+	 */
+	void registerRoutes(String scanPackage, RouteCollector collector);
+
+	interface RouteCollector {
+		/**
+		 * @param url 已拼接并合并过 '/' 的完整 mapping
+		 * @param parameterTypeNames 参数类型的 {@link Class#getTypeName()}
+		 */
+		void route(String url, String beanName, String methodName, String... parameterTypeNames);
+	}
+
+	static boolean inPackage(String scanPackage, String packageName) {
+		return packageName.equals(scanPackage) || packageName.startsWith(scanPackage + ".");
+	}
+
+	/**
+	 * 生成代码访问不到类或构造方法时使用
+	 */
+	static Object newInstance(String className) {
+		try {
+			Constructor<?> constructor = Class.forName(className).getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not instantiate bean " + className, e);
+		}
+	}
+
+	/**
+	 * 生成代码访问不到带参数的构造方法时使用
+	 *
+	 * @param parameterTypeNames 参数类型的 {@link Class#getTypeName()}
+	 */
+	static Object newInstance(String className, String[] parameterTypeNames, Object... args) {
+		try {
+			for (Constructor<?> constructor : Class.forName(className).getDeclaredConstructors()) {
+				Class<?>[] parameterTypes = constructor.getParameterTypes();
+				if (parameterTypes.length != parameterTypeNames.length) {
+					continue;
+				}
+				boolean matched = true;
+				for (int i = 0; i < parameterTypes.length && matched; i++) {
+					matched = parameterTypes[i].getTypeName().equals(parameterTypeNames[i]);
+				}
+				if (matched) {
+					constructor.setAccessible(true);
+					return constructor.newInstance(args);
+				}
+			}
+			throw new IllegalStateException("Missing constructor " + className + Arrays.toString(parameterTypeNames)
+					+ ", rebuild the project");
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not instantiate bean " + className, e);
+		}
+	}
+
+	/**
+	 * 生成代码访问不到字段且没有 setter 时使用
+	 */
+	static void inject(Object bean, String declaringClassName, String fieldName, Object value) {
+		try {
+			Field field = Class.forName(declaringClassName).getDeclaredField(fieldName);
+			field.setAccessible(true);
+			field.set(bean, value);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not inject field " + declaringClassName + "." + fieldName, e);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Method;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.learn.mvcframework.annotation.MockInterceptor;
+
+/**
+ * handler 前后的横切逻辑（鉴权、租户解析、计时等）。
+ * <p>
+ * 标注 {@link MockInterceptor} 的实现类随扫描创建，也可以运行期调用
+ * {@link MockDispatcherServlet#registerInterceptor}。每个 handler 只持有匹配它的拦截器，请求时不再匹配路径。
+ * <p>
+ * 缓存命中和合并请求的 follower 同样经过 preHandle/afterCompletion，但不调用 handler，也就没有 postHandle。
+ * 批量请求中的每个子请求单独经过拦截器，批量请求本身和 metrics.path 不经过拦截器。
+ */
+public interface MockHandlerInterceptor {
+
+	/**
+	 * 准入之后、读缓存和调用 handler 之前，按 order 顺序调用
+	 *
+	 * @param handler 处理请求的 handler 方法
+	 * @return false 时中止请求，由拦截器自己写响应；之前通过的拦截器仍会收到 afterCompletion
+	 */
+	default boolean preHandle(HttpServletRequest req, HttpServletResponse resp, Method handler) throws Exception {
+		return true;
+	}
+
+	/**
+	 * handler 正常返回后、写返回值之前按倒序调用，此时还可以设置响应头。
+	 * 返回 CompletionStage 时在其完成后调用，result 是完成的值
+	 */
+	default void postHandle(HttpServletRequest req, HttpServletResponse resp, Method handler, Object result)
+			throws Exception {
+	}
+
+	/**
+	 * 响应写完后按倒序调用，只对 preHandle 返回 true 的拦截器调用。抛出的异常只记录，不影响其他拦截器
+	 *
+	 * @param ex handler、postHandle 或写响应时的异常，正常结束为 null
+	 */
+	default void afterCompletion(HttpServletRequest req, HttpServletResponse resp, Method handler, Throwable ex)
+			throws Exception {
+	}
+}
@@ -0,0 +1,26 @@
+package com.learn.mvcframework.v3.servlet;
+
+/**
+ * 携带 http 状态码的异常，由 dispatcher 直接转换成对应的响应。
+ * <p>
+ * 这类异常由客户端输入触发，不采集栈信息。
+ */
+public class MockResponseStatusException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+
+	public MockResponseStatusException(int status, String message) {
+		this(status, message, null);
+	}
+
+	public MockResponseStatusException(int status, String message, Throwable cause) {
+		super(message, cause, false, false);
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+}
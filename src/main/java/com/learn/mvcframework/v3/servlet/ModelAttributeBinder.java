@@ -0,0 +1,241 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.learn.mvcframework.annotation.MockModelAttribute;
+
+/**
+ * {@link MockModelAttribute} 的绑定器，每个目标类型启动时生成一次：
+ * setter / 字段编译成 MethodHandle，取值方式按属性类型选好，属性名放进无冲突的完美哈希表。
+ * 绑定时只遍历一次 {@code req.getParameterMap()}，每个参数名查一次位移表、一次 equals 定位到属性。
+ */
+final class ModelAttributeBinder {
+
+	private static final ClassValue<ModelAttributeBinder> BINDERS = new ClassValue<ModelAttributeBinder>() {
+		@Override
+		protected ModelAttributeBinder computeValue(Class<?> type) {
+			return build(type);
+		}
+	};
+
+	private static final int GOLDEN = 0x9e3779b9;
+
+	// 每个桶尝试的位移个数
+	private static final int MAX_DISPLACEMENT = 1 << 16;
+
+	final Class<?> type;
+	final MethodHandle constructor;
+	// 完美哈希表，空槽位为 null
+	final String[] names;
+	final Property[] properties;
+	// 每个桶的位移，桶 = (hashCode * 黄金比例) >>> bucketShift
+	final int[] displacements;
+	final int bucketShift;
+	final int mask;
+	// 属性名 hashCode 重复时无法完美哈希，退回普通 Map
+	final Map<String, Property> fallback;
+
+	private ModelAttributeBinder(Class<?> type, MethodHandle constructor, String[] names, Property[] properties,
+			int[] displacements, int bucketShift, Map<String, Property> fallback) {
+		this.type = type;
+		this.constructor = constructor;
+		this.names = names;
+		this.properties = properties;
+		this.displacements = displacements;
+		this.bucketShift = bucketShift;
+		this.mask = names == null ? 0 : names.length - 1;
+		this.fallback = fallback;
+	}
+
+	static ModelAttributeBinder of(Class<?> type) {
+		if (!RequestBodyReader.BindPlan.bindable(type)) {
+			throw new IllegalStateException("Can not bind request parameters to " + type.getName()
+					+ ", a public class with a public no-arg constructor is required");
+		}
+		return BINDERS.get(type);
+	}
+
+	private static ModelAttributeBinder build(Class<?> type) {
+		MethodHandle constructor = RequestBodyReader.BindPlan.constructor(type, "request parameters");
+		Map<String, Property> properties = RequestBodyReader.BindPlan.properties(type, (propertyType, setter) -> {
+			Class<?> raw = rawClass(propertyType);
+			HanderArgumentResolver.ValueReader reader = raw == null ? null
+					: HanderArgumentResolver.RequestParamResolver.reader(raw, propertyType);
+			return reader == null ? null
+					: new Property(setter, reader, raw != String.class && raw != Object.class && raw != CharSequence.class,
+							propertyType.getTypeName());
+		});
+		String[] keys = properties.keySet().toArray(new String[0]);
+		// 桶数约为名字数的一半，表大小不小于名字数的 2 倍
+		int bucketBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(keys.length / 2 - 1, 1)));
+		for (int tableBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(keys.length * 2 - 1, 1))),
+				maxBits = tableBits + 2; tableBits <= maxBits; tableBits++) {
+			int mask = (1 << tableBits) - 1;
+			int[] displacements = displacements(keys, bucketBits, mask);
+			if (displacements == null) {
+				continue;
+			}
+			String[] names = new String[mask + 1];
+			Property[] table = new Property[mask + 1];
+			for (String key : keys) {
+				int hash = key.hashCode();
+				int slot = slot(hash, displacements[(hash * GOLDEN) >>> (32 - bucketBits)], mask);
+				names[slot] = key;
+				table[slot] = properties.get(key);
+			}
+			return new ModelAttributeBinder(type, constructor, names, table, displacements, 32 - bucketBits, null);
+		}
+		return new ModelAttributeBinder(type, constructor, null, null, null, 0, properties);
+	}
+
+	/**
+	 * hash-and-displace：名字先按 hashCode 分桶，从大桶开始为每个桶找一个位移，
+	 * 使桶内名字经 {@link #slot} 落到互不相同且未被占用的槽位
+	 *
+	 * @return 每个桶的位移，hashCode 有重复或找不到时返回 null
+	 */
+	static int[] displacements(String[] keys, int bucketBits, int mask) {
+		int bucketCount = 1 << bucketBits;
+		List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+		for (int i = 0; i < bucketCount; i++) {
+			buckets.add(new ArrayList<>());
+		}
+		for (String key : keys) {
+			int hash = key.hashCode();
+			List<Integer> bucket = buckets.get((hash * GOLDEN) >>> (32 - bucketBits));
+			if (bucket.contains(hash)) {
+				return null;
+			}
+			bucket.add(hash);
+		}
+		Integer[] order = new Integer[bucketCount];
+		for (int i = 0; i < bucketCount; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+		boolean[] taken = new boolean[mask + 1];
+		int[] displacements = new int[bucketCount];
+		int[] slots = new int[keys.length];
+		for (int b : order) {
+			List<Integer> bucket = buckets.get(b);
+			if (bucket.isEmpty()) {
+				break;
+			}
+			int displacement = 0;
+			for (; displacement < MAX_DISPLACEMENT; displacement++) {
+				int placed = 0;
+				for (int hash : bucket) {
+					int slot = slot(hash, displacement, mask);
+					if (taken[slot]) {
+						break;
+					}
+					taken[slot] = true;
+					slots[placed++] = slot;
+				}
+				if (placed == bucket.size()) {
+					break;
+				}
+				// 冲突，撤销本轮占用
+				for (int i = 0; i < placed; i++) {
+					taken[slots[i]] = false;
+				}
+			}
+			if (displacement == MAX_DISPLACEMENT) {
+				return null;
+			}
+			displacements[b] = displacement;
+		}
+		return displacements;
+	}
+
+	static int slot(int hash, int displacement, int mask) {
+		// murmur3 fmix32
+		int h = hash ^ (displacement * GOLDEN);
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	Property find(String name) {
+		if (fallback != null) {
+			return fallback.get(name);
+		}
+		int hash = name.hashCode();
+		int slot = slot(hash, displacements[(hash * GOLDEN) >>> bucketShift], mask);
+		String candidate = names[slot];
+		return candidate != null && candidate.equals(name) ? properties[slot] : null;
+	}
+
+	Object bind(Map<String, String[]> parameters) {
+		Object bean;
+		try {
+			bean = constructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Can not instantiate " + type.getName(), t);
+		}
+		for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+			Property property = find(entry.getKey());
+			String[] values = entry.getValue();
+			if (property == null || values == null || values.length == 0
+					|| (property.emptyIsMissing && values.length == 1 && values[0].isEmpty())) {
+				continue;
+			}
+			Object value;
+			try {
+				value = property.reader.read(values);
+			} catch (RuntimeException e) {
+				// 异常信息含有客户端的原始值，只保留在 cause 中
+				throw new MockResponseStatusException(400,
+						"Failed to convert parameter '" + entry.getKey() + "' to " + property.typeName, e);
+			}
+			property.set(bean, value);
+		}
+		return bean;
+	}
+
+	private static Class<?> rawClass(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		}
+		if (type instanceof ParameterizedType) {
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		}
+		return null;
+	}
+
+	static final class Property {
+		final MethodHandle setter;
+		final HanderArgumentResolver.ValueReader reader;
+		// 非字符串类型的单个空值按缺失处理，保留默认值
+		final boolean emptyIsMissing;
+		// 只用于错误信息
+		final String typeName;
+
+		Property(MethodHandle setter, HanderArgumentResolver.ValueReader reader, boolean emptyIsMissing, String typeName) {
+			this.setter = setter;
+			this.reader = reader;
+			this.emptyIsMissing = emptyIsMissing;
+			this.typeName = typeName;
+		}
+
+		void set(Object bean, Object value) {
+			try {
+				setter.invokeExact(bean, value);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("Can not set property of " + bean.getClass().getName(), t);
+			}
+		}
+	}
+}
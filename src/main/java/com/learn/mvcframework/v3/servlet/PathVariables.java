@@ -0,0 +1,60 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 模板路由命中时捕获的路径变量，只记录每个变量在 path 中的起止位置，取值时才截取字符串。
+ * 变量顺序与 url 模板中出现的顺序一致，存放在请求属性 {@link #ATTRIBUTE} 中。
+ */
+final class PathVariables {
+
+	static final String ATTRIBUTE = PathVariables.class.getName();
+
+	final String path;
+	// [start0, end0, start1, end1, ...]
+	final int[] offsets;
+
+	PathVariables(String path, int[] offsets) {
+		this.path = path;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * @return 第 index 个变量 percent-decode 后的值
+	 */
+	String get(int index) {
+		String value = path.substring(offsets[2 * index], offsets[2 * index + 1]);
+		return value.indexOf('%') < 0 ? value : decode(value);
+	}
+
+	/**
+	 * 按 UTF-8 解码 %XX，与 URLDecoder 不同，'+' 不转成空格
+	 */
+	static String decode(String value) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(value.length());
+		int i = 0;
+		while (i < value.length()) {
+			char c = value.charAt(i);
+			if (c == '%') {
+				int hi = i + 2 < value.length() ? Character.digit(value.charAt(i + 1), 16) : -1;
+				int lo = i + 2 < value.length() ? Character.digit(value.charAt(i + 2), 16) : -1;
+				if (hi < 0 || lo < 0) {
+					throw new IllegalArgumentException("Invalid escape in path segment '" + value + "'");
+				}
+				out.write((hi << 4) | lo);
+				i += 3;
+			} else {
+				// 未编码的字符原样转成 UTF-8
+				int end = value.indexOf('%', i);
+				if (end < 0) {
+					end = value.length();
+				}
+				byte[] bytes = value.substring(i, end).getBytes(StandardCharsets.UTF_8);
+				out.write(bytes, 0, bytes.length);
+				i = end;
+			}
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
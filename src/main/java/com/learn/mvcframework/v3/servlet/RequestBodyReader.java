@@ -0,0 +1,1126 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.BiFunction;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * {@code @MockRequestBody} 的请求体读取：用池化的 byte[] 直接从 ServletInputStream 读取，
+ * 边解析边绑定到目标类型，不生成整个请求体的 String。
+ * <p>
+ * 每个参数类型启动时编译成 {@link Binder}；bean 类型第一次出现时生成绑定计划：
+ * public setter / public 非 final 字段编译成 MethodHandle，请求时按属性名查表赋值。
+ */
+final class RequestBodyReader {
+
+	static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+	/**
+	 * 未配置时使用，如 benchmark 中直接创建的 HanderMethod
+	 */
+	static final RequestBodyReader DEFAULT = new RequestBodyReader(1024 * 1024, 8 * 1024, 16);
+
+	private static final int MAX_DEPTH = 64;
+
+	private static final ClassValue<BindPlan> PLANS = new ClassValue<BindPlan>() {
+		@Override
+		protected BindPlan computeValue(Class<?> type) {
+			return BindPlan.of(type);
+		}
+	};
+
+	// 目标类型为 Object 时 JSON 对象的绑定方式
+	private static final MapBinder MAP_OF_OBJECTS = new MapBinder(GenericBinder.INSTANCE);
+
+	final int maxBytes;
+	private final int bufferSize;
+	private final ArrayBlockingQueue<byte[]> pool;
+
+	RequestBodyReader(int maxBytes, int bufferSize, int poolSize) {
+		this.maxBytes = Math.max(maxBytes, 0);
+		this.bufferSize = Math.max(bufferSize, 512);
+		this.pool = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+	}
+
+	/**
+	 * @param required 请求体为空时是否返回 400
+	 */
+	Object read(HttpServletRequest req, Binder binder, boolean required) throws IOException {
+		long contentLength = req.getContentLengthLong();
+		if (contentLength > maxBytes) {
+			throw tooLarge();
+		}
+		String contentType = req.getContentType();
+		boolean form = isForm(contentType);
+		if (!form && !isJson(contentType)) {
+			throw new MockResponseStatusException(415,
+					"Unsupported request body type, expected application/json or application/x-www-form-urlencoded");
+		}
+		Input in = new Input(req.getInputStream(), borrow(), maxBytes);
+		try {
+			if (in.peek() < 0) {
+				if (required) {
+					throw new MockResponseStatusException(400, "Required request body is missing");
+				}
+				return null;
+			}
+			if (form) {
+				String encoding = req.getCharacterEncoding();
+				return binder.form(new FormParser(in,
+						encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding)));
+			}
+			JsonParser parser = new JsonParser(in);
+			Object value = binder.json(parser, 0);
+			if (parser.skipWhitespace() >= 0) {
+				throw parser.malformed("unexpected content after the value");
+			}
+			return value;
+		} catch (MockResponseStatusException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			// 类型转换失败，异常信息含有客户端的原始值，只保留在 cause 中
+			throw new MockResponseStatusException(400, "Failed to bind request body to " + binder.describe(), e);
+		} finally {
+			release(in.buf);
+		}
+	}
+
+	private MockResponseStatusException tooLarge() {
+		return new MockResponseStatusException(413, "Request body exceeds " + maxBytes + " bytes");
+	}
+
+	private static boolean isForm(String contentType) {
+		return contentType != null && contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, FORM_CONTENT_TYPE.length());
+	}
+
+	/**
+	 * 未声明类型、application/json、application/*+json
+	 */
+	private static boolean isJson(String contentType) {
+		if (contentType == null || contentType.isEmpty()) {
+			return true;
+		}
+		int end = contentType.indexOf(';');
+		String mime = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase();
+		return mime.equals("application/json") || (mime.startsWith("application/") && mime.endsWith("+json"));
+	}
+
+	private byte[] borrow() {
+		byte[] buf = pool.poll();
+		return buf != null ? buf : new byte[bufferSize];
+	}
+
+	private void release(byte[] buf) {
+		pool.offer(buf);
+	}
+
+	/**
+	 * @return 不支持的类型返回 null
+	 */
+	static Binder binder(Type type) {
+		Class<?> raw = rawClass(type);
+		if (raw == null) {
+			return null;
+		}
+		if (raw == Object.class) {
+			return GenericBinder.INSTANCE;
+		}
+		if (raw.isArray()) {
+			Binder element = binder(raw.getComponentType());
+			return element == null ? null : new ArrayBinder(raw.getComponentType(), element);
+		}
+		if (raw == List.class || raw == Collection.class || raw == Set.class || raw == ArrayList.class
+				|| raw == LinkedHashSet.class) {
+			Binder element = binder(typeArgument(type, 0));
+			return element == null ? null : new CollectionBinder(element, Set.class.isAssignableFrom(raw));
+		}
+		if (raw == Map.class || raw == LinkedHashMap.class || raw == HashMap.class) {
+			Class<?> keyType = rawClass(typeArgument(type, 0));
+			Binder value = binder(typeArgument(type, 1));
+			if (value == null || (keyType != String.class && keyType != Object.class && keyType != CharSequence.class)) {
+				return null;
+			}
+			return new MapBinder(value);
+		}
+		TypeConverters.Converter converter = TypeConverters.find(raw);
+		if (converter != null) {
+			return new ScalarBinder(raw, converter);
+		}
+		return BindPlan.bindable(raw) ? new BeanBinder(raw) : null;
+	}
+
+	private static Type typeArgument(Type type, int index) {
+		if (type instanceof ParameterizedType) {
+			return ((ParameterizedType) type).getActualTypeArguments()[index];
+		}
+		return Object.class;
+	}
+
+	private static Class<?> rawClass(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		}
+		if (type instanceof ParameterizedType) {
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		}
+		if (type instanceof WildcardType) {
+			return rawClass(((WildcardType) type).getUpperBounds()[0]);
+		}
+		return null;
+	}
+
+	/**
+	 * 一个目标类型的绑定方式
+	 */
+	abstract static class Binder {
+
+		/**
+		 * 从当前位置读取一个 JSON 值
+		 */
+		abstract Object json(JsonParser p, int depth) throws IOException;
+
+		/**
+		 * 整个表单绑定成一个对象，只有 bean 和 Map 支持
+		 */
+		Object form(FormParser p) throws IOException {
+			throw new MockResponseStatusException(415, "Form body can not be bound to " + describe());
+		}
+
+		/**
+		 * 表单字段的单个值，只有标量支持
+		 */
+		boolean formScalar() {
+			return false;
+		}
+
+		Object formValue(String value) {
+			throw new UnsupportedOperationException();
+		}
+
+		abstract String describe();
+	}
+
+	/**
+	 * 目标类型为 Object：按 JSON 本身的类型生成 Map / List / String / Long / Double / Boolean
+	 */
+	static final class GenericBinder extends Binder {
+		static final GenericBinder INSTANCE = new GenericBinder();
+
+		@Override
+		Object json(JsonParser p, int depth) throws IOException {
+			return p.natural(depth);
+		}
+
+		@Override
+		boolean formScalar() {
+			return true;
+		}
+
+		@Override
+		Object formValue(String value) {
+			return value;
+		}
+
+		@Override
+		String describe() {
+			return "Object";
+		}
+	}
+
+	/**
+	 * String、数字、枚举、java.time 等，复用 {@link TypeConverters}
+	 */
+	static final class ScalarBinder extends Binder {
+		final Class<?> type;
+		final TypeConverters.Converter converter;
+		final boolean text;
+
+		ScalarBinder(Class<?> type, TypeConverters.Converter converter) {
+			this.type = type;
+			this.converter = converter;
+			this.text = type == String.class || type == CharSequence.class;
+		}
+
+		@Override
+		Object json(JsonParser p, int depth) throws IOException {
+			int c = p.skipWhitespace();
+			String value;
+			if (c == '"') {
+				value = p.string();
+				if (value.isEmpty() && !text) {
+					return missing(p);
+				}
+			} else if (c == 'n') {
+				p.literal("null");
+				return missing(p);
+			} else if (c == 't' || c == 'f') {
+				value = p.literal(c == 't' ? "true" : "false");
+			} else if (c == '-' || (c >= '0' && c <= '9')) {
+				value = p.numberText();
+			} else {
+				throw p.malformed("expected " + describe());
+			}
+			return converter.convert(value);
+		}
+
+		private Object missing(JsonParser p) {
+			if (type.isPrimitive()) {
+				throw p.malformed("null for " + describe());
+			}
+			return null;
+		}
+
+		@Override
+		boolean formScalar() {
+			return true;
+		}
+
+		@Override
+		Object formValue(String value) {
+			if (value.isEmpty() && !text) {
+				if (type.isPrimitive()) {
+					throw new IllegalArgumentException("empty value for " + describe());
+				}
+				return null;
+			}
+			return converter.convert(value);
+		}
+
+		@Override
+		String describe() {
+			return type.getSimpleName();
+		}
+	}
+
+	static final class CollectionBinder extends Binder {
+		final Binder element;
+		final boolean set;
+
+		CollectionBinder(Binder element, boolean set) {
+			this.element = element;
+			this.set = set;
+		}
+
+		@Override
+		Object json(JsonParser p, int depth) throws IOException {
+			if (p.nullLiteral()) {
+				return null;
+			}
+			Collection<Object> values = set ? new LinkedHashSet<>() : new ArrayList<>();
+			p.readArray(element, values, depth);
+			return values;
+		}
+
+		Object formValues(List<String> values) {
+			Collection<Object> collection = set ? new LinkedHashSet<>(values.size() * 2) : new ArrayList<>(values.size());
+			for (String value : values) {
+				collection.add(element.formValue(value));
+			}
+			return collection;
+		}
+
+		@Override
+		String describe() {
+			return (set ? "Set<" : "List<") + element.describe() + ">";
+		}
+	}
+
+	static final class ArrayBinder extends Binder {
+		final Class<?> componentType;
+		final Binder element;
+
+		ArrayBinder(Class<?> componentType, Binder element) {
+			this.componentType = componentType;
+			this.element = element;
+		}
+
+		@Override
+		Object json(JsonParser p, int depth) throws IOException {
+			if (p.nullLiteral()) {
+				return null;
+			}
+			List<Object> values = new ArrayList<>();
+			p.readArray(element, values, depth);
+			return toArray(values);
+		}
+
+		Object formValues(List<String> values) {
+			List<Object> converted = new ArrayList<>(values.size());
+			for (String value : values) {
+				converted.add(element.formValue(value));
+			}
+			return toArray(converted);
+		}
+
+		private Object toArray(List<Object> values) {
+			Object array = Array.newInstance(componentType, values.size());
+			for (int i = 0; i < values.size(); i++) {
+				Array.set(array, i, values.get(i));
+			}
+			return array;
+		}
+
+		@Override
+		String describe() {
+			return element.describe() + "[]";
+		}
+	}
+
+	/**
+	 * 只支持 String key
+	 */
+	static final class MapBinder extends Binder {
+		final Binder value;
+
+		MapBinder(Binder value) {
+			this.value = value;
+		}
+
+		@Override
+		Object json(JsonParser p, int depth) throws IOException {
+			if (p.nullLiteral()) {
+				return null;
+			}
+			Map<String, Object> map = new LinkedHashMap<>();
+			if (p.beginObject(depth)) {
+				do {
+					String key = p.name();
+					map.put(key, value.json(p, depth + 1));
+				} while (p.nextMember());
+			}
+			return map;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		Object form(FormParser p) throws IOException {
+			Map<String, Object> map = new LinkedHashMap<>();
+			while (p.next()) {
+				if (value.formScalar()) {
+					map.put(p.name, value.formValue(p.value));
+				} else if (value instanceof CollectionBinder && ((CollectionBinder) value).element.formScalar()) {
+					Collection<Object> values = (Collection<Object>) map.get(p.name);
+					if (values == null) {
+						values = ((CollectionBinder) value).set ? new LinkedHashSet<>() : new ArrayList<>();
+						map.put(p.name, values);
+					}
+					values.add(((CollectionBinder) value).element.formValue(p.value));
+				} else {
+					throw new MockResponseStatusException(415, "Form body can not be bound to " + describe());
+				}
+			}
+			return map;
+		}
+
+		@Override
+		String describe() {
+			return "Map<String, " + value.describe() + ">";
+		}
+	}
+
+	/**
+	 * 绑定计划在第一次使用时生成，避免自引用类型在启动时无限展开
+	 */
+	static final class BeanBinder extends Binder {
+		final Class<?> type;
+
+		BeanBinder(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		Object json(JsonParser p, int depth) throws IOException {
+			if (p.nullLiteral()) {
+				return null;
+			}
+			BindPlan plan = PLANS.get(type);
+			Object bean = plan.newInstance();
+			if (p.beginObject(depth)) {
+				do {
+					BindProperty property = plan.properties.get(p.name());
+					if (property == null) {
+						p.skip(depth + 1);
+					} else {
+						property.set(bean, property.binder.json(p, depth + 1));
+					}
+				} while (p.nextMember());
+			}
+			return bean;
+		}
+
+		@Override
+		Object form(FormParser p) throws IOException {
+			BindPlan plan = PLANS.get(type);
+			Object bean = plan.newInstance();
+			// 重复字段先收集，最后一次性赋值
+			Map<BindProperty, List<String>> multiValues = null;
+			while (p.next()) {
+				BindProperty property = plan.properties.get(p.name);
+				if (property == null) {
+					continue;
+				}
+				Binder binder = property.binder;
+				if (binder.formScalar()) {
+					property.set(bean, binder.formValue(p.value));
+				} else if ((binder instanceof CollectionBinder && ((CollectionBinder) binder).element.formScalar())
+						|| (binder instanceof ArrayBinder && ((ArrayBinder) binder).element.formScalar())) {
+					if (multiValues == null) {
+						multiValues = new IdentityHashMap<>();
+					}
+					multiValues.computeIfAbsent(property, k -> new ArrayList<>()).add(p.value);
+				}
+			}
+			if (multiValues != null) {
+				for (Map.Entry<BindProperty, List<String>> entry : multiValues.entrySet()) {
+					Binder binder = entry.getKey().binder;
+					entry.getKey().set(bean, binder instanceof CollectionBinder
+							? ((CollectionBinder) binder).formValues(entry.getValue())
+							: ((ArrayBinder) binder).formValues(entry.getValue()));
+				}
+			}
+			return bean;
+		}
+
+		@Override
+		String describe() {
+			return type.getSimpleName();
+		}
+	}
+
+	/**
+	 * 一个 bean 类型的绑定计划
+	 */
+	static final class BindPlan {
+		final MethodHandle constructor;
+		final Map<String, BindProperty> properties;
+
+		BindPlan(MethodHandle constructor, Map<String, BindProperty> properties) {
+			this.constructor = constructor;
+			this.properties = properties;
+		}
+
+		/**
+		 * public 类，有 public 无参构造方法，且不是 JDK 类型
+		 */
+		static boolean bindable(Class<?> type) {
+			if (type.isPrimitive() || type.isInterface() || type.isEnum() || Modifier.isAbstract(type.getModifiers())
+					|| !Modifier.isPublic(type.getModifiers()) || type.getName().startsWith("java.")
+					|| type.getName().startsWith("javax.")) {
+				return false;
+			}
+			try {
+				type.getConstructor();
+				return true;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+
+		static BindPlan of(Class<?> type) {
+			MethodHandle constructor = constructor(type, "request body");
+			Map<String, BindProperty> properties = properties(type, (propertyType, setter) -> {
+				Binder binder = binder(propertyType);
+				return binder == null ? null : new BindProperty(setter, binder);
+			});
+			return new BindPlan(constructor, properties);
+		}
+
+		/**
+		 * @return () -> Object 形式的无参构造方法
+		 */
+		static MethodHandle constructor(Class<?> type, String purpose) {
+			try {
+				return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+						.asType(MethodType.methodType(Object.class));
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Can not bind " + purpose + " to " + type.getName()
+						+ ", a public no-arg constructor is required", e);
+			}
+		}
+
+		/**
+		 * 收集 public setter 和 public 非 final 字段，setter 优先于同名字段
+		 *
+		 * @param factory (属性类型, (Object,Object)void 形式的 setter) -> 属性，返回 null 表示跳过
+		 */
+		static <P> Map<String, P> properties(Class<?> type, BiFunction<Type, MethodHandle, P> factory) {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			MethodType setterType = MethodType.methodType(void.class, Object.class, Object.class);
+			Map<String, P> properties = new HashMap<>();
+			for (Field field : type.getFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+					continue;
+				}
+				try {
+					P property = factory.apply(field.getGenericType(), lookup.unreflectSetter(field).asType(setterType));
+					if (property != null) {
+						properties.put(field.getName(), property);
+					}
+				} catch (IllegalAccessException e) {
+					// 不可访问的字段跳过
+				}
+			}
+			for (Method method : type.getMethods()) {
+				String name = propertyName(method);
+				if (name == null) {
+					continue;
+				}
+				try {
+					// 返回值（链式 setter）直接丢弃
+					P property = factory.apply(method.getGenericParameterTypes()[0],
+							lookup.unreflect(method).asType(setterType));
+					if (property != null) {
+						properties.put(name, property);
+					}
+				} catch (IllegalAccessException e) {
+					// 非 public 类上的 setter
+				}
+			}
+			return properties;
+		}
+
+		private static String propertyName(Method method) {
+			String name = method.getName();
+			if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 1 || name.length() <= 3
+					|| !name.startsWith("set")) {
+				return null;
+			}
+			if (name.length() > 4 && Character.isUpperCase(name.charAt(4))) {
+				// setURL -> URL
+				return name.substring(3);
+			}
+			return Character.toLowerCase(name.charAt(3)) + name.substring(4);
+		}
+
+		Object newInstance() {
+			try {
+				return constructor.invokeExact();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("Can not instantiate " + constructor.type(), t);
+			}
+		}
+	}
+
+	static final class BindProperty {
+		final MethodHandle setter;
+		final Binder binder;
+
+		BindProperty(MethodHandle setter, Binder binder) {
+			this.setter = setter;
+			this.binder = binder;
+		}
+
+		void set(Object bean, Object value) {
+			try {
+				setter.invokeExact(bean, value);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException("Can not set property of " + bean.getClass().getName(), t);
+			}
+		}
+	}
+
+	/**
+	 * 池化缓冲区上的输入流，累计读取超过上限时返回 413
+	 */
+	final class Input {
+		final InputStream in;
+		final byte[] buf;
+		final int max;
+		int pos;
+		int limit;
+		long consumed;
+
+		Input(InputStream in, byte[] buf, int max) {
+			this.in = in;
+			this.buf = buf;
+			this.max = max;
+		}
+
+		int peek() throws IOException {
+			if (pos == limit && !fill()) {
+				return -1;
+			}
+			return buf[pos] & 0xff;
+		}
+
+		int read() throws IOException {
+			if (pos == limit && !fill()) {
+				return -1;
+			}
+			return buf[pos++] & 0xff;
+		}
+
+		private boolean fill() throws IOException {
+			int n;
+			do {
+				n = in.read(buf, 0, buf.length);
+			} while (n == 0);
+			if (n < 0) {
+				return false;
+			}
+			consumed += n;
+			if (consumed > max) {
+				throw tooLarge();
+			}
+			pos = 0;
+			limit = n;
+			return true;
+		}
+
+		long position() {
+			return consumed - (limit - pos);
+		}
+	}
+
+	/**
+	 * 流式 JSON 解析，字符串直接从 UTF-8 字节解码到复用的 StringBuilder
+	 */
+	static final class JsonParser {
+		final Input in;
+		final StringBuilder chars = new StringBuilder(64);
+
+		JsonParser(Input in) {
+			this.in = in;
+		}
+
+		MockResponseStatusException malformed(String message) {
+			return new MockResponseStatusException(400,
+					"Malformed JSON body at byte " + in.position() + ": " + message);
+		}
+
+		/**
+		 * @return 下一个非空白字节，不消费；结束时返回 -1
+		 */
+		int skipWhitespace() throws IOException {
+			int c;
+			while ((c = in.peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				in.pos++;
+			}
+			return c;
+		}
+
+		/**
+		 * 消费并返回下一个非空白字节，结束时返回 -1
+		 */
+		private int consume() throws IOException {
+			int c = skipWhitespace();
+			if (c >= 0) {
+				in.pos++;
+			}
+			return c;
+		}
+
+		private void expect(int expected) throws IOException {
+			if (skipWhitespace() != expected) {
+				throw malformed("expected '" + (char) expected + "'");
+			}
+			in.pos++;
+		}
+
+		String literal(String word) throws IOException {
+			for (int i = 0; i < word.length(); i++) {
+				if (in.read() != word.charAt(i)) {
+					throw malformed("expected " + word);
+				}
+			}
+			return word;
+		}
+
+		/**
+		 * 下一个值是 null 时消费掉并返回 true
+		 */
+		boolean nullLiteral() throws IOException {
+			if (skipWhitespace() == 'n') {
+				literal("null");
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * 消费 '{'
+		 *
+		 * @return 对象非空时返回 true，此时接着读取成员名
+		 */
+		boolean beginObject(int depth) throws IOException {
+			if (depth >= MAX_DEPTH) {
+				throw malformed("nesting deeper than " + MAX_DEPTH);
+			}
+			expect('{');
+			if (skipWhitespace() == '}') {
+				in.pos++;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * 读取成员名和 ':'
+		 */
+		String name() throws IOException {
+			if (skipWhitespace() != '"') {
+				throw malformed("expected member name");
+			}
+			String name = string();
+			expect(':');
+			return name;
+		}
+
+		/**
+		 * @return 遇到 ',' 返回 true，遇到 '}' 返回 false
+		 */
+		boolean nextMember() throws IOException {
+			int c = consume();
+			if (c == ',') {
+				return true;
+			}
+			if (c == '}') {
+				return false;
+			}
+			throw malformed(c < 0 ? "unexpected end of body" : "expected ',' or '}'");
+		}
+
+		void readArray(Binder element, Collection<Object> values, int depth) throws IOException {
+			if (depth >= MAX_DEPTH) {
+				throw malformed("nesting deeper than " + MAX_DEPTH);
+			}
+			expect('[');
+			if (skipWhitespace() == ']') {
+				in.pos++;
+				return;
+			}
+			while (true) {
+				values.add(element.json(this, depth + 1));
+				int c = consume();
+				if (c == ']') {
+					return;
+				}
+				if (c != ',') {
+					throw malformed(c < 0 ? "unexpected end of body" : "expected ',' or ']'");
+				}
+			}
+		}
+
+		Object natural(int depth) throws IOException {
+			int c = skipWhitespace();
+			switch (c) {
+			case '{':
+				return MAP_OF_OBJECTS.json(this, depth);
+			case '[':
+				List<Object> values = new ArrayList<>();
+				readArray(GenericBinder.INSTANCE, values, depth);
+				return values;
+			case '"':
+				return string();
+			case 't':
+				literal("true");
+				return Boolean.TRUE;
+			case 'f':
+				literal("false");
+				return Boolean.FALSE;
+			case 'n':
+				literal("null");
+				return null;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					return number(numberText());
+				}
+				throw malformed(c < 0 ? "unexpected end of body" : "unexpected character '" + (char) c + "'");
+			}
+		}
+
+		private static Object number(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				char ch = text.charAt(i);
+				if (ch == '.' || ch == 'e' || ch == 'E') {
+					return Double.parseDouble(text);
+				}
+			}
+			return text.length() < 19 ? (Object) Long.parseLong(text) : longOrBig(text);
+		}
+
+		private static Object longOrBig(String text) {
+			BigInteger value = new BigInteger(text);
+			return value.bitLength() < 64 ? (Object) value.longValue() : value;
+		}
+
+		/**
+		 * 跳过一个不需要的值，不生成对象
+		 */
+		void skip(int depth) throws IOException {
+			if (depth >= MAX_DEPTH) {
+				throw malformed("nesting deeper than " + MAX_DEPTH);
+			}
+			int c = skipWhitespace();
+			if (c == '{') {
+				if (beginObject(depth)) {
+					do {
+						skipString();
+						expect(':');
+						skip(depth + 1);
+					} while (nextMember());
+				}
+			} else if (c == '[') {
+				in.pos++;
+				if (skipWhitespace() == ']') {
+					in.pos++;
+					return;
+				}
+				do {
+					skip(depth + 1);
+					c = consume();
+				} while (c == ',');
+				if (c != ']') {
+					throw malformed("expected ',' or ']'");
+				}
+			} else if (c == '"') {
+				skipString();
+			} else {
+				natural(depth);
+			}
+		}
+
+		private void skipString() throws IOException {
+			expect('"');
+			int c;
+			while ((c = in.read()) != '"') {
+				if (c < 0) {
+					throw malformed("unterminated string");
+				}
+				if (c == '\\') {
+					in.read();
+				}
+			}
+		}
+
+		String numberText() throws IOException {
+			chars.setLength(0);
+			int c;
+			while ((c = in.peek()) >= 0 && ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e'
+					|| c == 'E')) {
+				chars.append((char) c);
+				in.pos++;
+			}
+			return chars.toString();
+		}
+
+		/**
+		 * 当前位置为 '"'
+		 */
+		String string() throws IOException {
+			expect('"');
+			StringBuilder sb = chars;
+			sb.setLength(0);
+			while (true) {
+				// ASCII 快速路径，直接扫描缓冲区
+				byte[] buf = in.buf;
+				int pos = in.pos;
+				int limit = in.limit;
+				while (pos < limit) {
+					byte b = buf[pos];
+					if (b == '"') {
+						in.pos = pos + 1;
+						return sb.toString();
+					}
+					if (b == '\\' || b < 0x20) {
+						break;
+					}
+					sb.append((char) b);
+					pos++;
+				}
+				in.pos = pos;
+				int c = in.read();
+				if (c < 0) {
+					throw malformed("unterminated string");
+				} else if (c == '"') {
+					return sb.toString();
+				} else if (c == '\\') {
+					escape(sb);
+				} else if (c >= 0x80) {
+					utf8(c, sb);
+				} else if (c < 0x20) {
+					throw malformed("control character in string");
+				} else {
+					sb.append((char) c);
+				}
+			}
+		}
+
+		private void escape(StringBuilder sb) throws IOException {
+			int c = in.read();
+			switch (c) {
+			case '"':
+			case '\\':
+			case '/':
+				sb.append((char) c);
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(in.read(), 16);
+					if (digit < 0) {
+						throw malformed("invalid \\u escape");
+					}
+					value = (value << 4) | digit;
+				}
+				// 代理对按两个 char 原样追加
+				sb.append((char) value);
+				break;
+			default:
+				throw malformed("invalid escape");
+			}
+		}
+
+		private void utf8(int first, StringBuilder sb) throws IOException {
+			int count;
+			int codePoint;
+			int min;
+			if ((first & 0xe0) == 0xc0) {
+				count = 1;
+				codePoint = first & 0x1f;
+				min = 0x80;
+			} else if ((first & 0xf0) == 0xe0) {
+				count = 2;
+				codePoint = first & 0x0f;
+				min = 0x800;
+			} else if ((first & 0xf8) == 0xf0) {
+				count = 3;
+				codePoint = first & 0x07;
+				min = 0x10000;
+			} else {
+				throw malformed("invalid UTF-8");
+			}
+			for (int i = 0; i < count; i++) {
+				int c = in.read();
+				if ((c & 0xc0) != 0x80) {
+					throw malformed("invalid UTF-8");
+				}
+				codePoint = (codePoint << 6) | (c & 0x3f);
+			}
+			if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+					|| (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+				throw malformed("invalid UTF-8");
+			}
+			sb.appendCodePoint(codePoint);
+		}
+	}
+
+	/**
+	 * application/x-www-form-urlencoded，逐个字段解码
+	 */
+	static final class FormParser {
+		final Input in;
+		final Charset charset;
+		byte[] scratch = new byte[128];
+		String name;
+		String value;
+
+		FormParser(Input in, Charset charset) {
+			this.in = in;
+			this.charset = charset;
+		}
+
+		/**
+		 * 读取下一个字段到 {@link #name} / {@link #value}
+		 *
+		 * @return 没有更多字段时返回 false
+		 */
+		boolean next() throws IOException {
+			while (true) {
+				int c = in.peek();
+				if (c < 0) {
+					return false;
+				}
+				if (c == '&') {
+					// 空字段
+					in.pos++;
+					continue;
+				}
+				name = decode(true);
+				if (in.peek() == '=') {
+					in.pos++;
+					value = decode(false);
+				} else {
+					value = "";
+				}
+				if (in.peek() == '&') {
+					in.pos++;
+				}
+				return true;
+			}
+		}
+
+		/**
+		 * 解码到 '&'（字段名还会在 '=' 处停止）或结尾
+		 */
+		private String decode(boolean name) throws IOException {
+			int length = 0;
+			int c;
+			while ((c = in.peek()) >= 0 && c != '&' && (!name || c != '=')) {
+				in.pos++;
+				if (c == '+') {
+					c = ' ';
+				} else if (c == '%') {
+					int hi = Character.digit(in.read(), 16);
+					int lo = Character.digit(in.read(), 16);
+					if (hi < 0 || lo < 0) {
+						throw new MockResponseStatusException(400,
+								"Malformed form body at byte " + in.position() + ": invalid escape");
+					}
+					c = (hi << 4) | lo;
+				}
+				if (length == scratch.length) {
+					scratch = Arrays.copyOf(scratch, length * 2);
+				}
+				scratch[length++] = (byte) c;
+			}
+			return new String(scratch, 0, length, charset);
+		}
+	}
+}
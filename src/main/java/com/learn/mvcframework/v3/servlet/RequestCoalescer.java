@@ -0,0 +1,132 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.learn.mvcframework.annotation.MockRequestMapping;
+
+/**
+ * {@link MockRequestMapping#coalesce()} handler 的请求合并，每个 handler 一个实例。
+ * <p>
+ * 相同 URI 和参数的 GET 请求同时到达时，第一个请求（leader）调用 handler 并把编码后的响应体放进 future，
+ * 其余请求（follower）最多等待 maxWait，拿到后直接写出，不再调用 handler。
+ * <p>
+ * 进行中的请求放在 ConcurrentHashMap 中，leader 结束时移除，之后到达的请求重新调用 handler。
+ * 等待超时、响应过大、返回 CompletionStage 或 handler 自己写响应时 follower 各自调用 handler。
+ * 只共享状态码 200 的响应体和 Content-Type，handler 设置了其他状态码时 follower 各自调用 handler，
+ * handler 设置的其他响应头不会复制给 follower。
+ */
+final class RequestCoalescer {
+
+	private static final String[] ALL_PARAMS = new String[0];
+
+	/**
+	 * leader 的结果，error 不为 null 时 follower 按同样的异常输出
+	 */
+	static final class Shared {
+		final String contentType;
+		final byte[] body;
+		final Exception error;
+
+		Shared(String contentType, byte[] body, Exception error) {
+			this.contentType = contentType;
+			this.body = body;
+			this.error = error;
+		}
+	}
+
+	// follower 最多等待的时间
+	final long maxWaitNanos;
+	// 可共享的响应体上限，超过时直接写给 leader 的客户端
+	final long maxBytes;
+
+	private final ConcurrentHashMap<String, CompletableFuture<Shared>> inFlight = new ConcurrentHashMap<>();
+
+	final LongAdder leaders = new LongAdder();
+	// 共享了 leader 结果、没有调用 handler 的请求
+	final LongAdder coalesced = new LongAdder();
+	final LongAdder timeouts = new LongAdder();
+	// leader 的结果不能共享，follower 各自调用 handler
+	final LongAdder unshared = new LongAdder();
+
+	RequestCoalescer(long maxWaitMillis, long maxBytes) {
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxWaitMillis, 0));
+		this.maxBytes = Math.max(maxBytes, 1);
+	}
+
+	static boolean enabled(Method method) {
+		MockRequestMapping mapping = method.getAnnotation(MockRequestMapping.class);
+		if (mapping != null && mapping.coalesce()) {
+			return true;
+		}
+		mapping = method.getDeclaringClass().getAnnotation(MockRequestMapping.class);
+		return mapping != null && mapping.coalesce();
+	}
+
+	static boolean supports(HttpServletRequest req) {
+		return "GET".equals(req.getMethod());
+	}
+
+	static String key(HttpServletRequest req) {
+		return ResponseCache.key(req, ALL_PARAMS);
+	}
+
+	/**
+	 * @return 没有相同的请求在进行时登记 flight 并返回 null，调用方成为 leader，
+	 *         结束时必须调用 {@link #complete}；否则返回 leader 的 future
+	 */
+	CompletableFuture<Shared> join(String key, CompletableFuture<Shared> flight) {
+		CompletableFuture<Shared> leader = inFlight.putIfAbsent(key, flight);
+		if (leader == null) {
+			leaders.increment();
+		}
+		return leader;
+	}
+
+	/**
+	 * 等待 leader 的结果
+	 *
+	 * @return 超时或结果不能共享时返回 null，调用方自己调用 handler
+	 */
+	Shared await(CompletableFuture<Shared> leader) throws InterruptedException {
+		Shared shared;
+		try {
+			shared = leader.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			timeouts.increment();
+			return null;
+		} catch (ExecutionException e) {
+			// complete 只会正常完成
+			throw new IllegalStateException(e.getCause());
+		}
+		if (shared == null) {
+			unshared.increment();
+			return null;
+		}
+		coalesced.increment();
+		return shared;
+	}
+
+	/**
+	 * leader 结束，先移出再唤醒 follower，之后到达的请求不会拿到旧结果
+	 *
+	 * @param shared 不能共享时传 null
+	 */
+	void complete(String key, CompletableFuture<Shared> flight, Shared shared) {
+		inFlight.remove(key, flight);
+		flight.complete(shared);
+	}
+
+	@Override
+	public String toString() {
+		return "leaders=" + leaders.sum() + ", coalesced=" + coalesced.sum() + ", timeouts=" + timeouts.sum()
+				+ ", unshared=" + unshared.sum();
+	}
+}
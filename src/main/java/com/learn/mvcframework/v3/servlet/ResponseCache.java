@@ -0,0 +1,543 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.learn.mvcframework.annotation.MockCacheable;
+
+/**
+ * {@link MockCacheable} handler 的响应缓存，每个 handler 一个实例。
+ * <p>
+ * 1. 缓存的是编码后的响应体和 Content-Type，命中时直接写出<br>
+ * 2. 超过条数或字节上限时批量淘汰：先清过期的，再按最近访问时间淘汰最旧的，直到降到上限的 90%<br>
+ * 3. ETag 由响应内容计算，If-None-Match 匹配时返回 304<br>
+ * 4. 开启压缩时按 Accept-Encoding 写出 gzip / deflate 副本，副本在第一次被请求时生成并和条目一起淘汰
+ */
+final class ResponseCache {
+
+	static final String KEY_ATTRIBUTE = ResponseCache.class.getName() + ".key";
+
+	// 每个条目除内容外的估算开销
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private final long ttlNanos;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final String[] params;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong bytes = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	// 为 null 时只缓存原始内容
+	private ResponseCompression compression;
+	private int compressionLevel;
+
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder notModified = new LongAdder();
+	final LongAdder evictions = new LongAdder();
+	final LongAdder expirations = new LongAdder();
+
+	ResponseCache(MockCacheable cacheable) {
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(cacheable.ttl(), 0));
+		this.maxEntries = Math.max(cacheable.maxEntries(), 1);
+		this.maxBytes = Math.max(cacheable.maxBytes(), 1);
+		this.params = cacheable.params().clone();
+		Arrays.sort(this.params);
+	}
+
+	/**
+	 * 启动时调用，level 为 0 时不压缩
+	 */
+	void enableCompression(ResponseCompression compression, int level) {
+		if (compression != null && level > 0) {
+			this.compression = compression;
+			this.compressionLevel = level;
+		}
+	}
+
+	/**
+	 * 命中时写出缓存内容（或 304），未命中时在请求上记下 key，由 {@link #store} 保存
+	 *
+	 * @return 是否已写出响应
+	 */
+	boolean serve(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		if (!"GET".equals(req.getMethod())) {
+			return false;
+		}
+		String key = key(req, params);
+		Entry entry = entries.get(key);
+		long now = System.nanoTime();
+		if (entry != null && entry.expired(now)) {
+			if (remove(key, entry)) {
+				expirations.increment();
+			}
+			entry = null;
+		}
+		if (entry == null) {
+			misses.increment();
+			req.setAttribute(KEY_ATTRIBUTE, key);
+			return false;
+		}
+		hits.increment();
+		entry.lastAccess = now;
+		if (entry.contentType != null) {
+			resp.setContentType(entry.contentType);
+		}
+		write(req, resp, entry);
+		return true;
+	}
+
+	/**
+	 * @return 本次请求需要缓存时返回捕获响应内容的 wrapper，否则返回 null
+	 */
+	Capture capture(HttpServletRequest req, HttpServletResponse resp) {
+		long limit = captureLimit(req);
+		return limit == 0 ? null : new Capture(resp, limit);
+	}
+
+	/**
+	 * @return 本次请求需要缓存时能缓存的最大响应体字节数，否则返回 0
+	 */
+	long captureLimit(HttpServletRequest req) {
+		return req.getAttribute(KEY_ATTRIBUTE) == null ? 0 : maxBytes / 2;
+	}
+
+	/**
+	 * 保存捕获到的响应并写给客户端
+	 */
+	void store(HttpServletRequest req, HttpServletResponse resp, Capture capture) throws IOException {
+		capture.finish();
+		if (!capture.buffered()) {
+			// 内容过大或非 200，已直接写给客户端
+			return;
+		}
+		byte[] body = capture.toByteArray();
+		String key = (String) req.getAttribute(KEY_ATTRIBUTE);
+		Entry entry = new Entry(body, resp.getContentType(), etag(body), System.nanoTime(), ttlNanos,
+				ENTRY_OVERHEAD + body.length + 2 * key.length());
+		long size = entry.size();
+		Entry old = entries.put(key, entry);
+		bytes.addAndGet(size - (old != null ? old.detach() : 0));
+		if (entries.size() > maxEntries || bytes.get() > maxBytes) {
+			evict();
+		}
+		write(req, resp, entry);
+	}
+
+	/**
+	 * 写出条目，客户端接受压缩且内容可压缩时写出对应的压缩副本，ETag 带上编码后缀
+	 */
+	private void write(HttpServletRequest req, HttpServletResponse resp, Entry entry) throws IOException {
+		ResponseCompression.Encoding encoding = null;
+		if (compression != null && entry.body.length >= compression.minSize
+				&& compression.compressible(entry.contentType)) {
+			resp.addHeader("Vary", "Accept-Encoding");
+			encoding = ResponseCompression.negotiate(req.getHeader("Accept-Encoding"));
+		}
+		Variant variant = encoding == null ? null : variant(entry, encoding);
+		String etag = variant == null ? entry.etag : variant.etag;
+		if (writeNotModified(req, resp, etag)) {
+			return;
+		}
+		resp.setHeader("ETag", etag);
+		byte[] body = entry.body;
+		if (variant != null) {
+			resp.setHeader("Content-Encoding", encoding.token);
+			body = variant.body;
+		}
+		resp.setContentLength(body.length);
+		resp.getOutputStream().write(body);
+	}
+
+	private Variant variant(Entry entry, ResponseCompression.Encoding encoding) {
+		Variant variant = entry.variants[encoding.ordinal()];
+		if (variant != null) {
+			return variant;
+		}
+		// 并发时可能重复压缩，只保留第一个
+		byte[] body = compression.compress(entry.body, encoding, compressionLevel);
+		String etag = entry.etag.substring(0, entry.etag.length() - 1) + "-" + encoding.token + "\"";
+		long added = entry.attach(encoding.ordinal(), new Variant(body, etag));
+		if (added > 0) {
+			bytes.addAndGet(added);
+			if (bytes.get() > maxBytes) {
+				evict();
+			}
+		}
+		return entry.variants[encoding.ordinal()];
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	long bytes() {
+		return bytes.get();
+	}
+
+	@Override
+	public String toString() {
+		return "entries=" + entries.size() + ", bytes=" + bytes.get() + ", hits=" + hits.sum() + ", misses="
+				+ misses.sum() + ", notModified=" + notModified.sum() + ", evictions=" + evictions.sum()
+				+ ", expirations=" + expirations.sum();
+	}
+
+	/**
+	 * @param params 参与 key 的参数名（已排序），为空时使用全部参数
+	 */
+	static String key(HttpServletRequest req, String[] params) {
+		StringBuilder key = new StringBuilder(req.getRequestURI());
+		if (params.length > 0) {
+			for (String name : params) {
+				appendParam(key, name, req.getParameterValues(name));
+			}
+		} else {
+			// 全部参数按名字排序，保证参数顺序不同的请求命中同一条
+			for (Map.Entry<String, String[]> param : new TreeMap<>(req.getParameterMap()).entrySet()) {
+				appendParam(key, param.getKey(), param.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	private static void appendParam(StringBuilder key, String name, String[] values) {
+		if (values == null) {
+			return;
+		}
+		key.append('\0').append(name);
+		for (String value : values) {
+			key.append('\1').append(value);
+		}
+	}
+
+	private boolean writeNotModified(HttpServletRequest req, HttpServletResponse resp, String etag) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch == null || !etagMatches(ifNoneMatch, etag)) {
+			return false;
+		}
+		notModified.increment();
+		resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		resp.setHeader("ETag", etag);
+		return true;
+	}
+
+	static boolean etagMatches(String ifNoneMatch, String etag) {
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String etag(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		return "\"" + Integer.toHexString(body.length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+	}
+
+	private boolean remove(String key, Entry entry) {
+		if (entries.remove(key, entry)) {
+			bytes.addAndGet(-entry.detach());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 批量淘汰，同一时间只有一个线程执行，其他线程直接返回
+	 */
+	private void evict() {
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			long now = System.nanoTime();
+			List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.size());
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				if (e.getValue().expired(now)) {
+					if (remove(e.getKey(), e.getValue())) {
+						expirations.increment();
+					}
+				} else {
+					candidates.add(e);
+				}
+			}
+			int targetEntries = Math.max(maxEntries - maxEntries / 10, 1);
+			long targetBytes = maxBytes - maxBytes / 10;
+			if (entries.size() <= targetEntries && bytes.get() <= targetBytes) {
+				return;
+			}
+			candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+			for (Map.Entry<String, Entry> e : candidates) {
+				if (entries.size() <= targetEntries && bytes.get() <= targetBytes) {
+					break;
+				}
+				if (remove(e.getKey(), e.getValue())) {
+					evictions.increment();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	static final class Entry {
+		final byte[] body;
+		final String contentType;
+		final String etag;
+		final long expiresAt;
+		// 按 Encoding.ordinal() 存放压缩副本，Variant 的字段都是 final，可以不加锁读
+		final Variant[] variants = new Variant[ResponseCompression.Encoding.values().length];
+		// 含压缩副本，移出缓存后不再增加
+		private long size;
+		private boolean detached;
+		// 近似 LRU，不要求精确
+		volatile long lastAccess;
+
+		Entry(byte[] body, String contentType, String etag, long now, long ttlNanos, long size) {
+			this.body = body;
+			this.contentType = contentType;
+			this.etag = etag;
+			this.expiresAt = ttlNanos > 0 ? now + ttlNanos : Long.MAX_VALUE;
+			this.size = size;
+			this.lastAccess = now;
+		}
+
+		boolean expired(long now) {
+			return expiresAt != Long.MAX_VALUE && now - expiresAt > 0;
+		}
+
+		synchronized long size() {
+			return size;
+		}
+
+		/**
+		 * 移出缓存
+		 *
+		 * @return 需要从总字节数中减去的大小
+		 */
+		synchronized long detach() {
+			detached = true;
+			return size;
+		}
+
+		/**
+		 * @return 需要加到总字节数上的大小，已有副本或已移出缓存时返回 0
+		 */
+		synchronized long attach(int index, Variant variant) {
+			if (variants[index] != null) {
+				return 0;
+			}
+			variants[index] = variant;
+			if (detached) {
+				return 0;
+			}
+			size += variant.body.length;
+			return variant.body.length;
+		}
+	}
+
+	static final class Variant {
+		final byte[] body;
+		final String etag;
+
+		Variant(byte[] body, String etag) {
+			this.body = body;
+			this.etag = etag;
+		}
+	}
+
+	/**
+	 * 把响应体写入内存；超过 limit 后把已有内容写给客户端，之后直接透传且不再缓存。
+	 * handler 拿到的是原始 response，可能在创建 Capture 之前就设置了状态码，所以同时检查被包装的 response
+	 */
+	static final class Capture extends HttpServletResponseWrapper {
+		private final long limit;
+		private byte[] buf = new byte[1024];
+		private int count;
+		private boolean passThrough;
+		// 注册了 WriteListener，透传时每次只能写一次，之后要检查 isReady
+		private boolean nonBlocking;
+		private int status;
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+
+		Capture(HttpServletResponse resp, long limit) {
+			super(resp);
+			this.limit = limit;
+			this.status = resp.getStatus();
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (outputStream == null) {
+				outputStream = new CaptureOutputStream();
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if (writer == null) {
+				Charset charset = Charset.forName(getCharacterEncoding());
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset));
+			}
+			return writer;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+			super.setStatus(sc);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			status = sc;
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			status = sc;
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			// 由 store 设置
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			count = 0;
+			super.resetBuffer();
+		}
+
+		void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (!ok() && !passThrough && count > 0) {
+				getResponse().getOutputStream().write(buf, 0, count);
+			}
+		}
+
+		/**
+		 * @return 状态码为 200 且响应体完整保存在内存中
+		 */
+		boolean buffered() {
+			return !passThrough && ok();
+		}
+
+		private boolean ok() {
+			return status == HttpServletResponse.SC_OK && getStatus() == HttpServletResponse.SC_OK;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, count);
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			if (passThrough) {
+				getResponse().getOutputStream().write(b, off, len);
+				return;
+			}
+			if ((long) count + len > limit) {
+				passThrough = true;
+				ServletOutputStream out = getResponse().getOutputStream();
+				if (nonBlocking) {
+					byte[] merged = Arrays.copyOf(buf, count + len);
+					System.arraycopy(b, off, merged, count, len);
+					out.write(merged);
+				} else {
+					out.write(buf, 0, count);
+					out.write(b, off, len);
+				}
+				count = 0;
+				return;
+			}
+			if (count + len > buf.length) {
+				buf = Arrays.copyOf(buf, (int) Math.min(Math.max(buf.length * 2L, count + len), limit));
+			}
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		private final class CaptureOutputStream extends ServletOutputStream {
+			@Override
+			public void write(int b) throws IOException {
+				Capture.this.write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				Capture.this.write(b, off, len);
+			}
+
+			/**
+			 * 写入内存时总是就绪，透传后取决于被包装的输出流
+			 */
+			@Override
+			public boolean isReady() {
+				if (!passThrough) {
+					return true;
+				}
+				try {
+					return getResponse().getOutputStream().isReady();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			/**
+			 * 注册到被包装的输出流，由容器回调
+			 */
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				try {
+					getResponse().getOutputStream().setWriteListener(writeListener);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				nonBlocking = true;
+			}
+		}
+	}
+}
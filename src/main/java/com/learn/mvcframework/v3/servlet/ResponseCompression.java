@@ -0,0 +1,513 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * 按 Accept-Encoding 协商 gzip / deflate，压缩 handler 的返回值。
+ * <p>
+ * 1. 响应先缓冲到 minSize，超过后才决定是否压缩，小响应和不在 mimeTypes 中的类型原样输出并带 Content-Length<br>
+ * 2. Deflater 按级别和格式池化，gzip 的头和 CRC32 尾部手工写出，不经过 GZIPOutputStream<br>
+ * 3. 边写边压缩，不在内存中保留完整响应<br>
+ * 4. 注册 WriteListener（非阻塞输出）的响应不压缩，开始压缩之后再注册会抛出 IllegalStateException
+ */
+final class ResponseCompression {
+
+	enum Encoding {
+		GZIP("gzip", true), DEFLATE("deflate", false);
+
+		final String token;
+		// gzip 自己写头尾，deflate 使用 zlib 格式
+		final boolean nowrap;
+
+		Encoding(String token, boolean nowrap) {
+			this.token = token;
+			this.nowrap = nowrap;
+		}
+	}
+
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	final int minSize;
+	final int defaultLevel;
+	// 小写的 type/subtype，"text/*" 匹配整个大类
+	private final String[] mimeTypes;
+	// 下标为 level * 2 + (nowrap ? 1 : 0)
+	private final ArrayBlockingQueue<Deflater>[] deflaters;
+	private final ArrayBlockingQueue<byte[]> buffers;
+	private final int bufferSize;
+
+	final LongAdder compressed = new LongAdder();
+	final LongAdder bytesIn = new LongAdder();
+	final LongAdder bytesOut = new LongAdder();
+
+	@SuppressWarnings("unchecked")
+	ResponseCompression(int minSize, int defaultLevel, String mimeTypes, int poolSize, int bufferSize) {
+		this.minSize = Math.max(minSize, 1);
+		this.defaultLevel = Math.max(0, Math.min(defaultLevel, Deflater.BEST_COMPRESSION));
+		List<String> types = new ArrayList<>();
+		for (String type : mimeTypes.split(",")) {
+			if (!type.trim().isEmpty()) {
+				types.add(type.trim().toLowerCase(Locale.ROOT));
+			}
+		}
+		this.mimeTypes = types.toArray(new String[0]);
+		this.deflaters = new ArrayBlockingQueue[(Deflater.BEST_COMPRESSION + 1) * 2];
+		for (int i = 0; i < deflaters.length; i++) {
+			deflaters[i] = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+		}
+		this.buffers = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+		this.bufferSize = Math.max(bufferSize, 512);
+	}
+
+	/**
+	 * 按 Accept-Encoding 选择编码，gzip 优先；q=0 表示拒绝
+	 *
+	 * @return 不压缩时返回 null
+	 */
+	static Encoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+			return null;
+		}
+		float gzip = -1;
+		float deflate = -1;
+		float any = -1;
+		for (String part : acceptEncoding.split(",")) {
+			int semicolon = part.indexOf(';');
+			String token = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+			float q = 1;
+			if (semicolon >= 0) {
+				String param = part.substring(semicolon + 1).trim();
+				if (param.startsWith("q=")) {
+					try {
+						q = Float.parseFloat(param.substring(2).trim());
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+			if (token.equalsIgnoreCase("gzip") || token.equalsIgnoreCase("x-gzip")) {
+				gzip = q;
+			} else if (token.equalsIgnoreCase("deflate")) {
+				deflate = q;
+			} else if (token.equals("*")) {
+				any = q;
+			}
+		}
+		if (gzip < 0) {
+			gzip = any;
+		}
+		if (deflate < 0) {
+			deflate = any;
+		}
+		if (gzip > 0 && gzip >= deflate) {
+			return Encoding.GZIP;
+		}
+		return deflate > 0 ? Encoding.DEFLATE : null;
+	}
+
+	/**
+	 * @param contentType 为 null 时按 text/plain 处理（handler 直接用 writer 输出文本）
+	 */
+	boolean compressible(String contentType) {
+		String type = contentType == null ? "text/plain" : contentType;
+		int semicolon = type.indexOf(';');
+		type = (semicolon < 0 ? type : type.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+		for (String candidate : mimeTypes) {
+			if (candidate.endsWith("/*") ? type.startsWith(candidate.substring(0, candidate.length() - 1))
+					: type.equals(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 请求不接受压缩或 level 为 0 时返回 null
+	 */
+	CompressingResponse wrap(HttpServletRequest req, HttpServletResponse resp, int level) {
+		if (level <= 0) {
+			return null;
+		}
+		Encoding encoding = negotiate(req.getHeader("Accept-Encoding"));
+		return encoding == null ? null : new CompressingResponse(resp, encoding, level);
+	}
+
+	/**
+	 * 整块压缩，响应缓存用来生成压缩副本
+	 */
+	byte[] compress(byte[] body, Encoding encoding, int level) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 64);
+		Deflater deflater = borrow(encoding, level);
+		byte[] buf = borrowBuffer();
+		try {
+			if (encoding == Encoding.GZIP) {
+				out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+			}
+			deflater.setInput(body, 0, body.length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buf, 0, buf.length);
+				out.write(buf, 0, n);
+			}
+			if (encoding == Encoding.GZIP) {
+				CRC32 crc = new CRC32();
+				crc.update(body, 0, body.length);
+				writeTrailer(out, crc.getValue(), body.length);
+			}
+		} catch (IOException e) {
+			// ByteArrayOutputStream 不会抛出
+			throw new IllegalStateException(e);
+		} finally {
+			release(deflater, encoding, level);
+			releaseBuffer(buf);
+		}
+		compressed.increment();
+		bytesIn.add(body.length);
+		bytesOut.add(out.size());
+		return out.toByteArray();
+	}
+
+	private static void writeTrailer(OutputStream out, long crc, long size) throws IOException {
+		byte[] trailer = new byte[8];
+		for (int i = 0; i < 4; i++) {
+			trailer[i] = (byte) (crc >>> (8 * i));
+			trailer[4 + i] = (byte) (size >>> (8 * i));
+		}
+		out.write(trailer);
+	}
+
+	private Deflater borrow(Encoding encoding, int level) {
+		Deflater deflater = deflaters[level * 2 + (encoding.nowrap ? 1 : 0)].poll();
+		return deflater != null ? deflater : new Deflater(level, encoding.nowrap);
+	}
+
+	private void release(Deflater deflater, Encoding encoding, int level) {
+		deflater.reset();
+		if (!deflaters[level * 2 + (encoding.nowrap ? 1 : 0)].offer(deflater)) {
+			// 池已满，释放 native 内存
+			deflater.end();
+		}
+	}
+
+	private byte[] borrowBuffer() {
+		byte[] buf = buffers.poll();
+		return buf != null ? buf : new byte[bufferSize];
+	}
+
+	private void releaseBuffer(byte[] buf) {
+		buffers.offer(buf);
+	}
+
+	/**
+	 * 释放池中 Deflater 的 native 内存
+	 */
+	void close() {
+		for (ArrayBlockingQueue<Deflater> pool : deflaters) {
+			Deflater deflater;
+			while ((deflater = pool.poll()) != null) {
+				deflater.end();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		long in = bytesIn.sum();
+		return "compressed=" + compressed.sum() + ", bytesIn=" + in + ", bytesOut=" + bytesOut.sum()
+				+ (in > 0 ? String.format(Locale.ROOT, ", ratio=%.3f", (double) bytesOut.sum() / in) : "");
+	}
+
+	/**
+	 * 先缓冲 minSize 字节再决定是否压缩，决定后不再改变
+	 */
+	final class CompressingResponse extends HttpServletResponseWrapper {
+		private final Encoding encoding;
+		private final int level;
+		private byte[] pending = new byte[Math.min(minSize, 1024)];
+		private int pendingCount;
+		// 0 缓冲中，1 压缩，2 原样输出
+		private int mode;
+		private long contentLength = -1;
+		private Deflater deflater;
+		private byte[] buf;
+		private CRC32 crc;
+		private long inputBytes;
+		private boolean finishing;
+		private ServletOutputStream out;
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+
+		CompressingResponse(HttpServletResponse resp, Encoding encoding, int level) {
+			super(resp);
+			this.encoding = encoding;
+			this.level = level;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (outputStream == null) {
+				outputStream = new CompressingOutputStream();
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+			}
+			return writer;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			setContentLengthLong(len);
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+			if (mode == 0 && pendingCount == 0 && len >= 0 && len < minSize) {
+				// 已知不够阈值，直接原样输出
+				mode = 2;
+			}
+			if (mode == 2) {
+				super.setContentLengthLong(len);
+			} else {
+				contentLength = len;
+			}
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				// 会调用到 flushStream
+				writer.flush();
+			} else {
+				flushStream();
+			}
+		}
+
+		private void flushStream() throws IOException {
+			if (mode == 1) {
+				deflate(Deflater.SYNC_FLUSH);
+				out.flush();
+			} else if (mode == 2) {
+				super.flushBuffer();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			if (mode == 0) {
+				pendingCount = 0;
+			}
+			super.resetBuffer();
+		}
+
+		@Override
+		public void reset() {
+			if (mode == 0) {
+				pendingCount = 0;
+				contentLength = -1;
+			}
+			super.reset();
+		}
+
+		/**
+		 * 写完剩余内容，压缩时写出 gzip 尾部
+		 */
+		void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (mode == 0) {
+				mode = 2;
+				// 什么都没写时不设置长度，内容可能已经绕过 wrapper 写出（如响应缓存）
+				if (pendingCount > 0) {
+					super.setContentLengthLong(pendingCount);
+					super.getOutputStream().write(pending, 0, pendingCount);
+				}
+			} else if (mode == 1) {
+				deflater.finish();
+				finishing = true;
+				deflate(Deflater.NO_FLUSH);
+				if (encoding == Encoding.GZIP) {
+					writeTrailer(out, crc.getValue(), inputBytes);
+				}
+				compressed.increment();
+				bytesIn.add(inputBytes);
+			}
+			release();
+		}
+
+		/**
+		 * 归还 Deflater 和缓冲区，可重复调用
+		 */
+		void release() {
+			if (deflater != null) {
+				ResponseCompression.this.release(deflater, encoding, level);
+				deflater = null;
+			}
+			if (buf != null) {
+				releaseBuffer(buf);
+				buf = null;
+			}
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			if (mode == 0) {
+				if (pendingCount + len < minSize) {
+					if (pendingCount + len > pending.length) {
+						pending = Arrays.copyOf(pending, Math.min(Math.max(pending.length * 2, pendingCount + len),
+								minSize));
+					}
+					System.arraycopy(b, off, pending, pendingCount, len);
+					pendingCount += len;
+					return;
+				}
+				decide();
+				if (pendingCount > 0) {
+					int count = pendingCount;
+					pendingCount = 0;
+					write(pending, 0, count);
+				}
+			}
+			if (mode == 2) {
+				super.getOutputStream().write(b, off, len);
+				return;
+			}
+			crc(b, off, len);
+			inputBytes += len;
+			deflater.setInput(b, off, len);
+			deflate(Deflater.NO_FLUSH);
+		}
+
+		private void crc(byte[] b, int off, int len) {
+			if (crc != null) {
+				crc.update(b, off, len);
+			}
+		}
+
+		/**
+		 * 超过阈值时决定：类型可压缩、未设置过 Content-Encoding 且不是部分内容时开始压缩
+		 */
+		private void decide() throws IOException {
+			HttpServletResponse resp = (HttpServletResponse) getResponse();
+			int status = resp.getStatus();
+			boolean compress = compressible(resp.getContentType()) && !resp.containsHeader("Content-Encoding")
+					&& !resp.containsHeader("Content-Range") && status != HttpServletResponse.SC_PARTIAL_CONTENT
+					&& status != HttpServletResponse.SC_NO_CONTENT && status != HttpServletResponse.SC_NOT_MODIFIED;
+			if (!compress) {
+				mode = 2;
+				if (contentLength >= 0) {
+					super.setContentLengthLong(contentLength);
+				}
+				return;
+			}
+			mode = 1;
+			resp.setHeader("Content-Encoding", encoding.token);
+			resp.addHeader("Vary", "Accept-Encoding");
+			deflater = borrow(encoding, level);
+			buf = borrowBuffer();
+			out = super.getOutputStream();
+			if (encoding == Encoding.GZIP) {
+				crc = new CRC32();
+				out.write(GZIP_HEADER);
+				bytesOut.add(GZIP_HEADER.length + 8);
+			}
+		}
+
+		/**
+		 * NO_FLUSH 时压缩完已交给 Deflater 的输入；SYNC_FLUSH 时把已压缩的内容全部写出；finish 之后写到结束
+		 */
+		private void deflate(int flush) throws IOException {
+			int n;
+			do {
+				n = deflater.deflate(buf, 0, buf.length, flush);
+				if (n > 0) {
+					out.write(buf, 0, n);
+					bytesOut.add(n);
+				}
+				// 输出缓冲区写满说明可能还有剩余
+			} while (n == buf.length || (finishing ? !deflater.finished() : flush == Deflater.NO_FLUSH
+					&& !deflater.needsInput()));
+		}
+
+		private final class CompressingOutputStream extends ServletOutputStream {
+			@Override
+			public void write(int b) throws IOException {
+				CompressingResponse.this.write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				CompressingResponse.this.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				flushStream();
+			}
+
+			/**
+			 * 缓冲中总是就绪，原样输出时取决于被包装的输出流
+			 */
+			@Override
+			public boolean isReady() {
+				if (mode != 2) {
+					return true;
+				}
+				try {
+					return CompressingResponse.super.getOutputStream().isReady();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			/**
+			 * 一次压缩会写出多段，不能按 isReady 分段，所以非阻塞输出时改为原样输出并注册到被包装的输出流
+			 */
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				if (mode == 1) {
+					throw new IllegalStateException("WriteListener must be set before the response starts compressing");
+				}
+				try {
+					if (mode == 0) {
+						mode = 2;
+						if (contentLength >= 0) {
+							CompressingResponse.super.setContentLengthLong(contentLength);
+						}
+						// 注册前仍是阻塞输出
+						if (pendingCount > 0) {
+							CompressingResponse.super.getOutputStream().write(pending, 0, pendingCount);
+							pendingCount = 0;
+						}
+					}
+					CompressingResponse.super.getOutputStream().setWriteListener(writeListener);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+}
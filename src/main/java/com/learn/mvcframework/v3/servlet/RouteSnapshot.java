@@ -0,0 +1,77 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod;
+
+/**
+ * 某一时刻完整的路由表：handler 列表、编译好的 router 以及对应的异常处理注册表，创建后不再修改。
+ * <p>
+ * dispatcher 每个请求只读一次当前快照，注册/注销 controller 或拦截器时构建新快照整体替换，
+ * 进行中的请求继续使用旧快照里的 handler，不需要加锁也不会被暂停。
+ * <p>
+ * 构建快照时为每个 handler 解析适用的拦截器，和 handler 一起放进快照自己的 {@link HanderRouter.Route}，
+ * handler 本身不被修改，新旧快照共用的 handler 在各自快照里各有一个 Route。
+ */
+final class RouteSnapshot {
+
+	static final RouteSnapshot EMPTY = new RouteSnapshot(Collections.<HanderMethod>emptyList(),
+			Collections.emptyList(), HanderInterceptors.EMPTY);
+
+	final List<HanderMethod> handers;
+	final HanderRouter router;
+	final ExceptionHandlers exceptionHandlers;
+	// 全局异常处理 bean，重建快照时沿用
+	final List<Object> advices;
+	// 已注册的拦截器，重建快照时沿用
+	final HanderInterceptors interceptors;
+
+	/**
+	 * @throws IllegalStateException 路由冲突或异常处理方法声明有误，此时不会产生新快照
+	 */
+	RouteSnapshot(List<HanderMethod> handers, Collection<Object> advices, HanderInterceptors interceptors) {
+		this.handers = Collections.unmodifiableList(new ArrayList<>(handers));
+		this.advices = Collections.unmodifiableList(new ArrayList<>(advices));
+		this.interceptors = interceptors;
+		List<HanderRouter.Route> routes = new ArrayList<>(this.handers.size());
+		for (HanderMethod hm : this.handers) {
+			routes.add(new HanderRouter.Route(hm, interceptors.resolve(hm.url)));
+		}
+		this.router = HanderRouter.build(routes);
+		this.exceptionHandlers = ExceptionHandlers.build(controllers(this.handers), this.advices);
+	}
+
+	/**
+	 * @return 去掉 controller 的全部 handler 后，再加上 added 的新快照
+	 */
+	RouteSnapshot replace(Object controller, List<HanderMethod> added) {
+		List<HanderMethod> next = new ArrayList<>(handers.size() + added.size());
+		for (HanderMethod hm : handers) {
+			if (controller == null || hm.instance != controller) {
+				next.add(hm);
+			}
+		}
+		next.addAll(added);
+		return new RouteSnapshot(next, advices, interceptors);
+	}
+
+	/**
+	 * @return handler 不变、拦截器替换为 interceptors 的新快照
+	 */
+	RouteSnapshot withInterceptors(HanderInterceptors interceptors) {
+		return new RouteSnapshot(handers, advices, interceptors);
+	}
+
+	private static Collection<Object> controllers(List<HanderMethod> handers) {
+		Map<Object, Boolean> controllers = new IdentityHashMap<>();
+		for (HanderMethod hm : handers) {
+			controllers.put(hm.instance, Boolean.TRUE);
+		}
+		return controllers.keySet();
+	}
+}
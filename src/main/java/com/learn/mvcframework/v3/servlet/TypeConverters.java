@@ -0,0 +1,210 @@
+package com.learn.mvcframework.v3.servlet;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * String -> 参数类型 的转换表，启动时按参数类型查一次，运行期直接调用。
+ * <p>
+ * 基本类型数组（int[]、long[] ...）直接从 String[] 解析，不经过包装类型。
+ */
+final class TypeConverters {
+
+	/**
+	 * 单值转换，入参不为 null 且不为空串
+	 */
+	interface Converter {
+		Object convert(String value);
+	}
+
+	/**
+	 * 多值转换，入参至少有一个元素
+	 */
+	interface ArrayConverter {
+		Object convert(String[] values);
+	}
+
+	private static final Map<Class<?>, Converter> CONVERTERS = new HashMap<>();
+	private static final Map<Class<?>, ArrayConverter> ARRAY_CONVERTERS = new HashMap<>();
+
+	static {
+		CONVERTERS.put(String.class, value -> value);
+		CONVERTERS.put(Object.class, value -> value);
+		CONVERTERS.put(CharSequence.class, value -> value);
+		register(boolean.class, Boolean.class, TypeConverters::parseBoolean);
+		register(byte.class, Byte.class, value -> Byte.parseByte(value.trim()));
+		register(short.class, Short.class, value -> Short.parseShort(value.trim()));
+		register(int.class, Integer.class, value -> Integer.parseInt(value.trim()));
+		register(long.class, Long.class, value -> Long.parseLong(value.trim()));
+		register(float.class, Float.class, value -> Float.parseFloat(value.trim()));
+		register(double.class, Double.class, value -> Double.parseDouble(value.trim()));
+		register(char.class, Character.class, TypeConverters::parseChar);
+		CONVERTERS.put(BigInteger.class, value -> new BigInteger(value.trim()));
+		CONVERTERS.put(BigDecimal.class, value -> new BigDecimal(value.trim()));
+		CONVERTERS.put(UUID.class, value -> UUID.fromString(value.trim()));
+		CONVERTERS.put(LocalDate.class, value -> LocalDate.parse(value.trim()));
+		CONVERTERS.put(LocalTime.class, value -> LocalTime.parse(value.trim()));
+		CONVERTERS.put(LocalDateTime.class, value -> LocalDateTime.parse(value.trim()));
+		CONVERTERS.put(OffsetTime.class, value -> OffsetTime.parse(value.trim()));
+		CONVERTERS.put(OffsetDateTime.class, value -> OffsetDateTime.parse(value.trim()));
+		CONVERTERS.put(ZonedDateTime.class, value -> ZonedDateTime.parse(value.trim()));
+		CONVERTERS.put(Instant.class, value -> Instant.parse(value.trim()));
+		CONVERTERS.put(Duration.class, value -> Duration.parse(value.trim()));
+		CONVERTERS.put(Period.class, value -> Period.parse(value.trim()));
+		CONVERTERS.put(Year.class, value -> Year.parse(value.trim()));
+		CONVERTERS.put(YearMonth.class, value -> YearMonth.parse(value.trim()));
+		CONVERTERS.put(MonthDay.class, value -> MonthDay.parse(value.trim()));
+		CONVERTERS.put(ZoneId.class, value -> ZoneId.of(value.trim()));
+
+		ARRAY_CONVERTERS.put(boolean[].class, values -> {
+			boolean[] array = new boolean[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = parseBoolean(values[i]);
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(byte[].class, values -> {
+			byte[] array = new byte[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = Byte.parseByte(values[i].trim());
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(short[].class, values -> {
+			short[] array = new short[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = Short.parseShort(values[i].trim());
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(int[].class, values -> {
+			int[] array = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = Integer.parseInt(values[i].trim());
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(long[].class, values -> {
+			long[] array = new long[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = Long.parseLong(values[i].trim());
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(float[].class, values -> {
+			float[] array = new float[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = Float.parseFloat(values[i].trim());
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(double[].class, values -> {
+			double[] array = new double[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = Double.parseDouble(values[i].trim());
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(char[].class, values -> {
+			char[] array = new char[values.length];
+			for (int i = 0; i < values.length; i++) {
+				array[i] = parseChar(values[i]);
+			}
+			return array;
+		});
+		ARRAY_CONVERTERS.put(String[].class, values -> values);
+	}
+
+	private TypeConverters() {
+	}
+
+	private static void register(Class<?> primitive, Class<?> wrapper, Converter converter) {
+		CONVERTERS.put(primitive, converter);
+		CONVERTERS.put(wrapper, converter);
+	}
+
+	/**
+	 * @return 不支持时返回 null
+	 */
+	static Converter find(Class<?> type) {
+		Converter converter = CONVERTERS.get(type);
+		if (converter == null && type.isEnum()) {
+			converter = enumConverter(type);
+		}
+		return converter;
+	}
+
+	/**
+	 * @return 不支持时返回 null
+	 */
+	static ArrayConverter findArray(Class<?> arrayType) {
+		ArrayConverter arrayConverter = ARRAY_CONVERTERS.get(arrayType);
+		if (arrayConverter != null) {
+			return arrayConverter;
+		}
+		Class<?> componentType = arrayType.getComponentType();
+		Converter converter = componentType == null || componentType.isPrimitive() ? null : find(componentType);
+		if (converter == null) {
+			return null;
+		}
+		return values -> {
+			Object array = Array.newInstance(componentType, values.length);
+			for (int i = 0; i < values.length; i++) {
+				Array.set(array, i, values[i].isEmpty() ? null : converter.convert(values[i]));
+			}
+			return array;
+		};
+	}
+
+	private static Converter enumConverter(Class<?> enumType) {
+		Map<String, Object> constants = new HashMap<>();
+		for (Object constant : enumType.getEnumConstants()) {
+			constants.put(((Enum<?>) constant).name(), constant);
+		}
+		return value -> {
+			Object constant = constants.get(value);
+			if (constant == null) {
+				constant = constants.get(value.trim());
+			}
+			if (constant == null) {
+				throw new IllegalArgumentException("No enum constant " + enumType.getName() + "." + value);
+			}
+			return constant;
+		};
+	}
+
+	private static boolean parseBoolean(String value) {
+		String v = value.trim();
+		if ("true".equalsIgnoreCase(v) || "on".equalsIgnoreCase(v) || "yes".equalsIgnoreCase(v) || "1".equals(v)) {
+			return true;
+		}
+		if ("false".equalsIgnoreCase(v) || "off".equalsIgnoreCase(v) || "no".equalsIgnoreCase(v) || "0".equals(v)) {
+			return false;
+		}
+		throw new IllegalArgumentException("Invalid boolean value '" + value + "'");
+	}
+
+	private static char parseChar(String value) {
+		if (value.length() != 1) {
+			throw new IllegalArgumentException("Can not convert '" + value + "' to char");
+		}
+		return value.charAt(0);
+	}
+}
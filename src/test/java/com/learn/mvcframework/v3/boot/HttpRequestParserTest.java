@@ -0,0 +1,200 @@
+package com.learn.mvcframework.v3.boot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.learn.mvcframework.v3.boot.HttpRequestParser.HttpParseException;
+
+public class HttpRequestParserTest {
+
+	private final HttpRequestParser parser = new HttpRequestParser(256, 16);
+
+	private static ByteBuffer buffer(String raw) {
+		return ByteBuffer.wrap(raw.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private BootHttpRequest parse(String raw) throws HttpParseException {
+		return parser.parse(buffer(raw));
+	}
+
+	private int status(String raw) {
+		try {
+			parse(raw);
+		} catch (HttpParseException e) {
+			return e.status;
+		}
+		fail("expected HttpParseException for " + raw);
+		return 0;
+	}
+
+	// 请求行
+
+	@Test
+	public void parsesRequestLine() throws Exception {
+		BootHttpRequest request = parse("GET /a/b?x=1&y=2 HTTP/1.1\r\nHost: h\r\n\r\n");
+		assertEquals("GET", request.getMethod());
+		assertEquals("/a/b", request.getRequestURI());
+		assertEquals("x=1&y=2", request.getQueryString());
+		assertEquals("HTTP/1.1", request.getProtocol());
+		assertEquals(0, request.body.length);
+	}
+
+	@Test
+	public void skipsEmptyLinesBeforeRequest() throws Exception {
+		assertEquals("/", parse("\r\n\r\nGET / HTTP/1.1\r\n\r\n").getRequestURI());
+	}
+
+	@Test
+	public void rejectsMalformedRequestLines() {
+		assertEquals(400, status("GET\r\n\r\n"));
+		assertEquals(400, status("GET /\r\n\r\n"));
+		assertEquals(400, status("GET  / HTTP/1.1\r\n\r\n"));
+		assertEquals(400, status("G(T / HTTP/1.1\r\n\r\n"));
+		assertEquals(400, status("GET http://h/ HTTP/1.1\r\n\r\n"));
+		assertEquals(400, status("GET / HTTP/1.1\nHost: h\r\n\r\n"));
+	}
+
+	@Test
+	public void rejectsUnsupportedProtocol() {
+		assertEquals(505, status("GET / HTTP/2.0\r\n\r\n"));
+		assertEquals(505, status("GET / http/1.1\r\n\r\n"));
+	}
+
+	// 请求头
+
+	@Test
+	public void parsesHeadersCaseInsensitivelyAndTrimsValues() throws Exception {
+		BootHttpRequest request = parse("GET / HTTP/1.1\r\nHost: h\r\nX-A: \t one \t\r\nx-a: two\r\nEmpty:\r\n\r\n");
+		assertEquals("h", request.getHeader("host"));
+		assertEquals("one", request.getHeader("X-A"));
+		assertEquals(2, java.util.Collections.list(request.getHeaders("x-A")).size());
+		assertEquals("", request.getHeader("Empty"));
+	}
+
+	@Test
+	public void rejectsMalformedHeaderNames() {
+		assertEquals(400, status("GET / HTTP/1.1\r\nNoColon\r\n\r\n"));
+		assertEquals(400, status("GET / HTTP/1.1\r\n: v\r\n\r\n"));
+		assertEquals(400, status("GET / HTTP/1.1\r\nBad Name: v\r\n\r\n"));
+		assertEquals(400, status("GET / HTTP/1.1\r\nBad(Name): v\r\n\r\n"));
+	}
+
+	@Test
+	public void whitespaceBeforeColonDoesNotBypassTransferEncoding() {
+		assertEquals(400, status("POST / HTTP/1.1\r\nTransfer-Encoding : chunked\r\n\r\n"));
+		assertEquals(400, status("POST / HTTP/1.1\r\nTransfer-Encoding\t: chunked\r\n\r\n"));
+	}
+
+	@Test
+	public void rejectsFoldedHeaders() {
+		assertEquals(400, status("GET / HTTP/1.1\r\nX-A: one\r\n two\r\n\r\n"));
+	}
+
+	@Test
+	public void rejectsBareLineEndsInsideHeaders() {
+		assertEquals(400, status("GET / HTTP/1.1\r\nX-A: one\nX-B: two\r\n\r\n"));
+		assertEquals(400, status("GET / HTTP/1.1\r\nX-A: one\rX-B: two\r\n\r\n"));
+	}
+
+	@Test
+	public void rejectsOversizedHeader() {
+		StringBuilder raw = new StringBuilder("GET / HTTP/1.1\r\nX-A: ");
+		while (raw.length() < 300) {
+			raw.append('a');
+		}
+		assertEquals(431, status(raw.toString()));
+	}
+
+	@Test
+	public void rejectsTransferEncoding() {
+		assertEquals(501, status("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"));
+	}
+
+	// Content-Length
+
+	@Test
+	public void readsBodyByContentLength() throws Exception {
+		BootHttpRequest request = parse("POST / HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello");
+		assertArrayEquals("hello".getBytes(StandardCharsets.ISO_8859_1), request.body);
+	}
+
+	@Test
+	public void acceptsIdenticalDuplicateContentLength() throws Exception {
+		BootHttpRequest request = parse("POST / HTTP/1.1\r\nContent-Length: 2\r\ncontent-length: 2\r\n\r\nok");
+		assertArrayEquals("ok".getBytes(StandardCharsets.ISO_8859_1), request.body);
+	}
+
+	@Test
+	public void rejectsConflictingContentLength() {
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: 2\r\nContent-Length: 3\r\n\r\nabc"));
+	}
+
+	@Test
+	public void rejectsNonDigitContentLength() {
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: +5\r\n\r\nhello"));
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n"));
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: 1 2\r\n\r\n"));
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: \r\n\r\n"));
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: 0x10\r\n\r\n"));
+		assertEquals(400, status("POST / HTTP/1.1\r\nContent-Length: 99999999999999999999\r\n\r\n"));
+	}
+
+	@Test
+	public void rejectsBodyOverLimit() {
+		assertEquals(413, status("POST / HTTP/1.1\r\nContent-Length: 17\r\n\r\n"));
+	}
+
+	// 增量解析与 keep-alive
+
+	@Test
+	public void waitsForCompleteHeadAndBody() throws Exception {
+		ByteBuffer in = ByteBuffer.allocate(128);
+		in.put("POST / HTTP/1.1\r\nContent-Len".getBytes(StandardCharsets.ISO_8859_1)).flip();
+		assertNull(parser.parse(in));
+		in.compact().put("gth: 4\r\nExpect: 100-continue\r\n\r\nab".getBytes(StandardCharsets.ISO_8859_1)).flip();
+		assertNull(parser.parse(in));
+		assertFalse(parser.expectsContinue());
+		in.compact().put("cd".getBytes(StandardCharsets.ISO_8859_1)).flip();
+		BootHttpRequest request = parser.parse(in);
+		assertArrayEquals("abcd".getBytes(StandardCharsets.ISO_8859_1), request.body);
+		assertFalse(in.hasRemaining());
+	}
+
+	@Test
+	public void expectsContinueBeforeBodyArrives() throws Exception {
+		assertNull(parse("POST / HTTP/1.1\r\nContent-Length: 4\r\nExpect: 100-continue\r\n\r\n"));
+		assertTrue(parser.expectsContinue());
+	}
+
+	@Test
+	public void parsesPipelinedRequests() throws Exception {
+		ByteBuffer in = buffer("POST /1 HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+				+ "GET /2 HTTP/1.1\r\nConnection: close\r\n\r\n"
+				+ "GET /3 HTTP/1.0\r\n");
+		BootHttpRequest first = parser.parse(in);
+		assertEquals("/1", first.getRequestURI());
+		assertArrayEquals("abc".getBytes(StandardCharsets.ISO_8859_1), first.body);
+		assertTrue(first.keepAlive());
+		BootHttpRequest second = parser.parse(in);
+		assertEquals("/2", second.getRequestURI());
+		assertFalse(second.keepAlive());
+		// 第三个请求头不完整，剩余字节留在缓冲区
+		assertNull(parser.parse(in));
+		assertEquals("GET /3 HTTP/1.0\r\n".length(), in.remaining());
+	}
+
+	@Test
+	public void http10KeepAliveNeedsHeader() throws Exception {
+		assertFalse(parse("GET / HTTP/1.0\r\n\r\n").keepAlive());
+		assertTrue(parse("GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n").keepAlive());
+	}
+}
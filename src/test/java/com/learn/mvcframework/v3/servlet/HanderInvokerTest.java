@@ -0,0 +1,104 @@
+package com.learn.mvcframework.v3.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class HanderInvokerTest {
+
+	public static class Target {
+		public int calls;
+
+		public String join(String a, int b, long c, boolean d) {
+			return a + b + c + d;
+		}
+
+		public int sum(int a, int b) {
+			return a + b;
+		}
+
+		public void touch() {
+			calls++;
+		}
+
+		public static String twice(String s) {
+			return s + s;
+		}
+
+		public String fail() throws IOException {
+			throw new IOException("boom");
+		}
+
+		public String seven(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5, Object a6) {
+			return "seven";
+		}
+
+		String hidden() {
+			return "hidden";
+		}
+	}
+
+	private static Method method(String name) {
+		for (Method method : Target.class.getDeclaredMethods()) {
+			if (method.getName().equals(name)) {
+				return method;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	@Test
+	public void unboxesArgumentsAndBoxesResult() throws Exception {
+		Target target = new Target();
+		HanderInvoker invoker = LambdaInvokers.create(method("join"), target);
+		assertNotNull(invoker);
+		assertEquals("x12true", invoker.invoke(new Object[] { "x", 1, 2L, true }));
+		assertEquals(5, LambdaInvokers.create(method("sum"), target).invoke(new Object[] { 2, 3 }));
+	}
+
+	@Test
+	public void voidMethodReturnsNull() throws Exception {
+		Target target = new Target();
+		HanderInvoker invoker = LambdaInvokers.create(method("touch"), target);
+		assertNull(invoker.invoke(new Object[0]));
+		assertEquals(1, target.calls);
+	}
+
+	@Test
+	public void staticMethodIgnoresInstance() throws Exception {
+		assertEquals("abab", LambdaInvokers.create(method("twice"), null).invoke(new Object[] { "ab" }));
+	}
+
+	@Test
+	public void exceptionsPropagateUnwrapped() throws Exception {
+		for (HanderInvoker invoker : new HanderInvoker[] { LambdaInvokers.create(method("fail"), new Target()),
+				HanderInvoker.methodHandle(method("fail"), new Target()),
+				new HanderInvoker.ReflectiveInvoker(method("fail"), new Target()) }) {
+			try {
+				invoker.invoke(new Object[0]);
+				fail();
+			} catch (IOException e) {
+				assertEquals("boom", e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void fallsBackForLargeArityAndNonPublicMethods() throws Exception {
+		assertNull(LambdaInvokers.create(method("seven"), new Target()));
+		HanderInvoker seven = HanderInvoker.of(method("seven"), new Target());
+		assertTrue(seven instanceof HanderInvoker.MethodHandleInvoker);
+		assertEquals("seven", seven.invoke(new Object[7]));
+
+		HanderInvoker hidden = HanderInvoker.of(method("hidden"), new Target());
+		assertTrue(hidden instanceof HanderInvoker.ReflectiveInvoker);
+		assertEquals("hidden", hidden.invoke(new Object[0]));
+	}
+}
@@ -0,0 +1,273 @@
+package com.learn.mvcframework.v3.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletRequest;
+
+import org.junit.Test;
+
+import com.learn.mvcframework.v3.servlet.HanderRouter.Route;
+import com.learn.mvcframework.v3.servlet.MockDispatcherServlet.HanderMethod;
+
+public class HanderRouterTest {
+
+	public static class Handlers {
+		public String handle() {
+			return "ok";
+		}
+	}
+
+	private static HanderRouter router(String... urls) {
+		List<Route> routes = new ArrayList<>();
+		try {
+			Method handle = Handlers.class.getMethod("handle");
+			for (String url : urls) {
+				routes.add(new Route(new HanderMethod(url, handle, new Handlers()), HanderInterceptors.NONE));
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		return HanderRouter.build(routes);
+	}
+
+	/**
+	 * @return 命中的 mapping url，没有命中返回 null
+	 */
+	private static String lookup(HanderRouter router, String path) {
+		Route route = router.lookup(path);
+		return route == null ? null : route.handerMethod.url;
+	}
+
+	private static void assertRejected(String... urls) {
+		try {
+			router(urls);
+		} catch (IllegalStateException e) {
+			return;
+		}
+		fail("expected IllegalStateException for " + String.join(", ", urls));
+	}
+
+	/**
+	 * 只记录属性的 ServletRequest
+	 */
+	private static ServletRequest attributes(Map<String, Object> attributes) {
+		return (ServletRequest) Proxy.newProxyInstance(HanderRouterTest.class.getClassLoader(),
+				new Class<?>[] { ServletRequest.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "setAttribute":
+						attributes.put((String) args[0], args[1]);
+						return null;
+					case "getAttribute":
+						return attributes.get(args[0]);
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	// 优先级
+
+	@Test
+	public void literalBeatsTemplateAndRegex() {
+		HanderRouter router = router("/users/.*", "/users/{id}", "/users/me");
+		assertEquals("/users/me", lookup(router, "/users/me"));
+		assertEquals("/users/{id}", lookup(router, "/users/42"));
+		assertEquals("/users/.*", lookup(router, "/users/42/posts"));
+	}
+
+	@Test
+	public void precedenceDoesNotDependOnRegistrationOrder() {
+		String[] urls = { "/items/{id:\\d+}", "/items/[a-z]+", "/items/{name}", "/items/new" };
+		String[] reversed = { "/items/new", "/items/{name}", "/items/[a-z]+", "/items/{id:\\d+}" };
+		for (HanderRouter router : new HanderRouter[] { router(urls), router(reversed) }) {
+			assertEquals("/items/new", lookup(router, "/items/new"));
+			assertEquals("/items/{id:\\d+}", lookup(router, "/items/42"));
+			// 模板段优先于正则
+			assertEquals("/items/{name}", lookup(router, "/items/abc"));
+		}
+	}
+
+	@Test
+	public void constrainedTemplateBeatsPlainTemplate() {
+		HanderRouter router = router("/orders/{name}", "/orders/{id:\\d+}");
+		assertEquals("/orders/{id:\\d+}", lookup(router, "/orders/7"));
+		assertEquals("/orders/{name}", lookup(router, "/orders/7a"));
+	}
+
+	@Test
+	public void charClassConstraints() {
+		HanderRouter router = router("/codes/{code:[a-z0-9]+}", "/tags/{tag:\\w*}/x", "/any/{v:.+}");
+		assertEquals("/codes/{code:[a-z0-9]+}", lookup(router, "/codes/ab12"));
+		assertNull(lookup(router, "/codes/AB12"));
+		assertNull(lookup(router, "/codes/ab-12"));
+		// ASCII 以外的字符走 Pattern
+		assertNull(lookup(router, "/codes/\u00e9"));
+		assertEquals("/any/{v:.+}", lookup(router, "/any/\u00e9"));
+		assertEquals("/tags/{tag:\\w*}/x", lookup(router, "/tags/a_1/x"));
+		// 空段只会来自未经 normalize 的 path，{name} 不匹配，X* 匹配
+		assertEquals("/tags/{tag:\\w*}/x", lookup(router, "/tags//x"));
+	}
+
+	@Test
+	public void generalRegexConstraint() {
+		HanderRouter router = router("/v/{version:v[0-9]+\\.[0-9]+}");
+		assertEquals("/v/{version:v[0-9]+\\.[0-9]+}", lookup(router, "/v/v1.2"));
+		assertNull(lookup(router, "/v/v1"));
+	}
+
+	@Test
+	public void literalBranchFallsBackToTemplateBranch() {
+		HanderRouter router = router("/a/b/{y:\\d+}", "/a/{x}/c");
+		assertEquals("/a/b/{y:\\d+}", lookup(router, "/a/b/1"));
+		// 字面量分支走不通时回到同一层的模板分支
+		assertEquals("/a/{x}/c", lookup(router, "/a/b/c"));
+		assertNull(lookup(router, "/a/b/d"));
+	}
+
+	@Test
+	public void longerRegexWinsOnSameNode() {
+		HanderRouter router = router("/r/.*", "/r/[a-z]+", "/r/[0-9]+");
+		assertEquals("/r/[a-z]+", lookup(router, "/r/abc"));
+		assertEquals("/r/[0-9]+", lookup(router, "/r/123"));
+		assertEquals("/r/.*", lookup(router, "/r/a1"));
+	}
+
+	@Test
+	public void regexTailSpansSegments() {
+		HanderRouter router = router("/files/{dir}/.+\\.txt");
+		assertEquals("/files/{dir}/.+\\.txt", lookup(router, "/files/d/a/b.txt"));
+		assertNull(lookup(router, "/files/d/a/b.bin"));
+	}
+
+	@Test
+	public void unmatchedPathReturnsNull() {
+		HanderRouter router = router("/a", "/b/{id}", "/c/[0-9]+");
+		assertNull(lookup(router, "/"));
+		assertNull(lookup(router, "/a/"));
+		assertNull(lookup(router, "/b"));
+		assertNull(lookup(router, "/c/x"));
+	}
+
+	// 最外层的 '|'
+
+	@Test
+	public void topLevelAlternationMatchesEitherAlternative() {
+		HanderRouter router = router("/x/a|/y/b", "/y/{name}");
+		assertEquals("/x/a|/y/b", lookup(router, "/x/a"));
+		// /y/b 也能走模板路由，模板在 trie 的更深一层，优先
+		assertEquals("/y/{name}", lookup(router, "/y/b"));
+		assertNull(lookup(router, "/x/b"));
+
+		HanderRouter alone = router("/x/a|/y/b");
+		assertEquals("/x/a|/y/b", lookup(alone, "/y/b"));
+	}
+
+	@Test
+	public void groupedAlternationStaysOnItsNode() {
+		HanderRouter router = router("/x/(a|b)", "/x/[a-z]");
+		assertEquals("/x/(a|b)", lookup(router, "/x/a"));
+		assertEquals("/x/(a|b)", lookup(router, "/x/b"));
+		assertEquals("/x/[a-z]", lookup(router, "/x/c"));
+	}
+
+	@Test
+	public void detectsTopLevelAlternation() {
+		assertTrue(HanderRouter.topLevelAlternation("/x/a|b", 0));
+		assertTrue(HanderRouter.topLevelAlternation("/x/(a)|b", 0));
+		assertFalse(HanderRouter.topLevelAlternation("/x/(a|b)", 0));
+		assertFalse(HanderRouter.topLevelAlternation("/x/[|]", 0));
+		assertTrue(HanderRouter.topLevelAlternation("/x/[(]|b", 0));
+		assertFalse(HanderRouter.topLevelAlternation("/x/a\\|b", 0));
+		assertFalse(HanderRouter.topLevelAlternation("/x/\\Qa|b\\E", 0));
+		assertTrue(HanderRouter.topLevelAlternation("/x/\\Qa\\E|b", 0));
+	}
+
+	@Test
+	public void topLevelAlternationWithPathVariablesIsRejected() {
+		assertRejected("/u/{id}/a|b");
+	}
+
+	// 冲突与模板校验
+
+	@Test
+	public void duplicateMappingsAreRejected() {
+		assertRejected("/a", "/a");
+		assertRejected("/a/{id}", "/a/{id}");
+		assertRejected("/a/[0-9]+", "/a/[0-9]+");
+		assertRejected("/a|/b", "/a|/b");
+	}
+
+	@Test
+	public void differentTemplatesOnSameSegmentCoexist() {
+		HanderRouter router = router("/p/{a}/x", "/p/{b}/y");
+		assertEquals("/p/{a}/x", lookup(router, "/p/1/x"));
+		assertEquals("/p/{b}/y", lookup(router, "/p/1/y"));
+	}
+
+	@Test
+	public void variableNamesFollowTemplateOrder() {
+		assertArrayEquals(new String[] { "org", "id" }, HanderRouter.variableNames("/o/{org}/r/{id:\\d+}"));
+		assertEquals(0, HanderRouter.variableNames("/plain/.*").length);
+		try {
+			HanderRouter.variableNames("/o/{id}/{id}");
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("Duplicate"));
+		}
+		try {
+			HanderRouter.variableNames("/o/[a-z]+/{id}");
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("must not follow"));
+		}
+	}
+
+	// 路径变量
+
+	@Test
+	public void capturesPathVariables() {
+		HanderRouter router = router("/o/{org}/r/{id:\\d+}", "/plain");
+		Map<String, Object> attributes = new HashMap<>();
+		Route route = router.lookup("/o/a%20b/r/42", attributes(attributes));
+		assertEquals("/o/{org}/r/{id:\\d+}", route.handerMethod.url);
+		PathVariables variables = (PathVariables) attributes.get(PathVariables.ATTRIBUTE);
+		assertEquals("a b", variables.get(0));
+		assertEquals("42", variables.get(1));
+
+		attributes.clear();
+		router.lookup("/plain", attributes(attributes));
+		assertTrue(attributes.isEmpty());
+	}
+
+	@Test
+	public void backtrackingOverwritesStaleOffsets() {
+		HanderRouter router = router("/{a}/x/{b}/z", "/{c}/{d}/{e}/y");
+		Map<String, Object> attributes = new HashMap<>();
+		// 第一个分支已经把 qq 记为第 2 个变量
+		assertEquals("/{c}/{d}/{e}/y", router.lookup("/p/x/qq/y", attributes(attributes)).handerMethod.url);
+		PathVariables variables = (PathVariables) attributes.get(PathVariables.ATTRIBUTE);
+		assertEquals("p", variables.get(0));
+		assertEquals("x", variables.get(1));
+		assertEquals("qq", variables.get(2));
+	}
+
+	@Test
+	public void normalizeCollapsesSlashes() {
+		String path = "/a/b";
+		assertSame(path, HanderRouter.normalize(path));
+		assertEquals("/a/b/", HanderRouter.normalize("//a///b//"));
+	}
+}
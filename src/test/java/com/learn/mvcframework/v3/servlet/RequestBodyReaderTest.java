@@ -0,0 +1,352 @@
+package com.learn.mvcframework.v3.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+public class RequestBodyReaderTest {
+
+	public static class Item {
+		public String name;
+		public int count;
+		public List<String> tags;
+		public Item child;
+		private Integer priority;
+
+		public void setPriority(Integer priority) {
+			this.priority = priority;
+		}
+	}
+
+	public static class Types {
+		public Map<String, List<String>> multiMap;
+		public Map<String, String> map;
+		public List<Integer> numbers;
+	}
+
+	private final RequestBodyReader reader = new RequestBodyReader(1024, 512, 1);
+
+	private static Type type(String field) {
+		try {
+			return Types.class.getField(field).getGenericType();
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 每次 read 最多返回 chunk 个字节，用来覆盖跨缓冲区的情况
+	 */
+	private static ServletInputStream stream(byte[] body, int chunk) {
+		ByteArrayInputStream in = new ByteArrayInputStream(body);
+		return new ServletInputStream() {
+			@Override
+			public int read() {
+				return in.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				return in.read(b, off, Math.min(len, chunk));
+			}
+
+			@Override
+			public boolean isFinished() {
+				return in.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static HttpServletRequest request(String contentType, String encoding, byte[] body, long contentLength,
+			int chunk) {
+		return (HttpServletRequest) Proxy.newProxyInstance(RequestBodyReaderTest.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getContentLengthLong":
+						return contentLength;
+					case "getContentType":
+						return contentType;
+					case "getCharacterEncoding":
+						return encoding;
+					case "getInputStream":
+						return stream(body, chunk);
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private Object json(Type type, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		return reader.read(request("application/json", null, bytes, bytes.length, Integer.MAX_VALUE),
+				RequestBodyReader.binder(type), true);
+	}
+
+	private Object form(Type type, String body) throws IOException {
+		return form(type, body, null);
+	}
+
+	private Object form(Type type, String body, String encoding) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+		return reader.read(request(RequestBodyReader.FORM_CONTENT_TYPE, encoding, bytes, bytes.length, Integer.MAX_VALUE),
+				RequestBodyReader.binder(type), true);
+	}
+
+	private int jsonStatus(Type type, String body) {
+		return status(() -> json(type, body));
+	}
+
+	private int jsonStatus(Type type, byte[] body) {
+		return status(() -> reader.read(request("application/json", null, body, body.length, Integer.MAX_VALUE),
+				RequestBodyReader.binder(type), true));
+	}
+
+	private int formStatus(Type type, String body) {
+		return status(() -> form(type, body));
+	}
+
+	private interface Read {
+		Object read() throws IOException;
+	}
+
+	private static int status(Read read) {
+		try {
+			read.read();
+		} catch (MockResponseStatusException e) {
+			return e.getStatus();
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		fail("expected MockResponseStatusException");
+		return 0;
+	}
+
+	// JSON
+
+	@Test
+	public void bindsBeanAndSkipsUnknownMembers() throws Exception {
+		Item item = (Item) json(Item.class, " {\"name\":\"a\",\"unknown\":{\"x\":[1,{\"y\":null}],\"s\":\"}\\\"\"},"
+				+ "\"count\":3,\"tags\":[\"t1\",\"t2\"],\"priority\":7,\"child\":{\"name\":\"c\"}} \n");
+		assertEquals("a", item.name);
+		assertEquals(3, item.count);
+		assertEquals(Arrays.asList("t1", "t2"), item.tags);
+		assertEquals(Integer.valueOf(7), item.priority);
+		assertEquals("c", item.child.name);
+	}
+
+	@Test
+	public void bindsNaturalTypesForObject() throws Exception {
+		@SuppressWarnings("unchecked")
+		Map<String, Object> map = (Map<String, Object>) json(Object.class,
+				"{\"l\":-12,\"d\":1.5e2,\"b\":true,\"n\":null,\"a\":[1,\"x\",false],\"big\":123456789012345678901,"
+						+ "\"max\":9223372036854775807,\"e\":{}}");
+		assertEquals(-12L, map.get("l"));
+		assertEquals(150.0, map.get("d"));
+		assertEquals(Boolean.TRUE, map.get("b"));
+		assertTrue(map.containsKey("n"));
+		assertNull(map.get("n"));
+		assertEquals(Arrays.asList(1L, "x", false), map.get("a"));
+		assertEquals(new BigInteger("123456789012345678901"), map.get("big"));
+		assertEquals(Long.MAX_VALUE, map.get("max"));
+		assertEquals(new LinkedHashMap<>(), map.get("e"));
+	}
+
+	@Test
+	public void decodesEscapesAndUtf8() throws Exception {
+		assertEquals("\"\\/\b\f\n\r\t\u00e9\ud83d\ude00", json(String.class,
+				"\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00E9\\ud83d\\ude00\""));
+		assertEquals("\u00e9\u4e2d\ud83d\ude00", json(String.class, "\"\u00e9\u4e2d\ud83d\ude00\""));
+	}
+
+	@Test
+	public void decodesStringsAcrossBufferBoundaries() throws Exception {
+		StringBuilder value = new StringBuilder();
+		while (value.length() < 900) {
+			value.append("ab\u00e9\u4e2d\\n");
+		}
+		String body = "\"" + value + "\"";
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		String expected = value.toString().replace("\\n", "\n");
+		RequestBodyReader large = new RequestBodyReader(64 * 1024, 512, 1);
+		for (int chunk : new int[] { 1, 7, 512 }) {
+			assertEquals(expected, large.read(request("application/json", null, bytes, bytes.length, chunk),
+					RequestBodyReader.binder(String.class), true));
+		}
+	}
+
+	@Test
+	public void acceptsJsonSubtypesAndMissingContentType() throws Exception {
+		byte[] body = "1".getBytes(StandardCharsets.UTF_8);
+		for (String contentType : new String[] { null, "", "application/json; charset=UTF-8", "application/vnd.a+json" }) {
+			assertEquals(1, reader.read(request(contentType, null, body, body.length, Integer.MAX_VALUE),
+					RequestBodyReader.binder(int.class), true));
+		}
+	}
+
+	@Test
+	public void rejectsMalformedJson() {
+		String[] bodies = { "{", "}", "{\"name\":\"a\",}", "{\"name\" \"a\"}", "{name:\"a\"}", "{\"name\":\"a\" \"count\":1}",
+				"{\"tags\":[\"a\" \"b\"]}", "{\"tags\":[\"a\",]}", "{\"child\":tru}", "{\"name\":\"abc",
+				"{\"name\":\"\\x\"}", "{\"name\":\"\\u12g4\"}", "{\"name\":\"a\u0001\"}", "{} {}", "{}x",
+				"{\"unknown\":[1 2]}", "{\"unknown\":\"abc}", "{\"unknown\":@}", "   " };
+		for (String body : bodies) {
+			assertEquals(body, 400, jsonStatus(Item.class, body));
+		}
+	}
+
+	@Test
+	public void rejectsInvalidUtf8() {
+		byte[][] bodies = { { '"', (byte) 0xff, '"' }, { '"', (byte) 0xc0, (byte) 0x80, '"' },
+				{ '"', (byte) 0xe4, (byte) 0xb8, '"' }, { '"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"' },
+				{ '"', (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80, '"' } };
+		for (byte[] body : bodies) {
+			assertEquals(400, jsonStatus(String.class, body));
+		}
+	}
+
+	@Test
+	public void rejectsDeepNestingWithoutStackOverflow() {
+		StringBuilder deep = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			deep.append('[');
+		}
+		assertEquals(400, jsonStatus(Object.class, deep.toString()));
+		assertEquals(400, jsonStatus(Item.class, "{\"unknown\":" + deep + "}"));
+	}
+
+	@Test
+	public void conversionFailuresAre400() {
+		assertEquals(400, jsonStatus(Item.class, "{\"count\":\"abc\"}"));
+		assertEquals(400, jsonStatus(Item.class, "{\"count\":null}"));
+		assertEquals(400, jsonStatus(Item.class, "{\"count\":1.5}"));
+		assertEquals(400, jsonStatus(type("numbers"), "[1,{}]"));
+		try {
+			json(Item.class, "{\"count\":\"secret-value\"}");
+			fail();
+		} catch (MockResponseStatusException e) {
+			// 客户端的原始值只在 cause 里
+			assertFalse(e.getMessage().contains("secret-value"));
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Test
+	public void emptyStringForNonTextScalarIsNull() throws Exception {
+		Item item = (Item) json(Item.class, "{\"priority\":\"\",\"name\":\"\"}");
+		assertNull(item.priority);
+		assertEquals("", item.name);
+		assertNull(((Item) json(Item.class, "{\"child\":null,\"tags\":null}")).child);
+	}
+
+	@Test
+	public void emptyBody() throws Exception {
+		byte[] empty = new byte[0];
+		assertEquals(400, status(() -> reader.read(request("application/json", null, empty, 0, Integer.MAX_VALUE),
+				RequestBodyReader.binder(Item.class), true)));
+		assertNull(reader.read(request("application/json", null, empty, 0, Integer.MAX_VALUE),
+				RequestBodyReader.binder(Item.class), false));
+	}
+
+	@Test
+	public void rejectsOversizedBody() {
+		byte[] body = new byte[2048];
+		Arrays.fill(body, (byte) ' ');
+		body[0] = '"';
+		body[body.length - 1] = '"';
+		// Content-Length 超过上限
+		assertEquals(413, status(() -> reader.read(request("application/json", null, body, body.length, Integer.MAX_VALUE),
+				RequestBodyReader.binder(String.class), true)));
+		// 没有 Content-Length，读取时超过上限
+		assertEquals(413, status(() -> reader.read(request("application/json", null, body, -1, 100),
+				RequestBodyReader.binder(String.class), true)));
+	}
+
+	@Test
+	public void rejectsUnsupportedContentType() {
+		byte[] body = "x".getBytes(StandardCharsets.UTF_8);
+		for (String contentType : new String[] { "text/plain", "application/xml", "multipart/form-data" }) {
+			assertEquals(415, status(() -> reader.read(request(contentType, null, body, body.length, Integer.MAX_VALUE),
+					RequestBodyReader.binder(String.class), true)));
+		}
+	}
+
+	// 表单
+
+	@Test
+	public void bindsFormToBean() throws Exception {
+		Item item = (Item) form(Item.class,
+				"&&name=a+b%26c%3D&count=3&tags=x&unknown=1&tags=y%20z&flag&priority=&tags=%E4%B8%AD");
+		assertEquals("a b&c=", item.name);
+		assertEquals(3, item.count);
+		assertEquals(Arrays.asList("x", "y z", "\u4e2d"), item.tags);
+		assertNull(item.priority);
+	}
+
+	@Test
+	public void bindsFormToMaps() throws Exception {
+		assertEquals(Collections.singletonMap("a", "2"), form(type("map"), "a=1&a=2"));
+		Map<String, List<String>> expected = new LinkedHashMap<>();
+		expected.put("a", Arrays.asList("1", "2"));
+		expected.put("b", Arrays.asList(""));
+		assertEquals(expected, form(type("multiMap"), "a=1&b&a=2"));
+	}
+
+	@Test
+	public void usesRequestCharsetForForm() throws Exception {
+		assertEquals("\u00e9", ((Item) form(Item.class, "name=%E9", "ISO-8859-1")).name);
+		assertEquals("\u00e9", ((Item) form(Item.class, "name=%C3%A9", null)).name);
+	}
+
+	@Test
+	public void rejectsMalformedForm() {
+		assertEquals(400, formStatus(Item.class, "name=%zz"));
+		assertEquals(400, formStatus(Item.class, "name=%4"));
+		assertEquals(400, formStatus(Item.class, "name=%"));
+		assertEquals(400, formStatus(Item.class, "count=abc"));
+		assertEquals(400, formStatus(Item.class, "count="));
+	}
+
+	@Test
+	public void formOnlyBindsBeansAndMaps() {
+		assertEquals(415, formStatus(String.class, "a=1"));
+		assertEquals(415, formStatus(type("numbers"), "a=1"));
+	}
+
+	@Test
+	public void readsArraysFromJson() throws Exception {
+		assertArrayEquals(new int[] { 1, 2 }, (int[]) json(int[].class, "[1, 2]"));
+		assertArrayEquals(new int[0], (int[]) json(int[].class, "[ ]"));
+	}
+}